@@ -168,7 +168,7 @@ public class AuthenticationResult implements PrincipalSupportingComponent, Predi
     @Override
     @Nonnull @NonnullElements @Unmodifiable @NotLive public <T extends Principal> Set<T> getSupportedPrincipals(
             @Nonnull final Class<T> c) {
-        return subject.getPrincipals(c);
+        return getSubject().getPrincipals(c);
     }
     
     /**
@@ -325,7 +325,7 @@ public class AuthenticationResult implements PrincipalSupportingComponent, Predi
         public boolean test(@Nullable final ProfileRequestContext input) {
             
             final Set<ProxyAuthenticationPrincipal> proxieds =
-                    subject.getPrincipals(ProxyAuthenticationPrincipal.class);
+                    getSubject().getPrincipals(ProxyAuthenticationPrincipal.class);
             
             if (proxieds == null || proxieds.isEmpty()) {
                 return true;
@@ -39,41 +39,43 @@ import net.shibboleth.shared.component.AbstractInitializableComponent;
 public abstract class AbstractPrincipalSerializer<Type> extends AbstractInitializableComponent
         implements PrincipalSerializer<Type> {
 
-    /** JSON generator factory. */
-    @Nonnull private final JsonGeneratorFactory generatorFactory;
-
-    /** JSON reader factory. */
-    @Nonnull private final JsonReaderFactory readerFactory;
-
     /**
-     * Constructor.
+     * Shared JSON generator factory.
+     * 
+     * <p>Factories are thread-safe, so one instance is shared by all serializers rather than
+     * repeating the provider lookup for each.</p>
      */
-    public AbstractPrincipalSerializer() {
+    @Nonnull private static final JsonGeneratorFactory GENERATOR_FACTORY;
+
+    /** Shared JSON reader factory. */
+    @Nonnull private static final JsonReaderFactory READER_FACTORY;
+    
+    static {
         final JsonProvider provider = JsonProvider.provider();
-        generatorFactory = provider.createGeneratorFactory(null);
-        readerFactory = provider.createReaderFactory(null);
+        GENERATOR_FACTORY = provider.createGeneratorFactory(null);
+        READER_FACTORY = provider.createReaderFactory(null);
     }
 
     /**
-     * Get a {@link JsonGenerator}, synchronized for thread-safety.
+     * Get a {@link JsonGenerator}.
      * 
      * @param writer destination for output
      * 
      * @return a generator
      */
-    @Nonnull protected synchronized JsonGenerator getJsonGenerator(@Nonnull final Writer writer) {
-        return generatorFactory.createGenerator(writer);
+    @Nonnull protected JsonGenerator getJsonGenerator(@Nonnull final Writer writer) {
+        return GENERATOR_FACTORY.createGenerator(writer);
     }
 
     /**
-     * Get a {@link JsonReader}, synchronized for thread-safety.
+     * Get a {@link JsonReader}.
      * 
      * @param reader source of input
      * 
      * @return a reader
      */
-    @Nonnull protected synchronized JsonReader getJsonReader(@Nonnull final Reader reader) {
-        return readerFactory.createReader(reader);
+    @Nonnull protected JsonReader getJsonReader(@Nonnull final Reader reader) {
+        return READER_FACTORY.createReader(reader);
     }
 
 }
\ No newline at end of file
@@ -147,6 +147,11 @@ public class GenericPrincipalSerializer extends AbstractPrincipalSerializer<Stri
         return JSON_PATTERN.matcher(value).matches();
     }
 
+    /** {@inheritDoc} */
+    @Nonnull @NonnullElements public Set<String> getTypeTags() {
+        return Set.of(PRINCIPAL_TYPE_FIELD);
+    }
+
     /** {@inheritDoc} */
     @Nullable public Principal deserialize(@Nonnull @NotEmpty final String value) throws IOException {
         checkComponentActive();
@@ -19,10 +19,12 @@ package net.shibboleth.idp.authn.principal;
 
 import java.io.IOException;
 import java.security.Principal;
+import java.util.Set;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 
+import net.shibboleth.shared.annotation.constraint.NonnullElements;
 import net.shibboleth.shared.annotation.constraint.NotEmpty;
 import net.shibboleth.shared.component.InitializableComponent;
 
@@ -66,4 +68,19 @@ public interface PrincipalSerializer<Type> extends InitializableComponent {
      * @throws IOException if an error occurs during deserialization
      */
     @Nullable Principal deserialize(@Nonnull final Type value) throws IOException;
+
+    /**
+     * Get the type tags of the serialized forms this serializer owns, if it declares them.
+     * 
+     * <p>A type tag is the leading field of a serialized JSON object. A serializer that returns
+     * a non-null value must not support any value whose leading field is not one of these tags,
+     * which allows callers to skip it for other values. The default makes no such claim.</p>
+     * 
+     * @return the type tags owned, or null
+     * 
+     * @since 5.0.0
+     */
+    @Nullable @NonnullElements default Set<String> getTypeTags() {
+        return null;
+    }
 }
\ No newline at end of file
@@ -22,6 +22,7 @@ import java.io.StringReader;
 import java.io.StringWriter;
 import java.lang.reflect.Constructor;
 import java.security.Principal;
+import java.util.Set;
 import java.util.regex.Pattern;
 
 import javax.annotation.Nonnull;
@@ -40,6 +41,7 @@ import org.slf4j.LoggerFactory;
 import com.google.common.base.Strings;
 
 import net.shibboleth.shared.annotation.ParameterName;
+import net.shibboleth.shared.annotation.constraint.NonnullElements;
 import net.shibboleth.shared.annotation.constraint.NotEmpty;
 import net.shibboleth.shared.logic.Constraint;
 import net.shibboleth.shared.primitive.StringSupport;
@@ -122,6 +124,11 @@ public class SimplePrincipalSerializer<T extends Principal> extends AbstractPrin
         return jsonPattern.matcher(value).matches();
     }
 
+    /** {@inheritDoc} */
+    @Nonnull @NonnullElements public Set<String> getTypeTags() {
+        return Set.of(fieldName);
+    }
+
     /** {@inheritDoc} */
     @Nullable public T deserialize(@Nonnull @NotEmpty final String value) throws IOException {
         
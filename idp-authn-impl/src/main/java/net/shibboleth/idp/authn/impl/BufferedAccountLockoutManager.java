@@ -0,0 +1,504 @@
+/*
+ * Licensed to the University Corporation for Advanced Internet Development,
+ * Inc. (UCAID) under one or more contributor license agreements.  See the
+ * NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The UCAID licenses this file to You under the Apache
+ * License, Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package net.shibboleth.idp.authn.impl;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import org.opensaml.profile.context.ProfileRequestContext;
+import org.opensaml.storage.StorageRecord;
+import org.opensaml.storage.StorageService;
+import org.opensaml.storage.VersionMismatchException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import net.shibboleth.shared.annotation.constraint.NotEmpty;
+import net.shibboleth.shared.annotation.constraint.Positive;
+import net.shibboleth.shared.component.ComponentInitializationException;
+import net.shibboleth.shared.logic.Constraint;
+
+/**
+ * Variant of {@link StorageBackedAccountLockoutManager} that counts failed attempts in memory and merges
+ * them into the {@link StorageService} in the background.
+ * 
+ * <p>Once a lockout key has been seen by a node, its state is evaluated and updated locally, and the
+ * accumulated increments are periodically added to the stored counter. Storage is only touched for keys with
+ * new attempts to merge; the state of other keys is refreshed from storage by the first check after each
+ * synchronization interval, so nodes sharing a clustered storage service converge within that interval
+ * without reading idle keys in the background. State that is no longer needed is dropped locally. Keys with
+ * no local state, including any beyond the configured bound, are handled exactly as by the parent class.
+ * The semantics of the maximum attempts, counter interval and lockout duration settings are unchanged.</p>
+ * 
+ * <p>This trades a short window of per-node lockout behavior for the removal of storage writes from the
+ * processing of each failed attempt.</p>
+ * 
+ * @since 5.0.0
+ */
+public class BufferedAccountLockoutManager extends StorageBackedAccountLockoutManager {
+
+    /** Number of attempts to make when merging a counter into storage. */
+    private static final int MERGE_ATTEMPTS = 10;
+
+    /** How long to wait for a merge in progress on shutdown, in seconds. */
+    private static final long SHUTDOWN_WAIT = 30;
+
+    /** Class logger. */
+    @Nonnull private final Logger log = LoggerFactory.getLogger(BufferedAccountLockoutManager.class);
+
+    /** Interval between merges into storage. */
+    @Nonnull private Duration syncInterval;
+
+    /** Maximum number of keys to track in memory. */
+    @Positive private int maxEntries;
+
+    /** Local state by lockout key. */
+    @Nonnull private final ConcurrentMap<String,Counter> counters;
+
+    /** Runs the periodic merge. */
+    @Nullable private ScheduledExecutorService syncExecutor;
+
+    /** Serializes merges. */
+    @Nonnull private final Object syncLock;
+
+    /** Number of merges started, used to decide when local state needs refreshing. Written under the lock. */
+    private volatile long syncGeneration;
+
+    /** Constructor. */
+    public BufferedAccountLockoutManager() {
+        syncInterval = Duration.ofSeconds(1);
+        maxEntries = 10000;
+        counters = new ConcurrentHashMap<>();
+        syncLock = new Object();
+    }
+
+    /**
+     * Set the interval between merges of local state into storage.
+     * 
+     * <p>Defaults to 1 second.</p>
+     * 
+     * @param interval synchronization interval
+     * 
+     * @since 5.0.0
+     */
+    public void setSyncInterval(@Nonnull final Duration interval) {
+        checkSetterPreconditions();
+        Constraint.isNotNull(interval, "Interval cannot be null");
+        Constraint.isFalse(interval.isNegative() || interval.isZero(), "Interval must be greater than zero");
+        syncInterval = interval;
+    }
+
+    /**
+     * Set the maximum number of lockout keys to track in memory.
+     * 
+     * <p>Defaults to 10000.</p>
+     * 
+     * @param max maximum number of keys
+     * 
+     * @since 5.0.0
+     */
+    public void setMaxEntries(@Positive final int max) {
+        checkSetterPreconditions();
+        maxEntries = (int) Constraint.isGreaterThan(0, max, "Maximum entries must be greater than zero");
+    }
+
+    /** {@inheritDoc} */
+    @Override protected void doInitialize() throws ComponentInitializationException {
+        super.doInitialize();
+
+        final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(
+                new ThreadFactoryBuilder().setDaemon(true).setNameFormat(getId() + "-sync-%d").build());
+        executor.scheduleWithFixedDelay(this::sync, syncInterval.toMillis(), syncInterval.toMillis(),
+                TimeUnit.MILLISECONDS);
+        syncExecutor = executor;
+    }
+
+    /** {@inheritDoc} */
+    @Override protected void doDestroy() {
+        if (syncExecutor != null) {
+            // Let a merge in progress finish rather than interrupting its storage I/O.
+            syncExecutor.shutdown();
+            try {
+                if (!syncExecutor.awaitTermination(SHUTDOWN_WAIT, TimeUnit.SECONDS)) {
+                    log.warn("Account lockout merge still running at shutdown");
+                }
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            syncExecutor = null;
+            // Don't lose increments made since the last merge.
+            sync();
+        }
+        counters.clear();
+
+        super.doDestroy();
+    }
+
+    /** {@inheritDoc} */
+    @Override public boolean check(@Nonnull final ProfileRequestContext profileRequestContext) {
+        final String key = getLockoutKey(profileRequestContext);
+        if (key == null) {
+            log.warn("No lockout key returned for request");
+            return false;
+        }
+
+        final Counter counter = counters.get(key);
+        if (counter == null) {
+            return super.check(profileRequestContext);
+        }
+
+        // Pick up changes made by other nodes once per synchronization interval.
+        final long generation = syncGeneration;
+        final boolean stale;
+        synchronized (counter) {
+            stale = !counter.removed && counter.generation < generation;
+        }
+        if (stale) {
+            refresh(key, counter, generation);
+        }
+
+        final int count;
+        final long lastAttempt;
+        synchronized (counter) {
+            if (counter.removed) {
+                return super.check(profileRequestContext);
+            }
+            count = counter.count;
+            lastAttempt = counter.lastAttempt;
+        }
+
+        if (count >= getMaxAttempts(profileRequestContext)) {
+            final long lockoutDuration = getLockoutDuration(profileRequestContext).toMillis();
+            if (System.currentTimeMillis() - lastAttempt <= lockoutDuration) {
+                log.info("Lockout threshold reached for '{}', invalid count is {}", key, count);
+                if (isExtendLockoutDuration()) {
+                    doIncrement(profileRequestContext, key, MERGE_ATTEMPTS);
+                }
+                return true;
+            }
+            log.debug("Lockout for '{}' has elapsed", key);
+        } else {
+            log.debug("Invalid attempts counter for '{}' has only reached {}", key, count);
+        }
+
+        return false;
+    }
+
+    /** {@inheritDoc} */
+    @Override public boolean clear(@Nonnull final ProfileRequestContext profileRequestContext) {
+        final String key = getLockoutKey(profileRequestContext);
+        if (key != null) {
+            final Counter counter = counters.remove(key);
+            if (counter != null) {
+                synchronized (counter) {
+                    counter.removed = true;
+                }
+            }
+        }
+        return super.clear(profileRequestContext);
+    }
+
+    /**
+     * {@inheritDoc}
+     * 
+     * <p>This override records the attempt in memory, falling back to the parent implementation
+     * if the maximum number of keys is already being tracked.</p>
+     */
+    @Override protected boolean doIncrement(@Nonnull final ProfileRequestContext profileRequestContext,
+            @Nonnull @NotEmpty final String key, final int retries) {
+
+        final long lockoutDuration = getLockoutDuration(profileRequestContext).toMillis();
+        final long counterInterval = getCounterInterval(profileRequestContext).toMillis();
+
+        while (true) {
+            Counter counter = counters.get(key);
+            if (counter == null) {
+                if (counters.size() >= maxEntries) {
+                    log.debug("Lockout state for {} keys already in memory, updating storage for '{}' directly",
+                            maxEntries, key);
+                    return super.doIncrement(profileRequestContext, key, retries);
+                }
+                final Counter seeded = readCounter(key, lockoutDuration, counterInterval);
+                final Counter existing = counters.putIfAbsent(key, seeded);
+                counter = existing != null ? existing : seeded;
+            }
+
+            synchronized (counter) {
+                if (counter.removed) {
+                    // Evicted or cleared since lookup, start over.
+                    continue;
+                }
+                final long now = System.currentTimeMillis();
+                if (now - counter.lastAttempt > counterInterval) {
+                    counter.count = 0;
+                }
+                counter.count++;
+                counter.pending++;
+                counter.lastAttempt = now;
+                counter.retention = Math.max(lockoutDuration, counterInterval);
+                counter.counterInterval = counterInterval;
+                log.debug("Invalid login count for '{}' is now {}, {} pending merge into storage", key,
+                        counter.count, counter.pending);
+            }
+            return true;
+        }
+    }
+
+    /**
+     * Merge pending increments into storage, evicting entries that are no longer needed.
+     * 
+     * <p>Only one merge runs at a time. Keys without pending increments are not read from storage here.</p>
+     */
+    protected void sync() {
+        synchronized (syncLock) {
+            final long generation = ++syncGeneration;
+            for (final Map.Entry<String,Counter> entry : counters.entrySet()) {
+                try {
+                    syncCounter(entry.getKey(), entry.getValue(), generation);
+                } catch (final RuntimeException e) {
+                    log.error("Error merging account lockout state for '{}'", entry.getKey(), e);
+                }
+            }
+        }
+    }
+
+// Checkstyle: CyclomaticComplexity|MethodLength OFF
+    /**
+     * Merge the local state for a key with storage.
+     * 
+     * @param key lockout key
+     * @param counter local state
+     * @param generation current merge generation
+     */
+    private void syncCounter(@Nonnull @NotEmpty final String key, @Nonnull final Counter counter,
+            final long generation) {
+        final int delta;
+        final long lastAttempt;
+        final long retention;
+        final long counterInterval;
+        final long now = System.currentTimeMillis();
+        synchronized (counter) {
+            if (counter.removed) {
+                return;
+            } else if (counter.pending == 0) {
+                if (now - counter.lastAttempt > counter.retention) {
+                    // Nothing left to lock out or count, and the stored record expires on its own.
+                    evict(key, counter);
+                }
+                // Idle state is refreshed by check() when it's next needed.
+                return;
+            }
+            delta = counter.pending;
+            lastAttempt = counter.lastAttempt;
+            retention = counter.retention;
+            counterInterval = counter.counterInterval;
+            counter.pending = 0;
+        }
+
+        final StorageService storageService = getStorageService();
+        for (int attempt = 0; attempt < MERGE_ATTEMPTS; attempt++) {
+            StorageRecord<?> sr = null;
+            try {
+                sr = storageService.read(getId(), key);
+            } catch (final IOException e) {
+                log.error("Error reading back account lockout state for '{}'", key, e);
+                break;
+            }
+
+            int stored = 0;
+            long storedLastAttempt = 0;
+            if (sr != null) {
+                storedLastAttempt = sr.getExpiration() - retention;
+                try {
+                    stored = Integer.parseInt(sr.getValue());
+                } catch (final NumberFormatException e) {
+                    log.error("Error converting lockout data for '{}' into integer", key, e);
+                }
+            }
+
+            // Stored attempts older than the counter interval no longer count.
+            final int merged = (sr != null && lastAttempt - storedLastAttempt <= counterInterval ? stored : 0) + delta;
+            final long expiration = Math.max(lastAttempt, storedLastAttempt) + retention;
+            log.debug("Merging {} invalid attempts for '{}' into storage, count will be {}, expiring at {}", delta,
+                    key, merged, Instant.ofEpochMilli(expiration));
+            try {
+                // A versioned update ensures a concurrent merge from another node is re-read, not overwritten.
+                final boolean success = sr == null
+                        ? storageService.create(getId(), key, Integer.toString(merged), expiration)
+                        : storageService.updateWithVersion(sr.getVersion(), getId(), key, Integer.toString(merged),
+                                expiration) != null;
+                if (success) {
+                    if (!adopt(counter, merged, storedLastAttempt, generation)) {
+                        // Cleared while the merge was in progress.
+                        storageService.delete(getId(), key);
+                    }
+                    return;
+                }
+            } catch (final VersionMismatchException e) {
+                log.debug("Account lockout record for '{}' was updated during merge, retrying", key);
+            } catch (final IOException e) {
+                log.error("Unable to store account lockout record for '{}'", key, e);
+            }
+        }
+
+        log.error("Unable to merge account lockout state for '{}', will retry", key);
+        synchronized (counter) {
+            counter.pending += delta;
+        }
+    }
+// Checkstyle: CyclomaticComplexity|MethodLength ON
+
+    /**
+     * Replace the local count with the stored one, plus any increments made since the merge began.
+     * 
+     * @param counter local state
+     * @param stored stored count
+     * @param storedLastAttempt time of last attempt implied by the stored record
+     * @param generation merge generation the stored count was read in
+     * 
+     * @return false iff the local state has been removed
+     */
+    private boolean adopt(@Nonnull final Counter counter, final int stored, final long storedLastAttempt,
+            final long generation) {
+        synchronized (counter) {
+            if (counter.removed) {
+                return false;
+            }
+            counter.count = stored + counter.pending;
+            counter.lastAttempt = Math.max(counter.lastAttempt, storedLastAttempt);
+            counter.generation = Math.max(counter.generation, generation);
+            return true;
+        }
+    }
+
+    /**
+     * Refresh local state from storage, evicting it if the record has been cleared or has expired.
+     * 
+     * @param key lockout key
+     * @param counter local state
+     * @param generation current merge generation
+     */
+    private void refresh(@Nonnull @NotEmpty final String key, @Nonnull final Counter counter,
+            final long generation) {
+        final StorageRecord<?> sr;
+        try {
+            sr = getStorageService().read(getId(), key);
+        } catch (final IOException e) {
+            log.error("Error reading back account lockout state for '{}'", key, e);
+            return;
+        }
+
+        synchronized (counter) {
+            if (counter.removed) {
+                return;
+            } else if (sr == null) {
+                if (counter.pending == 0) {
+                    log.debug("Lockout record for '{}' was cleared or has expired", key);
+                    evict(key, counter);
+                } else {
+                    adopt(counter, 0, 0, generation);
+                }
+                return;
+            }
+
+            try {
+                adopt(counter, Integer.parseInt(sr.getValue()), sr.getExpiration() - counter.retention, generation);
+            } catch (final NumberFormatException e) {
+                log.error("Error converting lockout data for '{}' into integer", key, e);
+            }
+        }
+    }
+
+    /**
+     * Remove local state. The caller must hold the lock on the counter.
+     * 
+     * @param key lockout key
+     * @param counter local state
+     */
+    private void evict(@Nonnull @NotEmpty final String key, @Nonnull final Counter counter) {
+        counter.removed = true;
+        counters.remove(key, counter);
+    }
+
+    /**
+     * Initialize local state from storage.
+     * 
+     * @param key lockout key
+     * @param lockoutDuration lockout duration in milliseconds
+     * @param counterInterval counter interval in milliseconds
+     * 
+     * @return new local state
+     */
+    @Nonnull private Counter readCounter(@Nonnull @NotEmpty final String key, final long lockoutDuration,
+            final long counterInterval) {
+        final Counter counter = new Counter();
+        counter.generation = syncGeneration;
+        counter.retention = Math.max(lockoutDuration, counterInterval);
+        counter.counterInterval = counterInterval;
+        try {
+            final StorageRecord<?> sr = getStorageService().read(getId(), key);
+            if (sr != null) {
+                counter.count = Integer.parseInt(sr.getValue());
+                counter.lastAttempt = sr.getExpiration() - counter.retention;
+            }
+        } catch (final IOException e) {
+            log.error("Error reading back account lockout state for '{}'", key, e);
+        } catch (final NumberFormatException e) {
+            log.error("Error converting lockout data for '{}' into integer", key, e);
+        }
+        return counter;
+    }
+
+    /** Local lockout state for a key, guarded by its own monitor. */
+    private static final class Counter {
+
+        /** Current count, including pending increments. */
+        private int count;
+
+        /** Increments not yet merged into storage. */
+        private int pending;
+
+        /** Time of last attempt. */
+        private long lastAttempt;
+
+        /** How long state must be retained after the last attempt, in milliseconds. */
+        private long retention;
+
+        /** Counter interval in effect at the last attempt, in milliseconds. */
+        private long counterInterval;
+
+        /** Merge generation in which this state was last read from storage. */
+        private long generation;
+
+        /** Whether this state has been removed from the map. */
+        private boolean removed;
+    }
+
+}
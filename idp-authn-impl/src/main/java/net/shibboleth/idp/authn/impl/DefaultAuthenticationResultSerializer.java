@@ -30,7 +30,10 @@ import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
 import java.util.Map;
+import java.util.Optional;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.stream.Collectors;
 
 import javax.annotation.Nonnull;
@@ -111,6 +114,15 @@ public class DefaultAuthenticationResultSerializer extends AbstractInitializable
     /** Principal serializers. */
     @Nonnull @NonnullElements private Collection<PrincipalSerializer<String>> principalSerializers;
 
+    /** Serializer to use for each {@link Principal} class, resolved on first use. */
+    @Nonnull private final ConcurrentMap<Class<?>,Optional<PrincipalSerializer<String>>> classIndex;
+
+    /**
+     * Serializers that may accept each JSON type tag, the leading field of a serialized principal,
+     * in the order they are tried.
+     */
+    @Nonnull private final ConcurrentMap<String,List<PrincipalSerializer<String>>> tagIndex;
+
     /**
      * Specialized serializer for {@link net.shibboleth.idp.authn.principal.AuthenticationResultPrincipal}
      * that requires a circular ref.
@@ -119,6 +131,9 @@ public class DefaultAuthenticationResultSerializer extends AbstractInitializable
     
     /** Generic principal serializer for any unsupported principals. */
     @Nonnull private final GenericPrincipalSerializer genericSerializer;
+    
+    /** Whether to defer decoding the {@link Subject} of a result until it is first accessed. */
+    private boolean lazySubject;
 
     /**
      * Constructor.
@@ -134,6 +149,8 @@ public class DefaultAuthenticationResultSerializer extends AbstractInitializable
         
         principalSerializers = Collections.emptyList();
         authnResultPrincipalSerializer = new AuthenticationResultPrincipalSerializer(this);
+        classIndex = new ConcurrentHashMap<>();
+        tagIndex = new ConcurrentHashMap<>();
         principalServiceManager = new PrincipalServiceManager(null);
         genericSerializer = new GenericPrincipalSerializer();
         genericSerializer.initialize();
@@ -154,6 +171,8 @@ public class DefaultAuthenticationResultSerializer extends AbstractInitializable
         
         principalSerializers = Collections.emptyList();
         authnResultPrincipalSerializer = new AuthenticationResultPrincipalSerializer(this);
+        classIndex = new ConcurrentHashMap<>();
+        tagIndex = new ConcurrentHashMap<>();
         principalServiceManager = Constraint.isNotNull(manager, "PrincipalServiceManager cannot be null");
         genericSerializer = Constraint.isNotNull(defaultSerializer, "Default serializer cannot be null");
     }
@@ -168,6 +187,34 @@ public class DefaultAuthenticationResultSerializer extends AbstractInitializable
         return genericSerializer;
     }
     
+    /**
+     * Get whether decoding the {@link Subject} of a deserialized result is deferred until it is first accessed.
+     * 
+     * @return true iff decoding is deferred
+     * 
+     * @since 5.0.0
+     */
+    public boolean isLazySubject() {
+        return lazySubject;
+    }
+    
+    /**
+     * Set whether decoding the {@link Subject} of a deserialized result is deferred until it is first accessed.
+     * 
+     * <p>Decoding the principals and credentials is the bulk of the cost of deserialization, and many
+     * results loaded from a session are only examined for their flow ID and timestamps. With this
+     * enabled, a malformed principal no longer fails deserialization of the result, but is logged
+     * when the subject is decoded, leaving the subject incomplete.</p>
+     * 
+     * @param flag flag to set
+     * 
+     * @since 5.0.0
+     */
+    public void setLazySubject(final boolean flag) {
+        checkSetterPreconditions();
+        lazySubject = flag;
+    }
+    
     /** {@inheritDoc} */
     @Override
     public void doInitialize() throws ComponentInitializationException {
@@ -187,6 +234,9 @@ public class DefaultAuthenticationResultSerializer extends AbstractInitializable
             copy.add(authnResultPrincipalSerializer);
             principalSerializers = List.copyOf(copy);
         }
+        
+        classIndex.clear();
+        tagIndex.clear();
     }
 
 // Checkstyle: CyclomaticComplexity|MethodLength OFF
@@ -273,7 +323,8 @@ public class DefaultAuthenticationResultSerializer extends AbstractInitializable
             final String flowId = obj.getString(FLOW_ID_FIELD);
             final long authnInstant = obj.getJsonNumber(AUTHN_INSTANT_FIELD).longValueExact();
 
-            final AuthenticationResult result = new AuthenticationResult(flowId, new Subject());
+            final AuthenticationResult result = lazySubject ? new LazyAuthenticationResult(flowId, obj, this)
+                    : new AuthenticationResult(flowId, new Subject());
             result.setAuthenticationInstant(Instant.ofEpochMilli(authnInstant));
             result.setLastActivityInstant(Instant.ofEpochMilli(expiration != null ? expiration : authnInstant));
             result.setPreviousResult(true);
@@ -287,12 +338,35 @@ public class DefaultAuthenticationResultSerializer extends AbstractInitializable
                     .forEach(e -> dataMap.put(e.getKey(), ((JsonString) e.getValue()).getString()));
             }
             
+            if (!lazySubject) {
+                populateSubject(result.getSubject(), obj);
+            }
+
+            return result;
+
+        } catch (final NullPointerException | ClassCastException | ArithmeticException | JsonException e) {
+            throw new IOException("Found invalid data structure while parsing AuthenticationResult", e);
+        }
+    }
+ // Checkstyle: CyclomaticComplexity|MethodLength ON
+
+    /**
+     * Decode the principals and credentials of a serialized result into a {@link Subject}.
+     * 
+     * @param subject the subject to populate
+     * @param obj the serialized result
+     * 
+     * @throws IOException if an error occurs
+     */
+    void populateSubject(@Nonnull final Subject subject, @Nonnull final JsonObject obj) throws IOException {
+        
+        try {
             final JsonArray principals = obj.getJsonArray(PRINCIPAL_ARRAY_FIELD);
             if (principals != null) {
                 for (final JsonValue val : principals) {
                     final Principal principal = deserializePrincipal(val);
                     if (principal != null) {
-                        result.getSubject().getPrincipals().add(principal);
+                        subject.getPrincipals().add(principal);
                     }
                 }
             }
@@ -302,7 +376,7 @@ public class DefaultAuthenticationResultSerializer extends AbstractInitializable
                 for (final JsonValue val : publicCreds) {
                     final Principal principal = deserializePrincipal(val);
                     if (principal != null) {
-                        result.getSubject().getPublicCredentials().add(principal);
+                        subject.getPublicCredentials().add(principal);
                     }
                 }
             }
@@ -312,7 +386,7 @@ public class DefaultAuthenticationResultSerializer extends AbstractInitializable
                 for (final JsonValue val : privateCreds) {
                     final Principal principal = deserializePrincipal(val);
                     if (principal != null) {
-                        result.getSubject().getPrivateCredentials().add(principal);
+                        subject.getPrivateCredentials().add(principal);
                     }
                 }
             }
@@ -323,7 +397,7 @@ public class DefaultAuthenticationResultSerializer extends AbstractInitializable
                     if (val.getValueType() == ValueType.STRING) {
                         try {
                             final X509Certificate cert = X509Support.decodeCertificate(val.toString());
-                            result.getSubject().getPublicCredentials().add(cert);
+                            subject.getPublicCredentials().add(cert);
                         } catch (final CertificateException e) {
                             log.warn("Unable to parse certificate", e);
                         }
@@ -332,14 +406,11 @@ public class DefaultAuthenticationResultSerializer extends AbstractInitializable
             }
 
             // TODO handle other creds
-
-            return result;
-
-        } catch (final NullPointerException | ClassCastException | ArithmeticException | JsonException e) {
+            
+        } catch (final NullPointerException | ClassCastException | JsonException e) {
             throw new IOException("Found invalid data structure while parsing AuthenticationResult", e);
         }
     }
- // Checkstyle: CyclomaticComplexity|MethodLength ON
 
     /**
      * Attempt to serialize a principal with the registered and default serializers.
@@ -352,22 +423,10 @@ public class DefaultAuthenticationResultSerializer extends AbstractInitializable
     private void serializePrincipal(@Nonnull final JsonGenerator generator, @Nonnull final Principal principal)
             throws IOException {
 
-        final String serializedForm;
-        
-        // This is a special case because the serializer here is a dedicated one.
-        if (authnResultPrincipalSerializer.supports(principal)) {
-            serializedForm = authnResultPrincipalSerializer.serialize(principal);
-        } else {
-            // Otherwise we just obtain the instance by class, or try the generic one.
-            final PrincipalService<?> principalService = principalServiceManager.byClass(principal.getClass());
-            if (principalService != null) {
-                serializedForm = principalService.getSerializer().serialize(principal);
-            } else if (genericSerializer.supports(principal)) {
-                serializedForm = genericSerializer.serialize(principal);
-            } else {
-                serializedForm = null;
-            }
-        }
+        final PrincipalSerializer<String> serializer =
+                classIndex.computeIfAbsent(principal.getClass(), c -> Optional.ofNullable(selectSerializer(principal)))
+                    .orElse(null);
+        final String serializedForm = serializer != null ? serializer.serialize(principal) : null;
 
         if (serializedForm != null) {
             try (final JsonReader reader = readerFactory.createReader(new StringReader(serializedForm))) {
@@ -376,9 +435,41 @@ public class DefaultAuthenticationResultSerializer extends AbstractInitializable
         }
     }
 
+    /**
+     * Select the serializer to use for a principal.
+     * 
+     * <p>The choice depends only on the principal's class, so the result is cached per class
+     * by the caller.</p>
+     * 
+     * @param principal object to serialize
+     * 
+     * @return the serializer to use, or null
+     */
+    @Nullable private PrincipalSerializer<String> selectSerializer(@Nonnull final Principal principal) {
+        
+        // This is a special case because the serializer here is a dedicated one.
+        if (authnResultPrincipalSerializer.supports(principal)) {
+            return authnResultPrincipalSerializer;
+        }
+        
+        // Otherwise we just obtain the instance by class, or try the generic one.
+        final PrincipalService<?> principalService = principalServiceManager.byClass(principal.getClass());
+        if (principalService != null) {
+            return principalService.getSerializer();
+        } else if (genericSerializer.supports(principal)) {
+            return genericSerializer;
+        }
+        
+        return null;
+    }
+
     /**
      * Attempt to deserialize a principal with the registered and default serializers.
      * 
+     * <p>Every serialized form in use starts with a field naming its type, so only the serializers
+     * that may own that tag are tried, in their usual order. Serializers that do not declare their
+     * tags remain in every walk, so the result is the same as trying the full list.</p>
+     * 
      * @param jsonValue the JSON object to parse
      * 
      * @return the {@link Principal} recovered, or null
@@ -386,18 +477,55 @@ public class DefaultAuthenticationResultSerializer extends AbstractInitializable
      */
     @Nullable private Principal deserializePrincipal(@Nonnull final JsonValue jsonValue) throws IOException {
         if (jsonValue instanceof JsonObject) {
-            final String json = ((JsonObject) jsonValue).toString();
-            for (final PrincipalSerializer<? super String> serializer : principalSerializers) {
-                if (serializer.supports(json)) {
-                    return serializer.deserialize(json);
+            final JsonObject obj = (JsonObject) jsonValue;
+            final String json = obj.toString();
+            final String tag = obj.isEmpty() ? null : obj.keySet().iterator().next();
+            
+            final List<PrincipalSerializer<String>> candidates =
+                    tag != null ? tagIndex.computeIfAbsent(tag, this::getCandidateSerializers) : null;
+            if (candidates != null) {
+                for (final PrincipalSerializer<String> serializer : candidates) {
+                    if (serializer.supports(json)) {
+                        return serializer.deserialize(json);
+                    }
+                }
+            } else {
+                for (final PrincipalSerializer<String> serializer : principalSerializers) {
+                    if (serializer.supports(json)) {
+                        return serializer.deserialize(json);
+                    }
+                }
+                if (genericSerializer.supports(json)) {
+                    return genericSerializer.deserialize(json);
                 }
-            }
-            if (genericSerializer.supports(json)) {
-                return genericSerializer.deserialize(json);
             }
         }
         
         return null;
     }
+
+    /**
+     * Get the serializers that may accept a value with a given type tag, in the order they are tried.
+     * 
+     * @param tag the leading field of the serialized value
+     * 
+     * @return the serializers that declare the tag or make no declaration, followed by the generic
+     *  serializer if it qualifies
+     */
+    @Nonnull @NonnullElements private List<PrincipalSerializer<String>> getCandidateSerializers(
+            @Nonnull final String tag) {
+        final List<PrincipalSerializer<String>> candidates = new ArrayList<>();
+        for (final PrincipalSerializer<String> serializer : principalSerializers) {
+            final Set<String> tags = serializer.getTypeTags();
+            if (tags == null || tags.contains(tag)) {
+                candidates.add(serializer);
+            }
+        }
+        final Set<String> tags = genericSerializer.getTypeTags();
+        if (tags == null || tags.contains(tag)) {
+            candidates.add(genericSerializer);
+        }
+        return List.copyOf(candidates);
+    }
     
 }
\ No newline at end of file
@@ -0,0 +1,95 @@
+/*
+ * Licensed to the University Corporation for Advanced Internet Development,
+ * Inc. (UCAID) under one or more contributor license agreements.  See the
+ * NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The UCAID licenses this file to You under the Apache
+ * License, Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.shibboleth.idp.authn.impl;
+
+import java.io.IOException;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.json.JsonObject;
+import javax.security.auth.Subject;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import net.shibboleth.idp.authn.AuthenticationResult;
+import net.shibboleth.shared.annotation.constraint.NotEmpty;
+
+/**
+ * {@link AuthenticationResult} produced by {@link DefaultAuthenticationResultSerializer} whose {@link Subject}
+ * is decoded from its serialized form only when first accessed.
+ * 
+ * <p>Any error decoding the subject is logged, and the subject is left incomplete.</p>
+ * 
+ * @since 5.0.0
+ */
+class LazyAuthenticationResult extends AuthenticationResult {
+
+    /** Class logger. */
+    @Nonnull private final Logger log = LoggerFactory.getLogger(LazyAuthenticationResult.class);
+    
+    /** Serializer to decode the subject with. */
+    @Nonnull private final DefaultAuthenticationResultSerializer serializer;
+    
+    /** Serialized result, cleared once the subject is decoded. */
+    @Nullable private JsonObject serializedForm;
+    
+    /**
+     * Constructor.
+     *
+     * @param flowId the workflow used to authenticate the subject
+     * @param serialized the serialized result containing the subject
+     * @param resultSerializer serializer to decode the subject with
+     */
+    LazyAuthenticationResult(@Nonnull @NotEmpty final String flowId, @Nonnull final JsonObject serialized,
+            @Nonnull final DefaultAuthenticationResultSerializer resultSerializer) {
+        super(flowId, new Subject());
+        serializedForm = serialized;
+        serializer = resultSerializer;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    @Nonnull public Subject getSubject() {
+        final Subject subject = super.getSubject();
+        
+        synchronized (this) {
+            if (serializedForm != null) {
+                log.trace("Decoding Subject for result from flow {}", getAuthenticationFlowId());
+                try {
+                    serializer.populateSubject(subject, serializedForm);
+                } catch (final IOException e) {
+                    log.error("Error decoding Subject for result from flow {}", getAuthenticationFlowId(), e);
+                }
+                serializedForm = null;
+            }
+        }
+        
+        return subject;
+    }
+    
+    /**
+     * Get whether the subject has been decoded.
+     * 
+     * @return true iff the subject has been decoded
+     */
+    synchronized boolean isSubjectDecoded() {
+        return serializedForm == null;
+    }
+    
+}
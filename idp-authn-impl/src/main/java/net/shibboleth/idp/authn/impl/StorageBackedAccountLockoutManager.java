@@ -196,6 +196,80 @@ public class StorageBackedAccountLockoutManager extends AbstractIdentifiableInit
         extendLockoutDuration = flag;
     }
     
+    /**
+     * Get the {@link StorageService} back-end in use.
+     * 
+     * @return the back-end
+     * 
+     * @since 5.0.0
+     */
+    @NonnullAfterInit protected StorageService getStorageService() {
+        return storageService;
+    }
+    
+    /**
+     * Get the account lockout key for a request.
+     * 
+     * @param profileRequestContext current profile request context
+     * 
+     * @return the lockout key, or null
+     * 
+     * @since 5.0.0
+     */
+    @Nullable protected String getLockoutKey(@Nonnull final ProfileRequestContext profileRequestContext) {
+        return lockoutKeyStrategy.apply(profileRequestContext);
+    }
+    
+    /**
+     * Get the maximum failed attempts within window for a request.
+     * 
+     * @param profileRequestContext current profile request context
+     * 
+     * @return maximum failed attempts
+     * 
+     * @since 5.0.0
+     */
+    protected int getMaxAttempts(@Nonnull final ProfileRequestContext profileRequestContext) {
+        return maxAttemptsLookupStrategy.apply(profileRequestContext);
+    }
+    
+    /**
+     * Get the interval after which the counter is reset for a request.
+     * 
+     * @param profileRequestContext current profile request context
+     * 
+     * @return counter interval
+     * 
+     * @since 5.0.0
+     */
+    @Nonnull protected Duration getCounterInterval(@Nonnull final ProfileRequestContext profileRequestContext) {
+        return counterIntervalLookupStrategy.apply(profileRequestContext);
+    }
+    
+    /**
+     * Get the lockout duration for a request.
+     * 
+     * @param profileRequestContext current profile request context
+     * 
+     * @return lockout duration
+     * 
+     * @since 5.0.0
+     */
+    @Nonnull protected Duration getLockoutDuration(@Nonnull final ProfileRequestContext profileRequestContext) {
+        return lockoutDurationLookupStrategy.apply(profileRequestContext);
+    }
+    
+    /**
+     * Get whether to extend the lockout duration on attempts during lockout.
+     * 
+     * @return whether to extend the lockout duration
+     * 
+     * @since 5.0.0
+     */
+    protected boolean isExtendLockoutDuration() {
+        return extendLockoutDuration;
+    }
+    
     /** {@inheritDoc} */
     @Override protected void doInitialize() throws ComponentInitializationException {
         super.doInitialize();
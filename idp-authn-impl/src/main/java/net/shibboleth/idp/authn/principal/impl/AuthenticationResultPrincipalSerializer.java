@@ -21,6 +21,7 @@ import java.io.IOException;
 import java.io.StringReader;
 import java.io.StringWriter;
 import java.security.Principal;
+import java.util.Set;
 import java.util.regex.Pattern;
 
 import javax.annotation.Nonnull;
@@ -45,6 +46,7 @@ import org.slf4j.LoggerFactory;
 import net.shibboleth.idp.authn.AuthenticationResult;
 import net.shibboleth.idp.authn.principal.AbstractPrincipalSerializer;
 import net.shibboleth.idp.authn.principal.AuthenticationResultPrincipal;
+import net.shibboleth.shared.annotation.constraint.NonnullElements;
 import net.shibboleth.shared.annotation.constraint.NotEmpty;
 import net.shibboleth.shared.logic.Constraint;
 
@@ -105,6 +107,11 @@ public class AuthenticationResultPrincipalSerializer extends AbstractPrincipalSe
         return JSON_PATTERN.matcher(value).matches();
     }
 
+    /** {@inheritDoc} */
+    @Nonnull @NonnullElements public Set<String> getTypeTags() {
+        return Set.of(PRINCIPAL_NAME_FIELD);
+    }
+
     /** {@inheritDoc} */
     @Nullable public AuthenticationResultPrincipal deserialize(@Nonnull @NotEmpty final String value)
             throws IOException {
@@ -23,6 +23,7 @@ import java.io.StringWriter;
 import java.security.Principal;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Set;
 import java.util.regex.Pattern;
 
 import javax.annotation.Nonnull;
@@ -55,6 +56,7 @@ import net.shibboleth.idp.attribute.ScopedStringAttributeValue;
 import net.shibboleth.idp.attribute.StringAttributeValue;
 import net.shibboleth.idp.authn.principal.AbstractPrincipalSerializer;
 import net.shibboleth.idp.authn.principal.IdPAttributePrincipal;
+import net.shibboleth.shared.annotation.constraint.NonnullElements;
 import net.shibboleth.shared.annotation.constraint.NotEmpty;
 
 /**
@@ -125,6 +127,11 @@ public class IdPAttributePrincipalSerializer extends AbstractPrincipalSerializer
         return JSON_PATTERN.matcher(value).matches();
     }
 
+    /** {@inheritDoc} */
+    @Nonnull @NonnullElements public Set<String> getTypeTags() {
+        return Set.of(PRINCIPAL_NAME_FIELD);
+    }
+
     /** {@inheritDoc} */
     @Nullable public IdPAttributePrincipal deserialize(@Nonnull @NotEmpty final String value) throws IOException {
         
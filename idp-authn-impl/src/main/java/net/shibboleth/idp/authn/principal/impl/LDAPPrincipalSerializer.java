@@ -22,6 +22,7 @@ import java.io.StringReader;
 import java.io.StringWriter;
 import java.security.Principal;
 import java.util.Map;
+import java.util.Set;
 import java.util.regex.Pattern;
 
 import javax.annotation.Nonnull;
@@ -49,6 +50,7 @@ import org.slf4j.LoggerFactory;
 import com.google.common.base.Strings;
 
 import net.shibboleth.idp.authn.principal.AbstractPrincipalSerializer;
+import net.shibboleth.shared.annotation.constraint.NonnullElements;
 import net.shibboleth.shared.annotation.constraint.NotEmpty;
 
 /**
@@ -111,6 +113,11 @@ public class LDAPPrincipalSerializer extends AbstractPrincipalSerializer<String>
         return JSON_PATTERN.matcher(value).matches();
     }
 
+    /** {@inheritDoc} */
+    @Nonnull @NonnullElements public Set<String> getTypeTags() {
+        return Set.of(PRINCIPAL_NAME_FIELD);
+    }
+
     /** {@inheritDoc} */
     @Nullable public LdapPrincipal deserialize(@Nonnull @NotEmpty final String value) throws IOException {
         
@@ -21,6 +21,7 @@ import java.io.IOException;
 import java.io.StringReader;
 import java.io.StringWriter;
 import java.security.Principal;
+import java.util.Set;
 import java.util.regex.Pattern;
 
 import javax.annotation.Nonnull;
@@ -46,6 +47,7 @@ import org.slf4j.LoggerFactory;
 
 import net.shibboleth.idp.authn.principal.AbstractPrincipalSerializer;
 import net.shibboleth.idp.authn.principal.ProxyAuthenticationPrincipal;
+import net.shibboleth.shared.annotation.constraint.NonnullElements;
 import net.shibboleth.shared.annotation.constraint.NotEmpty;
 
 /**
@@ -116,6 +118,11 @@ public class ProxyAuthenticationPrincipalSerializer extends AbstractPrincipalSer
         return JSON_PATTERN.matcher(value).matches();
     }
 
+    /** {@inheritDoc} */
+    @Nonnull @NonnullElements public Set<String> getTypeTags() {
+        return Set.of(PROXY_AUTH_FIELD);
+    }
+
 // Checkstyle: CyclomaticComplexity OFF
     /** {@inheritDoc} */
     @Nullable public ProxyAuthenticationPrincipal deserialize(@Nonnull @NotEmpty final String value)
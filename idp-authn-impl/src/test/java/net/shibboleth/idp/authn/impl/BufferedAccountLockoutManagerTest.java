@@ -0,0 +1,290 @@
+/*
+ * Licensed to the University Corporation for Advanced Internet Development,
+ * Inc. (UCAID) under one or more contributor license agreements.  See the
+ * NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The UCAID licenses this file to You under the Apache
+ * License, Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package net.shibboleth.idp.authn.impl;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.function.Supplier;
+
+import org.opensaml.storage.StorageRecord;
+import org.opensaml.storage.StorageService;
+import org.opensaml.storage.VersionMismatchException;
+import org.opensaml.storage.impl.MemoryStorageService;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import jakarta.servlet.http.HttpServletRequest;
+import net.shibboleth.idp.authn.context.AuthenticationContext;
+import net.shibboleth.idp.authn.context.UsernamePasswordContext;
+import net.shibboleth.idp.authn.impl.StorageBackedAccountLockoutManager.UsernameIPLockoutKeyStrategy;
+import net.shibboleth.idp.authn.impl.testing.BaseAuthenticationContextTest;
+import net.shibboleth.shared.component.ComponentInitializationException;
+
+/** {@link BufferedAccountLockoutManager} unit test. */
+public class BufferedAccountLockoutManagerTest extends BaseAuthenticationContextTest {
+
+    private MemoryStorageService ss;
+
+    private BufferedAccountLockoutManager manager;
+
+    private BufferedAccountLockoutManager manager2;
+
+    @BeforeMethod public void setUp() throws ComponentInitializationException {
+        super.setUp();
+        
+        ss = new MemoryStorageService();
+        ss.setId("test");
+        ss.initialize();
+        
+        manager = newManager();
+        manager2 = newManager();
+        
+        ((MockHttpServletRequest) src.getExternalContext().getNativeRequest()).setRemoteAddr("192.168.1.1");
+        prc.getSubcontext(AuthenticationContext.class).getSubcontext(UsernamePasswordContext.class, true).setUsername("jdoe");
+    }
+    
+    @AfterMethod public void tearDown() {
+        manager.destroy();
+        manager2.destroy();
+        ss.destroy();
+    }
+
+    @Test public void noKey() {
+        prc.getSubcontext(AuthenticationContext.class).clearSubcontexts();
+        Assert.assertFalse(manager.check(prc));
+        Assert.assertFalse(manager.increment(prc));
+        Assert.assertFalse(manager.clear(prc));
+    }
+    
+    @Test public void one() {
+        Assert.assertFalse(manager.check(prc));
+        Assert.assertTrue(manager.increment(prc));
+        Assert.assertFalse(manager.check(prc));
+        Assert.assertTrue(manager.clear(prc));
+    }
+    
+    @Test public void threeSlow() throws InterruptedException {
+        Assert.assertTrue(manager.increment(prc));
+        Assert.assertTrue(manager.increment(prc));
+        Thread.sleep(4000);
+        Assert.assertTrue(manager.increment(prc));
+        Assert.assertFalse(manager.check(prc));
+        Assert.assertTrue(manager.clear(prc));
+    }
+
+    @Test public void waitForUnlock() throws InterruptedException {
+        Assert.assertTrue(manager.increment(prc));
+        Assert.assertTrue(manager.increment(prc));
+        Assert.assertTrue(manager.increment(prc));
+        Assert.assertTrue(manager.check(prc));
+        Thread.sleep(4000);
+        Assert.assertTrue(manager.check(prc));
+        Thread.sleep(1150);
+        Assert.assertFalse(manager.check(prc));
+    }
+
+    @Test public void merged() throws IOException {
+        Assert.assertTrue(manager.increment(prc));
+        Assert.assertTrue(manager2.increment(prc));
+        Assert.assertTrue(manager2.increment(prc));
+        Assert.assertFalse(manager.check(prc));
+        Assert.assertFalse(manager2.check(prc));
+        
+        manager.sync();
+        manager2.sync();
+        manager.sync();
+        
+        Assert.assertTrue(manager.check(prc));
+        Assert.assertTrue(manager2.check(prc));
+        Assert.assertEquals(ss.read("test", "jdoe!192.168.1.1").getValue(), "3");
+    }
+
+    @Test public void clearedElsewhere() {
+        Assert.assertTrue(manager.increment(prc));
+        Assert.assertTrue(manager.increment(prc));
+        Assert.assertTrue(manager.increment(prc));
+        manager.sync();
+        Assert.assertTrue(manager2.check(prc));
+        
+        Assert.assertTrue(manager2.clear(prc));
+        Assert.assertTrue(manager.check(prc));
+        manager.sync();
+        Assert.assertFalse(manager.check(prc));
+    }
+
+    @Test public void unbuffered() throws ComponentInitializationException {
+        manager.destroy();
+        manager = newManager(1);
+        
+        Assert.assertTrue(manager.increment(prc));
+        ((MockHttpServletRequest) src.getExternalContext().getNativeRequest()).setRemoteAddr("192.168.1.2");
+        Assert.assertTrue(manager.increment(prc));
+        Assert.assertTrue(manager.increment(prc));
+        Assert.assertTrue(manager.increment(prc));
+        Assert.assertTrue(manager.check(prc));
+        Assert.assertTrue(manager2.check(prc));
+    }
+
+    @Test public void destroyMerges() throws IOException {
+        Assert.assertTrue(manager.increment(prc));
+        Assert.assertTrue(manager.increment(prc));
+        Assert.assertNull(ss.read("test", "jdoe!192.168.1.1"));
+        
+        manager.destroy();
+        Assert.assertEquals(ss.read("test", "jdoe!192.168.1.1").getValue(), "2");
+    }
+
+    @Test public void concurrentMerge() throws ComponentInitializationException, IOException {
+        final InterferingStorageService interfering = new InterferingStorageService();
+        interfering.setId("interfering");
+        interfering.initialize();
+        
+        manager.destroy();
+        manager = newManager(10, interfering);
+        try {
+            Assert.assertTrue(manager.increment(prc));
+            manager.sync();
+            Assert.assertEquals(interfering.read("test", "jdoe!192.168.1.1").getValue(), "1");
+            
+            // Another node merges 2 attempts between this node's read and update.
+            Assert.assertTrue(manager.increment(prc));
+            interfering.interference = "3";
+            manager.sync();
+            Assert.assertEquals(interfering.read("test", "jdoe!192.168.1.1").getValue(), "4");
+            Assert.assertTrue(manager.check(prc));
+        } finally {
+            manager.destroy();
+            interfering.destroy();
+        }
+    }
+
+    @Test public void idleNotRead() throws ComponentInitializationException, IOException {
+        final CountingStorageService counting = new CountingStorageService();
+        counting.setId("counting");
+        counting.initialize();
+        
+        manager.destroy();
+        manager = newManager(10, counting);
+        try {
+            Assert.assertTrue(manager.increment(prc));
+            manager.sync();
+            Assert.assertEquals(counting.read("test", "jdoe!192.168.1.1").getValue(), "1");
+            counting.reads = 0;
+            
+            // Merges with nothing pending don't go to storage.
+            manager.sync();
+            manager.sync();
+            Assert.assertEquals(counting.reads, 0);
+            
+            // The first check after a merge refreshes the state, later ones don't.
+            Assert.assertFalse(manager.check(prc));
+            Assert.assertEquals(counting.reads, 1);
+            Assert.assertFalse(manager.check(prc));
+            Assert.assertEquals(counting.reads, 1);
+        } finally {
+            manager.destroy();
+            counting.destroy();
+        }
+    }
+
+    @Test public void idleEvicted() throws ComponentInitializationException, IOException, InterruptedException {
+        final CountingStorageService counting = new CountingStorageService();
+        counting.setId("counting");
+        counting.initialize();
+        
+        manager.destroy();
+        manager = newManager(10, counting);
+        try {
+            Assert.assertTrue(manager.increment(prc));
+            manager.sync();
+            Thread.sleep(5100);
+            counting.reads = 0;
+            
+            // State past its retention is dropped without going to storage.
+            manager.sync();
+            Assert.assertEquals(counting.reads, 0);
+            Assert.assertFalse(manager.check(prc));
+            Assert.assertEquals(counting.reads, 1);
+        } finally {
+            manager.destroy();
+            counting.destroy();
+        }
+    }
+
+    private BufferedAccountLockoutManager newManager() throws ComponentInitializationException {
+        return newManager(10);
+    }
+
+    private BufferedAccountLockoutManager newManager(final int maxEntries) throws ComponentInitializationException {
+        return newManager(maxEntries, ss);
+    }
+
+    private BufferedAccountLockoutManager newManager(final int maxEntries, final StorageService storageService)
+            throws ComponentInitializationException {
+        final UsernameIPLockoutKeyStrategy keyStrategy = new UsernameIPLockoutKeyStrategy();
+        final HttpServletRequest request = (HttpServletRequest) src.getExternalContext().getNativeRequest();
+        keyStrategy.setHttpServletRequestSupplier(new Supplier<>() {public HttpServletRequest get() {return request;}});
+        final BufferedAccountLockoutManager m = new BufferedAccountLockoutManager();
+        m.setId("test");
+        m.setStorageService(storageService);
+        m.setLockoutKeyStrategy(keyStrategy);
+        m.setMaxAttempts(3);
+        m.setCounterInterval(Duration.ofSeconds(3));
+        m.setLockoutDuration(Duration.ofSeconds(5));
+        m.setSyncInterval(Duration.ofMinutes(1));
+        m.setMaxEntries(maxEntries);
+        m.initialize();
+        return m;
+    }
+
+    /** Storage service that counts reads. */
+    private static class CountingStorageService extends MemoryStorageService {
+        
+        private int reads;
+        
+        /** {@inheritDoc} */
+        @Override
+        public <T> StorageRecord<T> read(final String context, final String key) throws IOException {
+            reads++;
+            return super.read(context, key);
+        }
+    }
+
+    /** Storage service that simulates another node updating a record just before a versioned update. */
+    private static class InterferingStorageService extends MemoryStorageService {
+        
+        private String interference;
+        
+        /** {@inheritDoc} */
+        @Override
+        public Long updateWithVersion(final long version, final String context, final String key, final String value,
+                final Long expiration) throws IOException, VersionMismatchException {
+            if (interference != null) {
+                final String other = interference;
+                interference = null;
+                update(context, key, other, expiration);
+            }
+            return super.updateWithVersion(version, context, key, value, expiration);
+        }
+    }
+
+}
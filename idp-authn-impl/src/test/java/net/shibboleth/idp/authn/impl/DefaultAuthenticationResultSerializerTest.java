@@ -24,9 +24,11 @@ import java.io.FileInputStream;
 import java.io.IOException;
 import java.net.URISyntaxException;
 import java.time.Instant;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
 
+import javax.annotation.Nonnull;
 import javax.security.auth.Subject;
 
 import net.shibboleth.idp.attribute.ByteAttributeValue;
@@ -42,6 +44,7 @@ import net.shibboleth.idp.authn.principal.GenericPrincipalSerializer;
 import net.shibboleth.idp.authn.principal.GenericPrincipalService;
 import net.shibboleth.idp.authn.principal.IdPAttributePrincipal;
 import net.shibboleth.idp.authn.principal.PasswordPrincipal;
+import net.shibboleth.idp.authn.principal.PrincipalService;
 import net.shibboleth.idp.authn.principal.PrincipalServiceManager;
 import net.shibboleth.idp.authn.principal.ProxyAuthenticationPrincipal;
 import net.shibboleth.idp.authn.principal.SealedPrincipalSerializer;
@@ -270,6 +273,108 @@ public class DefaultAuthenticationResultSerializerTest {
         assertTrue(result2.getReuseCondition().test(prc));
     }
 
+    @Test public void testLazy() throws Exception {
+        serializer.setLazySubject(true);
+        serializer.initialize();
+        flowDescriptor.initialize();
+
+        final AuthenticationResult result = createResult(flowDescriptor, new Subject());
+        result.getSubject().getPrincipals().add(new UsernamePrincipal("bob"));
+        result.getSubject().getPrincipals().add(new TestPrincipal("foo"));
+
+        final String s = flowDescriptor.serialize(result);
+
+        final AuthenticationResult result2 = flowDescriptor.deserialize(1, CONTEXT, KEY, s,
+                Instant.ofEpochMilli(ACTIVITY)
+                    .plus(flowDescriptor.getInactivityTimeout())
+                    .plus(AuthenticationFlowDescriptor.STORAGE_EXPIRATION_OFFSET)
+                    .toEpochMilli());
+
+        assertTrue(result2 instanceof LazyAuthenticationResult);
+        assertFalse(((LazyAuthenticationResult) result2).isSubjectDecoded());
+        assertEquals(result.getAuthenticationFlowId(), result2.getAuthenticationFlowId());
+        assertEquals(result.getAuthenticationInstant(), result2.getAuthenticationInstant());
+        assertEquals(result.getLastActivityInstant(), result2.getLastActivityInstant());
+        assertFalse(((LazyAuthenticationResult) result2).isSubjectDecoded());
+
+        assertEquals(result.getSubject(), result2.getSubject());
+        assertTrue(((LazyAuthenticationResult) result2).isSubjectDecoded());
+
+        // Re-serializing a lazy result must round-trip.
+        assertEquals(flowDescriptor.serialize(result2), s);
+    }
+
+    @Test public void testRepeated() throws Exception {
+        serializer.initialize();
+        flowDescriptor.initialize();
+
+        final AuthenticationResult result = createResult(flowDescriptor, new Subject());
+        result.getSubject().getPrincipals().add(new UsernamePrincipal("bob"));
+        result.getSubject().getPrincipals().add(new TestPrincipal("foo"));
+
+        final String s = flowDescriptor.serialize(result);
+
+        // Second pass exercises the serializers indexed by class and by type tag.
+        for (int i = 0; i < 2; i++) {
+            assertEquals(flowDescriptor.serialize(result), s);
+            final AuthenticationResult result2 = flowDescriptor.deserialize(1, CONTEXT, KEY, s,
+                    Instant.ofEpochMilli(ACTIVITY)
+                        .plus(flowDescriptor.getInactivityTimeout())
+                        .plus(AuthenticationFlowDescriptor.STORAGE_EXPIRATION_OFFSET)
+                        .toEpochMilli());
+            assertEquals(result.getSubject(), result2.getSubject());
+        }
+    }
+
+    @Test public void testSharedTypeTag() throws Exception {
+        // Registered ahead of the username serializer, sharing its tag but accepting only some values.
+        final SimplePrincipalSerializer<TestPrincipal> narrowSerializer =
+                new SimplePrincipalSerializer<>(TestPrincipal.class, "U") {
+                    @Override public boolean supports(@Nonnull final String value) {
+                        return super.supports(value) && value.contains("alice");
+                    }
+                };
+        narrowSerializer.initialize();
+        final GenericPrincipalService<TestPrincipal> narrowService =
+                new GenericPrincipalService<>(TestPrincipal.class, narrowSerializer);
+        narrowService.setId("narrow");
+        narrowService.initialize();
+
+        final PrincipalService<?> upService = manager.byClass(UsernamePrincipal.class);
+        final PrincipalServiceManager orderedManager = new PrincipalServiceManager(List.of(narrowService, upService)) {
+            @Override public Collection<PrincipalService<?>> all() {
+                return List.of(narrowService, upService);
+            }
+        };
+        final GenericPrincipalSerializer generic = new GenericPrincipalSerializer();
+        generic.initialize();
+        serializer = new DefaultAuthenticationResultSerializer(orderedManager, generic);
+        flowDescriptor.setResultSerializer(serializer);
+        serializer.initialize();
+        flowDescriptor.initialize();
+
+        final AuthenticationResult bob = createResult(flowDescriptor, new Subject());
+        bob.getSubject().getPrincipals().add(new UsernamePrincipal("bob"));
+        final AuthenticationResult alice = createResult(flowDescriptor, new Subject());
+        alice.getSubject().getPrincipals().add(new UsernamePrincipal("alice"));
+
+        final long expires = Instant.ofEpochMilli(ACTIVITY)
+                .plus(flowDescriptor.getInactivityTimeout())
+                .plus(AuthenticationFlowDescriptor.STORAGE_EXPIRATION_OFFSET)
+                .toEpochMilli();
+
+        // The first record is only accepted by the later serializer, which must not capture the tag.
+        final AuthenticationResult bob2 =
+                flowDescriptor.deserialize(1, CONTEXT, KEY, flowDescriptor.serialize(bob), expires);
+        assertEquals(bob2.getSubject().getPrincipals().size(), 1);
+        assertTrue(bob2.getSubject().getPrincipals().contains(new UsernamePrincipal("bob")));
+
+        final AuthenticationResult alice2 =
+                flowDescriptor.deserialize(1, CONTEXT, KEY, flowDescriptor.serialize(alice), expires);
+        assertEquals(alice2.getSubject().getPrincipals().size(), 1);
+        assertTrue(alice2.getSubject().getPrincipals().contains(new TestPrincipal("alice")));
+    }
+
     @Test public void testCreds() throws Exception {
         serializer.initialize();
         flowDescriptor.initialize();
@@ -0,0 +1,152 @@
+/*
+ * Licensed to the University Corporation for Advanced Internet Development,
+ * Inc. (UCAID) under one or more contributor license agreements.  See the
+ * NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The UCAID licenses this file to You under the Apache
+ * License, Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package net.shibboleth.idp.benchmarks;
+
+import java.io.IOException;
+import java.time.Instant;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import javax.security.auth.Subject;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import net.shibboleth.idp.attribute.IdPAttribute;
+import net.shibboleth.idp.attribute.StringAttributeValue;
+import net.shibboleth.idp.authn.AuthenticationResult;
+import net.shibboleth.idp.authn.impl.DefaultAuthenticationResultSerializer;
+import net.shibboleth.idp.authn.principal.GenericPrincipalSerializer;
+import net.shibboleth.idp.authn.principal.GenericPrincipalService;
+import net.shibboleth.idp.authn.principal.IdPAttributePrincipal;
+import net.shibboleth.idp.authn.principal.PrincipalServiceManager;
+import net.shibboleth.idp.authn.principal.SimplePrincipalSerializer;
+import net.shibboleth.idp.authn.principal.UsernamePrincipal;
+import net.shibboleth.idp.authn.principal.impl.IdPAttributePrincipalSerializer;
+import net.shibboleth.idp.saml.authn.principal.AuthnContextClassRefPrincipal;
+import net.shibboleth.shared.component.ComponentInitializationException;
+
+/**
+ * Benchmarks for {@link DefaultAuthenticationResultSerializer} with a result carrying the mix of principals
+ * typical of an MFA login.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class AuthenticationResultSerializerBenchmark {
+
+    /** Fixed base instant. */
+    private static final Instant INSTANT = Instant.ofEpochMilli(1378827849463L);
+
+    /** Serializer under test. */
+    private DefaultAuthenticationResultSerializer serializer;
+
+    /** Result to serialize. */
+    private AuthenticationResult result;
+
+    /** Pre-serialized form of {@link #result}. */
+    private String serializedResult;
+
+    /**
+     * Build the serializer and sample result.
+     * 
+     * @throws ComponentInitializationException if a component fails to initialize
+     * @throws IOException if the sample result cannot be serialized
+     */
+    @Setup public void setUp() throws ComponentInitializationException, IOException {
+        final SimplePrincipalSerializer<UsernamePrincipal> upSerializer =
+                new SimplePrincipalSerializer<>(UsernamePrincipal.class, "U");
+        upSerializer.initialize();
+        final GenericPrincipalService<UsernamePrincipal> upService =
+                new GenericPrincipalService<>(UsernamePrincipal.class, upSerializer);
+        upService.setId("username");
+        upService.initialize();
+
+        final SimplePrincipalSerializer<AuthnContextClassRefPrincipal> accrSerializer =
+                new SimplePrincipalSerializer<>(AuthnContextClassRefPrincipal.class, "SAML2AuthnContextClassRef");
+        accrSerializer.initialize();
+        final GenericPrincipalService<AuthnContextClassRefPrincipal> accrService =
+                new GenericPrincipalService<>(AuthnContextClassRefPrincipal.class, accrSerializer);
+        accrService.setId("accr");
+        accrService.initialize();
+
+        final IdPAttributePrincipalSerializer attrSerializer = new IdPAttributePrincipalSerializer();
+        attrSerializer.initialize();
+        final GenericPrincipalService<IdPAttributePrincipal> attrService =
+                new GenericPrincipalService<>(IdPAttributePrincipal.class, attrSerializer);
+        attrService.setId("attr");
+        attrService.initialize();
+
+        final GenericPrincipalSerializer generic = new GenericPrincipalSerializer();
+        generic.initialize();
+        serializer = new DefaultAuthenticationResultSerializer(
+                new PrincipalServiceManager(List.of(upService, accrService, attrService)), generic);
+        serializer.initialize();
+
+        final Subject subject = new Subject();
+        subject.getPrincipals().add(new UsernamePrincipal("jdoe"));
+        subject.getPrincipals().add(
+                new AuthnContextClassRefPrincipal("urn:oasis:names:tc:SAML:2.0:ac:classes:PasswordProtectedTransport"));
+        subject.getPrincipals().add(new AuthnContextClassRefPrincipal("https://refeds.org/profile/mfa"));
+        for (int i = 0; i < 4; ++i) {
+            final IdPAttribute attribute = new IdPAttribute("attribute" + i);
+            attribute.setValues(List.of(new StringAttributeValue("value" + i), new StringAttributeValue("other")));
+            subject.getPrincipals().add(new IdPAttributePrincipal(attribute));
+        }
+
+        result = new AuthenticationResult("authn/MFA", subject);
+        result.setAuthenticationInstant(INSTANT);
+        result.getAdditionalData().put("factor", "totp");
+
+        serializedResult = serializer.serialize(result);
+    }
+
+    /**
+     * Serialize a result.
+     * 
+     * @return the serialized form
+     * @throws IOException on error
+     */
+    @Benchmark public String serialize() throws IOException {
+        return serializer.serialize(result);
+    }
+
+    /**
+     * Deserialize a result.
+     * 
+     * @return the rebuilt result
+     * @throws IOException on error
+     */
+    @Benchmark public AuthenticationResult deserialize() throws IOException {
+        return serializer.deserialize(1, "_context", "authn/MFA", serializedResult,
+                INSTANT.plusSeconds(3600).toEpochMilli());
+    }
+
+}
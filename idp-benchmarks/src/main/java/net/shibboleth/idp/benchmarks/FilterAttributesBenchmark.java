@@ -0,0 +1,139 @@
+/*
+ * Licensed to the University Corporation for Advanced Internet Development,
+ * Inc. (UCAID) under one or more contributor license agreements.  See the
+ * NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The UCAID licenses this file to You under the Apache
+ * License, Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package net.shibboleth.idp.benchmarks;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.opensaml.profile.context.ProfileRequestContext;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.webflow.execution.Event;
+import org.springframework.webflow.execution.RequestContext;
+
+import net.shibboleth.idp.attribute.IdPAttribute;
+import net.shibboleth.idp.attribute.StringAttributeValue;
+import net.shibboleth.idp.attribute.context.AttributeContext;
+import net.shibboleth.idp.attribute.filter.AttributeFilterPolicy;
+import net.shibboleth.idp.attribute.filter.AttributeRule;
+import net.shibboleth.idp.attribute.filter.PolicyRequirementRule;
+import net.shibboleth.idp.attribute.filter.impl.AttributeFilterImpl;
+import net.shibboleth.idp.attribute.filter.testing.MockMatcher;
+import net.shibboleth.idp.authn.context.SubjectContext;
+import net.shibboleth.idp.profile.context.RelyingPartyContext;
+import net.shibboleth.idp.profile.context.navigate.WebflowRequestContextProfileRequestContextLookup;
+import net.shibboleth.idp.profile.impl.FilterAttributes;
+import net.shibboleth.idp.profile.testing.RequestContextBuilder;
+import net.shibboleth.shared.component.ComponentInitializationException;
+import net.shibboleth.shared.testing.MockApplicationContext;
+import net.shibboleth.shared.testing.MockReloadableService;
+
+/**
+ * Benchmarks for {@link FilterAttributes} with one release rule per attribute.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class FilterAttributesBenchmark {
+
+    /** Number of resolved attributes. */
+    @Param({"10", "100"}) private int attributeCount;
+
+    /** Action under test. */
+    private FilterAttributes action;
+
+    /** Spring request context. */
+    private RequestContext src;
+
+    /** Attribute context reset on each invocation. */
+    private AttributeContext attributeContext;
+
+    /** Unfiltered attributes. */
+    private List<IdPAttribute> attributes;
+
+    /**
+     * Build the filter engine, the action and a populated request.
+     * 
+     * @throws ComponentInitializationException if a component fails to initialize
+     */
+    @Setup public void setUp() throws ComponentInitializationException {
+        attributes = new ArrayList<>(attributeCount);
+        final List<AttributeRule> rules = new ArrayList<>(attributeCount);
+        for (int i = 0; i < attributeCount; ++i) {
+            final String id = "attribute" + i;
+            final IdPAttribute attribute = new IdPAttribute(id);
+            attribute.setValues(List.of(new StringAttributeValue("one"), new StringAttributeValue("two")));
+            attributes.add(attribute);
+
+            // Release every other attribute.
+            if (i % 2 == 0) {
+                final MockMatcher matcher = new MockMatcher();
+                matcher.setMatchingAttribute(id);
+                matcher.setMatchingValues(null);
+                matcher.initialize();
+                final AttributeRule rule = new AttributeRule();
+                rule.setId(id + "Rule");
+                rule.setAttributeId(id);
+                rule.setMatcher(matcher);
+                rule.setIsDenyRule(false);
+                rule.initialize();
+                rules.add(rule);
+            }
+        }
+
+        final AttributeFilterPolicy policy =
+                new AttributeFilterPolicy("releaseToAll", PolicyRequirementRule.MATCHES_ALL, rules);
+        policy.initialize();
+        final AttributeFilterImpl engine = new AttributeFilterImpl("engine", List.of(policy));
+        engine.setApplicationContext(new MockApplicationContext());
+        engine.initialize();
+
+        src = new RequestContextBuilder().buildRequestContext();
+        final ProfileRequestContext prc = new WebflowRequestContextProfileRequestContextLookup().apply(src);
+        prc.getSubcontext(SubjectContext.class, true);
+        attributeContext = prc.getSubcontext(RelyingPartyContext.class).getSubcontext(AttributeContext.class, true);
+
+        action = new FilterAttributes(new MockReloadableService<>(engine));
+        action.initialize();
+    }
+
+    /**
+     * Filter the attributes.
+     * 
+     * @return the resulting event
+     */
+    @Benchmark public Event filter() {
+        attributeContext.setIdPAttributes(attributes);
+        return action.execute(src);
+    }
+
+}
@@ -0,0 +1,120 @@
+/*
+ * Licensed to the University Corporation for Advanced Internet Development,
+ * Inc. (UCAID) under one or more contributor license agreements.  See the
+ * NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The UCAID licenses this file to You under the Apache
+ * License, Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package net.shibboleth.idp.benchmarks;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import javax.security.auth.Subject;
+
+import org.opensaml.profile.context.ProfileRequestContext;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.webflow.execution.Event;
+import org.springframework.webflow.execution.RequestContext;
+
+import net.shibboleth.idp.authn.AuthenticationFlowDescriptor;
+import net.shibboleth.idp.authn.AuthenticationResult;
+import net.shibboleth.idp.authn.context.AuthenticationContext;
+import net.shibboleth.idp.authn.impl.PopulateAuthenticationContext;
+import net.shibboleth.idp.authn.impl.SelectAuthenticationFlow;
+import net.shibboleth.idp.authn.principal.UsernamePrincipal;
+import net.shibboleth.idp.profile.context.navigate.WebflowRequestContextProfileRequestContextLookup;
+import net.shibboleth.idp.profile.testing.RequestContextBuilder;
+import net.shibboleth.shared.component.ComponentInitializationException;
+import net.shibboleth.shared.logic.FunctionSupport;
+
+/**
+ * Benchmarks for {@link SelectAuthenticationFlow}, both when a new flow must be chosen and when an active
+ * result is reused for SSO.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class SelectAuthenticationFlowBenchmark {
+
+    /** Whether an active result is available for reuse. */
+    @Param({"false", "true"}) private boolean active;
+
+    /** Action under test. */
+    private SelectAuthenticationFlow action;
+
+    /** Spring request context. */
+    private RequestContext src;
+
+    /** Authentication context reset on each invocation. */
+    private AuthenticationContext authnContext;
+
+    /**
+     * Build the action and a populated request.
+     * 
+     * @throws ComponentInitializationException if a component fails to initialize
+     */
+    @Setup public void setUp() throws ComponentInitializationException {
+        src = new RequestContextBuilder().buildRequestContext();
+        final ProfileRequestContext prc = new WebflowRequestContextProfileRequestContextLookup().apply(src);
+        authnContext = new AuthenticationContext();
+        prc.addSubcontext(authnContext, true);
+
+        final List<AuthenticationFlowDescriptor> flows = List.of(new AuthenticationFlowDescriptor(),
+                new AuthenticationFlowDescriptor(), new AuthenticationFlowDescriptor());
+        flows.get(0).setId("authn/Password");
+        flows.get(1).setId("authn/MFA");
+        flows.get(2).setId("authn/External");
+
+        final PopulateAuthenticationContext populate = new PopulateAuthenticationContext();
+        populate.setAvailableFlows(flows);
+        populate.setPotentialFlowsLookupStrategy(FunctionSupport.constant(flows));
+        populate.initialize();
+        populate.execute(src);
+
+        if (active) {
+            final Subject subject = new Subject();
+            subject.getPrincipals().add(new UsernamePrincipal("jdoe"));
+            authnContext.setActiveResults(List.of(new AuthenticationResult("authn/MFA", subject)));
+        }
+
+        action = new SelectAuthenticationFlow();
+        action.initialize();
+    }
+
+    /**
+     * Select a flow.
+     * 
+     * @return the resulting event
+     */
+    @Benchmark public Event select() {
+        authnContext.setAttemptedFlow(null);
+        authnContext.setAuthenticationResult(null);
+        return action.execute(src);
+    }
+
+}
@@ -0,0 +1,239 @@
+/*
+ * Licensed to the University Corporation for Advanced Internet Development,
+ * Inc. (UCAID) under one or more contributor license agreements.  See the
+ * NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The UCAID licenses this file to You under the Apache
+ * License, Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package net.shibboleth.idp.benchmarks;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.concurrent.TimeUnit;
+
+import org.opensaml.core.config.InitializationException;
+import org.opensaml.core.config.InitializationService;
+import org.opensaml.core.xml.util.XMLObjectSupport;
+import org.opensaml.saml.saml2.core.NameID;
+import org.opensaml.storage.impl.MemoryStorageService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import net.shibboleth.idp.authn.AuthenticationResult;
+import net.shibboleth.idp.authn.principal.UsernamePrincipal;
+import net.shibboleth.idp.saml.session.SAML2SPSession;
+import net.shibboleth.idp.saml.session.impl.SAML2SPSessionSerializer;
+import net.shibboleth.idp.session.SPSession;
+import net.shibboleth.idp.session.SPSessionSerializerRegistry;
+import net.shibboleth.idp.session.impl.StorageBackedIdPSession;
+import net.shibboleth.idp.session.impl.StorageBackedIdPSessionSerializer;
+import net.shibboleth.idp.session.impl.StorageBackedSessionManager;
+import net.shibboleth.idp.session.impl.StreamingIdPSessionSerializer;
+import net.shibboleth.shared.component.ComponentInitializationException;
+import net.shibboleth.shared.net.CookieManager;
+import net.shibboleth.shared.security.IdentifierGenerationStrategy;
+import net.shibboleth.shared.security.IdentifierGenerationStrategy.ProviderType;
+
+/**
+ * Benchmarks for the serializers used to read and write IdP and SP session records.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class SessionSerializerBenchmark {
+
+    /** Fixed base instant. */
+    private static final Instant INSTANT = Instant.ofEpochMilli(1378827849463L);
+
+    /** Storage context (session ID). */
+    private static final String CONTEXT = "_4bc4fa1e5b1ab5b8e4b1b2bde44bc2f2";
+
+    /** Storage key. */
+    private static final String KEY = "_session";
+
+    /** Backing storage. */
+    private MemoryStorageService storageService;
+
+    /** Session manager owning the serializer. */
+    private StorageBackedSessionManager sessionManager;
+
+    /** IdP session serializer. */
+    private StorageBackedIdPSessionSerializer sessionSerializer;
+
+    /** Streaming IdP session serializer. */
+    private StreamingIdPSessionSerializer streamingSessionSerializer;
+
+    /** SAML 2 SP session serializer. */
+    private SAML2SPSessionSerializer spSessionSerializer;
+
+    /** Session to serialize. */
+    private StorageBackedIdPSession session;
+
+    /** Pre-serialized form of {@link #session}. */
+    private String serializedSession;
+
+    /** SP session to serialize. */
+    private SAML2SPSession spSession;
+
+    /** Pre-serialized form of {@link #spSession}. */
+    private String serializedSPSession;
+
+    /**
+     * Build the components and sample records.
+     * 
+     * @throws ComponentInitializationException if a component fails to initialize
+     * @throws InitializationException if OpenSAML fails to initialize
+     * @throws IOException if the sample records cannot be serialized
+     */
+    @Setup public void setUp() throws ComponentInitializationException, InitializationException, IOException {
+        InitializationService.initialize();
+
+        storageService = new MemoryStorageService();
+        storageService.setId("BenchmarkStorageService");
+        storageService.initialize();
+
+        final HttpServletRequest request = new MockHttpServletRequest();
+        final HttpServletResponse response = new MockHttpServletResponse();
+        final CookieManager cookieManager = new CookieManager();
+        cookieManager.setHttpServletRequestSupplier(() -> request);
+        cookieManager.setHttpServletResponseSupplier(() -> response);
+        cookieManager.initialize();
+
+        sessionManager = new StorageBackedSessionManager();
+        sessionManager.setId("BenchmarkSessionManager");
+        sessionManager.setStorageService(storageService);
+        sessionManager.setIDGenerator(IdentifierGenerationStrategy.getInstance(ProviderType.SECURE));
+        sessionManager.setHttpServletRequestSupplier(() -> request);
+        sessionManager.setCookieManager(cookieManager);
+        sessionManager.setTrackSPSessions(true);
+        sessionManager.setSPSessionSerializerRegistry(new SPSessionSerializerRegistry());
+        sessionManager.initialize();
+
+        sessionSerializer = new StorageBackedIdPSessionSerializer(sessionManager, null);
+        sessionSerializer.initialize();
+        streamingSessionSerializer = new StreamingIdPSessionSerializer(sessionManager, null);
+        streamingSessionSerializer.initialize();
+
+        final Instant exp = INSTANT.plusSeconds(3600);
+        final NameID nameID = (NameID) XMLObjectSupport.buildXMLObject(NameID.DEFAULT_ELEMENT_NAME);
+        nameID.setValue("jdoe@example.org");
+        spSession = new SAML2SPSession("https://sp.example.org/shibboleth", INSTANT, exp, nameID,
+                "_1234567890abcdef", "https://sp.example.org/Shibboleth.sso/SAML2/POST", true);
+
+        session = new StorageBackedIdPSession(sessionManager, CONTEXT, "jdoe", INSTANT);
+        session.doBindToAddress("192.168.1.1");
+        session.doBindToAddress("2001:db8::1");
+        session.doAddAuthenticationResult(new AuthenticationResult("authn/Password", new UsernamePrincipal("jdoe")));
+        session.doAddAuthenticationResult(new AuthenticationResult("authn/MFA", new UsernamePrincipal("jdoe")));
+        session.doAddSPSession(spSession);
+        for (int i = 0; i < 4; ++i) {
+            final SPSession extra = new SAML2SPSession("https://sp" + i + ".example.org/shibboleth", INSTANT, exp,
+                    nameID, "_session" + i, null, false);
+            session.doAddSPSession(extra);
+        }
+
+        serializedSession = sessionSerializer.serialize(session);
+
+        spSessionSerializer = new SAML2SPSessionSerializer(Duration.ZERO);
+        spSessionSerializer.initialize();
+        serializedSPSession = spSessionSerializer.serialize(spSession);
+    }
+
+    /** Release the components. */
+    @TearDown public void tearDown() {
+        sessionManager.destroy();
+        storageService.destroy();
+    }
+
+    /**
+     * Serialize an IdP session.
+     * 
+     * @return the serialized form
+     * @throws IOException on error
+     */
+    @Benchmark public String serializeIdPSession() throws IOException {
+        return sessionSerializer.serialize(session);
+    }
+
+    /**
+     * Deserialize an IdP session.
+     * 
+     * @return the rebuilt session
+     * @throws IOException on error
+     */
+    @Benchmark public StorageBackedIdPSession deserializeIdPSession() throws IOException {
+        return sessionSerializer.deserialize(1, CONTEXT, KEY, serializedSession,
+                INSTANT.plusSeconds(3600).toEpochMilli());
+    }
+
+    /**
+     * Serialize an IdP session with the streaming serializer.
+     * 
+     * @return the serialized form
+     * @throws IOException on error
+     */
+    @Benchmark public String serializeIdPSessionStreaming() throws IOException {
+        return streamingSessionSerializer.serialize(session);
+    }
+
+    /**
+     * Deserialize an IdP session with the streaming serializer.
+     * 
+     * @return the rebuilt session
+     * @throws IOException on error
+     */
+    @Benchmark public StorageBackedIdPSession deserializeIdPSessionStreaming() throws IOException {
+        return streamingSessionSerializer.deserialize(1, CONTEXT, KEY, serializedSession,
+                INSTANT.plusSeconds(3600).toEpochMilli());
+    }
+
+    /**
+     * Serialize a SAML 2 SP session.
+     * 
+     * @return the serialized form
+     * @throws IOException on error
+     */
+    @Benchmark public String serializeSAML2SPSession() throws IOException {
+        return spSessionSerializer.serialize(spSession);
+    }
+
+    /**
+     * Deserialize a SAML 2 SP session.
+     * 
+     * @return the rebuilt session
+     * @throws IOException on error
+     */
+    @Benchmark public SPSession deserializeSAML2SPSession() throws IOException {
+        return spSessionSerializer.deserialize(1, CONTEXT, KEY, serializedSPSession,
+                INSTANT.plusSeconds(3600).toEpochMilli());
+    }
+
+}
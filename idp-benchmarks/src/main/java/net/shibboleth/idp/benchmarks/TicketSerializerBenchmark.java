@@ -0,0 +1,174 @@
+/*
+ * Licensed to the University Corporation for Advanced Internet Development,
+ * Inc. (UCAID) under one or more contributor license agreements.  See the
+ * NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The UCAID licenses this file to You under the Apache
+ * License, Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package net.shibboleth.idp.benchmarks;
+
+import java.io.IOException;
+import java.time.Instant;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import net.shibboleth.idp.cas.ticket.ProxyGrantingTicket;
+import net.shibboleth.idp.cas.ticket.ProxyTicket;
+import net.shibboleth.idp.cas.ticket.ServiceTicket;
+import net.shibboleth.idp.cas.ticket.TicketState;
+import net.shibboleth.idp.cas.ticket.serialization.impl.ProxyGrantingTicketSerializer;
+import net.shibboleth.idp.cas.ticket.serialization.impl.ProxyTicketSerializer;
+import net.shibboleth.idp.cas.ticket.serialization.impl.ServiceTicketSerializer;
+
+/**
+ * Benchmarks for the CAS ticket serializers used by the storage-backed and encoding ticket services.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class TicketSerializerBenchmark {
+
+    /** Fixed base instant. */
+    private static final Instant INSTANT = Instant.ofEpochMilli(1378827849463L);
+
+    /** Service ticket serializer. */
+    private final ServiceTicketSerializer stSerializer = new ServiceTicketSerializer();
+
+    /** Proxy ticket serializer. */
+    private final ProxyTicketSerializer ptSerializer = new ProxyTicketSerializer();
+
+    /** Proxy-granting ticket serializer. */
+    private final ProxyGrantingTicketSerializer pgtSerializer = new ProxyGrantingTicketSerializer();
+
+    /** Service ticket. */
+    private ServiceTicket serviceTicket;
+
+    /** Serialized service ticket. */
+    private String serializedServiceTicket;
+
+    /** Proxy ticket. */
+    private ProxyTicket proxyTicket;
+
+    /** Serialized proxy ticket. */
+    private String serializedProxyTicket;
+
+    /** Proxy-granting ticket. */
+    private ProxyGrantingTicket proxyGrantingTicket;
+
+    /** Serialized proxy-granting ticket. */
+    private String serializedProxyGrantingTicket;
+
+    /**
+     * Build the sample tickets.
+     * 
+     * @throws IOException if a ticket cannot be serialized
+     */
+    @Setup public void setUp() throws IOException {
+        final TicketState state = new TicketState("_4bc4fa1e5b1ab5b8e4b1b2bde44bc2f2", "jdoe", INSTANT,
+                "urn:oasis:names:tc:SAML:2.0:ac:classes:PasswordProtectedTransport");
+        state.setConsentedAttributeIds(Set.of("uid", "mail", "eduPersonAffiliation"));
+
+        serviceTicket = new ServiceTicket("ST-1378827849-616ea1550eef862761e5931bdccaaba0",
+                "https://app.example.org/cas/login?next=%2Fhome", INSTANT.plusSeconds(15), false);
+        serviceTicket.setTicketState(state);
+        serializedServiceTicket = stSerializer.serialize(serviceTicket);
+
+        proxyTicket = new ProxyTicket("PT-1378827849-e6342d467a4414e599aa3c323528e96f",
+                "https://backend.example.org/api", INSTANT.plusSeconds(15),
+                "PGT-1378827849-d2db22058dc178d3b917363859e0a1f2");
+        proxyTicket.setTicketState(state);
+        serializedProxyTicket = ptSerializer.serialize(proxyTicket);
+
+        proxyGrantingTicket = new ProxyGrantingTicket("PGT-1378827849-d2db22058dc178d3b917363859e0a1f2",
+                "https://app.example.org/cas/proxyCallback", INSTANT.plusSeconds(7200), null);
+        proxyGrantingTicket.setTicketState(state);
+        serializedProxyGrantingTicket = pgtSerializer.serialize(proxyGrantingTicket);
+    }
+
+    /**
+     * Serialize a service ticket.
+     * 
+     * @return the serialized form
+     * @throws IOException on error
+     */
+    @Benchmark public String serializeServiceTicket() throws IOException {
+        return stSerializer.serialize(serviceTicket);
+    }
+
+    /**
+     * Deserialize a service ticket.
+     * 
+     * @return the rebuilt ticket
+     * @throws IOException on error
+     */
+    @Benchmark public ServiceTicket deserializeServiceTicket() throws IOException {
+        return stSerializer.deserialize(1, "notused", serviceTicket.getId(), serializedServiceTicket, null);
+    }
+
+    /**
+     * Serialize a proxy ticket.
+     * 
+     * @return the serialized form
+     * @throws IOException on error
+     */
+    @Benchmark public String serializeProxyTicket() throws IOException {
+        return ptSerializer.serialize(proxyTicket);
+    }
+
+    /**
+     * Deserialize a proxy ticket.
+     * 
+     * @return the rebuilt ticket
+     * @throws IOException on error
+     */
+    @Benchmark public ProxyTicket deserializeProxyTicket() throws IOException {
+        return ptSerializer.deserialize(1, "notused", proxyTicket.getId(), serializedProxyTicket, null);
+    }
+
+    /**
+     * Serialize a proxy-granting ticket.
+     * 
+     * @return the serialized form
+     * @throws IOException on error
+     */
+    @Benchmark public String serializeProxyGrantingTicket() throws IOException {
+        return pgtSerializer.serialize(proxyGrantingTicket);
+    }
+
+    /**
+     * Deserialize a proxy-granting ticket.
+     * 
+     * @return the rebuilt ticket
+     * @throws IOException on error
+     */
+    @Benchmark public ProxyGrantingTicket deserializeProxyGrantingTicket() throws IOException {
+        return pgtSerializer.deserialize(1, "notused", proxyGrantingTicket.getId(), serializedProxyGrantingTicket,
+                null);
+    }
+
+}
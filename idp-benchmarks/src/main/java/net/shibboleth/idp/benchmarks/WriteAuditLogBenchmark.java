@@ -0,0 +1,116 @@
+/*
+ * Licensed to the University Corporation for Advanced Internet Development,
+ * Inc. (UCAID) under one or more contributor license agreements.  See the
+ * NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The UCAID licenses this file to You under the Apache
+ * License, Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package net.shibboleth.idp.benchmarks;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.opensaml.profile.context.ProfileRequestContext;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.webflow.execution.Event;
+import org.springframework.webflow.execution.RequestContext;
+
+import net.shibboleth.idp.profile.audit.impl.WriteAuditLog;
+import net.shibboleth.idp.profile.context.AuditContext;
+import net.shibboleth.idp.profile.context.navigate.WebflowRequestContextProfileRequestContextLookup;
+import net.shibboleth.idp.profile.testing.RequestContextBuilder;
+import net.shibboleth.shared.component.ComponentInitializationException;
+
+/**
+ * Benchmarks for {@link WriteAuditLog} using the default audit format.
+ * 
+ * <p>The bundled logback configuration discards the output, so this measures formatting and logger
+ * lookup rather than appender I/O.</p>
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class WriteAuditLogBenchmark {
+
+    /** The format shipped as the default in audit.xml. */
+    private static final String FORMAT =
+            "%a|%ST|%T|%u|%SP|%i|%ac|%t|%attr|%n|%f|%SSO|%XX|%XA|%b|%bb|%e|%S|%SS|%s|%UA";
+
+    /** Action under test. */
+    private WriteAuditLog action;
+
+    /** Spring request context. */
+    private RequestContext src;
+
+    /**
+     * Build the action and a populated audit context.
+     * 
+     * @throws ComponentInitializationException if a component fails to initialize
+     */
+    @Setup public void setUp() throws ComponentInitializationException {
+        src = new RequestContextBuilder().buildRequestContext();
+        final ProfileRequestContext prc = new WebflowRequestContextProfileRequestContextLookup().apply(src);
+
+        final AuditContext ac = prc.getSubcontext(AuditContext.class, true);
+        ac.getFieldValues("ST").add("2023-01-01T00:00:00.000Z");
+        ac.getFieldValues("u").add("jdoe");
+        ac.getFieldValues("SP").add("https://sp.example.org/shibboleth");
+        ac.getFieldValues("i").add("_5b1fa2cf6b1a8f1c2d3e4f5a6b7c8d9e");
+        ac.getFieldValues("ac").add("urn:oasis:names:tc:SAML:2.0:ac:classes:PasswordProtectedTransport");
+        ac.getFieldValues("t").add("2023-01-01T00:00:00.000Z");
+        ac.getFieldValues("attr").addAll(List.of("uid", "mail", "eduPersonScopedAffiliation", "displayName"));
+        ac.getFieldValues("n").add("AAdzZWNyZXQxPFzlC5rTJ1U4DyIg");
+        ac.getFieldValues("f").add("urn:oasis:names:tc:SAML:2.0:nameid-format:persistent");
+        ac.getFieldValues("SSO").add("false");
+        ac.getFieldValues("XX").add("true");
+        ac.getFieldValues("XA").add("http://www.w3.org/2009/xmlenc11#aes128-gcm");
+        ac.getFieldValues("b").add("urn:oasis:names:tc:SAML:2.0:bindings:HTTP-Redirect");
+        ac.getFieldValues("bb").add("urn:oasis:names:tc:SAML:2.0:bindings:HTTP-POST");
+        ac.getFieldValues("S").add("urn:oasis:names:tc:SAML:2.0:status:Success");
+        ac.getFieldValues("s").add("_4bc4fa1e5b1ab5b8e4b1b2bde44bc2f2");
+
+        final MockHttpServletRequest request = new MockHttpServletRequest();
+        request.setRemoteAddr("192.168.1.1");
+        request.addHeader("User-Agent", "Mozilla/5.0");
+
+        action = new WriteAuditLog();
+        action.setHttpServletRequestSupplier(() -> request);
+        action.setFormattingMap(Map.of("Shibboleth-Audit", FORMAT));
+        action.initialize();
+    }
+
+    /**
+     * Format and emit one audit record.
+     * 
+     * @return the resulting event
+     */
+    @Benchmark public Event write() {
+        return action.execute(src);
+    }
+
+}
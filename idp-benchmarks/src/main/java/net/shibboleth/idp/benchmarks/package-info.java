@@ -0,0 +1,29 @@
+/*
+ * Licensed to the University Corporation for Advanced Internet Development,
+ * Inc. (UCAID) under one or more contributor license agreements.  See the
+ * NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The UCAID licenses this file to You under the Apache
+ * License, Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+/**
+ * JMH micro-benchmarks for code that runs on every profile request.
+ * 
+ * <p>The benchmarks drive real component instances against in-memory storage and mock servlet objects, so the
+ * numbers reflect the cost of the IdP code itself rather than of any particular back-end. Build the runnable jar
+ * with <code>mvn -Pbenchmarks package</code> from idp-parent and run
+ * <code>java -jar idp-benchmarks/target/benchmarks.jar -prof gc -rf json</code> to record throughput and
+ * allocation rate (<code>gc.alloc.rate.norm</code>, bytes per operation). Results from a release build are kept
+ * as the baseline that later changes are compared against.</p>
+ */
+package net.shibboleth.idp.benchmarks;
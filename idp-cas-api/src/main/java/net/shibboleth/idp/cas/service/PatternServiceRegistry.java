@@ -18,14 +18,13 @@
 package net.shibboleth.idp.cas.service;
 
 import java.util.Collections;
-import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
-import java.util.Map;
-import java.util.regex.Pattern;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 
+import net.shibboleth.shared.annotation.constraint.NonNegative;
 import net.shibboleth.shared.annotation.constraint.NonnullElements;
 import net.shibboleth.shared.logic.Constraint;
 import net.shibboleth.shared.spring.service.AbstractServiceableComponent;
@@ -37,6 +36,9 @@ import org.slf4j.LoggerFactory;
  * Service registry that evaluates a candidate service URL against one or more defined services, where each
  * definition contains a service URL regular expression pattern.
  *
+ * <p>The first definition in order whose pattern matches is used. Definitions are indexed by the literal
+ * prefix of their patterns so that only plausible candidates are evaluated, and recent results are cached.</p>
+ *
  * <p>NOTE: This class will become an implementation component in the next major software version.</p>
  *
  * @author Marvin S. Addison
@@ -47,10 +49,34 @@ public class PatternServiceRegistry extends AbstractServiceableComponent<Service
     /** Class logger. */
     private final Logger log = LoggerFactory.getLogger(PatternServiceRegistry.class);
 
-    /** Map of service definitions to compiled patterns. */
+    /** Default number of lookup results to cache. */
+    private static final int DEFAULT_CACHE_SIZE = 1000;
+
+    /** Number of lookup results to cache. */
+    @NonNegative private int cacheSize = DEFAULT_CACHE_SIZE;
+
+    /** Service definitions in order. */
     @Nonnull
     @NonnullElements
-    private Map<ServiceDefinition, Pattern> definitions = Collections.emptyMap();
+    private List<ServiceDefinition> definitions = Collections.emptyList();
+
+    /** Index of service definitions. */
+    @Nonnull private volatile ServiceDefinitionIndex index =
+            new ServiceDefinitionIndex(Collections.emptyList(), DEFAULT_CACHE_SIZE);
+
+    /**
+     * Sets the maximum number of lookup results to cache. Default is 1000.
+     * 
+     * <p>A value of 0 disables caching.</p>
+     * 
+     * @param size cache size
+     * 
+     * @since 5.0.0
+     */
+    public void setCacheSize(@NonNegative final int size) {
+        cacheSize = (int) Constraint.isGreaterThanOrEqual(0, size, "Cache size cannot be negative");
+        index = new ServiceDefinitionIndex(definitions, cacheSize);
+    }
 
     /**
      * Sets the list of service definitions that back the registry.
@@ -60,11 +86,11 @@ public class PatternServiceRegistry extends AbstractServiceableComponent<Service
      */
     public void setDefinitions(@Nonnull @NonnullElements final List<ServiceDefinition> serviceDefinitions) {
         Constraint.noNullItems(serviceDefinitions, "Definitions cannot be null or contain null items");
-        // Preserve order of services in map
-        definitions = new LinkedHashMap<>(serviceDefinitions.size());
-        for (final ServiceDefinition definition : serviceDefinitions) {
-            definitions.put(definition, Pattern.compile(definition.getId()));
-        }
+        // Preserve order of services, dropping duplicates
+        definitions = List.copyOf(new LinkedHashSet<>(serviceDefinitions));
+        index = new ServiceDefinitionIndex(definitions, cacheSize);
+        log.debug("Indexed {} service definitions, {} of which require a full scan", definitions.size(),
+                index.getWildcardCount());
     }
 
     @Nonnull
@@ -77,14 +103,12 @@ public class PatternServiceRegistry extends AbstractServiceableComponent<Service
     @Nullable
     public Service lookup(@Nonnull final String serviceURL) {
         Constraint.isNotNull(serviceURL, "Service URL cannot be null");
-        for (final ServiceDefinition def : definitions.keySet()) {
-            log.debug("Evaluating whether {} matches {}", serviceURL, def);
-            if (definitions.get(def).matcher(serviceURL).matches()) {
-                log.debug("Found match");
-                return new Service(serviceURL, def.getGroup(), def.isAuthorizedToProxy(),
-                        def.isSingleLogoutParticipant());
-            }
+        final ServiceDefinition def = index.lookup(serviceURL);
+        if (def == null) {
+            log.debug("No service definition matched {}", serviceURL);
+            return null;
         }
-        return null;
+        log.debug("Service definition {} matched {}", def, serviceURL);
+        return new Service(serviceURL, def.getGroup(), def.isAuthorizedToProxy(), def.isSingleLogoutParticipant());
     }
 }
@@ -0,0 +1,242 @@
+/*
+ * Licensed to the University Corporation for Advanced Internet Development,
+ * Inc. (UCAID) under one or more contributor license agreements.  See the
+ * NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The UCAID licenses this file to You under the Apache
+ * License, Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package net.shibboleth.idp.cas.service;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.regex.Pattern;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.ThreadSafe;
+
+import net.shibboleth.shared.annotation.constraint.NonnullElements;
+
+/**
+ * Immutable index over an ordered list of {@link ServiceDefinition} patterns.
+ * 
+ * <p>The literal prefix that any match of each pattern must begin with is extracted and stored in
+ * a trie, so a lookup only evaluates the patterns whose prefix the candidate URL begins with, plus
+ * those with no usable prefix. Candidates are evaluated in definition order, preserving first-match-wins
+ * semantics. Recent results are kept in a bounded LRU cache.</p>
+ */
+@ThreadSafe
+final class ServiceDefinitionIndex {
+
+    /** Regular expression metacharacters that end a literal prefix. */
+    @Nonnull private static final String METACHARS = ".[]()*+?{}|^$";
+
+    /** Definitions in order. */
+    @Nonnull @NonnullElements private final List<ServiceDefinition> definitions;
+
+    /** Compiled patterns, parallel to {@link #definitions}. */
+    @Nonnull @NonnullElements private final List<Pattern> patterns;
+
+    /** Root of the prefix trie. */
+    @Nonnull private final Node root;
+
+    /** Positions of definitions with no literal prefix. */
+    @Nonnull private final BitSet wildcards;
+
+    /** Bounded cache of results, or null. */
+    @Nullable private final Map<String,Optional<ServiceDefinition>> cache;
+
+    /**
+     * Constructor.
+     *
+     * @param serviceDefinitions definitions in evaluation order
+     * @param cacheSize maximum number of results to cache, or 0 for none
+     */
+    ServiceDefinitionIndex(@Nonnull @NonnullElements final List<ServiceDefinition> serviceDefinitions,
+            final int cacheSize) {
+        definitions = List.copyOf(serviceDefinitions);
+        patterns = new ArrayList<>(definitions.size());
+        root = new Node();
+        wildcards = new BitSet(definitions.size());
+        
+        for (int i = 0; i < definitions.size(); i++) {
+            final String regex = definitions.get(i).getId();
+            patterns.add(Pattern.compile(regex));
+            final String prefix = literalPrefix(regex);
+            if (prefix.isEmpty()) {
+                wildcards.set(i);
+            } else {
+                Node node = root;
+                for (int j = 0; j < prefix.length(); j++) {
+                    node = node.children.computeIfAbsent(prefix.charAt(j), c -> new Node());
+                }
+                if (node.terminals == null) {
+                    node.terminals = new BitSet(definitions.size());
+                }
+                node.terminals.set(i);
+            }
+        }
+        
+        if (cacheSize > 0) {
+            cache = new LinkedHashMap<>(16, 0.75f, true) {
+                /** Serial version UID. */
+                private static final long serialVersionUID = -1876213424546352743L;
+
+                /** {@inheritDoc} */
+                @Override
+                protected boolean removeEldestEntry(final Map.Entry<String,Optional<ServiceDefinition>> eldest) {
+                    return size() > cacheSize;
+                }
+            };
+        } else {
+            cache = null;
+        }
+    }
+
+    /**
+     * Get the number of definitions that could not be indexed by prefix.
+     * 
+     * @return number of definitions always evaluated
+     */
+    int getWildcardCount() {
+        return wildcards.cardinality();
+    }
+
+    /**
+     * Find the first definition whose pattern matches a service URL.
+     * 
+     * @param serviceURL URL to match
+     * 
+     * @return the first matching definition, or null
+     */
+    @Nullable ServiceDefinition lookup(@Nonnull final String serviceURL) {
+        if (cache != null) {
+            final Optional<ServiceDefinition> cached;
+            synchronized (cache) {
+                cached = cache.get(serviceURL);
+            }
+            if (cached != null) {
+                return cached.orElse(null);
+            }
+        }
+        
+        final ServiceDefinition result = evaluate(serviceURL);
+        
+        if (cache != null) {
+            synchronized (cache) {
+                cache.put(serviceURL, Optional.ofNullable(result));
+            }
+        }
+        return result;
+    }
+    
+    /**
+     * Evaluate the candidate definitions for a service URL in order.
+     * 
+     * @param serviceURL URL to match
+     * 
+     * @return the first matching definition, or null
+     */
+    @Nullable private ServiceDefinition evaluate(@Nonnull final String serviceURL) {
+        final BitSet candidates = (BitSet) wildcards.clone();
+        Node node = root;
+        for (int i = 0; i < serviceURL.length() && node != null; i++) {
+            node = node.children.get(serviceURL.charAt(i));
+            if (node != null && node.terminals != null) {
+                candidates.or(node.terminals);
+            }
+        }
+        
+        for (int i = candidates.nextSetBit(0); i >= 0; i = candidates.nextSetBit(i + 1)) {
+            if (patterns.get(i).matcher(serviceURL).matches()) {
+                return definitions.get(i);
+            }
+        }
+        return null;
+    }
+
+// Checkstyle: CyclomaticComplexity OFF
+    /**
+     * Extract the literal text that every full match of a regular expression must begin with.
+     * 
+     * <p>This is deliberately conservative: anything it does not understand ends the prefix, and a pattern
+     * containing alternation has no prefix at all.</p>
+     * 
+     * @param regex the regular expression
+     * 
+     * @return the required literal prefix, possibly empty
+     */
+    @Nonnull static String literalPrefix(@Nonnull final String regex) {
+        
+        for (int i = 0; i < regex.length(); i++) {
+            final char c = regex.charAt(i);
+            if (c == '\\') {
+                i++;
+            } else if (c == '|') {
+                return "";
+            }
+        }
+        
+        final StringBuilder prefix = new StringBuilder();
+        int i = regex.startsWith("^") ? 1 : 0;
+        while (i < regex.length()) {
+            final char c = regex.charAt(i);
+            final char literal;
+            if (c == '\\') {
+                if (i + 1 >= regex.length() || Character.isLetterOrDigit(regex.charAt(i + 1))) {
+                    // Character classes, back references, quoting and the like.
+                    break;
+                }
+                literal = regex.charAt(i + 1);
+                i += 2;
+            } else if (METACHARS.indexOf(c) >= 0) {
+                break;
+            } else {
+                literal = c;
+                i++;
+            }
+            
+            // A quantifier applies to the preceding literal.
+            if (i < regex.length()) {
+                final char next = regex.charAt(i);
+                if (next == '?' || next == '*' || next == '{') {
+                    break;
+                } else if (next == '+') {
+                    prefix.append(literal);
+                    break;
+                }
+            }
+            prefix.append(literal);
+        }
+        
+        return prefix.toString();
+    }
+// Checkstyle: CyclomaticComplexity ON
+
+    /** Trie node. */
+    private static final class Node {
+        
+        /** Child nodes. */
+        @Nonnull private final Map<Character,Node> children = new HashMap<>(4);
+        
+        /** Positions of definitions whose prefix ends here, or null. */
+        @Nullable private BitSet terminals;
+    }
+
+}
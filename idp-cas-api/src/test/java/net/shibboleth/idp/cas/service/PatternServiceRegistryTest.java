@@ -36,6 +36,10 @@ public class PatternServiceRegistryTest {
         final ServiceDefinition d2 = new ServiceDefinition("https://trusted\\.example\\.org/.*");
         d2.setGroup("trusted-service");
         d2.setAuthorizedToProxy(true);
+        final ServiceDefinition d3 = new ServiceDefinition("(?i)HTTPS://TRUSTED\\.EXAMPLE\\.ORG/.*");
+        d3.setGroup("case-insensitive");
+        final ServiceDefinition d4 = new ServiceDefinition("https?://trusted\\.example\\.org/landing");
+        d4.setGroup("optional-tls");
         return new Object[][] {
                 {
                         Arrays.asList(d1, d2),
@@ -52,6 +56,21 @@ public class PatternServiceRegistryTest {
                         "https://service.untrusted.org/landing",
                         null,
                 },
+                {
+                        Arrays.asList(d3, d2),
+                        "https://trusted.example.org/landing",
+                        new Service("https://trusted.example.org/landing", "case-insensitive", false),
+                },
+                {
+                        Arrays.asList(d4, d2),
+                        "https://trusted.example.org/landing",
+                        new Service("https://trusted.example.org/landing", "optional-tls", false),
+                },
+                {
+                        Arrays.asList(d2, d4),
+                        "http://trusted.example.org/landing",
+                        new Service("http://trusted.example.org/landing", "optional-tls", false),
+                },
         };
     };
 
@@ -70,4 +89,34 @@ public class PatternServiceRegistryTest {
             assertEquals(actual.isAuthorizedToProxy(), expected.isAuthorizedToProxy());
         }
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testCachedLookup() throws Exception {
+        final ServiceDefinition def = new ServiceDefinition("https://cached\\.example\\.org/.*");
+        def.setGroup("cached");
+        final PatternServiceRegistry registry = new PatternServiceRegistry();
+        registry.setCacheSize(1);
+        registry.setDefinitions(List.of(def));
+        for (int i = 0; i < 2; i++) {
+            assertEquals(registry.lookup("https://cached.example.org/a").getGroup(), "cached");
+            assertNull(registry.lookup("https://cached.example.com/a"));
+        }
+        
+        // Replacing the definitions must not serve stale results.
+        registry.setDefinitions(List.of());
+        assertNull(registry.lookup("https://cached.example.org/a"));
+    }
+
+    @Test
+    public void testLiteralPrefix() {
+        assertEquals(ServiceDefinitionIndex.literalPrefix("https://trusted\\.example\\.org/.*"),
+                "https://trusted.example.org/");
+        assertEquals(ServiceDefinitionIndex.literalPrefix("^https://a\\.org(:\\d+)?/.*"), "https://a.org");
+        assertEquals(ServiceDefinitionIndex.literalPrefix("https?://a\\.org/"), "http");
+        assertEquals(ServiceDefinitionIndex.literalPrefix("https://a+b"), "https://a");
+        assertEquals(ServiceDefinitionIndex.literalPrefix("https://\\w+"), "https://");
+        assertEquals(ServiceDefinitionIndex.literalPrefix("https://a\\.org/|https://b\\.org/"), "");
+        assertEquals(ServiceDefinitionIndex.literalPrefix("(?i)https://a\\.org/"), "");
+        assertEquals(ServiceDefinitionIndex.literalPrefix(".*"), "");
+    }
+}
@@ -23,11 +23,20 @@ import java.io.IOException;
 import java.net.URI;
 import java.security.GeneralSecurityException;
 import java.security.cert.CertificateException;
+import java.time.Duration;
 import java.util.Collections;
 import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import java.util.function.Function;
 
 import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
 import javax.net.ssl.SSLException;
 import javax.net.ssl.SSLPeerUnverifiedException;
 import javax.security.auth.login.CredentialException;
@@ -38,6 +47,7 @@ import net.shibboleth.idp.cas.protocol.ProtocolContext;
 import net.shibboleth.idp.cas.proxy.ProxyValidator;
 import net.shibboleth.idp.cas.service.Service;
 import net.shibboleth.idp.cas.service.ServiceContext;
+import net.shibboleth.shared.annotation.constraint.NonNegative;
 import net.shibboleth.shared.annotation.constraint.NonnullElements;
 import net.shibboleth.shared.annotation.constraint.NotEmpty;
 import net.shibboleth.shared.logic.Constraint;
@@ -66,6 +76,8 @@ import org.opensaml.security.x509.TrustedNamesCriterion;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
 /**
  * Authenticates a CAS proxy callback endpoint using an {@link org.apache.http.client.HttpClient} instance to establish
  * the connection and a {@link TrustEngine} to verify the TLS certificate presented by the remote peer. The endpoint
@@ -78,6 +90,11 @@ import org.slf4j.LoggerFactory;
  *     (only 200 by default).</li>
  * </ol>
  *
+ * <p>The connection may optionally be made on a dedicated, bounded pool of threads, with the requesting thread
+ * waiting only up to a fixed time for the result. This bounds the number of request-processing threads that
+ * slow or unresponsive callback endpoints can occupy: once the pool is saturated, further validations fail
+ * immediately.</p>
+ *
  * @author Marvin S. Addison
  */
 public class HttpClientProxyValidator implements ProxyValidator {
@@ -102,6 +119,12 @@ public class HttpClientProxyValidator implements ProxyValidator {
     /** List of HTTP response codes permitted for successful proxy callback. */
     @NotEmpty @NonnullElements private Set<Integer> allowedResponseCodes;
 
+    /** Pool on which connections are made, or null to connect on the calling thread. */
+    @Nullable private ThreadPoolExecutor executor;
+
+    /** Maximum time to wait for a connection made on the pool. */
+    @Nonnull private Duration validationTimeout;
+
     /**
      * 
      * Constructor.
@@ -114,6 +137,7 @@ public class HttpClientProxyValidator implements ProxyValidator {
         httpClient = Constraint.isNotNull(client, "HTTP client cannot be null");
         securityParameters = Constraint.isNotNull(parameters, "HTTP client security parameters cannot be null");
         allowedResponseCodes = Collections.singleton(200);
+        validationTimeout = Duration.ofSeconds(10);
     }
 
     /**
@@ -127,6 +151,45 @@ public class HttpClientProxyValidator implements ProxyValidator {
         allowedResponseCodes = Set.copyOf(responseCodes);
     }
 
+    /**
+     * Sets the maximum number of validations to perform concurrently on a dedicated pool of threads.
+     * 
+     * <p>The default of 0 performs each validation on the calling thread with no limit. Otherwise, a
+     * validation attempted while the pool is saturated fails immediately. Idle pool threads are released,
+     * so no explicit shutdown is required.</p>
+     *
+     * @param max maximum concurrent validations, or 0
+     * 
+     * @since 5.0.0
+     */
+    public void setMaxConcurrentValidations(@NonNegative final int max) {
+        Constraint.isGreaterThanOrEqual(0, max, "Maximum concurrent validations cannot be negative");
+        if (max == 0) {
+            executor = null;
+        } else {
+            final ThreadPoolExecutor pool = new ThreadPoolExecutor(max, max, 60, TimeUnit.SECONDS,
+                    new SynchronousQueue<>(),
+                    new ThreadFactoryBuilder().setDaemon(true).setNameFormat("cas-proxy-validator-%d").build());
+            pool.allowCoreThreadTimeOut(true);
+            executor = pool;
+        }
+    }
+
+    /**
+     * Sets the maximum time to wait for a validation performed on the dedicated pool. Default is 10 seconds.
+     * 
+     * <p>This has no effect unless {@link #setMaxConcurrentValidations(int)} is set.</p>
+     *
+     * @param timeout validation timeout
+     * 
+     * @since 5.0.0
+     */
+    public void setValidationTimeout(@Nonnull final Duration timeout) {
+        Constraint.isNotNull(timeout, "Timeout cannot be null");
+        Constraint.isFalse(timeout.isNegative() || timeout.isZero(), "Timeout must be greater than 0");
+        validationTimeout = timeout;
+    }
+
     /** {@inheritDoc} */
     @Override
     public void validate(@Nonnull final ProfileRequestContext profileRequestContext,
@@ -140,7 +203,8 @@ public class HttpClientProxyValidator implements ProxyValidator {
         if (serviceContext == null) {
             throw new IllegalStateException("Service context not found in profile request context as required");
         }
-        final int status = connect(proxyCallbackUri, serviceContext.getService());
+        final int status = executor != null ? connectOnPool(executor, proxyCallbackUri, serviceContext.getService())
+                : connect(proxyCallbackUri, serviceContext.getService());
         if (!allowedResponseCodes.contains(status)) {
             throw new FailedLoginException(proxyCallbackUri + " returned unacceptable HTTP status code: " + status);
         }
@@ -188,6 +252,44 @@ public class HttpClientProxyValidator implements ProxyValidator {
         }
     }
 
+    /**
+     * Run {@link #connect(URI, Service)} on the dedicated pool, waiting for up to the configured timeout.
+     *
+     * @param pool pool to run on
+     * @param uri CAS proxy callback URI to connect to.
+     * @param service CAS service requesting the connection.
+     * @return HTTP response code.
+     * @throws GeneralSecurityException On connection errors, pool saturation or timeout.
+     */
+    private int connectOnPool(@Nonnull final ThreadPoolExecutor pool, @Nonnull final URI uri,
+            @Nonnull final Service service) throws GeneralSecurityException {
+        final Future<Integer> result;
+        try {
+            result = pool.submit(() -> connect(uri, service));
+        } catch (final RejectedExecutionException e) {
+            throw new GeneralSecurityException("Too many concurrent proxy callback validations, rejecting " + uri);
+        }
+        
+        try {
+            return result.get(validationTimeout.toMillis(), TimeUnit.MILLISECONDS);
+        } catch (final TimeoutException e) {
+            result.cancel(true);
+            throw new GeneralSecurityException("Timed out validating proxy callback " + uri);
+        } catch (final InterruptedException e) {
+            result.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new GeneralSecurityException("Interrupted validating proxy callback " + uri);
+        } catch (final ExecutionException e) {
+            final Throwable cause = e.getCause();
+            if (cause instanceof GeneralSecurityException) {
+                throw (GeneralSecurityException) cause;
+            } else if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new GeneralSecurityException("Error validating proxy callback", cause);
+        }
+    }
+
     /**
      * Install TLS trust criteria.
      * 
@@ -17,6 +17,11 @@
 
 package net.shibboleth.idp.cas.service.impl;
 
+import java.time.Duration;
+import java.time.Instant;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
 import java.util.function.Predicate;
 
 import javax.annotation.Nonnull;
@@ -28,6 +33,8 @@ import net.shibboleth.idp.cas.config.ProxyConfiguration;
 import net.shibboleth.idp.cas.service.Service;
 import net.shibboleth.idp.cas.service.ServiceRegistry;
 import net.shibboleth.shared.annotation.ParameterName;
+import net.shibboleth.shared.annotation.constraint.NonNegative;
+import net.shibboleth.shared.logic.Constraint;
 import net.shibboleth.shared.resolver.CriteriaSet;
 import net.shibboleth.shared.resolver.ResolverException;
 
@@ -37,6 +44,7 @@ import org.opensaml.saml.criterion.EntityRoleCriterion;
 import org.opensaml.saml.criterion.ProtocolCriterion;
 import org.opensaml.saml.criterion.StartsWithLocationCriterion;
 import org.opensaml.saml.metadata.resolver.MetadataResolver;
+import org.opensaml.saml.metadata.resolver.RefreshableMetadataResolver;
 import org.opensaml.saml.metadata.resolver.RoleDescriptorResolver;
 import org.opensaml.saml.saml2.metadata.AssertionConsumerService;
 import org.opensaml.saml.saml2.metadata.Endpoint;
@@ -76,6 +84,9 @@ import org.slf4j.LoggerFactory;
  * </ol>
  * See the <a href="https://wiki.shibboleth.net/confluence/x/BQfKAg">SAML metadata profile for CAS</a> for the full
  * specification.
+ * <p>
+ * The role resolved for each service URL may be cached for a period of time. If a refreshable metadata resolver
+ * is supplied, the cache is discarded whenever that resolver reports an update.
  *
  * @author Marvin S. Addison
  */
@@ -100,6 +111,17 @@ public class MetadataServiceRegistry implements ServiceRegistry {
     @Nonnull
     private final RoleDescriptorResolver metadataResolver;
 
+    /** Source of metadata update notifications used to invalidate the cache. */
+    @Nullable private RefreshableMetadataResolver refreshSource;
+
+    /** How long to cache a resolved role. */
+    @Nonnull private Duration cacheDuration = Duration.ofMinutes(10);
+
+    /** Resolved roles by service URL, or null if caching is disabled. */
+    @Nullable private Map<String,CachedRole> cache;
+
+    /** Last update reported by {@link #refreshSource} when the cache was last validated. */
+    @Nullable private Instant lastUpdate;
 
     /**
      * Create a new instance that queries the given metadata resolver.
@@ -110,13 +132,74 @@ public class MetadataServiceRegistry implements ServiceRegistry {
         metadataResolver = resolver;
     }
 
+    /**
+     * Sets the maximum number of service URLs for which to cache the resolved role. Default is 0.
+     * 
+     * <p>A value of 0 disables caching.</p>
+     * 
+     * @param size cache size
+     * 
+     * @since 5.0.0
+     */
+    public void setCacheSize(@NonNegative final int size) {
+        final int max = (int) Constraint.isGreaterThanOrEqual(0, size, "Cache size cannot be negative");
+        if (max == 0) {
+            cache = null;
+        } else {
+            cache = new LinkedHashMap<>(16, 0.75f, true) {
+                /** Serial version UID. */
+                private static final long serialVersionUID = 7339536442473519215L;
+
+                /** {@inheritDoc} */
+                @Override
+                protected boolean removeEldestEntry(final Map.Entry<String,CachedRole> eldest) {
+                    return size() > max;
+                }
+            };
+        }
+    }
+
+    /**
+     * Sets how long to cache the role resolved for a service URL. Default is 10 minutes.
+     * 
+     * @param duration cache duration
+     * 
+     * @since 5.0.0
+     */
+    public void setCacheDuration(@Nonnull final Duration duration) {
+        Constraint.isNotNull(duration, "Duration cannot be null");
+        Constraint.isFalse(duration.isNegative(), "Duration cannot be negative");
+        cacheDuration = duration;
+    }
+
+    /**
+     * Sets the metadata resolver whose updates invalidate the cache.
+     * 
+     * <p>This should be the resolver underlying the {@link RoleDescriptorResolver}. It is only used if it
+     * implements {@link RefreshableMetadataResolver}.</p>
+     * 
+     * @param resolver metadata resolver
+     * 
+     * @since 5.0.0
+     */
+    public void setMetadataResolver(@Nullable final MetadataResolver resolver) {
+        if (resolver instanceof RefreshableMetadataResolver) {
+            refreshSource = (RefreshableMetadataResolver) resolver;
+        } else {
+            if (resolver != null) {
+                log.debug("Metadata resolver does not report updates, cached entries will only expire");
+            }
+            refreshSource = null;
+        }
+    }
+
     @Nullable
     @Override
     public Service lookup(final @Nonnull String serviceURL) {
         try {
-            final RoleDescriptor role = metadataResolver.resolveSingle(criteria(serviceURL));
-            if (role instanceof SPSSODescriptor) {
-                return create(serviceURL, (SPSSODescriptor) role);
+            final SPSSODescriptor role = resolve(serviceURL);
+            if (role != null) {
+                return create(serviceURL, role);
             }
             throw new ResolverException("No compatible role resolved");
         } catch (final ResolverException e) {
@@ -125,6 +208,63 @@ public class MetadataServiceRegistry implements ServiceRegistry {
         return null;
     }
 
+    /**
+     * Resolve the role for a service URL, using the cache if enabled.
+     * 
+     * @param serviceURL CAS service URL
+     * 
+     * @return the resolved role, or null
+     * 
+     * @throws ResolverException if metadata resolution fails
+     */
+    @Nullable
+    private SPSSODescriptor resolve(@Nonnull final String serviceURL) throws ResolverException {
+        final Map<String,CachedRole> theCache = cache;
+        if (theCache == null) {
+            return doResolve(serviceURL);
+        }
+        
+        final Instant now = Instant.now();
+        final Instant generation;
+        synchronized (theCache) {
+            generation = refreshSource != null ? refreshSource.getLastUpdate() : null;
+            if (!Objects.equals(generation, lastUpdate)) {
+                log.debug("Metadata has been updated, clearing cache of {} CAS services", theCache.size());
+                theCache.clear();
+                lastUpdate = generation;
+            }
+            final CachedRole cached = theCache.get(serviceURL);
+            if (cached != null && cached.expiration.isAfter(now)) {
+                return cached.role;
+            }
+        }
+        
+        final SPSSODescriptor role = doResolve(serviceURL);
+        
+        synchronized (theCache) {
+            // Don't cache a result computed against metadata that has since been replaced.
+            if (Objects.equals(generation, lastUpdate)) {
+                theCache.put(serviceURL, new CachedRole(role, now.plus(cacheDuration)));
+            }
+        }
+        return role;
+    }
+
+    /**
+     * Query the metadata for the role matching a service URL.
+     * 
+     * @param serviceURL CAS service URL
+     * 
+     * @return the resolved role, or null
+     * 
+     * @throws ResolverException if metadata resolution fails
+     */
+    @Nullable
+    private SPSSODescriptor doResolve(@Nonnull final String serviceURL) throws ResolverException {
+        final RoleDescriptor role = metadataResolver.resolveSingle(criteria(serviceURL));
+        return role instanceof SPSSODescriptor ? (SPSSODescriptor) role : null;
+    }
+
     /**
      * Create the set of criteria used to find a unique CAS service given a CAS service URL.
      *
@@ -200,6 +340,27 @@ public class MetadataServiceRegistry implements ServiceRegistry {
         return false;
     }
 
+    /** Cache entry for a resolved role. */
+    private static final class CachedRole {
+        
+        /** Resolved role, or null. */
+        @Nullable private final SPSSODescriptor role;
+        
+        /** Expiration of entry. */
+        @Nonnull private final Instant expiration;
+        
+        /**
+         * Constructor.
+         *
+         * @param r resolved role
+         * @param exp expiration of entry
+         */
+        CachedRole(@Nullable final SPSSODescriptor r, @Nonnull final Instant exp) {
+            role = r;
+            expiration = exp;
+        }
+    }
+
     /**
      * Predicate defines CAS login endpoints so that the metadata index on endpoints can be scoped to the smallest
      * set needed to support CAS entities in SAML metadata.
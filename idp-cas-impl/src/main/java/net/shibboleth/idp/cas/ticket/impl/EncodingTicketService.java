@@ -27,6 +27,7 @@ import net.shibboleth.idp.cas.ticket.ProxyTicket;
 import net.shibboleth.idp.cas.ticket.ServiceTicket;
 import net.shibboleth.idp.cas.ticket.Ticket;
 import net.shibboleth.idp.cas.ticket.TicketState;
+import net.shibboleth.idp.cas.ticket.serialization.impl.CompactTicketCodec;
 import net.shibboleth.shared.annotation.ParameterName;
 import net.shibboleth.shared.annotation.constraint.NotEmpty;
 import net.shibboleth.shared.logic.Constraint;
@@ -93,6 +94,9 @@ public class EncodingTicketService extends AbstractTicketService {
     @NotEmpty
     private String proxyGrantingTicketPrefix = PROXY_GRANTING_TICKET_PREFIX;
 
+    /** Whether to encode tickets using {@link CompactTicketCodec}. */
+    private boolean compactEncoding;
+
     /**
      * Creates a new instance.
      *
@@ -133,6 +137,21 @@ public class EncodingTicketService extends AbstractTicketService {
         proxyGrantingTicketPrefix = Constraint.isNotEmpty(prefix, "Prefix cannot be null or empty");
     }
 
+    /**
+     * Sets whether to encode ticket data in a compact binary form rather than JSON. Default is false.
+     * 
+     * <p>The compact form produces much shorter ticket IDs that are cheaper to decode. Tickets in either
+     * form are decoded regardless of this setting, so it may be changed without invalidating tickets
+     * already issued, but tickets in the compact form cannot be decoded by older versions.</p>
+     *
+     * @param flag flag to set
+     * 
+     * @since 5.0.0
+     */
+    public void setCompactEncoding(final boolean flag) {
+        compactEncoding = flag;
+    }
+
     @Override
     @Nonnull
     public ServiceTicket createServiceTicket(
@@ -230,7 +249,9 @@ public class EncodingTicketService extends AbstractTicketService {
     private <T extends Ticket> T encode(final Class<T> ticketClass, final T ticket, final String prefix) {
         final String opaque;
         try {
-            opaque = dataSealer.wrap(serializer(ticketClass).serialize(ticket), ticket.getExpirationInstant());
+            final String payload = compactEncoding ? CompactTicketCodec.encode(ticket)
+                    : serializer(ticketClass).serialize(ticket);
+            opaque = dataSealer.wrap(payload, ticket.getExpirationInstant());
         } catch (final Exception e) {
             throw new RuntimeException("Ticket encoding failed", e);
         }
@@ -250,6 +271,9 @@ public class EncodingTicketService extends AbstractTicketService {
     private <T extends Ticket> T decode(final Class<T> ticketClass, final String id, final String prefix) {
         try {
             final String decrypted = dataSealer.unwrap(id.substring(prefix.length() + 1));
+            if (CompactTicketCodec.isCompact(decrypted)) {
+                return CompactTicketCodec.decode(ticketClass, id, decrypted);
+            }
             return serializer(ticketClass).deserialize(0, NOT_USED, id, decrypted, 0L);
         } catch (final Exception e) {
             log.warn("Ticket decoding failed with error: " + e.getMessage());
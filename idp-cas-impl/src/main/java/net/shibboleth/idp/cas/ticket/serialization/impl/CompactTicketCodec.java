@@ -0,0 +1,407 @@
+/*
+ * Licensed to the University Corporation for Advanced Internet Development,
+ * Inc. (UCAID) under one or more contributor license agreements.  See the
+ * NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The UCAID licenses this file to You under the Apache
+ * License, Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package net.shibboleth.idp.cas.ticket.serialization.impl;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.annotation.Nonnull;
+
+import net.shibboleth.idp.cas.ticket.ProxyGrantingTicket;
+import net.shibboleth.idp.cas.ticket.ProxyTicket;
+import net.shibboleth.idp.cas.ticket.ServiceTicket;
+import net.shibboleth.idp.cas.ticket.Ticket;
+import net.shibboleth.idp.cas.ticket.TicketState;
+import net.shibboleth.shared.annotation.constraint.NotEmpty;
+
+/**
+ * Compact, versioned binary encoding of tickets for embedding into ticket identifiers.
+ * 
+ * <p>This is an alternative to the JSON produced by {@link AbstractTicketSerializer} for use where the
+ * serialized form becomes part of the ticket ID, and so its length and decoding cost matter. Instants are
+ * written as variable-length integers, and common authentication method names are replaced by an index
+ * into a fixed table.</p>
+ * 
+ * <p>The binary form is carried in a string of characters in the range 0-255 for compatibility with
+ * string-based APIs such as {@link net.shibboleth.shared.security.DataSealer}. The first character is a
+ * version marker that can never begin a JSON document, so {@link #isCompact(String)} can be used to
+ * distinguish the two formats when decoding.</p>
+ * 
+ * @since 5.0.0
+ */
+public final class CompactTicketCodec {
+
+    /** Version marker of the initial format. */
+    private static final char VERSION_1 = '\u0001';
+
+    /** Type code for service tickets. */
+    private static final int TYPE_ST = 1;
+
+    /** Type code for proxy tickets. */
+    private static final int TYPE_PT = 2;
+
+    /** Type code for proxy-granting tickets. */
+    private static final int TYPE_PGT = 3;
+
+    /** Flag for the renew setting of a service ticket. */
+    private static final int FLAG_RENEW = 0x01;
+
+    /** Flag indicating the presence of ticket state. */
+    private static final int FLAG_STATE = 0x02;
+
+    /** Flag indicating the presence of consented attribute IDs. */
+    private static final int FLAG_CONSENT = 0x04;
+
+    /** Flag indicating the presence of a parent ID or PGT ID. */
+    private static final int FLAG_PARENT = 0x08;
+
+    /**
+     * Strings interned by the initial format.
+     * 
+     * <p>Entries may be appended under a new format version, but never reordered or removed.</p>
+     */
+    @Nonnull private static final List<String> DICTIONARY_1 = List.of(
+            "authn/Password",
+            "authn/External",
+            "authn/RemoteUser",
+            "authn/RemoteUserInternal",
+            "authn/X509",
+            "authn/SPNEGO",
+            "authn/MFA",
+            "authn/Duo",
+            "authn/SAML",
+            "authn/IPAddress",
+            "authn/Function",
+            "urn:oasis:names:tc:SAML:2.0:ac:classes:PasswordProtectedTransport",
+            "urn:oasis:names:tc:SAML:2.0:ac:classes:Password",
+            "urn:oasis:names:tc:SAML:2.0:ac:classes:X509",
+            "urn:oasis:names:tc:SAML:2.0:ac:classes:Kerberos",
+            "urn:oasis:names:tc:SAML:2.0:ac:classes:TimeSyncToken",
+            "urn:oasis:names:tc:SAML:2.0:ac:classes:unspecified",
+            "urn:oasis:names:tc:SAML:1.0:am:password",
+            "https://refeds.org/profile/mfa",
+            "https://refeds.org/profile/sfa");
+
+    /** Reverse index of {@link #DICTIONARY_1}. */
+    @Nonnull private static final Map<String,Integer> DICTIONARY_1_INDEX;
+
+    static {
+        final Map<String,Integer> index = new HashMap<>(DICTIONARY_1.size() * 2);
+        for (int i = 0; i < DICTIONARY_1.size(); i++) {
+            index.put(DICTIONARY_1.get(i), i);
+        }
+        DICTIONARY_1_INDEX = Map.copyOf(index);
+    }
+
+    /** Constructor. */
+    private CompactTicketCodec() {
+        
+    }
+
+    /**
+     * Get whether a serialized ticket is in this compact format.
+     * 
+     * @param value serialized ticket
+     * 
+     * @return true iff the value is in a format this class can decode
+     */
+    public static boolean isCompact(@Nonnull final String value) {
+        return !value.isEmpty() && value.charAt(0) == VERSION_1;
+    }
+
+// Checkstyle: CyclomaticComplexity OFF
+    /**
+     * Encode a ticket.
+     * 
+     * <p>The ticket ID is not encoded since it is expected to be derived from the result.</p>
+     * 
+     * @param ticket ticket to encode
+     * 
+     * @return the encoded form
+     * 
+     * @throws IOException if the ticket type is unsupported
+     */
+    @Nonnull @NotEmpty public static String encode(@Nonnull final Ticket ticket) throws IOException {
+        
+        final int type;
+        int flags = 0;
+        String parent = null;
+        if (ticket instanceof ServiceTicket) {
+            type = TYPE_ST;
+            if (((ServiceTicket) ticket).isRenew()) {
+                flags |= FLAG_RENEW;
+            }
+        } else if (ticket instanceof ProxyTicket) {
+            type = TYPE_PT;
+            parent = ((ProxyTicket) ticket).getPgtId();
+        } else if (ticket instanceof ProxyGrantingTicket) {
+            type = TYPE_PGT;
+            parent = ((ProxyGrantingTicket) ticket).getParentId();
+        } else {
+            throw new IOException("Unsupported ticket type: " + ticket.getClass().getName());
+        }
+        
+        final TicketState state = ticket.getTicketState();
+        final Set<String> consent = state != null ? state.getConsentedAttributeIds() : null;
+        if (state != null) {
+            flags |= FLAG_STATE;
+            if (consent != null) {
+                flags |= FLAG_CONSENT;
+            }
+        }
+        if (parent != null) {
+            flags |= FLAG_PARENT;
+        }
+        
+        final ByteArrayOutputStream out = new ByteArrayOutputStream(128);
+        out.write(VERSION_1);
+        out.write(type);
+        out.write(flags);
+        
+        final long expiry = ticket.getExpirationInstant().toEpochMilli();
+        writeVarLong(out, expiry);
+        writeString(out, ticket.getService());
+        if (parent != null) {
+            writeString(out, parent);
+        }
+        
+        if (state != null) {
+            writeString(out, state.getSessionId());
+            writeString(out, state.getPrincipalName());
+            // Authentication precedes expiration, so the difference is usually small.
+            writeVarLong(out, zigZag(expiry - state.getAuthenticationInstant().toEpochMilli()));
+            writeString(out, state.getAuthenticationMethod());
+            if (consent != null) {
+                writeVarLong(out, consent.size());
+                for (final String id : consent) {
+                    writeString(out, id);
+                }
+            }
+        }
+        
+        return new String(out.toByteArray(), StandardCharsets.ISO_8859_1);
+    }
+
+    /**
+     * Decode a ticket.
+     * 
+     * @param <T> type of ticket
+     * @param ticketClass type of ticket expected
+     * @param id ID to assign to the ticket
+     * @param value encoded form
+     * 
+     * @return the decoded ticket
+     * 
+     * @throws IOException if the value is malformed or of the wrong type
+     */
+    @Nonnull public static <T extends Ticket> T decode(@Nonnull final Class<T> ticketClass,
+            @Nonnull @NotEmpty final String id, @Nonnull @NotEmpty final String value) throws IOException {
+        
+        if (!isCompact(value)) {
+            throw new IOException("Unsupported ticket encoding");
+        }
+        
+        try {
+            final Reader in = new Reader(value.getBytes(StandardCharsets.ISO_8859_1));
+            in.pos = 1;
+            final int type = in.next();
+            final int flags = in.next();
+            
+            final long expiryMillis = in.readVarLong();
+            final Instant expiry = Instant.ofEpochMilli(expiryMillis);
+            final String service = in.readString();
+            final String parent = (flags & FLAG_PARENT) != 0 ? in.readString() : null;
+            
+            final Ticket ticket;
+            if (type == TYPE_ST && ticketClass.isAssignableFrom(ServiceTicket.class)) {
+                ticket = new ServiceTicket(id, service, expiry, (flags & FLAG_RENEW) != 0);
+            } else if (type == TYPE_PT && parent != null && ticketClass.isAssignableFrom(ProxyTicket.class)) {
+                ticket = new ProxyTicket(id, service, expiry, parent);
+            } else if (type == TYPE_PGT && ticketClass.isAssignableFrom(ProxyGrantingTicket.class)) {
+                ticket = new ProxyGrantingTicket(id, service, expiry, parent);
+            } else {
+                throw new IOException("Encoded ticket type " + type + " is not a " + ticketClass.getSimpleName());
+            }
+            
+            if ((flags & FLAG_STATE) != 0) {
+                final String sessionId = in.readString();
+                final String principal = in.readString();
+                final long authnInstant = expiryMillis - unZigZag(in.readVarLong());
+                final TicketState state =
+                        new TicketState(sessionId, principal, Instant.ofEpochMilli(authnInstant), in.readString());
+                if ((flags & FLAG_CONSENT) != 0) {
+                    final int count = (int) in.readVarLong();
+                    final Set<String> ids = new HashSet<>(Math.min(count, 64));
+                    for (int i = 0; i < count; i++) {
+                        ids.add(in.readString());
+                    }
+                    state.setConsentedAttributeIds(ids);
+                }
+                ticket.setTicketState(state);
+            }
+            
+            if (in.pos != in.data.length) {
+                throw new IOException("Trailing data after encoded ticket");
+            }
+            
+            return ticketClass.cast(ticket);
+        } catch (final ArrayIndexOutOfBoundsException | IllegalArgumentException e) {
+            throw new IOException("Malformed encoded ticket", e);
+        }
+    }
+// Checkstyle: CyclomaticComplexity ON
+
+    /**
+     * Write an unsigned variable-length integer, seven bits at a time.
+     * 
+     * @param out output stream
+     * @param value value to write
+     */
+    private static void writeVarLong(@Nonnull final ByteArrayOutputStream out, final long value) {
+        long v = value;
+        while ((v & ~0x7FL) != 0) {
+            out.write((int) ((v & 0x7F) | 0x80));
+            v >>>= 7;
+        }
+        out.write((int) v);
+    }
+
+    /**
+     * Write a string, either as a reference into the dictionary or as UTF-8 prefixed by its length.
+     * 
+     * <p>The leading integer is zero for a dictionary reference, followed by the index, or else the
+     * length of the UTF-8 form plus one.</p>
+     * 
+     * @param out output stream
+     * @param value value to write
+     */
+    private static void writeString(@Nonnull final ByteArrayOutputStream out, @Nonnull final String value) {
+        final Integer index = DICTIONARY_1_INDEX.get(value);
+        if (index != null) {
+            out.write(0);
+            writeVarLong(out, index);
+        } else {
+            final byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            writeVarLong(out, bytes.length + 1L);
+            out.write(bytes, 0, bytes.length);
+        }
+    }
+
+    /**
+     * Map a signed value onto an unsigned one with small magnitudes remaining small.
+     * 
+     * @param value input value
+     * 
+     * @return encoded value
+     */
+    private static long zigZag(final long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    /**
+     * Reverse of {@link #zigZag(long)}.
+     * 
+     * @param value encoded value
+     * 
+     * @return original value
+     */
+    private static long unZigZag(final long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    /** Cursor over an encoded ticket. */
+    private static final class Reader {
+
+        /** Encoded data. */
+        @Nonnull private final byte[] data;
+
+        /** Current position. */
+        private int pos;
+
+        /**
+         * Constructor.
+         *
+         * @param input encoded data
+         */
+        Reader(@Nonnull final byte[] input) {
+            data = input;
+        }
+
+        /**
+         * Read the next unsigned byte.
+         * 
+         * @return the byte
+         */
+        int next() {
+            return data[pos++] & 0xFF;
+        }
+
+        /**
+         * Read an unsigned variable-length integer.
+         * 
+         * @return the value
+         * 
+         * @throws IOException if the value is too long
+         */
+        long readVarLong() throws IOException {
+            long result = 0;
+            for (int shift = 0; shift < 64; shift += 7) {
+                final int b = next();
+                result |= (long) (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    return result;
+                }
+            }
+            throw new IOException("Malformed variable-length integer");
+        }
+
+        /**
+         * Read a string.
+         * 
+         * @return the string
+         * 
+         * @throws IOException if the value is malformed
+         */
+        @Nonnull String readString() throws IOException {
+            final long prefix = readVarLong();
+            if (prefix == 0) {
+                final long index = readVarLong();
+                if (index >= DICTIONARY_1.size()) {
+                    throw new IOException("Invalid string reference in encoded ticket");
+                }
+                return DICTIONARY_1.get((int) index);
+            }
+            final long length = prefix - 1;
+            if (length > data.length - pos) {
+                throw new IOException("Invalid string length in encoded ticket");
+            }
+            final String s = new String(data, pos, (int) length, StandardCharsets.UTF_8);
+            pos += (int) length;
+            return s;
+        }
+    }
+
+}
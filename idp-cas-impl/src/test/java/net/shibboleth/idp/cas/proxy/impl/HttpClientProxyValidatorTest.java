@@ -22,13 +22,20 @@ import static org.testng.Assert.fail;
 
 import java.io.IOException;
 import java.net.URI;
+import java.security.GeneralSecurityException;
 import java.security.cert.CertificateException;
+import java.time.Duration;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.Nonnull;
 
 import javax.security.auth.login.FailedLoginException;
 import jakarta.servlet.ServletException;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
 
+import org.apache.http.impl.client.HttpClients;
 import org.eclipse.jetty.server.Connector;
 import org.eclipse.jetty.server.Handler;
 import org.eclipse.jetty.server.Request;
@@ -37,6 +44,7 @@ import org.eclipse.jetty.server.ServerConnector;
 import org.eclipse.jetty.server.handler.AbstractHandler;
 import org.eclipse.jetty.util.ssl.SslContextFactory;
 import org.opensaml.profile.context.ProfileRequestContext;
+import org.opensaml.security.httpclient.HttpClientSecurityParameters;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.ApplicationContext;
 import org.testng.annotations.DataProvider;
@@ -126,6 +134,45 @@ public class HttpClientProxyValidatorTest extends AbstractFlowActionTest {
         }
     }
 
+    @Test
+    public void testPooledValidation() throws Exception {
+        final CountDownLatch release = new CountDownLatch(1);
+        final HttpClientProxyValidator pooled =
+                new HttpClientProxyValidator(HttpClients.createDefault(), new HttpClientSecurityParameters()) {
+                    @Override
+                    protected int connect(@Nonnull final URI uri, @Nonnull final Service service) {
+                        if (uri.getHost().startsWith("slow")) {
+                            try {
+                                release.await(5, TimeUnit.SECONDS);
+                            } catch (final InterruptedException e) {
+                                Thread.currentThread().interrupt();
+                            }
+                        }
+                        return 200;
+                    }
+                };
+        pooled.setMaxConcurrentValidations(1);
+        pooled.setValidationTimeout(Duration.ofMillis(200));
+        final ProfileRequestContext prc = buildProfileRequestContext("https://localhost/");
+
+        pooled.validate(prc, new URI("https://fast.example.org/?pgtId=A&pgtIOU=B"));
+
+        // Times out while the only pool thread remains occupied.
+        try {
+            pooled.validate(prc, new URI("https://slow.example.org/?pgtId=A&pgtIOU=B"));
+            fail("Slow validation should have timed out");
+        } catch (final GeneralSecurityException e) {
+            assertTrue(e.getMessage().contains("Timed out"));
+        }
+
+        release.countDown();
+        Thread.sleep(100);
+        pooled.validate(prc, new URI("https://fast.example.org/?pgtId=C&pgtIOU=D"));
+        
+        pooled.setMaxConcurrentValidations(0);
+        pooled.validate(prc, new URI("https://fast.example.org/?pgtId=E&pgtIOU=F"));
+    }
+
     private Server startServer(final String keyStorePath, final Handler handler) {
         final Server server = new Server();
 
@@ -111,4 +111,28 @@ public class MetadataServiceRegistryTest {
             assertEquals(actual.isSingleLogoutParticipant(), expected.isSingleLogoutParticipant());
         }
     }
-}
\ No newline at end of file
+
+    @Test(dataProvider = "parameters")
+    public void testCachedLookup(final String serviceURL, final Service expected)
+            throws ComponentInitializationException {
+        final PredicateRoleDescriptorResolver wrapper = new PredicateRoleDescriptorResolver(metadataResolver);
+        wrapper.initialize();
+        final MetadataServiceRegistry registry = new MetadataServiceRegistry(wrapper);
+        registry.setCacheSize(10);
+        registry.setMetadataResolver(metadataResolver);
+        final Service first = registry.lookup(serviceURL);
+        final Service actual = registry.lookup(serviceURL);
+        if (expected == null) {
+            assertNull(first);
+            assertNull(actual);
+        } else {
+            assertNotNull(actual);
+            assertNotSame(actual, first);
+            assertSame(actual.getRoleDescriptor(), first.getRoleDescriptor());
+            assertEquals(actual.getName(), expected.getName());
+            assertEquals(actual.getGroup(), expected.getGroup());
+            assertEquals(actual.isAuthorizedToProxy(), expected.isAuthorizedToProxy());
+            assertEquals(actual.isSingleLogoutParticipant(), expected.isSingleLogoutParticipant());
+        }
+    }
+}
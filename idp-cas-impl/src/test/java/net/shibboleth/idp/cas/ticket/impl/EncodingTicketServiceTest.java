@@ -182,6 +182,30 @@ public class EncodingTicketServiceTest {
         assertNotNull(ticketService.fetchProxyGrantingTicket(pgt.getId()));
     }
 
+    @Test
+    public void testCompactEncoding() throws Exception {
+        final TicketState state = newState("fitzgerald");
+        final String service = "https://www.example.com/s3/";
+        final Instant expiry = Instant.now().plusSeconds(5);
+        final ServiceTicket json = ticketService.createServiceTicket("notused", expiry, service, state, false);
+        ticketService.setCompactEncoding(true);
+        try {
+            final ServiceTicket st1 = ticketService.createServiceTicket("notused", expiry, service, state, false);
+            assertTrue(st1.getId().matches("ST-[A-Za-z0-9]+-*"));
+            assertTrue(st1.getId().length() < json.getId().length());
+            final ServiceTicket st2 = ticketService.removeServiceTicket(st1.getId());
+            assertNotNull(st2);
+            assertEquals(expiry.truncatedTo(ChronoUnit.MILLIS), st2.getExpirationInstant());
+            assertEquals(service, st2.getService());
+            assertFalse(st2.isRenew());
+            assertEquals(state, st2.getTicketState());
+            // Tickets issued in the original form remain valid.
+            assertNotNull(ticketService.removeServiceTicket(json.getId()));
+        } finally {
+            ticketService.setCompactEncoding(false);
+        }
+    }
+
     private TicketState newState(final String principal) {
         return new TicketState(sessionIdGenerator.generateIdentifier(), principal,
                 Instant.now().truncatedTo(ChronoUnit.MILLIS), "authn/Password");
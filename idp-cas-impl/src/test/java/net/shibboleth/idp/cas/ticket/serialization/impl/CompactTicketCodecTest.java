@@ -0,0 +1,112 @@
+/*
+ * Licensed to the University Corporation for Advanced Internet Development,
+ * Inc. (UCAID) under one or more contributor license agreements.  See the
+ * NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The UCAID licenses this file to You under the Apache
+ * License, Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package net.shibboleth.idp.cas.ticket.serialization.impl;
+
+import net.shibboleth.idp.cas.ticket.ProxyGrantingTicket;
+import net.shibboleth.idp.cas.ticket.ProxyTicket;
+import net.shibboleth.idp.cas.ticket.ServiceTicket;
+import net.shibboleth.idp.cas.ticket.TicketState;
+import org.testng.annotations.Test;
+
+import static org.testng.Assert.*;
+
+import java.io.IOException;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.Set;
+
+/**
+ * Unit test for {@link CompactTicketCodec}.
+ */
+public class CompactTicketCodecTest {
+
+    @Test
+    public void testServiceTicket() throws Exception {
+        final ServiceTicket st1 = new ServiceTicket(
+                "ST-0123456789-6027f6e93c11b1f587857ee0e7689c27",
+                "https://nobody.example.org/cas/",
+                Instant.now().truncatedTo(ChronoUnit.MILLIS),
+                true);
+        final TicketState state = new TicketState("idpsess-6ebae421b142adb35a3a6303116c3f", "bob",
+                st1.getExpirationInstant().minusSeconds(30), "authn/Password");
+        state.setConsentedAttributeIds(Set.of("uid", "mail", "sn\u00e9"));
+        st1.setTicketState(state);
+
+        final String encoded = CompactTicketCodec.encode(st1);
+        assertTrue(CompactTicketCodec.isCompact(encoded));
+        assertTrue(encoded.length() < new ServiceTicketSerializer().serialize(st1).length());
+
+        final ServiceTicket st2 = CompactTicketCodec.decode(ServiceTicket.class, st1.getId(), encoded);
+        assertEquals(st2.getId(), st1.getId());
+        assertEquals(st2.getService(), st1.getService());
+        assertEquals(st2.getExpirationInstant(), st1.getExpirationInstant());
+        assertTrue(st2.isRenew());
+        assertEquals(st2.getTicketState(), st1.getTicketState());
+        assertEquals(st2.getTicketState().getConsentedAttributeIds(), Set.of("uid", "mail", "sn\u00e9"));
+    }
+
+    @Test
+    public void testProxyTickets() throws Exception {
+        final ProxyTicket pt1 = new ProxyTicket(
+                "PT-0123456789-e1e212143527d57053e7a72d75b3ccd6",
+                "https://nobody.example.org",
+                Instant.now().truncatedTo(ChronoUnit.MILLIS),
+                "PGT-0123456789-c0dddd0f73b9494f7fe0b549e8c28002");
+        final ProxyTicket pt2 =
+                CompactTicketCodec.decode(ProxyTicket.class, pt1.getId(), CompactTicketCodec.encode(pt1));
+        assertEquals(pt2.getService(), pt1.getService());
+        assertEquals(pt2.getExpirationInstant(), pt1.getExpirationInstant());
+        assertEquals(pt2.getPgtId(), pt1.getPgtId());
+        assertNull(pt2.getTicketState());
+
+        final ProxyGrantingTicket pgt1 = new ProxyGrantingTicket(
+                "PGT-0123456789-c0dddd0f73b9494f7fe0b549e8c28002",
+                "https://nobody.example.org",
+                Instant.now().truncatedTo(ChronoUnit.MILLIS),
+                null);
+        pgt1.setTicketState(new TicketState("idpsess-6ebae421b142adb35a3a6303116c3f", "bob",
+                pgt1.getExpirationInstant().plusSeconds(1), "Some Custom Method"));
+        final ProxyGrantingTicket pgt2 =
+                CompactTicketCodec.decode(ProxyGrantingTicket.class, pgt1.getId(), CompactTicketCodec.encode(pgt1));
+        assertNull(pgt2.getParentId());
+        assertEquals(pgt2.getTicketState(), pgt1.getTicketState());
+    }
+
+    @Test
+    public void testInvalid() throws Exception {
+        final ServiceTicket st = new ServiceTicket("ST-1", "https://nobody.example.org", Instant.now(), false);
+        final String encoded = CompactTicketCodec.encode(st);
+        
+        assertFalse(CompactTicketCodec.isCompact(new ServiceTicketSerializer().serialize(st)));
+
+        try {
+            CompactTicketCodec.decode(ProxyTicket.class, "PT-1", encoded);
+            fail("Type mismatch should have failed");
+        } catch (final IOException e) {
+            
+        }
+
+        try {
+            CompactTicketCodec.decode(ServiceTicket.class, "ST-1", encoded.substring(0, encoded.length() - 3));
+            fail("Truncated ticket should have failed");
+        } catch (final IOException e) {
+            
+        }
+    }
+}
@@ -43,6 +43,9 @@ public final class ConsentContext extends BaseContext {
     /** Map of current consent extracted from user input and keyed by consent id. */
     @Nonnull @NonnullElements @Live private Map<String, Consent> currentConsents;
 
+    /** Whether previous consent should be stored again although it still applies. */
+    private boolean rewriteRequired;
+
     /** Constructor. */
     public ConsentContext() {
         previousConsents = new LinkedHashMap<>();
@@ -67,11 +70,35 @@ public final class ConsentContext extends BaseContext {
         return previousConsents;
     }
 
+    /**
+     * Get whether previous consent should be stored again although it still applies, e.g., to migrate it to
+     * a newer format.
+     * 
+     * @return whether to store the current consent even if no new consent is required
+     * 
+     * @since 5.0.0
+     */
+    public boolean isRewriteRequired() {
+        return rewriteRequired;
+    }
+
+    /**
+     * Set whether previous consent should be stored again although it still applies.
+     * 
+     * @param flag flag to set
+     * 
+     * @since 5.0.0
+     */
+    public void setRewriteRequired(final boolean flag) {
+        rewriteRequired = flag;
+    }
+
     /** {@inheritDoc} */
     @Override public String toString() {
         return MoreObjects.toStringHelper(this)
                 .add("previousConsents", previousConsents)
                 .add("chosenConsents", currentConsents)
+                .add("rewriteRequired", rewriteRequired)
                 .toString();
     }
 
@@ -22,9 +22,10 @@ import java.time.Instant;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.HashSet;
 import java.util.Iterator;
-import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Set;
 import java.util.function.Function;
 
 import javax.annotation.Nonnull;
@@ -167,19 +168,8 @@ public class AbstractConsentIndexedStorageAction extends AbstractConsentStorageA
      * @throws IOException if errors occur in the read process
      */
     @Nonnull @NonnullElements protected List<String> getStorageKeysFromIndex() throws IOException {
-
-        final StorageRecord<Collection<String>> storageRecord =
-            getStorageService().read(getStorageContext(), getStorageIndexKey());
-
-        log.debug("{} Read storage record '{}' with context '{}' and key '{}'", getLogPrefix(), storageRecord,
-                getStorageContext(), getStorageIndexKey());
-
-        if (storageRecord == null) {
-            return Collections.emptyList();
-        }
-
-        return new ArrayList<>(storageRecord.getValue(getStorageKeysSerializer(), getStorageContext(),
-                getStorageIndexKey()));
+        final List<String> keys = readStorageIndex();
+        return keys != null ? keys : new ArrayList<>();
     }
 
     /**
@@ -191,25 +181,19 @@ public class AbstractConsentIndexedStorageAction extends AbstractConsentStorageA
      */
     protected boolean addKeyToStorageIndex(@Nonnull final String keyToAdd) throws IOException {
 
-        final StorageRecord<?> storageRecord = getStorageService().read(getStorageContext(), getStorageIndexKey());
-        log.debug("{} Read storage record '{}' with context '{}' and key '{}'", getLogPrefix(), storageRecord,
-                getStorageContext(), getStorageIndexKey());
-
-        if (storageRecord == null) {
+        final List<String> keys = readStorageIndex();
+        if (keys == null) {
             log.debug("{} Creating storage index with key '{}'", getLogPrefix(), keyToAdd);
             return getStorageService().create(getStorageContext(), getStorageIndexKey(),
                     Collections.singletonList(keyToAdd), storageKeysSerializer, null);
+        } else if (keys.contains(keyToAdd)) {
+            log.debug("{} Storage key '{}' already indexed, nothing to do", getLogPrefix(), keyToAdd);
+            return false;
         }
-        
-        final LinkedHashSet<String> keys = new LinkedHashSet<>(getStorageKeysFromIndex());
-        if (keys.add(keyToAdd)) {
-            log.debug("{} Updating storage index by adding key '{}'", getLogPrefix(), keyToAdd);
-            return getStorageService().update(getStorageContext(), getStorageIndexKey(), keys,
-                    storageKeysSerializer, null);
-        }
-        
-        log.debug("{} Storage key '{}' already indexed, nothing to do", getLogPrefix(), keyToAdd);
-        return false;
+
+        log.debug("{} Updating storage index by adding key '{}'", getLogPrefix(), keyToAdd);
+        keys.add(keyToAdd);
+        return writeStorageIndex(keys);
     }
 
     /**
@@ -221,28 +205,20 @@ public class AbstractConsentIndexedStorageAction extends AbstractConsentStorageA
      */
     protected boolean removeKeyFromStorageIndex(@Nonnull final String keyToRemove) throws IOException {
 
-        final StorageRecord<?> storageRecord = getStorageService().read(getStorageContext(), getStorageIndexKey());
-        log.debug("{} Read storage record '{}' with context '{}' and key '{}'", getLogPrefix(), storageRecord,
-                getStorageContext(), getStorageIndexKey());
-
-        if (storageRecord == null) {
+        final List<String> keys = readStorageIndex();
+        if (keys == null) {
             log.debug("{} No storage record exists with context '{}' and key '{}', nothing to do", getLogPrefix(),
                     getStorageContext(), getStorageIndexKey());
             return false;
-        }
-        
-        final LinkedHashSet<String> keys = new LinkedHashSet<>(getStorageKeysFromIndex());
-        if (keys.remove(keyToRemove)) {
+        } else if (keys.remove(keyToRemove)) {
             log.debug("{} Updating storage index by removing key '{}'", getLogPrefix(), keyToRemove);
-            return getStorageService().update(getStorageContext(), storageIndexKey, keys, storageKeysSerializer,
-                    null);
+            return writeStorageIndex(keys);
         }
         
         log.debug("{} Storage key '{}' not indexed, nothing to do", getLogPrefix(), keyToRemove);
         return false;
     }
 
-//CheckStyle: ReturnCount OFF
     /**
      * Storage records will be pruned based on the record maximums set on the flow descriptor,
      * and the storage service value size. Below a defined threshold, the basic maximum is applied, while at
@@ -257,6 +233,26 @@ public class AbstractConsentIndexedStorageAction extends AbstractConsentStorageA
      * @throws IOException if an error occurs writing to the storage service
      */
     protected void pruneStorageRecords(@Nonnull final ProfileRequestContext profileRequestContext) throws IOException {
+        final List<String> keys = readStorageIndex();
+        if (keys != null && pruneStorageRecords(profileRequestContext, keys)) {
+            writeStorageIndex(keys);
+        }
+    }
+
+//CheckStyle: ReturnCount OFF
+    /**
+     * Prune storage records as described in {@link #pruneStorageRecords(ProfileRequestContext)}, removing
+     * the pruned keys from the supplied list but not from the index storage record.
+     * 
+     * @param profileRequestContext the profile request context
+     * @param keys the indexed storage keys, in index order
+     * 
+     * @return true iff any keys were removed from the list
+     * 
+     * @throws IOException if an error occurs writing to the storage service
+     */
+    private boolean pruneStorageRecords(@Nonnull final ProfileRequestContext profileRequestContext,
+            @Nonnull @NonnullElements final List<String> keys) throws IOException {
 
         final ConsentFlowDescriptor flowDescriptor = getConsentFlowDescriptor();
         int maxStoredRecords = flowDescriptor.getMaximumNumberOfStoredRecords();
@@ -267,27 +263,28 @@ public class AbstractConsentIndexedStorageAction extends AbstractConsentStorageA
         if (maxStoredRecords <= 0) {
             log.trace("{} Will not prune storage records, maximum number of records is not greater than zero",
                     getLogPrefix());
-            return;
+            return false;
         }
 
-        List<String> keys = getStorageKeysFromIndex();
-
         if (keys.size() < maxStoredRecords) {
             log.debug("{} Will not prune storage records, number of keys '{}' is less than max number of records '{}'",
                     getLogPrefix(), keys.size(), maxStoredRecords);
-            return;
+            return false;
         }
 
+        List<String> candidates = keys;
         if (storageKeysStrategy != null) {
-            final List<String> sortedKeys = storageKeysStrategy.apply(new Pair<>(profileRequestContext, keys));
+            final List<String> sortedKeys =
+                    storageKeysStrategy.apply(new Pair<>(profileRequestContext, new ArrayList<>(keys)));
             if (sortedKeys != null) {
-                keys = sortedKeys;
+                candidates = sortedKeys;
             }
         }
 
-        int numberOfKeys = keys.size();
+        int numberOfKeys = candidates.size();
+        final Set<String> pruned = new HashSet<>();
 
-        final Iterator<String> keysIterator = keys.iterator();
+        final Iterator<String> keysIterator = candidates.iterator();
 
         while (keysIterator.hasNext() && numberOfKeys >= maxStoredRecords) {
 
@@ -303,11 +300,55 @@ public class AbstractConsentIndexedStorageAction extends AbstractConsentStorageA
                 numberOfKeys--;
             }
 
-            log.debug("{} Removing key '{}' from storage index", getLogPrefix(), keyToDelete);
-            removeKeyFromStorageIndex(keyToDelete);
+            pruned.add(keyToDelete);
+        }
+        
+        if (pruned.isEmpty()) {
+            return false;
+        }
+        
+        log.debug("{} Removing {} pruned key(s) from storage index", getLogPrefix(), pruned.size());
+        keys.removeAll(pruned);
+        return true;
+    }
+//CheckStyle: ReturnCount ON
+
+    /**
+     * Read the storage keys from the storage index record.
+     * 
+     * @return a modifiable copy of the storage keys, or null if there is no storage index record
+     * 
+     * @throws IOException if errors occur in the read process
+     */
+    @Nullable @NonnullElements private List<String> readStorageIndex() throws IOException {
+        
+        final StorageRecord<Collection<String>> storageRecord =
+                getStorageService().read(getStorageContext(), getStorageIndexKey());
+
+        log.debug("{} Read storage record '{}' with context '{}' and key '{}'", getLogPrefix(), storageRecord,
+                getStorageContext(), getStorageIndexKey());
+
+        if (storageRecord == null) {
+            return null;
         }
+        
+        return new ArrayList<>(storageRecord.getValue(getStorageKeysSerializer(), getStorageContext(),
+                getStorageIndexKey()));
+    }
+    
+    /**
+     * Overwrite the storage index record.
+     * 
+     * @param keys the storage keys to write
+     * 
+     * @return true if the update succeeded, false otherwise
+     * 
+     * @throws IOException if an error occurs writing to the storage service
+     */
+    private boolean writeStorageIndex(@Nonnull @NonnullElements final Collection<String> keys) throws IOException {
+        return getStorageService().update(getStorageContext(), getStorageIndexKey(), keys, storageKeysSerializer,
+                null);
     }
-  //CheckStyle: ReturnCount ON
 
     /**
      * Store a profile interceptor result.
@@ -355,10 +396,25 @@ public class AbstractConsentIndexedStorageAction extends AbstractConsentStorageA
     protected void storeResultWithIndex(@Nonnull final ProfileRequestContext profileRequestContext,
             @Nonnull final ProfileInterceptorResult result) throws IOException {
 
-        pruneStorageRecords(profileRequestContext);
-
-        storeResult(result);
-
-        addKeyToStorageIndex(result.getStorageKey());
+        final String keyToAdd = result.getStorageKey();
+        final List<String> keys = readStorageIndex();
+        
+        if (keys == null) {
+            storeResult(result);
+            log.debug("{} Creating storage index with key '{}'", getLogPrefix(), keyToAdd);
+            getStorageService().create(getStorageContext(), getStorageIndexKey(),
+                    Collections.singletonList(keyToAdd), storageKeysSerializer, null);
+        } else if (keys.contains(keyToAdd)) {
+            // Replacing an existing record doesn't change the number of records.
+            log.debug("{} Storage key '{}' already indexed, no pruning or index update needed", getLogPrefix(),
+                    keyToAdd);
+            storeResult(result);
+        } else {
+            pruneStorageRecords(profileRequestContext, keys);
+            storeResult(result);
+            log.debug("{} Updating storage index by adding key '{}'", getLogPrefix(), keyToAdd);
+            keys.add(keyToAdd);
+            writeStorageIndex(keys);
+        }
     }
 }
@@ -18,6 +18,7 @@
 package net.shibboleth.idp.consent.logic.impl;
 
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.LinkedHashMap;
 import java.util.List;
@@ -127,15 +128,14 @@ public class AttributeReleaseConsentFunction implements Function<ProfileRequestC
             final Consent unsortedConsent = new Consent();
             consent.setId(attribute.getId());
 
+            final Function<Collection<IdPAttributeValue>,String> hashFunction =
+                    ((AttributeReleaseFlowDescriptor) consentFlowDescriptor).getAttributeValuesHashFunction();
+            List<IdPAttributeValue> sorted = null;
             if (consentFlowDescriptor.compareValues()) {
-                unsortedConsent.setValue(
-                        ((AttributeReleaseFlowDescriptor) consentFlowDescriptor).getAttributeValuesHashFunction().apply(
-                                attribute.getValues()));
-                final List<IdPAttributeValue> sorted = new ArrayList<>(attribute.getValues());
+                unsortedConsent.setValue(hashFunction.apply(attribute.getValues()));
+                sorted = new ArrayList<>(attribute.getValues());
                 Collections.sort(sorted);
-                consent.setValue(
-                        ((AttributeReleaseFlowDescriptor) consentFlowDescriptor).getAttributeValuesHashFunction().apply(
-                                sorted));
+                consent.setValue(hashFunction.apply(sorted));
             }
 
             // Remember previous choice.
@@ -146,7 +146,22 @@ public class AttributeReleaseConsentFunction implements Function<ProfileRequestC
                         consent.setApproved(previousConsent.isApproved());
                     } else if (Objects.equals(unsortedConsent.getValue(), previousConsent.getValue())) {
                         consent.setApproved(previousConsent.isApproved());
-                    }  
+                    } else if (hashFunction instanceof StreamingAttributeValuesHashFunction
+                            && ((StreamingAttributeValuesHashFunction) hashFunction).isLegacyHash(
+                                    previousConsent.getValue())) {
+                        // Consent stored before switching hash formats, compare using the older format.
+                        // A match is migrated: the previous consent is restated in the new format, so it
+                        // still matches, and the record is flagged to be stored again in that format.
+                        final Function<Collection<IdPAttributeValue>,String> legacyFunction =
+                                ((StreamingAttributeValuesHashFunction) hashFunction).getLegacyFunction();
+                        if (Objects.equals(legacyFunction.apply(sorted), previousConsent.getValue())
+                                || Objects.equals(legacyFunction.apply(attribute.getValues()),
+                                        previousConsent.getValue())) {
+                            consent.setApproved(previousConsent.isApproved());
+                            previousConsent.setValue(consent.getValue());
+                            consentContext.setRewriteRequired(true);
+                        }
+                    }
                 } else {
                     consent.setApproved(previousConsent.isApproved());
                 }
@@ -0,0 +1,238 @@
+/*
+ * Licensed to the University Corporation for Advanced Internet Development,
+ * Inc. (UCAID) under one or more contributor license agreements.  See the
+ * NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The UCAID licenses this file to You under the Apache
+ * License, Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package net.shibboleth.idp.consent.logic.impl;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collection;
+import java.util.function.Function;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import org.opensaml.core.xml.XMLObject;
+import org.opensaml.core.xml.io.MarshallingException;
+import org.opensaml.core.xml.schema.XSString;
+import org.opensaml.core.xml.schema.XSURI;
+import org.opensaml.core.xml.util.XMLObjectSupport;
+import org.opensaml.saml.saml2.core.NameIDType;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import net.shibboleth.idp.attribute.ByteAttributeValue;
+import net.shibboleth.idp.attribute.EmptyAttributeValue;
+import net.shibboleth.idp.attribute.IdPAttributeValue;
+import net.shibboleth.idp.attribute.ScopedStringAttributeValue;
+import net.shibboleth.idp.attribute.StringAttributeValue;
+import net.shibboleth.idp.attribute.XMLObjectAttributeValue;
+import net.shibboleth.shared.annotation.constraint.NonnullElements;
+import net.shibboleth.shared.annotation.constraint.NotEmpty;
+import net.shibboleth.shared.codec.Base64Support;
+import net.shibboleth.shared.codec.EncodingException;
+import net.shibboleth.shared.xml.SerializeSupport;
+
+/**
+ * Function to calculate the hash of the values of an IdP attribute by feeding a type tag and the
+ * length-prefixed bytes of each value directly into a SHA-256 digest.
+ * 
+ * <p>Returns <code>null</code> for a <code>null</code> input or empty collection of IdP attribute values.
+ * <code>Null</code> IdP attribute values are ignored.</p>
+ * 
+ * <p>The hash returned is the Base64 encoded representation of the digest, prefixed by
+ * {@link #FORMAT_PREFIX}, which distinguishes it from the hashes produced by
+ * {@link AttributeValuesHashFunction}. Hashes in that older format can be recognized with
+ * {@link #isLegacyHash(String)} and recomputed using {@link #getLegacyFunction()}, so that previously
+ * stored consent can still be compared. A matching legacy value is migrated: the consent is stored again in
+ * the new format, so the older format is only computed once per stored consent.</p>
+ * 
+ * <p>Simple XML values (NameIDs, strings and URIs) are hashed by content, including the qualifiers and
+ * format of a NameID, while other XML values are still marshalled and serialized.</p>
+ * 
+ * @since 5.0.0
+ */
+public class StreamingAttributeValuesHashFunction implements Function<Collection<IdPAttributeValue>,String> {
+
+    /** Prefix identifying hashes produced by this function. */
+    @Nonnull @NotEmpty public static final String FORMAT_PREFIX = "2:";
+
+    /** Tag for string values. */
+    private static final byte TAG_STRING = 's';
+
+    /** Tag for scoped string values. */
+    private static final byte TAG_SCOPED = 'S';
+
+    /** Tag for byte values. */
+    private static final byte TAG_BYTES = 'B';
+
+    /** Tag for empty values. */
+    private static final byte TAG_EMPTY = 'E';
+
+    /** Tag for XML values hashed by content. */
+    private static final byte TAG_XML_CONTENT = 'x';
+
+    /** Tag for NameID values hashed by content. */
+    private static final byte TAG_NAMEID = 'n';
+
+    /** Tag for XML values hashed in serialized form. */
+    private static final byte TAG_XML = 'X';
+
+    /** Tag for values of unknown types. */
+    private static final byte TAG_OTHER = 'U';
+
+    /** Per-thread digest. */
+    @Nonnull private static final ThreadLocal<MessageDigest> DIGEST = ThreadLocal.withInitial(() -> {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (final NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    });
+
+    /** Class logger. */
+    @Nonnull private final Logger log = LoggerFactory.getLogger(StreamingAttributeValuesHashFunction.class);
+
+    /** Function producing hashes in the older format. */
+    @Nonnull private final Function<Collection<IdPAttributeValue>,String> legacyFunction;
+
+    /** Constructor. */
+    public StreamingAttributeValuesHashFunction() {
+        legacyFunction = new AttributeValuesHashFunction();
+    }
+
+    /**
+     * Get whether a hash was produced by the older {@link AttributeValuesHashFunction}.
+     * 
+     * @param hash hash to check
+     * 
+     * @return true iff the hash is non-null and not in this function's format
+     */
+    public boolean isLegacyHash(@Nullable final String hash) {
+        return hash != null && !hash.startsWith(FORMAT_PREFIX);
+    }
+
+    /**
+     * Get a function producing hashes in the older format, for comparison with previously stored values.
+     * 
+     * @return function producing legacy hashes
+     */
+    @Nonnull public Function<Collection<IdPAttributeValue>,String> getLegacyFunction() {
+        return legacyFunction;
+    }
+
+    // CheckStyle: CyclomaticComplexity OFF
+    /** {@inheritDoc} */
+    @Nullable public String apply(@Nullable @NonnullElements final Collection<IdPAttributeValue> input) {
+
+        if (input == null || input.isEmpty()) {
+            return null;
+        }
+
+        final MessageDigest digest = DIGEST.get();
+        digest.reset();
+
+        for (final IdPAttributeValue value : input) {
+            if (value == null) {
+                continue;
+            }
+            if (log.isTraceEnabled()) {
+                log.trace("Considering value of '{}' with native value {}", value.getClass(), value.getNativeValue());
+            }
+            if (value instanceof ScopedStringAttributeValue) {
+                digest.update(TAG_SCOPED);
+                update(digest, ((ScopedStringAttributeValue) value).getValue());
+                update(digest, ((ScopedStringAttributeValue) value).getScope());
+            } else if (value instanceof XMLObjectAttributeValue) {
+                final XMLObject xmlObject = ((XMLObjectAttributeValue) value).getValue();
+                if (xmlObject instanceof NameIDType) {
+                    final NameIDType nameID = (NameIDType) xmlObject;
+                    digest.update(TAG_NAMEID);
+                    update(digest, nameID.getValue());
+                    update(digest, nameID.getFormat());
+                    update(digest, nameID.getNameQualifier());
+                    update(digest, nameID.getSPNameQualifier());
+                    update(digest, nameID.getSPProvidedID());
+                } else if (xmlObject instanceof XSString) {
+                    digest.update(TAG_XML_CONTENT);
+                    update(digest, ((XSString) xmlObject).getValue());
+                } else if (xmlObject instanceof XSURI) {
+                    digest.update(TAG_XML_CONTENT);
+                    update(digest, ((XSURI) xmlObject).getURI());
+                } else {
+                    try {
+                        digest.update(TAG_XML);
+                        update(digest, SerializeSupport.nodeToString(XMLObjectSupport.marshall(xmlObject)));
+                    } catch (final MarshallingException e) {
+                        log.error("Error while marshalling XMLObject value", e);
+                        return null;
+                    }
+                }
+            } else if (value instanceof StringAttributeValue) {
+                digest.update(TAG_STRING);
+                update(digest, ((StringAttributeValue) value).getValue());
+            } else if (value instanceof EmptyAttributeValue) {
+                digest.update(TAG_EMPTY);
+                update(digest, value.getNativeValue().toString());
+            } else if (value instanceof ByteAttributeValue) {
+                digest.update(TAG_BYTES);
+                update(digest, ((ByteAttributeValue) value).getValue());
+            } else if (value.getNativeValue() != null) {
+                log.debug("Unknown atribute value '{}' hashed as {}", value.getClass(), value.getNativeValue());
+                digest.update(TAG_OTHER);
+                update(digest, value.getNativeValue().toString());
+            } else {
+                log.warn("Unknown attribute value '{}' with no value was not hashed", value.getClass());
+            }
+        }
+
+        try {
+            return FORMAT_PREFIX + Base64Support.encode(digest.digest(), false);
+        } catch (final EncodingException e) {
+            log.error("Error while encoding attribute values hash", e);
+            return null;
+        }
+    }
+    // CheckStyle: CyclomaticComplexity ON
+
+    /**
+     * Add a length-prefixed string to the digest.
+     * 
+     * @param digest digest to update
+     * @param s string to add, with null treated as empty
+     */
+    private void update(@Nonnull final MessageDigest digest, @Nullable final String s) {
+        update(digest, s != null ? s.getBytes(StandardCharsets.UTF_8) : new byte[0]);
+    }
+
+    /**
+     * Add length-prefixed bytes to the digest.
+     * 
+     * @param digest digest to update
+     * @param bytes bytes to add
+     */
+    private void update(@Nonnull final MessageDigest digest, @Nonnull final byte[] bytes) {
+        final int len = bytes.length;
+        digest.update((byte) (len >>> 24));
+        digest.update((byte) (len >>> 16));
+        digest.update((byte) (len >>> 8));
+        digest.update((byte) len);
+        digest.update(bytes);
+    }
+
+}
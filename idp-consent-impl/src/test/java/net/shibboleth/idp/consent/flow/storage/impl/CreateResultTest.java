@@ -195,6 +195,24 @@ public class CreateResultTest extends AbstractConsentIndexedStorageActionTest {
         Assert.assertEquals(readStorageKeysFromIndex(), Arrays.asList("key2", "key3"));
     }
 
+    @Test public void testMaxStoredRecordsUpdate() throws Exception {
+        descriptor.setExpandedNumberOfStoredRecords(2);
+        descriptor.setMaximumNumberOfStoredRecords(2);
+
+        final ConsentContext consentCtx = prc.getSubcontext(ConsentContext.class);
+        consentCtx.getCurrentConsents().putAll(ConsentTestingSupport.newConsentMap());
+
+        ActionTestingSupport.assertProceedEvent(buildAction("key1").execute(src));
+        ActionTestingSupport.assertProceedEvent(buildAction("key2").execute(src));
+        Assert.assertEquals(readStorageKeysFromIndex(), Arrays.asList("key1", "key2"));
+
+        // Replacing an indexed record leaves the others alone.
+        ActionTestingSupport.assertProceedEvent(buildAction("key2").execute(src));
+        Assert.assertEquals(readStorageKeysFromIndex(), Arrays.asList("key1", "key2"));
+        Assert.assertEquals(readConsentFromStorage("key1"), ConsentTestingSupport.newConsentMap());
+        Assert.assertEquals(readConsentFromStorage("key2"), ConsentTestingSupport.newConsentMap());
+    }
+
     @Test public void testNoMaxStoredRecords() throws Exception {
         descriptor.setMaximumNumberOfStoredRecords(0);
         descriptor.setExpandedNumberOfStoredRecords(0);
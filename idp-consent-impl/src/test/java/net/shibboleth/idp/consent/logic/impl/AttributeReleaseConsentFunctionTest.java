@@ -19,10 +19,16 @@ package net.shibboleth.idp.consent.logic.impl;
 
 import static org.testng.Assert.assertTrue;
 
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
 
 import net.shibboleth.idp.attribute.IdPAttribute;
+import net.shibboleth.idp.attribute.IdPAttributeValue;
+import net.shibboleth.idp.attribute.StringAttributeValue;
 import net.shibboleth.idp.consent.Consent;
 import net.shibboleth.idp.consent.context.AttributeReleaseContext;
 import net.shibboleth.idp.consent.context.ConsentContext;
@@ -253,6 +259,110 @@ public class AttributeReleaseConsentFunctionTest {
     }
     
 
+    @Test public void testRememberLegacyConsentsStreamingHash() {
+        final Consent previousConsent = new Consent();
+        previousConsent.setId("attribute1");
+        previousConsent.setValue(new AttributeValuesHashFunction().apply(ConsentTestingSupport.newAttributeMap()
+                .get("attribute1").getValues()));
+        previousConsent.setApproved(true);
+        final ConsentContext consentCtx = new ConsentContext();
+        consentCtx.getPreviousConsents().put(previousConsent.getId(), previousConsent);
+        prc.addSubcontext(consentCtx);
+
+        final AttributeReleaseContext arc = new AttributeReleaseContext();
+        arc.getConsentableAttributes().putAll(ConsentTestingSupport.newAttributeMap());
+        prc.addSubcontext(arc);
+        setUpDescriptor(true);
+        flowDescriptor.setAttributeValuesHashFunction(new StreamingAttributeValuesHashFunction());
+
+        final Map<String, Consent> result = function.apply(prc);
+        final Consent consent = result.get("attribute1");
+        assertTrue(consent.isApproved());
+        assertTrue(consent.getValue().startsWith(StreamingAttributeValuesHashFunction.FORMAT_PREFIX));
+        Assert.assertEquals(consent.getValue(), previousConsent.getValue());
+        assertTrue(consentCtx.isRewriteRequired());
+        Assert.assertFalse(result.get("attribute2").isApproved());
+        assertTrue(result.get("attribute2").getValue().startsWith(StreamingAttributeValuesHashFunction.FORMAT_PREFIX));
+    }
+
+    @Test public void testLegacyConsentNotRequiredStreamingHash() {
+        final ConsentContext consentCtx = new ConsentContext();
+        for (final IdPAttribute attr : ConsentTestingSupport.newAttributeMap().values()) {
+            final Consent previousConsent = new Consent();
+            previousConsent.setId(attr.getId());
+            previousConsent.setValue(new AttributeValuesHashFunction().apply(attr.getValues()));
+            previousConsent.setApproved(true);
+            consentCtx.getPreviousConsents().put(previousConsent.getId(), previousConsent);
+        }
+        prc.addSubcontext(consentCtx);
+
+        final AttributeReleaseContext arc = new AttributeReleaseContext();
+        arc.getConsentableAttributes().putAll(ConsentTestingSupport.newAttributeMap());
+        prc.addSubcontext(arc);
+        setUpDescriptor(true);
+        flowDescriptor.setAttributeValuesHashFunction(new StreamingAttributeValuesHashFunction());
+
+        consentCtx.getCurrentConsents().putAll(function.apply(prc));
+        Assert.assertFalse(new IsConsentRequiredPredicate().test(prc));
+
+        // A changed value is still detected.
+        arc.getConsentableAttributes().get("attribute1").setValues(
+                Collections.singletonList(new StringAttributeValue("changed")));
+        consentCtx.getCurrentConsents().clear();
+        consentCtx.getCurrentConsents().putAll(function.apply(prc));
+        assertTrue(new IsConsentRequiredPredicate().test(prc));
+    }
+
+    @Test public void testLegacyConsentMigratedStreamingHash() {
+        final AtomicInteger legacyCalls = new AtomicInteger();
+        final StreamingAttributeValuesHashFunction hashFunction = new StreamingAttributeValuesHashFunction() {
+            @Override public Function<Collection<IdPAttributeValue>,String> getLegacyFunction() {
+                return values -> {
+                    legacyCalls.incrementAndGet();
+                    return super.getLegacyFunction().apply(values);
+                };
+            }
+        };
+
+        final ConsentContext consentCtx = new ConsentContext();
+        for (final IdPAttribute attr : ConsentTestingSupport.newAttributeMap().values()) {
+            final Consent previousConsent = new Consent();
+            previousConsent.setId(attr.getId());
+            previousConsent.setValue(new AttributeValuesHashFunction().apply(attr.getValues()));
+            previousConsent.setApproved(true);
+            consentCtx.getPreviousConsents().put(previousConsent.getId(), previousConsent);
+        }
+        prc.addSubcontext(consentCtx);
+
+        final AttributeReleaseContext arc = new AttributeReleaseContext();
+        arc.getConsentableAttributes().putAll(ConsentTestingSupport.newAttributeMap());
+        prc.addSubcontext(arc);
+        setUpDescriptor(true);
+        flowDescriptor.setAttributeValuesHashFunction(hashFunction);
+
+        final Map<String, Consent> migrated = function.apply(prc);
+        assertTrue(legacyCalls.get() > 0);
+        assertTrue(consentCtx.isRewriteRequired());
+        for (final Consent consent : migrated.values()) {
+            assertTrue(consent.isApproved());
+            assertTrue(consent.getValue().startsWith(StreamingAttributeValuesHashFunction.FORMAT_PREFIX));
+        }
+
+        // Second login, reading back the record stored in the new format.
+        legacyCalls.set(0);
+        final ConsentContext nextCtx = new ConsentContext();
+        nextCtx.getPreviousConsents().putAll(migrated);
+        prc.addSubcontext(nextCtx, true);
+
+        nextCtx.getCurrentConsents().putAll(function.apply(prc));
+        Assert.assertEquals(legacyCalls.get(), 0);
+        Assert.assertFalse(nextCtx.isRewriteRequired());
+        Assert.assertFalse(new IsConsentRequiredPredicate().test(prc));
+        for (final Consent consent : nextCtx.getCurrentConsents().values()) {
+            assertTrue(consent.isApproved());
+        }
+    }
+
     @Test public void testRememberPreviousConsentsDifferentValueCompareValues() {
         final Consent previousConsent = new Consent();
         previousConsent.setId("attribute1");
@@ -0,0 +1,120 @@
+/*
+ * Licensed to the University Corporation for Advanced Internet Development,
+ * Inc. (UCAID) under one or more contributor license agreements.  See the
+ * NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The UCAID licenses this file to You under the Apache
+ * License, Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package net.shibboleth.idp.consent.logic.impl;
+
+import java.util.Collections;
+import java.util.List;
+
+import org.opensaml.core.testing.XMLObjectBaseTestCase;
+import org.opensaml.saml.saml2.core.NameID;
+import org.testng.Assert;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import net.shibboleth.idp.attribute.ByteAttributeValue;
+import net.shibboleth.idp.attribute.EmptyAttributeValue;
+import net.shibboleth.idp.attribute.ScopedStringAttributeValue;
+import net.shibboleth.idp.attribute.StringAttributeValue;
+import net.shibboleth.idp.attribute.XMLObjectAttributeValue;
+import net.shibboleth.idp.consent.impl.ConsentTestingSupport;
+
+/** {@link StreamingAttributeValuesHashFunction} unit test. */
+public class StreamingAttributeValuesHashFunctionTest extends XMLObjectBaseTestCase {
+
+    private StreamingAttributeValuesHashFunction function;
+
+    @BeforeMethod public void setUp() {
+        function = new StreamingAttributeValuesHashFunction();
+    }
+
+    @Test public void testNullInput() {
+        Assert.assertNull(function.apply(null));
+    }
+
+    @Test public void testEmptyInput() {
+        Assert.assertNull(function.apply(Collections.emptyList()));
+    }
+
+    @Test public void testFormat() {
+        final String hash = function.apply(ConsentTestingSupport.newAttributeMap().get("attribute2").getValues());
+        Assert.assertNotNull(hash);
+        Assert.assertTrue(hash.startsWith(StreamingAttributeValuesHashFunction.FORMAT_PREFIX));
+        Assert.assertFalse(function.isLegacyHash(hash));
+        Assert.assertEquals(hash,
+                function.apply(ConsentTestingSupport.newAttributeMap().get("attribute2").getValues()));
+    }
+
+    @Test public void testLegacy() {
+        final String legacy = function.getLegacyFunction().apply(
+                ConsentTestingSupport.newAttributeMap().get("attribute1").getValues());
+        Assert.assertTrue(function.isLegacyHash(legacy));
+        Assert.assertFalse(function.isLegacyHash(null));
+        Assert.assertEquals(legacy, new AttributeValuesHashFunction().apply(
+                ConsentTestingSupport.newAttributeMap().get("attribute1").getValues()));
+    }
+
+    @Test public void testOrder() {
+        final StringAttributeValue a = new StringAttributeValue("a");
+        final StringAttributeValue b = new StringAttributeValue("b");
+        Assert.assertNotEquals(function.apply(List.of(a, b)), function.apply(List.of(b, a)));
+    }
+
+    @Test public void testBoundaries() {
+        Assert.assertNotEquals(
+                function.apply(List.of(new StringAttributeValue("ab"), new StringAttributeValue("c"))),
+                function.apply(List.of(new StringAttributeValue("a"), new StringAttributeValue("bc"))));
+    }
+
+    @Test public void testTypes() {
+        final String string = function.apply(List.of(new StringAttributeValue("Value")));
+        final String scoped = function.apply(List.of(new ScopedStringAttributeValue("Value", "Scope")));
+        final String bytes = function.apply(List.of(new ByteAttributeValue("Value".getBytes())));
+        Assert.assertNotEquals(string, scoped);
+        Assert.assertNotEquals(string, bytes);
+        Assert.assertNotEquals(function.apply(List.of(EmptyAttributeValue.NULL)),
+                function.apply(List.of(EmptyAttributeValue.ZERO_LENGTH)));
+    }
+
+    @Test public void testNameID() {
+        final String base = function.apply(List.of(new XMLObjectAttributeValue(buildNameID(null, null, null))));
+        Assert.assertEquals(base,
+                function.apply(List.of(new XMLObjectAttributeValue(buildNameID(null, null, null)))));
+        Assert.assertNotEquals(base, function.apply(List.of(new XMLObjectAttributeValue(
+                buildNameID(NameID.PERSISTENT, null, null)))));
+        Assert.assertNotEquals(base, function.apply(List.of(new XMLObjectAttributeValue(
+                buildNameID(null, "https://idp.example.org", null)))));
+        Assert.assertNotEquals(base, function.apply(List.of(new XMLObjectAttributeValue(
+                buildNameID(null, null, "https://sp.example.org")))));
+        Assert.assertNotEquals(
+                function.apply(List.of(new XMLObjectAttributeValue(
+                        buildNameID(null, "https://example.org", null)))),
+                function.apply(List.of(new XMLObjectAttributeValue(
+                        buildNameID(null, null, "https://example.org")))));
+    }
+
+    private NameID buildNameID(final String format, final String nameQualifier, final String spNameQualifier) {
+        final NameID nameID = buildXMLObject(NameID.DEFAULT_ELEMENT_NAME);
+        nameID.setValue("jdoe");
+        nameID.setFormat(format);
+        nameID.setNameQualifier(nameQualifier);
+        nameID.setSPNameQualifier(spNameQualifier);
+        return nameID;
+    }
+
+}
@@ -0,0 +1,45 @@
+/*
+ * Licensed to the University Corporation for Advanced Internet Development,
+ * Inc. (UCAID) under one or more contributor license agreements.  See the
+ * NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The UCAID licenses this file to You under the Apache
+ * License, Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package net.shibboleth.idp.profile.audit;
+
+import javax.annotation.Nonnull;
+
+import net.shibboleth.shared.annotation.constraint.NotEmpty;
+
+/**
+ * Destination for formatted audit records, used in place of direct logging when records should be written
+ * off the request thread.
+ * 
+ * @since 5.0.0
+ */
+public interface AuditSink {
+
+    /**
+     * Submit a record for output.
+     * 
+     * <p>Implementations should not block for any significant period of time.</p>
+     * 
+     * @param category logging category the record would otherwise be logged under
+     * @param record formatted record
+     * 
+     * @return true iff the record was accepted for output
+     */
+    boolean write(@Nonnull @NotEmpty final String category, @Nonnull final String record);
+
+}
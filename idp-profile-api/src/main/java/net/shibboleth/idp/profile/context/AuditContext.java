@@ -17,9 +17,15 @@
 
 package net.shibboleth.idp.profile.context;
 
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
 
 import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
 
 import org.opensaml.messaging.context.BaseContext;
 
@@ -32,12 +38,17 @@ import net.shibboleth.shared.annotation.constraint.NotEmpty;
 
 /**
  * {@link BaseContext} containing information to preserve for auditing/logging.
+ * 
+ * <p>Field values may be supplied directly, or deferred until the field is first read.</p>
  */
 public final class AuditContext extends BaseContext {
 
     /** Extensible map of arbitrary field to data mappings. */
     @Nonnull @NonnullElements private Multimap<String,String> fieldMap;
     
+    /** Sources of field values not yet computed. */
+    @Nullable private Map<String,List<Supplier<Collection<String>>>> deferredFields;
+    
     /** Constructor. */
     public AuditContext() {
         fieldMap = HashMultimap.create(20, 1);
@@ -49,6 +60,13 @@ public final class AuditContext extends BaseContext {
      * @return field/data mappings
      */
     @Nonnull @NonnullElements @Live public Multimap<String,String> getFields() {
+        if (deferredFields != null) {
+            final Map<String,List<Supplier<Collection<String>>>> deferred = deferredFields;
+            deferredFields = null;
+            for (final Map.Entry<String,List<Supplier<Collection<String>>>> entry : deferred.entrySet()) {
+                resolve(entry.getKey(), entry.getValue());
+            }
+        }
         return fieldMap;
     }
     
@@ -60,7 +78,42 @@ public final class AuditContext extends BaseContext {
      * @return the field's values
      */
     @Nonnull @NonnullElements @Live public Collection<String> getFieldValues(@Nonnull @NotEmpty final String field) {
+        if (deferredFields != null) {
+            final List<Supplier<Collection<String>>> suppliers = deferredFields.remove(field);
+            if (suppliers != null) {
+                resolve(field, suppliers);
+            }
+        }
         return fieldMap.get(field);
     }
     
+    /**
+     * Add a source of values for a field, to be computed when the field is first read.
+     * 
+     * @param field field to populate
+     * @param supplier source of values
+     * 
+     * @since 5.0.0
+     */
+    public void addDeferredField(@Nonnull @NotEmpty final String field,
+            @Nonnull final Supplier<Collection<String>> supplier) {
+        if (deferredFields == null) {
+            deferredFields = new HashMap<>();
+        }
+        deferredFields.computeIfAbsent(field, f -> new ArrayList<>(1)).add(supplier);
+    }
+    
+    /**
+     * Compute deferred values for a field.
+     * 
+     * @param field field to populate
+     * @param suppliers sources of values
+     */
+    private void resolve(@Nonnull @NotEmpty final String field,
+            @Nonnull @NonnullElements final List<Supplier<Collection<String>>> suppliers) {
+        for (final Supplier<Collection<String>> supplier : suppliers) {
+            fieldMap.putAll(field, supplier.get());
+        }
+    }
+    
 }
\ No newline at end of file
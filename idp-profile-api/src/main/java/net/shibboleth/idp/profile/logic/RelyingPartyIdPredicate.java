@@ -19,14 +19,18 @@ package net.shibboleth.idp.profile.logic;
 
 import java.util.Collection;
 import java.util.Collections;
+import java.util.Set;
 import java.util.function.Predicate;
 
 import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
 
 import net.shibboleth.idp.profile.context.navigate.RelyingPartyIdLookupFunction;
+import net.shibboleth.idp.relyingparty.IndexableActivationCondition;
 import net.shibboleth.shared.annotation.ParameterName;
 import net.shibboleth.shared.annotation.constraint.NonnullElements;
 import net.shibboleth.shared.annotation.constraint.NotEmpty;
+import net.shibboleth.shared.annotation.constraint.Unmodifiable;
 import net.shibboleth.shared.logic.StrategyIndirectedPredicate;
 import net.shibboleth.shared.primitive.StringSupport;
 
@@ -36,8 +40,20 @@ import org.opensaml.profile.context.ProfileRequestContext;
  * Predicate that evaluates a {@link ProfileRequestContext} by looking for a relying party ID
  * that matches one of a designated set, or a generic predicate. The ID is obtained from a
  * {@link net.shibboleth.idp.profile.context.RelyingPartyContext} child of the profile request context.
+ * 
+ * <p>When constructed with a set of values, the predicate can be indexed by relying party ID.</p>
  */
-public class RelyingPartyIdPredicate extends StrategyIndirectedPredicate<ProfileRequestContext,String> {
+public class RelyingPartyIdPredicate extends StrategyIndirectedPredicate<ProfileRequestContext,String>
+        implements IndexableActivationCondition {
+
+    /** Name of index populated by this predicate. */
+    @Nonnull @NotEmpty public static final String INDEX_NAME = "relyingPartyId";
+
+    /** Lookup strategy for relying party ID. */
+    @Nonnull private static final RelyingPartyIdLookupFunction RPID_LOOKUP = new RelyingPartyIdLookupFunction();
+
+    /** Values to check against, if not a generic predicate. */
+    @Nullable private final Set<String> candidateSet;
 
     /**
      * Constructor.
@@ -47,6 +63,7 @@ public class RelyingPartyIdPredicate extends StrategyIndirectedPredicate<Profile
     public RelyingPartyIdPredicate(
             @Nonnull @NonnullElements @ParameterName(name="candidates") final Collection<String> candidates) {
         super(new RelyingPartyIdLookupFunction(), StringSupport.normalizeStringCollection(candidates));
+        candidateSet = Set.copyOf(StringSupport.normalizeStringCollection(candidates));
     }
 
     /**
@@ -65,6 +82,28 @@ public class RelyingPartyIdPredicate extends StrategyIndirectedPredicate<Profile
      */
     public RelyingPartyIdPredicate(@Nonnull @ParameterName(name="pred") final Predicate<String> pred) {
         super(new RelyingPartyIdLookupFunction(), pred);
+        candidateSet = null;
+    }
+
+    /** {@inheritDoc} */
+    @Nonnull @NotEmpty public String getIndexName() {
+        return INDEX_NAME;
+    }
+
+    /** {@inheritDoc} */
+    @Nullable @NonnullElements @Unmodifiable public Set<String> getIndexKeys() {
+        return candidateSet;
+    }
+
+    /** {@inheritDoc} */
+    public boolean isIndexExhaustive() {
+        return true;
+    }
+
+    /** {@inheritDoc} */
+    @Nonnull @NonnullElements public Collection<String> getRequestKeys(@Nullable final ProfileRequestContext input) {
+        final String rpId = RPID_LOOKUP.apply(input);
+        return rpId != null ? Collections.singletonList(rpId) : Collections.emptyList();
     }
     
     /**
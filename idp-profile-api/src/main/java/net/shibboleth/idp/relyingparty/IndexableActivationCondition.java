@@ -0,0 +1,79 @@
+/*
+ * Licensed to the University Corporation for Advanced Internet Development,
+ * Inc. (UCAID) under one or more contributor license agreements.  See the
+ * NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The UCAID licenses this file to You under the Apache
+ * License, Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package net.shibboleth.idp.relyingparty;
+
+import java.util.Collection;
+import java.util.Set;
+import java.util.function.Predicate;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import org.opensaml.profile.context.ProfileRequestContext;
+
+import net.shibboleth.shared.annotation.constraint.NonnullElements;
+import net.shibboleth.shared.annotation.constraint.NotEmpty;
+import net.shibboleth.shared.annotation.constraint.Unmodifiable;
+
+/**
+ * An activation condition for a {@link RelyingPartyConfiguration} that can be reduced to a lookup by key,
+ * allowing a resolver to locate the applicable configurations without evaluating each one in turn.
+ * 
+ * <p>The condition is satisfied whenever any of the keys returned by {@link #getRequestKeys(ProfileRequestContext)}
+ * is a member of {@link #getIndexKeys()}. If {@link #isIndexExhaustive()} is true, the converse also holds
+ * and the condition need not be evaluated when no key matches; otherwise it must still be evaluated.</p>
+ * 
+ * <p>All conditions sharing an {@link #getIndexName()} must derive request keys identically, since a resolver
+ * may extract them once per request using any one of the conditions.</p>
+ * 
+ * @since 5.0.0
+ */
+public interface IndexableActivationCondition extends Predicate<ProfileRequestContext> {
+
+    /**
+     * Get the name of the index to which this condition contributes.
+     * 
+     * @return index name
+     */
+    @Nonnull @NotEmpty String getIndexName();
+
+    /**
+     * Get the keys for which this condition is known to be satisfied.
+     * 
+     * @return index keys, or null if the condition cannot be indexed
+     */
+    @Nullable @NonnullElements @Unmodifiable Set<String> getIndexKeys();
+
+    /**
+     * Get whether the condition is satisfied only when one of its index keys matches.
+     * 
+     * @return true iff a request with no matching key cannot satisfy the condition
+     */
+    boolean isIndexExhaustive();
+
+    /**
+     * Derive the keys to look up for a request.
+     * 
+     * @param input profile request context
+     * 
+     * @return request keys
+     */
+    @Nonnull @NonnullElements Collection<String> getRequestKeys(@Nullable final ProfileRequestContext input);
+
+}
@@ -17,7 +17,9 @@
 
 package net.shibboleth.idp.profile.logic;
 
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.Set;
 
 import net.shibboleth.idp.profile.context.RelyingPartyContext;
 import net.shibboleth.shared.component.ComponentInitializationException;
@@ -70,4 +72,17 @@ public class RelyingPartyIdPredicateTest {
         Assert.assertFalse(pred.test(prc));
     }
 
-}
\ No newline at end of file
+    @Test
+    public void testIndex() throws ComponentInitializationException {
+        final RelyingPartyIdPredicate pred = new RelyingPartyIdPredicate(Arrays.asList(" foo ", "bar"));
+        Assert.assertEquals(pred.getIndexKeys(), Set.of("foo", "bar"));
+        Assert.assertTrue(pred.isIndexExhaustive());
+        Assert.assertTrue(pred.getRequestKeys(prc).isEmpty());
+        
+        rpCtx.setRelyingPartyId("foo");
+        Assert.assertEquals(pred.getRequestKeys(prc), Collections.singletonList("foo"));
+        
+        Assert.assertNull(new RelyingPartyIdPredicate("foo"::equals).getIndexKeys());
+    }
+
+}
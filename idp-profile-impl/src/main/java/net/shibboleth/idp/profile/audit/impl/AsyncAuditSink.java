@@ -0,0 +1,529 @@
+/*
+ * Licensed to the University Corporation for Advanced Internet Development,
+ * Inc. (UCAID) under one or more contributor license agreements.  See the
+ * NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The UCAID licenses this file to You under the Apache
+ * License, Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package net.shibboleth.idp.profile.audit.impl;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import org.opensaml.core.metrics.MetricsSupport;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
+
+import net.shibboleth.idp.profile.audit.AuditSink;
+import net.shibboleth.shared.annotation.constraint.NotEmpty;
+import net.shibboleth.shared.annotation.constraint.Positive;
+import net.shibboleth.shared.component.AbstractIdentifiableInitializableComponent;
+import net.shibboleth.shared.component.ComponentInitializationException;
+import net.shibboleth.shared.logic.Constraint;
+
+/**
+ * {@link AuditSink} that queues records in a bounded buffer and writes them in batches from a single
+ * background thread.
+ * 
+ * <p>Records are written, one per line, to a file or a supplied channel if either is configured, and
+ * otherwise are logged via SLF4J under their category, so existing logging configuration continues
+ * to apply.</p>
+ * 
+ * <p>When the buffer is full, records are either dropped immediately or the caller waits for a bounded
+ * time before dropping, depending on the {@link OverflowPolicy}. Dropped, failed, and written records
+ * are counted and, if a metric registry is available, reported under
+ * <code>net.shibboleth.idp.audit.sink.<em>id</em></code>.</p>
+ * 
+ * @since 5.0.0
+ */
+public class AsyncAuditSink extends AbstractIdentifiableInitializableComponent implements AuditSink {
+
+    /** Behavior when the buffer is full. */
+    public enum OverflowPolicy {
+        /** Drop the record. */
+        DROP,
+        
+        /** Wait up to the configured timeout for space, then drop the record. */
+        BLOCK,
+    }
+    
+    /** Prefix of metric names. */
+    @Nonnull @NotEmpty private static final String METRIC_PREFIX = "net.shibboleth.idp.audit.sink";
+    
+    /** How long the writer waits for records before checking for shutdown. */
+    private static final long POLL_INTERVAL_MS = 250;
+
+    /** Class logger. */
+    @Nonnull private final Logger log = LoggerFactory.getLogger(AsyncAuditSink.class);
+
+    /** Buffer capacity. */
+    @Positive private int capacity;
+    
+    /** Maximum records to write at once. */
+    @Positive private int batchSize;
+    
+    /** Overflow policy. */
+    @Nonnull private OverflowPolicy overflowPolicy;
+    
+    /** Maximum time to wait for space under {@link OverflowPolicy#BLOCK}. */
+    @Nonnull private Duration blockTimeout;
+    
+    /** How long to wait for queued records to be written on shutdown. */
+    @Nonnull private Duration shutdownTimeout;
+
+    /** File to append records to. */
+    @Nullable private Path outputFile;
+    
+    /** Channel to write records to. */
+    @Nullable private WritableByteChannel outputChannel;
+
+    /** Whether the channel was opened by this object. */
+    private boolean ownsChannel;
+    
+    /** Record buffer. */
+    @Nullable private BlockingQueue<QueuedRecord> queue;
+    
+    /** Background writer. */
+    @Nullable private Thread writer;
+    
+    /** Cleared to stop the writer. */
+    private volatile boolean running;
+    
+    /** Guards {@link #running} so that no record is accepted after the writer is told to stop. */
+    @Nonnull private final ReadWriteLock runningLock;
+    
+    /** Set by the writer when it exits. */
+    private boolean writerExited;
+    
+    /** Set on shutdown if the writer is still busy, so that it closes the channel itself on exit. */
+    private boolean writerAbandoned;
+    
+    /** Records dropped because the buffer was full. */
+    @Nonnull private Counter dropped;
+
+    /** Records that could not be written. */
+    @Nonnull private Counter failed;
+
+    /** Records written. */
+    @Nonnull private Counter written;
+
+    /** Constructor. */
+    public AsyncAuditSink() {
+        capacity = 8192;
+        batchSize = 256;
+        overflowPolicy = OverflowPolicy.DROP;
+        blockTimeout = Duration.ofMillis(100);
+        shutdownTimeout = Duration.ofSeconds(5);
+        dropped = new Counter();
+        failed = new Counter();
+        written = new Counter();
+        runningLock = new ReentrantReadWriteLock();
+    }
+    
+    /**
+     * Set the number of records that can be buffered.
+     * 
+     * <p>Defaults to 8192.</p>
+     * 
+     * @param size buffer capacity
+     */
+    public void setCapacity(@Positive final int size) {
+        checkSetterPreconditions();
+        capacity = (int) Constraint.isGreaterThan(0, size, "Capacity must be greater than zero");
+    }
+
+    /**
+     * Set the maximum number of records to write at once.
+     * 
+     * <p>Defaults to 256.</p>
+     * 
+     * @param size batch size
+     */
+    public void setBatchSize(@Positive final int size) {
+        checkSetterPreconditions();
+        batchSize = (int) Constraint.isGreaterThan(0, size, "Batch size must be greater than zero");
+    }
+
+    /**
+     * Set the behavior when the buffer is full.
+     * 
+     * <p>Defaults to {@link OverflowPolicy#DROP}.</p>
+     * 
+     * @param policy overflow policy
+     */
+    public void setOverflowPolicy(@Nonnull final OverflowPolicy policy) {
+        checkSetterPreconditions();
+        overflowPolicy = Constraint.isNotNull(policy, "Overflow policy cannot be null");
+    }
+
+    /**
+     * Set the maximum time to wait for space under {@link OverflowPolicy#BLOCK}.
+     * 
+     * <p>Defaults to 100 milliseconds.</p>
+     * 
+     * @param timeout block timeout
+     */
+    public void setBlockTimeout(@Nonnull final Duration timeout) {
+        checkSetterPreconditions();
+        Constraint.isNotNull(timeout, "Timeout cannot be null");
+        Constraint.isFalse(timeout.isNegative(), "Timeout cannot be negative");
+        blockTimeout = timeout;
+    }
+
+    /**
+     * Set how long to wait for buffered records to be written on shutdown.
+     * 
+     * <p>If the writer has not finished by then, shutdown proceeds without it, and the writer
+     * closes the output file itself once the remaining records are written.</p>
+     * 
+     * <p>Defaults to 5 seconds.</p>
+     * 
+     * @param timeout shutdown timeout
+     */
+    public void setShutdownTimeout(@Nonnull final Duration timeout) {
+        checkSetterPreconditions();
+        Constraint.isNotNull(timeout, "Timeout cannot be null");
+        Constraint.isFalse(timeout.isNegative(), "Timeout cannot be negative");
+        shutdownTimeout = timeout;
+    }
+
+    /**
+     * Set a file to append records to.
+     * 
+     * @param file output file
+     */
+    public void setOutputFile(@Nullable final Path file) {
+        checkSetterPreconditions();
+        outputFile = file;
+    }
+
+    /**
+     * Set a channel to write records to.
+     * 
+     * <p>The channel is not closed by this object.</p>
+     * 
+     * @param channel output channel
+     */
+    public void setOutputChannel(@Nullable final WritableByteChannel channel) {
+        checkSetterPreconditions();
+        outputChannel = channel;
+    }
+
+    /**
+     * Get the number of records dropped because the buffer was full.
+     * 
+     * @return dropped record count
+     */
+    public long getDroppedCount() {
+        return dropped.getCount();
+    }
+
+    /**
+     * Get the number of records that could not be written.
+     * 
+     * @return failed record count
+     */
+    public long getFailedCount() {
+        return failed.getCount();
+    }
+
+    /**
+     * Get the number of records written.
+     * 
+     * @return written record count
+     */
+    public long getWrittenCount() {
+        return written.getCount();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    protected void doInitialize() throws ComponentInitializationException {
+        super.doInitialize();
+        
+        if (outputFile != null && outputChannel != null) {
+            throw new ComponentInitializationException("Only one of output file or channel may be set");
+        } else if (outputFile != null) {
+            try {
+                outputChannel = FileChannel.open(outputFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                        StandardOpenOption.APPEND);
+                ownsChannel = true;
+            } catch (final IOException e) {
+                throw new ComponentInitializationException("Unable to open audit output file " + outputFile, e);
+            }
+        }
+        
+        final BlockingQueue<QueuedRecord> buffer = new ArrayBlockingQueue<>(capacity);
+        queue = buffer;
+        
+        final MetricRegistry registry = MetricsSupport.getMetricRegistry();
+        if (registry != null) {
+            dropped = registry.counter(getMetricName("dropped"));
+            failed = registry.counter(getMetricName("failed"));
+            written = registry.counter(getMetricName("written"));
+            registry.remove(getMetricName("depth"));
+            registry.register(getMetricName("depth"), new Gauge<Integer>() {
+                @Override
+                public Integer getValue() {
+                    return buffer.size();
+                }
+            });
+        }
+        
+        running = true;
+        writerExited = false;
+        writerAbandoned = false;
+        final Thread thread = new Thread(() -> run(buffer), "audit-sink-" + getId());
+        thread.setDaemon(true);
+        thread.start();
+        writer = thread;
+    }
+    
+    /** {@inheritDoc} */
+    @Override
+    protected void doDestroy() {
+        // Once this returns, no further record can be accepted, so the writer drains everything queued.
+        final Lock writeLock = runningLock.writeLock();
+        writeLock.lock();
+        try {
+            running = false;
+        } finally {
+            writeLock.unlock();
+        }
+        
+        if (writer != null) {
+            try {
+                writer.join(shutdownTimeout.toMillis());
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            writer = null;
+        }
+        
+        synchronized (this) {
+            if (writerExited) {
+                closeChannel();
+            } else {
+                // The channel is still in use, so leave the writer to close it once done.
+                log.warn("Audit sink '{}' did not finish writing buffered records before shutdown", getId());
+                writerAbandoned = true;
+            }
+        }
+        
+        final MetricRegistry registry = MetricsSupport.getMetricRegistry();
+        if (registry != null) {
+            registry.remove(getMetricName("depth"));
+        }
+        
+        super.doDestroy();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public boolean write(@Nonnull @NotEmpty final String category, @Nonnull final String record) {
+        final BlockingQueue<QueuedRecord> buffer = queue;
+        final QueuedRecord entry = new QueuedRecord(category, record);
+        
+        final Lock readLock = runningLock.readLock();
+        readLock.lock();
+        try {
+            if (buffer == null || !running) {
+                log.warn("Audit sink '{}' is not running, record for '{}' not written", getId(), category);
+                dropped.inc();
+                return false;
+            }
+            
+            if (buffer.offer(entry)) {
+                return true;
+            } else if (overflowPolicy == OverflowPolicy.BLOCK) {
+                try {
+                    if (buffer.offer(entry, blockTimeout.toMillis(), TimeUnit.MILLISECONDS)) {
+                        return true;
+                    }
+                } catch (final InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        } finally {
+            readLock.unlock();
+        }
+        
+        dropped.inc();
+        final long count = dropped.getCount();
+        if (count == 1 || count % 1000 == 0) {
+            log.warn("Audit sink '{}' buffer is full, {} records dropped so far", getId(), count);
+        }
+        return false;
+    }
+    
+    /**
+     * Get the name of a metric for this sink.
+     * 
+     * @param name metric name suffix
+     * 
+     * @return full metric name
+     */
+    @Nonnull @NotEmpty private String getMetricName(@Nonnull @NotEmpty final String name) {
+        return MetricRegistry.name(METRIC_PREFIX, getId(), name);
+    }
+    
+    /**
+     * Close the channel if it was opened by this object.
+     */
+    private void closeChannel() {
+        if (ownsChannel && outputChannel != null) {
+            try {
+                outputChannel.close();
+            } catch (final IOException e) {
+                log.error("Error closing audit output file {}", outputFile, e);
+            }
+            outputChannel = null;
+            ownsChannel = false;
+        }
+    }
+    
+    /**
+     * Body of the writer thread.
+     * 
+     * @param buffer record buffer
+     */
+    private void run(@Nonnull final BlockingQueue<QueuedRecord> buffer) {
+        final List<QueuedRecord> batch = new ArrayList<>(batchSize);
+        final CharsetEncoder encoder = StandardCharsets.UTF_8.newEncoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        final StringBuilder chars = new StringBuilder();
+        
+        try {
+            while (running || !buffer.isEmpty()) {
+                try {
+                    final QueuedRecord first = buffer.poll(POLL_INTERVAL_MS, TimeUnit.MILLISECONDS);
+                    if (first == null) {
+                        continue;
+                    }
+                    batch.add(first);
+                    buffer.drainTo(batch, batchSize - 1);
+                    if (outputChannel != null) {
+                        writeBatch(outputChannel, batch, encoder, chars);
+                    } else {
+                        logBatch(batch);
+                    }
+                } catch (final InterruptedException e) {
+                    log.debug("Audit sink '{}' writer interrupted", getId());
+                } catch (final RuntimeException e) {
+                    failed.inc(batch.size());
+                    log.error("Audit sink '{}' failed to write {} records", getId(), batch.size(), e);
+                } finally {
+                    batch.clear();
+                }
+            }
+        } finally {
+            synchronized (this) {
+                writerExited = true;
+                if (writerAbandoned) {
+                    closeChannel();
+                }
+            }
+        }
+    }
+    
+    /**
+     * Log a batch of records via SLF4J.
+     * 
+     * @param batch records to log
+     */
+    private void logBatch(@Nonnull final List<QueuedRecord> batch) {
+        for (final QueuedRecord record : batch) {
+            LoggerFactory.getLogger(record.category).info(record.record);
+        }
+        written.inc(batch.size());
+    }
+    
+    /**
+     * Write a batch of records to a channel, one per line.
+     * 
+     * @param channel output channel
+     * @param batch records to write
+     * @param encoder character encoder
+     * @param chars reusable character buffer
+     */
+    private void writeBatch(@Nonnull final WritableByteChannel channel, @Nonnull final List<QueuedRecord> batch,
+            @Nonnull final CharsetEncoder encoder, @Nonnull final StringBuilder chars) {
+        chars.setLength(0);
+        for (final QueuedRecord record : batch) {
+            chars.append(record.record).append('\n');
+        }
+        
+        try {
+            final ByteBuffer bytes = encoder.reset().encode(CharBuffer.wrap(chars));
+            while (bytes.hasRemaining()) {
+                channel.write(bytes);
+            }
+            written.inc(batch.size());
+        } catch (final CharacterCodingException e) {
+            failed.inc(batch.size());
+            log.error("Audit sink '{}' unable to encode {} records", getId(), batch.size(), e);
+        } catch (final IOException e) {
+            failed.inc(batch.size());
+            log.error("Audit sink '{}' unable to write {} records", getId(), batch.size(), e);
+        }
+    }
+    
+    /** A buffered record. */
+    private static final class QueuedRecord {
+        
+        /** Logging category. */
+        @Nonnull @NotEmpty private final String category;
+        
+        /** Formatted record. */
+        @Nonnull private final String record;
+        
+        /**
+         * Constructor.
+         * 
+         * @param cat logging category
+         * @param rec formatted record
+         */
+        QueuedRecord(@Nonnull @NotEmpty final String cat, @Nonnull final String rec) {
+            category = cat;
+            record = rec;
+        }
+    }
+
+}
@@ -21,6 +21,7 @@ import java.time.ZoneId;
 import java.time.ZoneOffset;
 import java.time.format.DateTimeFormatter;
 import java.time.temporal.TemporalAccessor;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
@@ -74,6 +75,9 @@ public class PopulateAuditContext extends AbstractProfileAction {
     /** Map of fields to extract and the corresponding extraction functions. */
     @Nonnull @NonnullElements private Map<String,Function<ProfileRequestContext,Object>> fieldExtractors;
     
+    /** Extractors for the fields being audited, computed at initialization. */
+    @Nonnull @NonnullElements private Map<String,Function<ProfileRequestContext,Object>> activeExtractors;
+    
     /** Fields being audited, to optimize extraction.. */
     @Nonnull @NonnullElements private Set<String> fieldsToExtract;
     
@@ -86,6 +90,9 @@ public class PopulateAuditContext extends AbstractProfileAction {
     /** Convert date/time fields to default time zone. */
     private boolean useDefaultTimeZone;
     
+    /** Defer extraction until fields are read. */
+    private boolean deferExtraction;
+    
     /** {@link AuditContext} to populate. */
     @Nullable private AuditContext auditCtx;
     
@@ -93,6 +100,7 @@ public class PopulateAuditContext extends AbstractProfileAction {
     public PopulateAuditContext() {
         auditContextCreationStrategy = new ChildContextLookup<>(AuditContext.class, true);
         fieldExtractors = Collections.emptyMap();
+        activeExtractors = Collections.emptyMap();
         fieldsToExtract = Collections.emptySet();
         fieldReplacements = Collections.emptyMap();
         
@@ -183,6 +191,22 @@ public class PopulateAuditContext extends AbstractProfileAction {
         useDefaultTimeZone = flag;
     }
     
+    /**
+     * Defer running the extraction functions until each field is first read from the {@link AuditContext},
+     * typically when a record is written.
+     * 
+     * <p>Fields that are never read are never extracted, but the functions observe the state of the request
+     * at that later time rather than when this action runs. Defaults to false.</p>
+     * 
+     * @param flag flag to set
+     * 
+     * @since 5.0.0
+     */
+    public void setDeferExtraction(final boolean flag) {
+        checkSetterPreconditions();
+        deferExtraction = flag;
+    }
+    
     /** {@inheritDoc} */
     @Override
     protected void doInitialize() throws ComponentInitializationException {
@@ -193,6 +217,15 @@ public class PopulateAuditContext extends AbstractProfileAction {
         } else {
             dateTimeFormatter = dateTimeFormatter.withZone(ZoneOffset.UTC);
         }
+        
+        if (fieldsToExtract.isEmpty()) {
+            activeExtractors = fieldExtractors;
+        } else {
+            activeExtractors = new HashMap<>(fieldExtractors);
+            activeExtractors.keySet().retainAll(fieldsToExtract);
+            log.debug("{} Extracting {} of {} field(s) used in audit formats", getLogPrefix(),
+                    activeExtractors.size(), fieldExtractors.size());
+        }
     }
 
     /** {@inheritDoc} */
@@ -217,49 +250,77 @@ public class PopulateAuditContext extends AbstractProfileAction {
     @Override
     protected void doExecute(@Nonnull final ProfileRequestContext profileRequestContext) {
         
-        for (final Map.Entry<String,Function<ProfileRequestContext,Object>> entry : fieldExtractors.entrySet()) {
-            
-            if (!fieldsToExtract.isEmpty() && !fieldsToExtract.contains(entry.getKey())) {
-                log.trace("{} Skipping field '{}' not included in audit format", getLogPrefix(), entry.getKey());
-                continue;
-            }
-            
-            final Object values = entry.getValue().apply(profileRequestContext);
-            if (values != null) {
-                if (values instanceof Collection) {
-                    if (!((Collection<?>) values).isEmpty()) {
-                        log.trace("{} Adding {} value(s) for field '{}'", getLogPrefix(),
-                                ((Collection<?>) values).size(), entry.getKey());
-                        for (final Object value : (Collection<?>) values) {
-                            addField(entry.getKey(), value);
-                        }
+        for (final Map.Entry<String,Function<ProfileRequestContext,Object>> entry : activeExtractors.entrySet()) {
+            if (deferExtraction) {
+                log.trace("{} Deferring extraction of field '{}'", getLogPrefix(), entry.getKey());
+                auditCtx.addDeferredField(entry.getKey(), () -> {
+                    try {
+                        return extract(profileRequestContext, entry.getKey(), entry.getValue());
+                    } catch (final RuntimeException e) {
+                        log.error("{} Error extracting audit field '{}'", getLogPrefix(), entry.getKey(), e);
+                        return Collections.emptyList();
                     }
-                } else {
-                    log.trace("{} Adding 1 value for field '{}'", getLogPrefix(), entry.getKey());
-                    addField(entry.getKey(), values);
-                }
+                });
+            } else {
+                auditCtx.getFieldValues(entry.getKey()).addAll(
+                        extract(profileRequestContext, entry.getKey(), entry.getValue()));
             }
         }
     }
     
     /**
-     * Add a non-null field to the audit record.
+     * Run an extraction function and convert its result into field values.
      * 
+     * @param profileRequestContext current profile request context
      * @param key field label
+     * @param extractor extraction function
+     * 
+     * @return field values
+     */
+    @Nonnull @NonnullElements private Collection<String> extract(
+            @Nonnull final ProfileRequestContext profileRequestContext, @Nonnull @NotEmpty final String key,
+            @Nonnull final Function<ProfileRequestContext,Object> extractor) {
+        
+        final Object values = extractor.apply(profileRequestContext);
+        if (values instanceof Collection) {
+            if (!((Collection<?>) values).isEmpty()) {
+                log.trace("{} Adding {} value(s) for field '{}'", getLogPrefix(), ((Collection<?>) values).size(),
+                        key);
+                final Collection<String> fieldValues = new ArrayList<>(((Collection<?>) values).size());
+                for (final Object value : (Collection<?>) values) {
+                    addField(fieldValues, value);
+                }
+                return fieldValues;
+            }
+        } else if (values != null) {
+            log.trace("{} Adding 1 value for field '{}'", getLogPrefix(), key);
+            final Collection<String> fieldValues = new ArrayList<>(1);
+            addField(fieldValues, values);
+            return fieldValues;
+        }
+        
+        return Collections.emptyList();
+    }
+    
+    /**
+     * Add a non-null field value to a collection.
+     * 
+     * @param fieldValues collection to add to
      * @param value value to add
      */
-    private void addField(@Nonnull @NotEmpty final String key, @Nullable final Object value) {
+    private void addField(@Nonnull @NonnullElements final Collection<String> fieldValues,
+            @Nullable final Object value) {
         
         if (value != null) {
             if (value instanceof TemporalAccessor) {
-                auditCtx.getFieldValues(key).add(dateTimeFormatter.format((TemporalAccessor) value));
+                fieldValues.add(dateTimeFormatter.format((TemporalAccessor) value));
             } else {
                 String s = value.toString();
                 if (fieldReplacements.containsKey(s)) {
                     s = fieldReplacements.get(s);
                 }
                 if (s != null) {
-                    auditCtx.getFieldValues(key).add(s);
+                    fieldValues.add(s);
                 }
             }
         }
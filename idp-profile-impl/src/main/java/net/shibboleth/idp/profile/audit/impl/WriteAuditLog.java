@@ -27,6 +27,8 @@ import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.function.Function;
 
 import javax.annotation.Nonnull;
@@ -43,6 +45,7 @@ import org.springframework.webflow.execution.RequestContext;
 import jakarta.servlet.http.HttpServletRequest;
 import net.shibboleth.idp.profile.AbstractProfileAction;
 import net.shibboleth.idp.profile.IdPAuditFields;
+import net.shibboleth.idp.profile.audit.AuditSink;
 import net.shibboleth.idp.profile.context.AuditContext;
 import net.shibboleth.shared.annotation.constraint.NonnullElements;
 import net.shibboleth.shared.annotation.constraint.NotEmpty;
@@ -60,6 +63,16 @@ import net.shibboleth.shared.servlet.HttpServletSupport;
  */
 public class WriteAuditLog extends AbstractProfileAction {
 
+    /** Initial size of the per-thread record buffer. */
+    private static final int INITIAL_CAPACITY = 512;
+    
+    /** Buffers growing beyond this size are discarded after use. */
+    private static final int MAX_RETAINED_CAPACITY = 8192;
+    
+    /** Per-thread buffer for building records. */
+    @Nonnull private static final ThreadLocal<StringBuilder> RECORD_BUILDER =
+            ThreadLocal.withInitial(() -> new StringBuilder(INITIAL_CAPACITY));
+
     /** Class logger. */
     @Nonnull private final Logger log = LoggerFactory.getLogger(WriteAuditLog.class);
     
@@ -75,6 +88,12 @@ public class WriteAuditLog extends AbstractProfileAction {
     /** Convert date/time fields to default time zone. */
     private boolean useDefaultTimeZone;
 
+    /** Optional destination for records in place of direct logging. */
+    @Nullable private AuditSink auditSink;
+
+    /** Formatting strings compiled at initialization. */
+    @Nonnull private List<CompiledFormat> compiledFormats;
+
     /** The Spring RequestContext to operate on. */
     @Nullable private RequestContext requestContext;
 
@@ -86,6 +105,7 @@ public class WriteAuditLog extends AbstractProfileAction {
         auditContextLookupStrategy = new ChildContextLookup<>(AuditContext.class);
         formattingMap = Collections.emptyMap();
         dateTimeFormatter = DateTimeFormatter.ISO_INSTANT;
+        compiledFormats = Collections.emptyList();
     }
 
     /**
@@ -185,6 +205,20 @@ public class WriteAuditLog extends AbstractProfileAction {
         useDefaultTimeZone = flag;
     }
     
+    /**
+     * Set a destination for records to use in place of direct logging.
+     * 
+     * <p>The sink receives each record along with the logging category that would otherwise be used.</p>
+     * 
+     * @param sink audit sink
+     * 
+     * @since 5.0.0
+     */
+    public void setAuditSink(@Nullable final AuditSink sink) {
+        checkSetterPreconditions();
+        auditSink = sink;
+    }
+    
     /** {@inheritDoc} */
     @Override
     protected void doInitialize() throws ComponentInitializationException {
@@ -195,6 +229,16 @@ public class WriteAuditLog extends AbstractProfileAction {
         } else {
             dateTimeFormatter = dateTimeFormatter.withZone(ZoneOffset.UTC);
         }
+        
+        final List<CompiledFormat> formats = new ArrayList<>(formattingMap.size());
+        for (final Map.Entry<String,List<String>> entry : formattingMap.entrySet()) {
+            final FieldWriter[] writers = new FieldWriter[entry.getValue().size()];
+            for (int i = 0; i < writers.length; ++i) {
+                writers[i] = compile(entry.getValue().get(i));
+            }
+            formats.add(new CompiledFormat(entry.getKey(), writers));
+        }
+        compiledFormats = List.copyOf(formats);
     }
 
     /** {@inheritDoc} */
@@ -219,60 +263,108 @@ public class WriteAuditLog extends AbstractProfileAction {
         return true;
     }
     
-// Checkstyle: CyclomaticComplexity OFF
     /** {@inheritDoc} */
     @Override
     protected void doExecute(@Nonnull final ProfileRequestContext profileRequestContext) {
+        
+        final HttpServletRequest httpRequest = getHttpServletRequest();
+        final StringBuilder record = RECORD_BUILDER.get();
 
-        for (final Map.Entry<String,List<String>> entry : formattingMap.entrySet()) {
+        for (final CompiledFormat format : compiledFormats) {
+            record.setLength(0);
+            for (final FieldWriter writer : format.writers) {
+                writer.write(record, profileRequestContext, httpRequest);
+            }
+            
+            filter(record);
+            
+            final Logger logger = format.getLogger(profileRequestContext.getLoggingId());
+            if (auditSink != null) {
+                auditSink.write(logger.getName(), record.toString());
+            } else {
+                logger.info(record.toString());
+            }
+        }
         
-            final StringBuilder record = new StringBuilder();
+        if (record.capacity() > MAX_RETAINED_CAPACITY) {
+            RECORD_BUILDER.remove();
+        }
+    }
     
-            for (final String token : entry.getValue()) {
-                if (token.startsWith("%")) {
-                    if (token.length() == 1 || token.charAt(1) == '%') {
-                        record.append('%');
-                    } else {
-                        final String field = token.substring(1);
-                        final HttpServletRequest httpRequest = getHttpServletRequest();
-                        
-                        if (IdPAuditFields.EVENT_TIME.equals(field)) {
-                            record.append(dateTimeFormatter.format(Instant.now()));
-                        } else if (IdPAuditFields.EVENT_TYPE.equals(field)) {
-                            final Event event = requestContext.getCurrentEvent();
-                            if (event != null && !event.getId().equals(EventIds.PROCEED_EVENT_ID)) {
-                                record.append(event.getId());
-                            }
-                        } else if (IdPAuditFields.PROFILE.equals(field)) {
-                            record.append(profileRequestContext.getProfileId());
-                        } else if (IdPAuditFields.REMOTE_ADDR.equals(field) && httpRequest != null) {
-                            record.append(HttpServletSupport.getRemoteAddr(httpRequest));
-                        } else if (IdPAuditFields.URI.equals(field) && httpRequest != null) {
-                            record.append(httpRequest.getRequestURI());
-                        } else if (IdPAuditFields.URL.equals(field) && httpRequest != null) {
-                            record.append(httpRequest.getRequestURL());
-                        } else if (IdPAuditFields.USER_AGENT.equals(field) && httpRequest != null) {
-                            record.append(httpRequest.getHeader("User-Agent"));
-                        } else if (auditCtx != null) {
-                            final Iterator<String> iter = auditCtx.getFieldValues(field).iterator();
-                            while (iter.hasNext()) {
-                                record.append(iter.next());
-                                if (iter.hasNext()) {
-                                    record.append(',');
-                                }
-                            }
-                        }
+// Checkstyle: CyclomaticComplexity OFF
+    /**
+     * Compile a formatting token into the object that writes it.
+     * 
+     * @param token formatting token or literal
+     * 
+     * @return the corresponding writer
+     */
+    @Nonnull private FieldWriter compile(@Nonnull @NotEmpty final String token) {
+        if (!token.startsWith("%")) {
+            return (record, prc, httpRequest) -> record.append(token);
+        } else if (token.length() == 1 || token.charAt(1) == '%') {
+            return (record, prc, httpRequest) -> record.append('%');
+        }
+        
+        final String field = token.substring(1);
+        final FieldWriter auditWriter = (record, prc, httpRequest) -> {
+            if (auditCtx != null) {
+                final Iterator<String> iter = auditCtx.getFieldValues(field).iterator();
+                while (iter.hasNext()) {
+                    record.append(iter.next());
+                    if (iter.hasNext()) {
+                        record.append(',');
                     }
-                } else {
-                    record.append(token);
                 }
             }
-            
-            filter(record);
-            
-            LoggerFactory.getLogger(entry.getKey() + '.'
-                    + profileRequestContext.getLoggingId()).info(record.toString());
+        };
+        
+        if (IdPAuditFields.EVENT_TIME.equals(field)) {
+            return (record, prc, httpRequest) -> dateTimeFormatter.formatTo(Instant.now(), record);
+        } else if (IdPAuditFields.EVENT_TYPE.equals(field)) {
+            return (record, prc, httpRequest) -> {
+                final Event event = requestContext.getCurrentEvent();
+                if (event != null && !event.getId().equals(EventIds.PROCEED_EVENT_ID)) {
+                    record.append(event.getId());
+                }
+            };
+        } else if (IdPAuditFields.PROFILE.equals(field)) {
+            return (record, prc, httpRequest) -> record.append(prc.getProfileId());
+        } else if (IdPAuditFields.REMOTE_ADDR.equals(field)) {
+            return (record, prc, httpRequest) -> {
+                if (httpRequest != null) {
+                    record.append(HttpServletSupport.getRemoteAddr(httpRequest));
+                } else {
+                    auditWriter.write(record, prc, httpRequest);
+                }
+            };
+        } else if (IdPAuditFields.URI.equals(field)) {
+            return (record, prc, httpRequest) -> {
+                if (httpRequest != null) {
+                    record.append(httpRequest.getRequestURI());
+                } else {
+                    auditWriter.write(record, prc, httpRequest);
+                }
+            };
+        } else if (IdPAuditFields.URL.equals(field)) {
+            return (record, prc, httpRequest) -> {
+                if (httpRequest != null) {
+                    record.append(httpRequest.getRequestURL());
+                } else {
+                    auditWriter.write(record, prc, httpRequest);
+                }
+            };
+        } else if (IdPAuditFields.USER_AGENT.equals(field)) {
+            return (record, prc, httpRequest) -> {
+                if (httpRequest != null) {
+                    record.append(httpRequest.getHeader("User-Agent"));
+                } else {
+                    auditWriter.write(record, prc, httpRequest);
+                }
+            };
         }
+        
+        return auditWriter;
     }
 // Checkstyle: CyclomaticComplexity ON
     
@@ -284,5 +376,68 @@ public class WriteAuditLog extends AbstractProfileAction {
     protected void filter(@Nonnull final StringBuilder entry) {
         
     }
+
+    /** Writes one element of a formatting string into a record. */
+    @FunctionalInterface
+    private interface FieldWriter {
+        
+        /**
+         * Append the element to the record.
+         * 
+         * @param record record being built
+         * @param profileRequestContext current profile request context
+         * @param httpRequest current servlet request, if any
+         */
+        void write(@Nonnull final StringBuilder record, @Nonnull final ProfileRequestContext profileRequestContext,
+                @Nullable final HttpServletRequest httpRequest);
+    }
+    
+    /** A formatting string compiled for a single category. */
+    private static final class CompiledFormat {
+        
+        /** Maximum number of logging IDs to retain loggers for. */
+        private static final int MAX_LOGGERS = 256;
+        
+        /** Log category. */
+        @Nonnull @NotEmpty private final String category;
+        
+        /** Writers for the formatting string. */
+        @Nonnull private final FieldWriter[] writers;
+        
+        /** Loggers by logging ID. */
+        @Nonnull private final ConcurrentMap<String,Logger> loggers;
+        
+        /**
+         * Constructor.
+         * 
+         * @param cat log category
+         * @param fieldWriters writers for the formatting string
+         */
+        CompiledFormat(@Nonnull @NotEmpty final String cat, @Nonnull final FieldWriter[] fieldWriters) {
+            category = cat;
+            writers = fieldWriters;
+            loggers = new ConcurrentHashMap<>();
+        }
+        
+        /**
+         * Get the logger for a logging ID.
+         * 
+         * <p>The logger name is the category and logging ID joined by a period.</p>
+         * 
+         * @param loggingId logging ID
+         * 
+         * @return the logger
+         */
+        @Nonnull Logger getLogger(@Nullable final String loggingId) {
+            final String key = String.valueOf(loggingId);
+            final Logger logger = loggers.get(key);
+            if (logger != null) {
+                return logger;
+            } else if (loggers.size() >= MAX_LOGGERS) {
+                return LoggerFactory.getLogger(category + '.' + key);
+            }
+            return loggers.computeIfAbsent(key, k -> LoggerFactory.getLogger(category + '.' + k));
+        }
+    }
     
 }
@@ -18,9 +18,13 @@
 package net.shibboleth.idp.relyingparty.impl;
 
 import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.function.Predicate;
 import java.util.stream.Collectors;
 
@@ -36,6 +40,7 @@ import org.springframework.beans.factory.annotation.Qualifier;
 
 import net.shibboleth.idp.profile.config.SecurityConfiguration;
 import net.shibboleth.idp.profile.logic.VerifiedProfilePredicate;
+import net.shibboleth.idp.relyingparty.IndexableActivationCondition;
 import net.shibboleth.idp.relyingparty.RelyingPartyConfiguration;
 import net.shibboleth.idp.relyingparty.RelyingPartyConfigurationResolver;
 import net.shibboleth.idp.relyingparty.RelyingPartyResolverCredentialHolder;
@@ -55,6 +60,11 @@ import net.shibboleth.shared.spring.service.AbstractServiceableComponent;
  * <p>
  * Note that this resolver does not permit more than one {@link RelyingPartyConfiguration} with the same ID.
  * </p>
+ * 
+ * <p>
+ * Configurations whose activation condition is an {@link IndexableActivationCondition} are located by key
+ * lookup, and only the remaining conditions are evaluated, preserving the order of the configurations.
+ * </p>
  */
 public class DefaultRelyingPartyConfigurationResolver
         extends AbstractServiceableComponent<RelyingPartyConfigurationResolver>
@@ -84,6 +94,15 @@ public class DefaultRelyingPartyConfigurationResolver
     /** The global list of all configured encryption credentials. */
     @Nullable private List<Credential> encryptionCredentials;
 
+    /** Positions of the configurations whose conditions have to be evaluated, in ascending order. */
+    @NonnullAfterInit private int[] evaluatedPositions;
+
+    /** Positions of indexed configurations, keyed by index name and then by index key. */
+    @NonnullAfterInit private Map<String,Map<String,int[]>> positionIndexes;
+
+    /** Condition used to derive the request keys for each index. */
+    @NonnullAfterInit private Map<String,IndexableActivationCondition> requestKeySources;
+
     /** Constructor. */
     public DefaultRelyingPartyConfigurationResolver() {
         rpConfigurations = Collections.emptyList();
@@ -193,6 +212,93 @@ public class DefaultRelyingPartyConfigurationResolver
             }
             configIds.add(config.getId());
         }
+
+        buildIndexes();
+    }
+
+    /**
+     * Index the configurations whose activation conditions support it, and record the positions of the rest.
+     */
+    private void buildIndexes() {
+        final Map<String,Map<String,List<Integer>>> indexes = new HashMap<>();
+        final List<Integer> evaluated = new ArrayList<>();
+        requestKeySources = new HashMap<>();
+
+        for (int pos = 0; pos < rpConfigurations.size(); ++pos) {
+            final Predicate<ProfileRequestContext> condition = rpConfigurations.get(pos).getActivationCondition();
+            if (condition instanceof IndexableActivationCondition) {
+                final IndexableActivationCondition indexable = (IndexableActivationCondition) condition;
+                final Set<String> keys = indexable.getIndexKeys();
+                if (keys != null) {
+                    requestKeySources.putIfAbsent(indexable.getIndexName(), indexable);
+                    final Map<String,List<Integer>> index =
+                            indexes.computeIfAbsent(indexable.getIndexName(), k -> new HashMap<>());
+                    for (final String key : keys) {
+                        index.computeIfAbsent(key, k -> new ArrayList<>()).add(pos);
+                    }
+                    if (indexable.isIndexExhaustive()) {
+                        continue;
+                    }
+                }
+            }
+            evaluated.add(pos);
+        }
+
+        evaluatedPositions = evaluated.stream().mapToInt(Integer::intValue).toArray();
+        positionIndexes = new HashMap<>(indexes.size());
+        for (final Map.Entry<String,Map<String,List<Integer>>> index : indexes.entrySet()) {
+            final Map<String,int[]> positions = new HashMap<>(index.getValue().size());
+            for (final Map.Entry<String,List<Integer>> entry : index.getValue().entrySet()) {
+                positions.put(entry.getKey(), entry.getValue().stream().mapToInt(Integer::intValue).toArray());
+            }
+            positionIndexes.put(index.getKey(), positions);
+        }
+
+        log.debug("{} of {} relying party configurations are indexed, {} require evaluation",
+                rpConfigurations.size() - evaluatedPositions.length, rpConfigurations.size(),
+                evaluatedPositions.length);
+    }
+
+    /**
+     * Get the positions of the configurations located via an index for a request.
+     * 
+     * @param context profile request context
+     * 
+     * @return positions of matching configurations
+     */
+    @Nonnull private BitSet findIndexedMatches(@Nonnull final ProfileRequestContext context) {
+        final BitSet matches = new BitSet(rpConfigurations.size());
+        for (final Map.Entry<String,IndexableActivationCondition> source : requestKeySources.entrySet()) {
+            final Map<String,int[]> index = positionIndexes.get(source.getKey());
+            for (final String key : source.getValue().getRequestKeys(context)) {
+                final int[] positions = index.get(key);
+                if (positions != null) {
+                    for (final int pos : positions) {
+                        matches.set(pos);
+                    }
+                }
+            }
+        }
+        return matches;
+    }
+
+    /**
+     * Evaluate whether a configuration applies to a request.
+     * 
+     * @param configuration configuration to check
+     * @param context profile request context
+     * 
+     * @return true iff the configuration is applicable
+     */
+    private boolean isApplicable(@Nonnull final RelyingPartyConfiguration configuration,
+            @Nonnull final ProfileRequestContext context) {
+        log.debug("Checking if relying party configuration {} is applicable", configuration.getId());
+        if (configuration.test(context)) {
+            log.debug("Relying party configuration {} is applicable", configuration.getId());
+            return true;
+        }
+        log.debug("Relying party configuration {} is not applicable", configuration.getId());
+        return false;
     }
 
     /** {@inheritDoc} */
@@ -215,18 +321,18 @@ public class DefaultRelyingPartyConfigurationResolver
             return Collections.singleton(getUnverifiedConfiguration());
         }
 
-        final ArrayList<RelyingPartyConfiguration> matches = new ArrayList<>();
-
-        for (final RelyingPartyConfiguration configuration : rpConfigurations) {
-            log.debug("Checking if relying party configuration {} is applicable", configuration.getId());
-            if (configuration.test(context)) {
-                log.debug("Relying party configuration {} is applicable", configuration.getId());
-                matches.add(configuration);
-            } else {
-                log.debug("Relying party configuration {} is not applicable", configuration.getId());
+        final BitSet positions = findIndexedMatches(context);
+        for (final int pos : evaluatedPositions) {
+            if (!positions.get(pos) && isApplicable(rpConfigurations.get(pos), context)) {
+                positions.set(pos);
             }
         }
 
+        final ArrayList<RelyingPartyConfiguration> matches = new ArrayList<>(positions.cardinality());
+        for (int pos = positions.nextSetBit(0); pos >= 0; pos = positions.nextSetBit(pos + 1)) {
+            matches.add(rpConfigurations.get(pos));
+        }
+
         if (matches.isEmpty()) {
             log.debug("No matching Relying Party Configuration found, returning the default configuration {}",
                     getDefaultConfiguration().getId());
@@ -255,13 +361,20 @@ public class DefaultRelyingPartyConfigurationResolver
             return getUnverifiedConfiguration();
         }
 
-        for (final RelyingPartyConfiguration configuration : rpConfigurations) {
-            log.debug("Checking if relying party configuration {} is applicable", configuration.getId());
-            if (configuration.test(context)) {
-                log.debug("Relying party configuration {} is applicable", configuration.getId());
-                return configuration;
+        // Only conditions ahead of the first indexed match can change the outcome.
+        final int firstIndexed = findIndexedMatches(context).nextSetBit(0);
+        for (final int pos : evaluatedPositions) {
+            if (firstIndexed >= 0 && pos >= firstIndexed) {
+                break;
+            }
+            if (isApplicable(rpConfigurations.get(pos), context)) {
+                return rpConfigurations.get(pos);
             }
-            log.debug("Relying party configuration {} is not applicable", configuration.getId());
+        }
+
+        if (firstIndexed >= 0) {
+            log.debug("Relying party configuration {} is applicable", rpConfigurations.get(firstIndexed).getId());
+            return rpConfigurations.get(firstIndexed);
         }
 
         log.debug("No relying party configurations are applicable, returning the default configuration {}",
@@ -0,0 +1,224 @@
+/*
+ * Licensed to the University Corporation for Advanced Internet Development,
+ * Inc. (UCAID) under one or more contributor license agreements.  See the
+ * NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The UCAID licenses this file to You under the Apache
+ * License, Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package net.shibboleth.idp.profile.audit.impl;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import net.shibboleth.idp.profile.audit.impl.AsyncAuditSink.OverflowPolicy;
+import net.shibboleth.shared.component.ComponentInitializationException;
+
+/** {@link AsyncAuditSink} unit test. */
+public class AsyncAuditSinkTest {
+
+    @Test public void testFile() throws ComponentInitializationException, IOException {
+        final Path file = Files.createTempFile("audit", ".log");
+        try {
+            final AsyncAuditSink sink = new AsyncAuditSink();
+            sink.setId("test");
+            sink.setOutputFile(file);
+            sink.setBatchSize(2);
+            sink.initialize();
+            
+            for (int i = 0; i < 5; ++i) {
+                Assert.assertTrue(sink.write("category", "record " + i + " \u00e9"));
+            }
+            sink.destroy();
+            
+            Assert.assertEquals(sink.getWrittenCount(), 5);
+            Assert.assertEquals(sink.getDroppedCount(), 0);
+            Assert.assertEquals(Files.readAllLines(file, StandardCharsets.UTF_8),
+                    List.of("record 0 \u00e9", "record 1 \u00e9", "record 2 \u00e9", "record 3 \u00e9",
+                            "record 4 \u00e9"));
+            
+            Assert.assertFalse(sink.write("category", "late"));
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    @Test public void testLogging() throws ComponentInitializationException {
+        final AsyncAuditSink sink = new AsyncAuditSink();
+        sink.setId("test");
+        sink.initialize();
+        
+        Assert.assertTrue(sink.write("Shibboleth-Audit.test", "record"));
+        sink.destroy();
+        
+        Assert.assertEquals(sink.getWrittenCount(), 1);
+    }
+
+    @Test(expectedExceptions = ComponentInitializationException.class)
+    public void testFileAndChannel() throws ComponentInitializationException, IOException {
+        final AsyncAuditSink sink = new AsyncAuditSink();
+        sink.setId("test");
+        sink.setOutputFile(Path.of("unused.log"));
+        sink.setOutputChannel(new BlockingChannel());
+        sink.initialize();
+    }
+
+    @Test public void testDrop() throws ComponentInitializationException, InterruptedException {
+        final BlockingChannel channel = new BlockingChannel();
+        final AsyncAuditSink sink = new AsyncAuditSink();
+        sink.setId("test");
+        sink.setOutputChannel(channel);
+        sink.setCapacity(1);
+        sink.initialize();
+        
+        Assert.assertTrue(sink.write("category", "first"));
+        Assert.assertTrue(channel.entered.await(5, TimeUnit.SECONDS));
+        
+        Assert.assertTrue(sink.write("category", "second"));
+        Assert.assertFalse(sink.write("category", "third"));
+        Assert.assertEquals(sink.getDroppedCount(), 1);
+        
+        channel.release.countDown();
+        sink.destroy();
+        Assert.assertEquals(sink.getWrittenCount(), 2);
+        Assert.assertEquals(channel.bytes, "first\nsecond\n".length());
+    }
+
+    @Test public void testBlock() throws ComponentInitializationException, InterruptedException {
+        final BlockingChannel channel = new BlockingChannel();
+        final AsyncAuditSink sink = new AsyncAuditSink();
+        sink.setId("test");
+        sink.setOutputChannel(channel);
+        sink.setCapacity(1);
+        sink.setOverflowPolicy(OverflowPolicy.BLOCK);
+        sink.initialize();
+        
+        Assert.assertTrue(sink.write("category", "first"));
+        Assert.assertTrue(channel.entered.await(5, TimeUnit.SECONDS));
+        Assert.assertTrue(sink.write("category", "second"));
+        
+        final long start = System.currentTimeMillis();
+        Assert.assertFalse(sink.write("category", "third"));
+        Assert.assertTrue(System.currentTimeMillis() - start >= 90);
+        
+        channel.release.countDown();
+        sink.destroy();
+        Assert.assertEquals(sink.getDroppedCount(), 1);
+    }
+
+    @Test public void testConcurrentDestroy() throws Exception {
+        final BlockingChannel channel = new BlockingChannel();
+        channel.release.countDown();
+        final AsyncAuditSink sink = new AsyncAuditSink();
+        sink.setId("test");
+        sink.setOutputChannel(channel);
+        sink.setOverflowPolicy(OverflowPolicy.BLOCK);
+        sink.initialize();
+        
+        final AtomicInteger accepted = new AtomicInteger();
+        final CountDownLatch started = new CountDownLatch(4);
+        final List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < 4; ++i) {
+            final Thread thread = new Thread(() -> {
+                started.countDown();
+                for (int j = 0; j < 10000; ++j) {
+                    if (sink.write("category", "r")) {
+                        accepted.incrementAndGet();
+                    }
+                }
+            });
+            thread.start();
+            threads.add(thread);
+        }
+        
+        Assert.assertTrue(started.await(5, TimeUnit.SECONDS));
+        sink.destroy();
+        for (final Thread thread : threads) {
+            thread.join();
+        }
+        
+        // Every accepted record was written, none lost between the running check and the queue.
+        Assert.assertEquals(sink.getWrittenCount(), accepted.get());
+        Assert.assertEquals(channel.bytes, 2 * accepted.get());
+    }
+
+    @Test public void testShutdownTimeout() throws ComponentInitializationException, InterruptedException {
+        final BlockingChannel channel = new BlockingChannel();
+        final AsyncAuditSink sink = new AsyncAuditSink();
+        sink.setId("test");
+        sink.setOutputChannel(channel);
+        sink.setShutdownTimeout(Duration.ofMillis(50));
+        sink.initialize();
+        
+        Assert.assertTrue(sink.write("category", "first"));
+        Assert.assertTrue(channel.entered.await(5, TimeUnit.SECONDS));
+        sink.destroy();
+        Assert.assertEquals(sink.getWrittenCount(), 0);
+        
+        // The writer carries on after shutdown gives up waiting for it.
+        channel.release.countDown();
+        final long deadline = System.currentTimeMillis() + 5000;
+        while (sink.getWrittenCount() == 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        Assert.assertEquals(sink.getWrittenCount(), 1);
+        Assert.assertEquals(sink.getFailedCount(), 0);
+    }
+
+    /** Channel that holds up the first write until released. */
+    private static class BlockingChannel implements WritableByteChannel {
+        
+        private final CountDownLatch entered = new CountDownLatch(1);
+
+        private final CountDownLatch release = new CountDownLatch(1);
+        
+        private volatile int bytes;
+        
+        /** {@inheritDoc} */
+        public boolean isOpen() {
+            return true;
+        }
+
+        /** {@inheritDoc} */
+        public void close() {
+        }
+
+        /** {@inheritDoc} */
+        public int write(final ByteBuffer src) throws IOException {
+            entered.countDown();
+            try {
+                release.await();
+            } catch (final InterruptedException e) {
+                throw new IOException(e);
+            }
+            final int n = src.remaining();
+            src.position(src.limit());
+            bytes += n;
+            return n;
+        }
+    }
+
+}
@@ -113,10 +113,40 @@ public class PopulateAuditContextTest {
         Assert.assertEquals(ac.getFieldValues("A").toArray(), new String[]{"bar", "baz"});
     }
     
+    @Test public void testDeferred() throws Exception {
+        final MockFunction a = new MockFunction(Collections.singletonList("foo"));
+        final MockFunction bigA = new MockFunction(Arrays.asList("bar", "baz"));
+        final Map<String,Function<ProfileRequestContext,Object>> map = new HashMap<>();
+        map.put("a", a);
+        map.put("A", bigA);
+        
+        action.setFieldExtractors(map);
+        action.setDeferExtraction(true);
+        action.initialize();
+        
+        final Event event = action.execute(src);
+        ActionTestingSupport.assertProceedEvent(event);
+        Assert.assertEquals(a.calls, 0);
+        Assert.assertEquals(bigA.calls, 0);
+        
+        final AuditContext ac = prc.getSubcontext(AuditContext.class);
+        Assert.assertNotNull(ac);
+        Assert.assertEquals(ac.getFieldValues("A").toArray(), new String[]{"bar", "baz"});
+        Assert.assertEquals(ac.getFieldValues("A").size(), 2);
+        Assert.assertEquals(a.calls, 0);
+        Assert.assertEquals(bigA.calls, 1);
+        
+        Assert.assertEquals(ac.getFields().size(), 3);
+        Assert.assertEquals(a.calls, 1);
+        Assert.assertEquals(bigA.calls, 1);
+    }
+    
     private class MockFunction implements Function<ProfileRequestContext,Object> {
         
         private Collection<String> result;
         
+        private int calls;
+        
         /**
          * Constructor.
          * 
@@ -129,6 +159,7 @@ public class PopulateAuditContextTest {
         /** {@inheritDoc} */
         @Override
         public Collection<String> apply(ProfileRequestContext input) {
+            calls++;
             return result;
         }
     }
@@ -17,6 +17,7 @@
 
 package net.shibboleth.idp.profile.audit.impl;
 
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 import java.util.function.Supplier;
@@ -140,6 +141,48 @@ public class WriteAuditLogTest {
         Assert.assertEquals(action.getResult(), "192.168.1.1 https://idp.example.org/path/to/foo - Mock");
     }
 
+    @Test public void testNoServletRequest() throws ComponentInitializationException {
+        final AuditContext ac = prc.getSubcontext(AuditContext.class, true);
+        ac.getFieldValues("a").add("10.1.1.1");
+        
+        action.setHttpServletRequestSupplier(() -> null);
+        action.setFormattingMap(Collections.singletonMap("category", "%a %%|%URL|"));
+        action.initialize();
+        
+        final Event event = action.execute(src);
+        ActionTestingSupport.assertProceedEvent(event);
+        Assert.assertEquals(action.getResult(), "10.1.1.1 %||");
+    }
+
+    @Test public void testSink() throws ComponentInitializationException {
+        final AuditContext ac = prc.getSubcontext(AuditContext.class, true);
+        ac.getFieldValues("A").add("foo");
+        
+        final List<String> written = new ArrayList<>();
+        action.setAuditSink((category, record) -> written.add(category + ' ' + record));
+        action.setFormattingMap(Collections.singletonMap("category", "%A"));
+        action.initialize();
+        
+        ActionTestingSupport.assertProceedEvent(action.execute(src));
+        Assert.assertEquals(written, List.of("category." + prc.getLoggingId() + " foo"));
+    }
+
+    @Test public void testRepeated() throws ComponentInitializationException {
+        final AuditContext ac = prc.getSubcontext(AuditContext.class, true);
+        ac.getFieldValues("A").add("foo");
+        
+        action.setFormattingMap(Collections.singletonMap("category", "%A %a"));
+        action.initialize();
+        
+        ActionTestingSupport.assertProceedEvent(action.execute(src));
+        Assert.assertEquals(action.getResult(), "foo 192.168.1.1");
+        
+        ac.getFieldValues("A").clear();
+        ac.getFieldValues("A").add("x");
+        ActionTestingSupport.assertProceedEvent(action.execute(src));
+        Assert.assertEquals(action.getResult(), "x 192.168.1.1");
+    }
+
 
     /**
      * Subclass for testing purposes that grants access to the built log entry.
@@ -20,8 +20,10 @@ package net.shibboleth.idp.relyingparty.impl;
 import java.util.Arrays;
 import java.util.Iterator;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import net.shibboleth.idp.profile.context.RelyingPartyContext;
+import net.shibboleth.idp.profile.logic.RelyingPartyIdPredicate;
 import net.shibboleth.idp.relyingparty.RelyingPartyConfiguration;
 import net.shibboleth.shared.component.ComponentInitializationException;
 import net.shibboleth.shared.testing.MockApplicationContext;
@@ -210,4 +212,75 @@ public class DefaultRelyingPartyConfigurationResolverTest {
         result = resolver.resolveSingle(null);
         Assert.assertNull(result);
     }
-}
\ No newline at end of file
+
+    @Test public void testIndexed() throws Exception {
+        final ProfileRequestContext requestContext = new ProfileRequestContext();
+        final RelyingPartyContext rpCtx = requestContext.getSubcontext(RelyingPartyContext.class, true);
+        rpCtx.setVerified(true);
+        rpCtx.setRelyingPartyId("https://sp.example.org");
+
+        final RelyingPartyConfiguration defaultRP = new RelyingPartyConfiguration();
+        defaultRP.setId("defaultRPId");
+        defaultRP.setResponderId("defaultRPResp");
+        defaultRP.initialize();
+
+        final AtomicInteger evaluations = new AtomicInteger();
+
+        final RelyingPartyConfiguration one = new RelyingPartyConfiguration();
+        one.setId("one");
+        one.setResponderId("foo");
+        one.setActivationCondition(new RelyingPartyIdPredicate("https://other.example.org"));
+        one.initialize();
+
+        final RelyingPartyConfiguration two = new RelyingPartyConfiguration();
+        two.setId("two");
+        two.setResponderId("foo");
+        two.setActivationCondition(prc -> evaluations.incrementAndGet() < 0);
+        two.initialize();
+
+        final RelyingPartyConfiguration three = new RelyingPartyConfiguration();
+        three.setId("three");
+        three.setResponderId("foo");
+        three.setActivationCondition(
+                new RelyingPartyIdPredicate(Arrays.asList("https://sp.example.org", "https://other.example.org")));
+        three.initialize();
+
+        final RelyingPartyConfiguration four = new RelyingPartyConfiguration();
+        four.setId("four");
+        four.setResponderId("foo");
+        four.setActivationCondition(prc -> evaluations.incrementAndGet() > 0);
+        four.initialize();
+
+        final RelyingPartyConfiguration five = new RelyingPartyConfiguration();
+        five.setId("five");
+        five.setResponderId("foo");
+        five.setActivationCondition(new RelyingPartyIdPredicate("https://sp.example.org"));
+        five.initialize();
+
+        final DefaultRelyingPartyConfigurationResolver resolver = new DefaultRelyingPartyConfigurationResolver();
+        resolver.setId("test");
+        resolver.setRelyingPartyConfigurations(Arrays.asList(one, two, three, four, five));
+        resolver.setDefaultConfiguration(defaultRP);
+        resolver.setApplicationContext(new MockApplicationContext());
+        resolver.initialize();
+
+        final Iterator<RelyingPartyConfiguration> resultItr = resolver.resolve(requestContext).iterator();
+        Assert.assertSame(resultItr.next(), three);
+        Assert.assertSame(resultItr.next(), four);
+        Assert.assertSame(resultItr.next(), five);
+        Assert.assertFalse(resultItr.hasNext());
+        Assert.assertEquals(evaluations.get(), 2);
+
+        // Conditions following the first indexed match are not evaluated.
+        evaluations.set(0);
+        Assert.assertSame(resolver.resolveSingle(requestContext), three);
+        Assert.assertEquals(evaluations.get(), 1);
+
+        rpCtx.setRelyingPartyId("https://unknown.example.org");
+        Assert.assertSame(resolver.resolveSingle(requestContext), four);
+
+        rpCtx.setRelyingPartyId("https://other.example.org");
+        Assert.assertSame(resolver.resolveSingle(requestContext), one);
+    }
+
+}
@@ -23,6 +23,8 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.Lock;
 import java.util.function.Function;
 import java.util.stream.Collectors;
 
@@ -67,6 +69,9 @@ import net.shibboleth.shared.primitive.StringSupport;
  * 
  * <p>If a specific property is unavailable, then null is returned.</p>
  * 
+ * <p>The tags found for each name are remembered in a table attached to the {@link EntityDescriptor},
+ * so the entity and its enclosing groups are searched once per loaded descriptor rather than per request.</p>
+ * 
  * @param <T> type of property being returned
  * 
  * @since 3.4.0
@@ -317,8 +322,10 @@ public abstract class AbstractMetadataDrivenConfigurationLookupStrategy<T> exten
             profileId = null;
         }
         
+        final TagTable tagTable = getTagTable(entity);
+        
         // Look for "primary" tag name based on profile/property using mapped tags.
-        IdPAttribute idpAttribute = findMatchingMappedTag(entity,
+        IdPAttribute idpAttribute = tagTable.getMappedTag(entity,
                 profileId != null ? profileId + '/' + propertyName : propertyName);
         if (idpAttribute != null) {
             log.debug("Found matching tag '{}' for property '{}'", idpAttribute.getId(), propertyName);
@@ -331,7 +338,7 @@ public abstract class AbstractMetadataDrivenConfigurationLookupStrategy<T> exten
         
         // Check aliases.
         for (final String alias : propertyAliases) {
-            idpAttribute = findMatchingMappedTag(entity, alias);
+            idpAttribute = tagTable.getMappedTag(entity, alias);
             if (idpAttribute != null) {
                 log.debug("Found matching tag '{}' for property '{}'", idpAttribute.getId(), propertyName);
                 final T result = translate(idpAttribute);
@@ -352,8 +359,8 @@ public abstract class AbstractMetadataDrivenConfigurationLookupStrategy<T> exten
         }
         
         // Look for "primary" tag name based on profile/property.
-        Attribute attribute = findMatchingTag(entity,
-                profileId != null ? profileId + '/' + propertyName : propertyName);
+        Attribute attribute = tagTable.getTag(entity,
+                profileId != null ? profileId + '/' + propertyName : propertyName, strictNameFormat);
         if (attribute != null) {
             log.debug("Found matching tag '{}' for property '{}'", attribute.getName(), propertyName);
             final T result = translate(attribute);
@@ -365,7 +372,7 @@ public abstract class AbstractMetadataDrivenConfigurationLookupStrategy<T> exten
         
         // Check aliases.
         for (final String alias : propertyAliases) {
-            attribute = findMatchingTag(entity, alias);
+            attribute = tagTable.getTag(entity, alias, strictNameFormat);
             if (attribute != null) {
                 log.debug("Found matching tag '{}' for property '{}'", attribute.getName(), propertyName);
                 final T result = translate(attribute);
@@ -443,6 +450,42 @@ public abstract class AbstractMetadataDrivenConfigurationLookupStrategy<T> exten
      */
     @Nullable protected abstract T doTranslate(@Nonnull final IdPAttribute tag); 
     
+    /**
+     * Get the {@link TagTable} attached to an entity, attaching a new one if necessary.
+     * 
+     * @param entity the metadata to examine
+     * 
+     * @return the entity's tag table
+     */
+    @Nonnull private static TagTable getTagTable(@Nonnull final EntityDescriptor entity) {
+        final LockableClassToInstanceMultiMap<Object> objectMetadata = entity.getObjectMetadata();
+        
+        final Lock readLock = objectMetadata.getReadWriteLock().readLock();
+        readLock.lock();
+        try {
+            final List<TagTable> tables = objectMetadata.get(TagTable.class);
+            if (!tables.isEmpty()) {
+                return tables.get(0);
+            }
+        } finally {
+            readLock.unlock();
+        }
+        
+        final Lock writeLock = objectMetadata.getReadWriteLock().writeLock();
+        writeLock.lock();
+        try {
+            final List<TagTable> tables = objectMetadata.get(TagTable.class);
+            if (!tables.isEmpty()) {
+                return tables.get(0);
+            }
+            final TagTable table = new TagTable();
+            objectMetadata.put(table);
+            return table;
+        } finally {
+            writeLock.unlock();
+        }
+    }
+    
     /**
      * Find first matching attribute in the input object's node metadata.
      * 
@@ -451,7 +494,7 @@ public abstract class AbstractMetadataDrivenConfigurationLookupStrategy<T> exten
      * 
      * @return matching attribute, or null
      */
-    @Nullable private IdPAttribute findMatchingMappedTag(@Nonnull final EntityDescriptor entity,
+    @Nullable private static IdPAttribute findMatchingMappedTag(@Nonnull final EntityDescriptor entity,
             @Nonnull @NotEmpty final String name) {
         
         // Check for a tag match in the node metadata of the entity and its parent(s).
@@ -477,18 +520,19 @@ public abstract class AbstractMetadataDrivenConfigurationLookupStrategy<T> exten
      * 
      * @param entity the metadata to examine
      * @param name the tag name to search for
+     * @param strictNameFormat whether to require the URI name format
      * 
      * @return matching attribute or null
      */
-    @Nullable private Attribute findMatchingTag(@Nonnull final EntityDescriptor entity,
-            @Nonnull @NotEmpty final String name) {
+    @Nullable private static Attribute findMatchingTag(@Nonnull final EntityDescriptor entity,
+            @Nonnull @NotEmpty final String name, final boolean strictNameFormat) {
         
         // Check for a tag match in the EntityAttributes extension of the entity and its parent(s).
         Extensions exts = entity.getExtensions();
         if (exts != null) {
             final List<XMLObject> children = exts.getUnknownXMLObjects(EntityAttributes.DEFAULT_ELEMENT_NAME);
             if (!children.isEmpty() && children.get(0) instanceof EntityAttributes) {
-                final Attribute tag = findMatchingTag((EntityAttributes) children.get(0), name);
+                final Attribute tag = findMatchingTag((EntityAttributes) children.get(0), name, strictNameFormat);
                 if (tag != null) {
                     return tag;
                 }
@@ -501,7 +545,7 @@ public abstract class AbstractMetadataDrivenConfigurationLookupStrategy<T> exten
             if (exts != null) {
                 final List<XMLObject> children = exts.getUnknownXMLObjects(EntityAttributes.DEFAULT_ELEMENT_NAME);
                 if (!children.isEmpty() && children.get(0) instanceof EntityAttributes) {
-                    final Attribute tag = findMatchingTag((EntityAttributes) children.get(0), name);
+                    final Attribute tag = findMatchingTag((EntityAttributes) children.get(0), name, strictNameFormat);
                     if (tag != null) {
                         return tag;
                     }
@@ -521,7 +565,8 @@ public abstract class AbstractMetadataDrivenConfigurationLookupStrategy<T> exten
      * 
      * @return matching attribute, or null
      */
-    @Nullable private IdPAttribute findMatchingMappedTag(@Nonnull final LockableClassToInstanceMultiMap<?> input,
+    @Nullable private static IdPAttribute findMatchingMappedTag(
+            @Nonnull final LockableClassToInstanceMultiMap<?> input,
             @Nonnull @NotEmpty final String name) {
 
         final List<AttributesMapContainer> containerList = input.get(AttributesMapContainer.class);
@@ -539,11 +584,12 @@ public abstract class AbstractMetadataDrivenConfigurationLookupStrategy<T> exten
      * 
      * @param entityAttributes the metadata to examine
      * @param name the tag name to search for
+     * @param strictNameFormat whether to require the URI name format
      * 
      * @return matching attribute or null
      */
-    @Nullable private Attribute findMatchingTag(@Nonnull final EntityAttributes entityAttributes,
-            @Nonnull @NotEmpty final String name) {
+    @Nullable private static Attribute findMatchingTag(@Nonnull final EntityAttributes entityAttributes,
+            @Nonnull @NotEmpty final String name, final boolean strictNameFormat) {
         
         for (final Attribute tag : entityAttributes.getAttributes()) {
             if (Objects.equals(tag.getName(), name)
@@ -555,6 +601,69 @@ public abstract class AbstractMetadataDrivenConfigurationLookupStrategy<T> exten
         return null;
     }
     
+    /**
+     * Table of the tags found for each name in an entity and its enclosing groups, attached to the
+     * {@link EntityDescriptor}'s object metadata.
+     * 
+     * <p>A refresh of the metadata produces new descriptor objects, and hence new tables.</p>
+     */
+    private static final class TagTable {
+        
+        /** Marker for a name without a matching tag. */
+        @Nonnull private static final Object NO_MATCH = new Object();
+        
+        /** Mapped tags by name. */
+        @Nonnull private final Map<String,Object> mappedTags;
+        
+        /** Tags by name. */
+        @Nonnull private final Map<String,Object> tags;
+        
+        /** Tags with the URI name format by name. */
+        @Nonnull private final Map<String,Object> strictTags;
+        
+        /** Constructor. */
+        TagTable() {
+            mappedTags = new ConcurrentHashMap<>();
+            tags = new ConcurrentHashMap<>();
+            strictTags = new ConcurrentHashMap<>();
+        }
+        
+        /**
+         * Get the first mapped tag with a given name.
+         * 
+         * @param entity the entity to which this table is attached
+         * @param name the tag name to search for
+         * 
+         * @return matching attribute, or null
+         */
+        @Nullable IdPAttribute getMappedTag(@Nonnull final EntityDescriptor entity,
+                @Nonnull @NotEmpty final String name) {
+            final Object tag = mappedTags.computeIfAbsent(name, n -> {
+                final IdPAttribute match = findMatchingMappedTag(entity, n);
+                return match != null ? match : NO_MATCH;
+            });
+            return tag != NO_MATCH ? (IdPAttribute) tag : null;
+        }
+        
+        /**
+         * Get the first tag with a given name.
+         * 
+         * @param entity the entity to which this table is attached
+         * @param name the tag name to search for
+         * @param strictNameFormat whether to require the URI name format
+         * 
+         * @return matching attribute, or null
+         */
+        @Nullable Attribute getTag(@Nonnull final EntityDescriptor entity, @Nonnull @NotEmpty final String name,
+                final boolean strictNameFormat) {
+            final Object tag = (strictNameFormat ? strictTags : tags).computeIfAbsent(name, n -> {
+                final Attribute match = findMatchingTag(entity, n, strictNameFormat);
+                return match != null ? match : NO_MATCH;
+            });
+            return tag != NO_MATCH ? (Attribute) tag : null;
+        }
+    }
+    
     /** A child context that caches derived configuration properties. */
     public static final class CachedConfigurationContext extends BaseContext {
         
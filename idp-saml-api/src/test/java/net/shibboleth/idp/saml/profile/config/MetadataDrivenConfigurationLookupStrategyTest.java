@@ -0,0 +1,174 @@
+/*
+ * Licensed to the University Corporation for Advanced Internet Development,
+ * Inc. (UCAID) under one or more contributor license agreements.  See the
+ * NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The UCAID licenses this file to You under the Apache
+ * License, Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package net.shibboleth.idp.saml.profile.config;
+
+import javax.annotation.Nonnull;
+
+import org.opensaml.core.testing.OpenSAMLInitBaseTestCase;
+import org.opensaml.core.xml.schema.XSString;
+import org.opensaml.core.xml.util.XMLObjectSupport;
+import org.opensaml.profile.context.ProfileRequestContext;
+import org.opensaml.saml.ext.saml2mdattr.EntityAttributes;
+import org.opensaml.saml.saml2.core.Attribute;
+import org.opensaml.saml.saml2.core.AttributeValue;
+import org.opensaml.saml.saml2.metadata.EntityDescriptor;
+import org.opensaml.saml.saml2.metadata.Extensions;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import net.shibboleth.shared.component.ComponentInitializationException;
+
+/** Unit test for the tag lookup of {@link AbstractMetadataDrivenConfigurationLookupStrategy}. */
+public class MetadataDrivenConfigurationLookupStrategyTest extends OpenSAMLInitBaseTestCase {
+
+    private static final String PROPERTY = "http://shibboleth.net/ns/profiles/foo";
+
+    @Test public void testCachedHit() throws ComponentInitializationException {
+        final EntityDescriptor entity = buildEntity();
+        final Attribute tag = addTag(entity, PROPERTY, Attribute.URI_REFERENCE, "bar");
+        final StringConfigurationLookupStrategy strategy = buildStrategy(entity, false);
+
+        Assert.assertEquals(strategy.apply(new ProfileRequestContext()), "bar");
+
+        // The match is remembered for the descriptor, so the metadata is not searched again.
+        getEntityAttributes(entity).getAttributes().remove(tag);
+        Assert.assertEquals(strategy.apply(new ProfileRequestContext()), "bar");
+    }
+
+    @Test public void testCachedMiss() throws ComponentInitializationException {
+        final EntityDescriptor entity = buildEntity();
+        addTag(entity, "other", Attribute.URI_REFERENCE, "bar");
+        final StringConfigurationLookupStrategy strategy = buildStrategy(entity, false);
+
+        Assert.assertEquals(strategy.apply(new ProfileRequestContext()), "default");
+
+        // The miss is remembered for the descriptor too.
+        addTag(entity, PROPERTY, Attribute.URI_REFERENCE, "bar");
+        Assert.assertEquals(strategy.apply(new ProfileRequestContext()), "default");
+    }
+
+    @Test public void testStrictNameFormat() throws ComponentInitializationException {
+        final EntityDescriptor entity = buildEntity();
+        addTag(entity, PROPERTY, Attribute.UNSPECIFIED, "bar");
+        final StringConfigurationLookupStrategy strict = buildStrategy(entity, true);
+        final StringConfigurationLookupStrategy lax = buildStrategy(entity, false);
+
+        // A strict miss must not hide the match from a non-strict lookup, or vice versa.
+        Assert.assertEquals(strict.apply(new ProfileRequestContext()), "default");
+        Assert.assertEquals(lax.apply(new ProfileRequestContext()), "bar");
+        Assert.assertEquals(strict.apply(new ProfileRequestContext()), "default");
+    }
+
+    @Test public void testSharedAcrossStrategies() throws ComponentInitializationException {
+        final EntityDescriptor entity = buildEntity();
+        final Attribute tag = addTag(entity, PROPERTY, Attribute.URI_REFERENCE, "bar");
+
+        Assert.assertEquals(buildStrategy(entity, false).apply(new ProfileRequestContext()), "bar");
+
+        // A second strategy finds the tag in the table filled by the first.
+        getEntityAttributes(entity).getAttributes().remove(tag);
+        Assert.assertEquals(buildStrategy(entity, false).apply(new ProfileRequestContext()), "bar");
+    }
+
+    @Test public void testNewDescriptor() throws ComponentInitializationException {
+        final EntityDescriptor entity = buildEntity();
+        addTag(entity, PROPERTY, Attribute.URI_REFERENCE, "bar");
+        Assert.assertEquals(buildStrategy(entity, false).apply(new ProfileRequestContext()), "bar");
+
+        // A refreshed descriptor gets its own table.
+        final EntityDescriptor refreshed = buildEntity();
+        addTag(refreshed, PROPERTY, Attribute.URI_REFERENCE, "baz");
+        Assert.assertEquals(buildStrategy(refreshed, false).apply(new ProfileRequestContext()), "baz");
+        Assert.assertEquals(buildStrategy(entity, false).apply(new ProfileRequestContext()), "bar");
+    }
+
+    /**
+     * Build a strategy returning the tag value for {@link #PROPERTY}.
+     * 
+     * @param entity metadata to examine
+     * @param strictNameFormat whether to require the URI name format
+     * 
+     * @return initialized strategy
+     * 
+     * @throws ComponentInitializationException if initialization fails
+     */
+    @Nonnull private StringConfigurationLookupStrategy buildStrategy(@Nonnull final EntityDescriptor entity,
+            final boolean strictNameFormat) throws ComponentInitializationException {
+        final StringConfigurationLookupStrategy strategy = new StringConfigurationLookupStrategy();
+        strategy.setPropertyName(PROPERTY);
+        strategy.setExplicitPropertyName(true);
+        strategy.setStrictNameFormat(strictNameFormat);
+        strategy.setEnableCaching(false);
+        strategy.setDefaultValue("default");
+        strategy.setMetadataLookupStrategy(input -> entity);
+        strategy.initialize();
+        return strategy;
+    }
+
+    /**
+     * Build an entity with an empty EntityAttributes extension.
+     * 
+     * @return the entity
+     */
+    @Nonnull private EntityDescriptor buildEntity() {
+        final EntityDescriptor entity =
+                (EntityDescriptor) XMLObjectSupport.buildXMLObject(EntityDescriptor.DEFAULT_ELEMENT_NAME);
+        entity.setEntityID("https://sp.example.org");
+        final Extensions exts = (Extensions) XMLObjectSupport.buildXMLObject(Extensions.DEFAULT_ELEMENT_NAME);
+        exts.getUnknownXMLObjects().add(XMLObjectSupport.buildXMLObject(EntityAttributes.DEFAULT_ELEMENT_NAME));
+        entity.setExtensions(exts);
+        return entity;
+    }
+
+    /**
+     * Get the EntityAttributes extension of an entity.
+     * 
+     * @param entity the entity
+     * 
+     * @return the extension
+     */
+    @Nonnull private EntityAttributes getEntityAttributes(@Nonnull final EntityDescriptor entity) {
+        return (EntityAttributes) entity.getExtensions().getUnknownXMLObjects(
+                EntityAttributes.DEFAULT_ELEMENT_NAME).get(0);
+    }
+
+    /**
+     * Add a single-valued tag to an entity.
+     * 
+     * @param entity the entity
+     * @param name tag name
+     * @param nameFormat tag name format
+     * @param value tag value
+     * 
+     * @return the tag
+     */
+    @Nonnull private Attribute addTag(@Nonnull final EntityDescriptor entity, @Nonnull final String name,
+            @Nonnull final String nameFormat, @Nonnull final String value) {
+        final Attribute tag = (Attribute) XMLObjectSupport.buildXMLObject(Attribute.DEFAULT_ELEMENT_NAME);
+        tag.setName(name);
+        tag.setNameFormat(nameFormat);
+        final XSString tagValue =
+                (XSString) XMLObjectSupport.buildXMLObject(AttributeValue.DEFAULT_ELEMENT_NAME, XSString.TYPE_NAME);
+        tagValue.setValue(value);
+        tag.getAttributeValues().add(tagValue);
+        getEntityAttributes(entity).getAttributes().add(tag);
+        return tag;
+    }
+
+}
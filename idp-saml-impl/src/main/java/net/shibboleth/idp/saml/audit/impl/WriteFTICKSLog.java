@@ -18,6 +18,8 @@
 package net.shibboleth.idp.saml.audit.impl;
 
 import java.security.NoSuchAlgorithmException;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.function.Function;
 
 import javax.annotation.Nonnull;
@@ -28,14 +30,17 @@ import org.opensaml.messaging.context.navigate.MessageLookup;
 import org.opensaml.profile.context.ProfileRequestContext;
 import org.opensaml.profile.context.navigate.OutboundMessageContextLookup;
 import org.opensaml.saml.common.SAMLObject;
+import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import net.shibboleth.idp.authn.context.SubjectContext;
 import net.shibboleth.idp.authn.context.navigate.SubjectContextPrincipalLookupFunction;
 import net.shibboleth.idp.profile.AbstractProfileAction;
+import net.shibboleth.idp.profile.audit.AuditSink;
 import net.shibboleth.idp.profile.context.AuditContext;
 import net.shibboleth.idp.profile.context.navigate.RelyingPartyIdLookupFunction;
 import net.shibboleth.idp.profile.context.navigate.ResponderIdLookupFunction;
+import net.shibboleth.shared.annotation.constraint.NonNegative;
 import net.shibboleth.shared.annotation.constraint.NonnullAfterInit;
 import net.shibboleth.shared.annotation.constraint.NotEmpty;
 import net.shibboleth.shared.codec.StringDigester;
@@ -53,6 +58,16 @@ public class WriteFTICKSLog extends AbstractProfileAction {
     /** Logging category to use. */
     @Nonnull @NotEmpty public static final String FTICKS_LOG_CATEGORY = "Shibboleth-FTICKS";
     
+    /** Initial size of the per-thread record buffer. */
+    private static final int INITIAL_CAPACITY = 256;
+    
+    /** Per-thread buffer for building records. */
+    @Nonnull private static final ThreadLocal<StringBuilder> RECORD_BUILDER =
+            ThreadLocal.withInitial(() -> new StringBuilder(INITIAL_CAPACITY));
+    
+    /** Logger for records. */
+    @Nonnull private final Logger fticksLog = LoggerFactory.getLogger(FTICKS_LOG_CATEGORY);
+    
     /** Strategy used to locate the {@link AuditContext} associated with a given {@link ProfileRequestContext}. */
     @Nonnull private Function<ProfileRequestContext,AuditContext> auditContextLookupStrategy;
 
@@ -80,8 +95,20 @@ public class WriteFTICKSLog extends AbstractProfileAction {
     /** Lookup strategy for StatusCode. */
     @Nonnull private Function<ProfileRequestContext,String> statusCodeLookupStrategy;
 
+    /** Optional destination for records in place of direct logging. */
+    @Nullable private AuditSink auditSink;
+
+    /** Maximum number of hashed usernames to cache. */
+    @NonNegative private int hashCacheSize;
+
     /** Username hasher. */
     @NonnullAfterInit private StringDigester digester;
+    
+    /** Recently hashed usernames. */
+    @Nullable private Map<String,String> hashCache;
+    
+    /** Fixed leading portion of each record. */
+    @NonnullAfterInit private String recordPrefix;
 
     /** Constructor. */
     public WriteFTICKSLog() {
@@ -178,6 +205,32 @@ public class WriteFTICKSLog extends AbstractProfileAction {
         statusCodeLookupStrategy = Constraint.isNotNull(strategy, "StatusCode lookup strategy cannot be null");
     }
 
+    /**
+     * Set the maximum number of hashed usernames to cache, or 0 to hash on every use.
+     * 
+     * <p>Defaults to 0.</p>
+     * 
+     * @param size cache size
+     * 
+     * @since 5.0.0
+     */
+    public void setHashCacheSize(@NonNegative final int size) {
+        checkSetterPreconditions();
+        hashCacheSize = (int) Constraint.isGreaterThanOrEqual(0, size, "Cache size cannot be negative");
+    }
+
+    /**
+     * Set a destination for records to use in place of direct logging.
+     * 
+     * @param sink audit sink
+     * 
+     * @since 5.0.0
+     */
+    public void setAuditSink(@Nullable final AuditSink sink) {
+        checkSetterPreconditions();
+        auditSink = sink;
+    }
+
     /** {@inheritDoc} */
     @Override
     protected void doInitialize() throws ComponentInitializationException {
@@ -195,6 +248,20 @@ public class WriteFTICKSLog extends AbstractProfileAction {
             throw new ComponentInitializationException(e);
         }
         
+        if (hashCacheSize > 0) {
+            hashCache = new LinkedHashMap<>(16, 0.75f, true) {
+                /** Serial version UID. */
+                private static final long serialVersionUID = 2286618418451263446L;
+
+                /** {@inheritDoc} */
+                @Override
+                protected boolean removeEldestEntry(final Map.Entry<String,String> eldest) {
+                    return size() > hashCacheSize;
+                }
+            };
+        }
+        
+        recordPrefix = "F-TICKS/" + federationId + "/1.0#TS=";
     }
     
 // Checkstyle: CyclomaticComplexity OFF
@@ -204,8 +271,9 @@ public class WriteFTICKSLog extends AbstractProfileAction {
 
         //"F-TICKS/%{idp.fticks.federation:Undefined}/1.0#TS=%T#RP=%SP#AP=%IDP #PN=%HASHEDu#AM=%ac#"
         
-        final StringBuilder record = new StringBuilder("F-TICKS/");
-        record.append(federationId).append("/1.0#TS=").append(System.currentTimeMillis() / 1000);
+        final StringBuilder record = RECORD_BUILDER.get();
+        record.setLength(0);
+        record.append(recordPrefix).append(System.currentTimeMillis() / 1000);
         
         String field = relyingPartyLookupStrategy.apply(profileRequestContext);
         if (field != null && !field.isEmpty()) {
@@ -219,7 +287,7 @@ public class WriteFTICKSLog extends AbstractProfileAction {
         
         field = usernameLookupStrategy.apply(profileRequestContext);
         if (field != null && !field.isEmpty()) {
-            field = digester.apply(field);
+            field = hash(field);
             if (field != null && !field.isEmpty()) {
                 record.append("#PN=").append(field);
             }
@@ -239,8 +307,51 @@ public class WriteFTICKSLog extends AbstractProfileAction {
         }
 
         record.append("#");
-        LoggerFactory.getLogger(FTICKS_LOG_CATEGORY).info(record.toString());
+        if (auditSink != null) {
+            auditSink.write(FTICKS_LOG_CATEGORY, record.toString());
+        } else {
+            fticksLog.info(record.toString());
+        }
     }
 // Checkstyle: CyclomaticComplexity ON
     
+    /**
+     * Hash a username, using the cache if enabled.
+     * 
+     * @param username username to hash
+     * 
+     * @return the hashed value
+     */
+    @Nullable private String hash(@Nonnull @NotEmpty final String username) {
+        if (hashCache == null) {
+            return digest(username);
+        }
+        
+        synchronized (hashCache) {
+            final String hashed = hashCache.get(username);
+            if (hashed != null) {
+                return hashed;
+            }
+        }
+        
+        final String hashed = digest(username);
+        if (hashed != null) {
+            synchronized (hashCache) {
+                hashCache.put(username, hashed);
+            }
+        }
+        return hashed;
+    }
+
+    /**
+     * Compute the hash of a username.
+     * 
+     * @param username username to hash
+     * 
+     * @return the hashed value
+     */
+    @Nullable String digest(@Nonnull @NotEmpty final String username) {
+        return digester.apply(username);
+    }
+    
 }
\ No newline at end of file
@@ -21,6 +21,7 @@ import java.io.IOException;
 import java.io.StringReader;
 import java.io.StringWriter;
 import java.security.Principal;
+import java.util.Set;
 import java.util.regex.Pattern;
 
 import javax.annotation.Nonnull;
@@ -45,6 +46,7 @@ import com.google.common.base.Strings;
 
 import net.shibboleth.idp.authn.principal.AbstractPrincipalSerializer;
 import net.shibboleth.idp.saml.authn.principal.NameIDPrincipal;
+import net.shibboleth.shared.annotation.constraint.NonnullElements;
 import net.shibboleth.shared.annotation.constraint.NotEmpty;
 
 /**
@@ -129,6 +131,11 @@ public class NameIDPrincipalSerializer extends AbstractPrincipalSerializer<Strin
         return JSON_PATTERN.matcher(value).matches();
     }
 
+    /** {@inheritDoc} */
+    @Nonnull @NonnullElements public Set<String> getTypeTags() {
+        return Set.of(PRINCIPAL_NAME_FIELD);
+    }
+
     /** {@inheritDoc} */
 // Checkstyle: CyclomaticComplexity OFF
     @Nullable public NameIDPrincipal deserialize(@Nonnull @NotEmpty final String value) throws IOException {
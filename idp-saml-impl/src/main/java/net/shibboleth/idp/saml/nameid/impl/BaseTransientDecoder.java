@@ -18,6 +18,7 @@
 package net.shibboleth.idp.saml.nameid.impl;
 
 import java.io.IOException;
+import java.util.function.Function;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
@@ -47,6 +48,9 @@ public abstract class BaseTransientDecoder extends AbstractIdentifiableInitializ
     /** Store used to map identifiers to principals. */
     @NonnullAfterInit private StorageService idStore;
 
+    /** Optional lookup of records not yet written to the store. */
+    @Nullable private Function<String,String> pendingRecordLookupStrategy;
+
     /** cache for the log prefix - to save multiple recalculations. */
     @Nullable private String logPrefix;
 
@@ -69,6 +73,18 @@ public abstract class BaseTransientDecoder extends AbstractIdentifiableInitializ
         idStore = Constraint.isNotNull(store, "StorageService cannot be null");
     }
 
+    /**
+     * Sets a lookup strategy for records that have been issued but not yet written to the store.
+     * 
+     * @param strategy lookup strategy mapping an identifier to a record value
+     * 
+     * @since 5.0.0
+     */
+    public void setPendingRecordLookupStrategy(@Nullable final Function<String,String> strategy) {
+        checkSetterPreconditions();
+        pendingRecordLookupStrategy = strategy;
+    }
+
     /**
      * Convert the transient Id into the principal.
      * 
@@ -88,13 +104,17 @@ public abstract class BaseTransientDecoder extends AbstractIdentifiableInitializ
         }
 
         try {
-            final StorageRecord<?> record = idStore.read(TransientIdParameters.CONTEXT, transientId);
-            if (null == record) {
-                log.info("{} Could not find transient identifier", getLogPrefix());
-                return null;
+            String value = pendingRecordLookupStrategy != null ? pendingRecordLookupStrategy.apply(transientId) : null;
+            if (value == null) {
+                final StorageRecord<?> record = idStore.read(TransientIdParameters.CONTEXT, transientId);
+                if (null == record) {
+                    log.info("{} Could not find transient identifier", getLogPrefix());
+                    return null;
+                }
+                value = record.getValue();
             }
 
-            final TransientIdParameters param = new TransientIdParameters(record.getValue());
+            final TransientIdParameters param = new TransientIdParameters(value);
 
             if (!requesterId.equals(param.getAttributeRecipient())) {
                 log.warn("{} Transient identifier issued to {} but requested by {}", getLogPrefix(),
@@ -0,0 +1,434 @@
+/*
+ * Licensed to the University Corporation for Advanced Internet Development,
+ * Inc. (UCAID) under one or more contributor license agreements.  See the
+ * NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The UCAID licenses this file to You under the Apache
+ * License, Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package net.shibboleth.idp.saml.nameid.impl;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.GuardedBy;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import net.shibboleth.idp.attribute.DurablePairwiseIdStore;
+import net.shibboleth.idp.attribute.PairwiseId;
+import net.shibboleth.shared.annotation.constraint.NonnullAfterInit;
+import net.shibboleth.shared.annotation.constraint.ThreadSafeAfterInit;
+import net.shibboleth.shared.component.AbstractInitializableComponent;
+import net.shibboleth.shared.component.ComponentInitializationException;
+import net.shibboleth.shared.logic.Constraint;
+
+/**
+ * A {@link DurablePairwiseIdStore} that caches the results of another store in memory.
+ * 
+ * <p>Lookups by source value, keyed by issuer, recipient and source ID, and lookups by issued value, keyed by
+ * issuer, recipient and pairwise ID, are each held in a bounded cache for a limited time. Lookups that find
+ * nothing are cached for a separate, normally shorter, period, and a negative result is never used for a
+ * lookup that permits creation of a new ID. Concurrent lookups of the same key share a single call to the
+ * underlying store.</p>
+ * 
+ * <p>Deactivation or attachment of an ID clears the caches. Changes made to the underlying store by other
+ * means are not seen until cached entries expire.</p>
+ * 
+ * <p>Cached results carry the issuer, recipient, principal name, source ID and pairwise ID only.</p>
+ * 
+ * @since 5.0.0
+ */
+@ThreadSafeAfterInit
+public class CachingPairwiseIdStore extends AbstractInitializableComponent implements DurablePairwiseIdStore {
+
+    /** Class logger. */
+    @Nonnull private final Logger log = LoggerFactory.getLogger(CachingPairwiseIdStore.class);
+
+    /** Underlying store. */
+    @NonnullAfterInit private DurablePairwiseIdStore pidStore;
+
+    /** Maximum number of entries in each cache. */
+    private int maxCacheSize;
+
+    /** Lifetime of cached results. */
+    @Nonnull private Duration cacheLifetime;
+
+    /** Lifetime of cached negative results. */
+    @Nonnull private Duration negativeCacheLifetime;
+
+    /** Lookups by source value. */
+    @NonnullAfterInit @GuardedBy("this") private Map<CacheKey,CacheEntry> sourceCache;
+
+    /** Lookups by issued value. */
+    @NonnullAfterInit @GuardedBy("this") private Map<CacheKey,CacheEntry> issuedCache;
+
+    /** Source value lookups in progress. */
+    @Nonnull private final Map<CacheKey,CompletableFuture<PairwiseId>> sourceLookups;
+
+    /** Issued value lookups in progress. */
+    @Nonnull private final Map<CacheKey,CompletableFuture<PairwiseId>> issuedLookups;
+
+    /** Constructor. */
+    public CachingPairwiseIdStore() {
+        maxCacheSize = 10000;
+        cacheLifetime = Duration.ofMinutes(10);
+        negativeCacheLifetime = Duration.ofSeconds(30);
+        sourceLookups = new ConcurrentHashMap<>();
+        issuedLookups = new ConcurrentHashMap<>();
+    }
+
+    /**
+     * Set the store to cache.
+     * 
+     * @param store the underlying store
+     */
+    public void setPersistentIdStore(@Nonnull final DurablePairwiseIdStore store) {
+        checkSetterPreconditions();
+        pidStore = Constraint.isNotNull(store, "PairwiseIdStore cannot be null");
+    }
+
+    /**
+     * Set the maximum number of entries in each cache.
+     * 
+     * <p>Defaults to 10000.</p>
+     * 
+     * @param size maximum entries
+     */
+    public void setMaxCacheSize(final int size) {
+        checkSetterPreconditions();
+        maxCacheSize = (int) Constraint.isGreaterThan(0, size, "Cache size must be greater than 0");
+    }
+
+    /**
+     * Set the lifetime of cached results.
+     * 
+     * <p>Defaults to 10 minutes.</p>
+     * 
+     * @param lifetime cache lifetime
+     */
+    public void setCacheLifetime(@Nonnull final Duration lifetime) {
+        checkSetterPreconditions();
+        Constraint.isNotNull(lifetime, "Lifetime cannot be null");
+        Constraint.isFalse(lifetime.isNegative() || lifetime.isZero(), "Lifetime must be positive");
+        cacheLifetime = lifetime;
+    }
+
+    /**
+     * Set the lifetime of cached lookups that found nothing.
+     * 
+     * <p>Defaults to 30 seconds, and a zero value disables caching of such results.</p>
+     * 
+     * @param lifetime negative cache lifetime
+     */
+    public void setNegativeCacheLifetime(@Nonnull final Duration lifetime) {
+        checkSetterPreconditions();
+        Constraint.isNotNull(lifetime, "Lifetime cannot be null");
+        Constraint.isFalse(lifetime.isNegative(), "Lifetime cannot be negative");
+        negativeCacheLifetime = lifetime;
+    }
+
+    /** {@inheritDoc} */
+    @Override protected void doInitialize() throws ComponentInitializationException {
+        super.doInitialize();
+
+        if (pidStore == null) {
+            throw new ComponentInitializationException("PairwiseIdStore cannot be null");
+        }
+
+        sourceCache = new LRUMap(maxCacheSize);
+        issuedCache = new LRUMap(maxCacheSize);
+    }
+
+    /** {@inheritDoc} */
+    @Nullable public PairwiseId getBySourceValue(@Nonnull final PairwiseId pid, final boolean allowCreate)
+            throws IOException {
+        checkComponentActive();
+
+        final CacheKey key = new CacheKey(pid.getIssuerEntityID(), pid.getRecipientEntityID(),
+                pid.getSourceSystemId());
+
+        final CacheEntry cached = getCached(sourceCache, key);
+        if (cached != null && (cached.pid != null || !allowCreate)) {
+            log.trace("Returning cached pairwise ID for source value {}", key);
+            return copy(cached.pid);
+        }
+
+        final PairwiseId result = lookup(sourceLookups, sourceCache, key, () ->
+                pidStore.getBySourceValue(pid, allowCreate));
+        if (result == null && allowCreate) {
+            // The shared lookup may not have permitted creation.
+            return copy(store(sourceCache, key, pidStore.getBySourceValue(pid, true)));
+        }
+        return copy(result);
+    }
+
+    /** {@inheritDoc} */
+    @Nullable public PairwiseId getByIssuedValue(@Nonnull final PairwiseId pid) throws IOException {
+        checkComponentActive();
+
+        final CacheKey key = new CacheKey(pid.getIssuerEntityID(), pid.getRecipientEntityID(), pid.getPairwiseId());
+
+        final CacheEntry cached = getCached(issuedCache, key);
+        if (cached != null) {
+            log.trace("Returning cached pairwise ID for issued value {}", key);
+            return copy(cached.pid);
+        }
+
+        return copy(lookup(issuedLookups, issuedCache, key, () -> pidStore.getByIssuedValue(pid)));
+    }
+
+    /** {@inheritDoc} */
+    public void deactivate(@Nonnull final PairwiseId pid) throws IOException {
+        checkComponentActive();
+        pidStore.deactivate(pid);
+        clear();
+    }
+
+    /** {@inheritDoc} */
+    public void attach(@Nonnull final PairwiseId pid) throws IOException {
+        checkComponentActive();
+        pidStore.attach(pid);
+        clear();
+    }
+
+    /** Empty the caches. */
+    private synchronized void clear() {
+        sourceCache.clear();
+        issuedCache.clear();
+    }
+
+    /**
+     * Get an unexpired cache entry.
+     * 
+     * @param cache cache to check
+     * @param key key to look up
+     * 
+     * @return the entry, or null
+     */
+    @Nullable private synchronized CacheEntry getCached(@Nonnull final Map<CacheKey,CacheEntry> cache,
+            @Nonnull final CacheKey key) {
+        final CacheEntry entry = cache.get(key);
+        if (entry != null && entry.expiration < System.currentTimeMillis()) {
+            cache.remove(key);
+            return null;
+        }
+        return entry;
+    }
+
+    /**
+     * Cache the result of a lookup.
+     * 
+     * @param cache cache to update
+     * @param key key of lookup
+     * @param pid result of lookup
+     * 
+     * @return a copy of the result
+     */
+    @Nullable private synchronized PairwiseId store(@Nonnull final Map<CacheKey,CacheEntry> cache,
+            @Nonnull final CacheKey key, @Nullable final PairwiseId pid) {
+        final Duration lifetime = pid != null ? cacheLifetime : negativeCacheLifetime;
+        final PairwiseId result = copy(pid);
+        if (!lifetime.isZero()) {
+            cache.put(key, new CacheEntry(result, System.currentTimeMillis() + lifetime.toMillis()));
+        }
+        return result;
+    }
+
+    /**
+     * Perform a lookup, sharing the result with any concurrent lookup of the same key.
+     * 
+     * @param inProgress lookups in progress
+     * @param cache cache to update
+     * @param key key of lookup
+     * @param loader the underlying lookup
+     * 
+     * @return result of lookup
+     * 
+     * @throws IOException if the underlying lookup fails
+     */
+    @Nullable private PairwiseId lookup(@Nonnull final Map<CacheKey,CompletableFuture<PairwiseId>> inProgress,
+            @Nonnull final Map<CacheKey,CacheEntry> cache, @Nonnull final CacheKey key,
+            @Nonnull final Loader loader) throws IOException {
+
+        final CompletableFuture<PairwiseId> future = new CompletableFuture<>();
+        final CompletableFuture<PairwiseId> existing = inProgress.putIfAbsent(key, future);
+        if (existing != null) {
+            log.trace("Waiting for lookup in progress for {}", key);
+            try {
+                return existing.get();
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException(e);
+            } catch (final ExecutionException e) {
+                if (e.getCause() instanceof IOException) {
+                    throw (IOException) e.getCause();
+                }
+                throw new IOException(e.getCause());
+            }
+        }
+
+        try {
+            final PairwiseId result = store(cache, key, loader.load());
+            future.complete(result);
+            return result;
+        } catch (final IOException | RuntimeException e) {
+            future.completeExceptionally(e);
+            throw e;
+        } finally {
+            inProgress.remove(key, future);
+        }
+    }
+
+    /**
+     * Copy the identifying fields of a pairwise ID.
+     * 
+     * @param pid input object
+     * 
+     * @return a copy, or null
+     */
+    @Nullable private static PairwiseId copy(@Nullable final PairwiseId pid) {
+        if (pid == null) {
+            return null;
+        }
+        final PairwiseId copy = new PairwiseId();
+        copy.setIssuerEntityID(pid.getIssuerEntityID());
+        copy.setRecipientEntityID(pid.getRecipientEntityID());
+        copy.setPrincipalName(pid.getPrincipalName());
+        copy.setSourceSystemId(pid.getSourceSystemId());
+        copy.setPairwiseId(pid.getPairwiseId());
+        return copy;
+    }
+
+    /** An underlying store lookup. */
+    @FunctionalInterface
+    private interface Loader {
+
+        /**
+         * Perform the lookup.
+         * 
+         * @return result of lookup
+         * 
+         * @throws IOException if the lookup fails
+         */
+        @Nullable PairwiseId load() throws IOException;
+    }
+
+    /** Cache key of issuer, recipient and identifier. */
+    private static final class CacheKey {
+
+        /** Issuer. */
+        @Nullable private final String issuer;
+
+        /** Recipient. */
+        @Nullable private final String recipient;
+
+        /** Source or pairwise ID. */
+        @Nullable private final String id;
+
+        /**
+         * Constructor.
+         * 
+         * @param iss issuer
+         * @param rcpt recipient
+         * @param value source or pairwise ID
+         */
+        CacheKey(@Nullable final String iss, @Nullable final String rcpt, @Nullable final String value) {
+            issuer = iss;
+            recipient = rcpt;
+            id = value;
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        public boolean equals(final Object obj) {
+            if (obj == this) {
+                return true;
+            } else if (!(obj instanceof CacheKey)) {
+                return false;
+            }
+            final CacheKey other = (CacheKey) obj;
+            return Objects.equals(issuer, other.issuer) && Objects.equals(recipient, other.recipient)
+                    && Objects.equals(id, other.id);
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        public int hashCode() {
+            return Objects.hash(issuer, recipient, id);
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        public String toString() {
+            return issuer + '!' + recipient + '!' + id;
+        }
+    }
+
+    /** Cached lookup result. */
+    private static final class CacheEntry {
+
+        /** Result, or null if nothing was found. */
+        @Nullable private final PairwiseId pid;
+
+        /** Expiration in milliseconds since the epoch. */
+        private final long expiration;
+
+        /**
+         * Constructor.
+         * 
+         * @param result result of lookup
+         * @param exp expiration
+         */
+        CacheEntry(@Nullable final PairwiseId result, final long exp) {
+            pid = result;
+            expiration = exp;
+        }
+    }
+
+    /** Bounded map evicting the least recently used entry. */
+    private static final class LRUMap extends LinkedHashMap<CacheKey,CacheEntry> {
+
+        /** Serial version UID. */
+        private static final long serialVersionUID = 2812938487425339361L;
+
+        /** Maximum size. */
+        private final int maxSize;
+
+        /**
+         * Constructor.
+         * 
+         * @param size maximum size
+         */
+        LRUMap(final int size) {
+            super(16, 0.75f, true);
+            maxSize = size;
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        protected boolean removeEldestEntry(final Map.Entry<CacheKey,CacheEntry> eldest) {
+            return size() > maxSize;
+        }
+    }
+
+}
@@ -22,14 +22,29 @@ import java.security.InvalidAlgorithmParameterException;
 import java.security.NoSuchAlgorithmException;
 import java.time.Duration;
 import java.time.Instant;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
 
 import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
 
+import org.opensaml.core.metrics.MetricsSupport;
 import org.opensaml.saml.common.SAMLException;
 import org.opensaml.storage.StorageService;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
 import net.shibboleth.shared.annotation.constraint.NonnullAfterInit;
 import net.shibboleth.shared.annotation.constraint.NotEmpty;
 import net.shibboleth.shared.annotation.constraint.Positive;
@@ -45,10 +60,20 @@ import net.shibboleth.shared.security.RandomIdentifierParameterSpec;
  * 
  * <p>The identifier itself is the record key, and the value combines the principal name with the
  * identifier of the recipient.</p>
+ * 
+ * <p>In write-behind mode, identifiers are issued without waiting for the store, and the records are held
+ * in memory and written in the background at a fixed interval. Pending records remain available to decoders
+ * through {@link #getPendingRecordLookupStrategy()}. If too many records are pending, identifiers are written
+ * synchronously. The number of pending records, the time taken by each flush, and records that could not be
+ * written are reported under <code>net.shibboleth.idp.nameid.transient.<em>id</em></code> if a metric
+ * registry is available.</p>
  */
 public class StoredTransientIdGenerationStrategy extends AbstractIdentifiableInitializableComponent
         implements TransientIdGenerationStrategy {
 
+    /** Time to wait for a running background write at shutdown. */
+    @Nonnull private static final Duration SHUTDOWN_WAIT = Duration.ofSeconds(30);
+
     /** Class logger. */
     @Nonnull private final Logger log = LoggerFactory.getLogger(StoredTransientIdGenerationStrategy.class);
 
@@ -64,10 +89,38 @@ public class StoredTransientIdGenerationStrategy extends AbstractIdentifiableIni
     /** Length identifiers are valid. */
     @Nonnull private Duration idLifetime;
 
+    /** Whether to write records in the background. */
+    private boolean writeBehind;
+
+    /** Interval between background writes. */
+    @Nonnull private Duration flushInterval;
+
+    /** Maximum number of records awaiting a background write. */
+    private int maxPending;
+
+    /** Records awaiting a background write, keyed by identifier. */
+    @Nonnull private final Map<String,PendingRecord> pendingRecords;
+
+    /** Serializes background writes with the final write at shutdown. */
+    @Nonnull private final Object flushLock;
+
+    /** Background writer. */
+    @Nullable private ScheduledExecutorService flushExecutor;
+
+    /** Flush timer. */
+    @Nullable private Timer flushTimer;
+
+    /** Counter of records that could not be written. */
+    @Nullable private Counter failedCounter;
+
     /** Constructor. */
     public StoredTransientIdGenerationStrategy() {
         idSize = 16;
         idLifetime = Duration.ofHours(4);
+        flushInterval = Duration.ofSeconds(1);
+        maxPending = 10000;
+        pendingRecords = new ConcurrentHashMap<>();
+        flushLock = new Object();
     }
 
     /**
@@ -131,6 +184,71 @@ public class StoredTransientIdGenerationStrategy extends AbstractIdentifiableIni
         idLifetime = lifetime;
     }
 
+    /**
+     * Set whether to issue identifiers without waiting for the store, and write the records in the background.
+     * 
+     * <p>Defaults to false.</p>
+     * 
+     * <p>Pending records are held in the memory of the issuing server only, so in a cluster, another node
+     * asked to decode an identifier (e.g., by a back-channel attribute query) will not find it until it has
+     * been written, which may take up to the flush interval.</p>
+     * 
+     * @param flag flag to set
+     * 
+     * @since 5.0.0
+     */
+    public void setWriteBehind(final boolean flag) {
+        checkSetterPreconditions();
+        writeBehind = flag;
+    }
+
+    /**
+     * Set the interval between background writes.
+     * 
+     * <p>Defaults to 1 second.</p>
+     * 
+     * @param interval flush interval
+     * 
+     * @since 5.0.0
+     */
+    public void setFlushInterval(@Nonnull final Duration interval) {
+        checkSetterPreconditions();
+        Constraint.isNotNull(interval, "Flush interval cannot be null");
+        Constraint.isFalse(interval.isNegative() || interval.isZero(), "Flush interval must be greater than 0");
+        flushInterval = interval;
+    }
+
+    /**
+     * Set the maximum number of records awaiting a background write, beyond which records are written
+     * synchronously.
+     * 
+     * <p>Defaults to 10000.</p>
+     * 
+     * @param max maximum pending records
+     * 
+     * @since 5.0.0
+     */
+    public void setMaxPending(@Positive final int max) {
+        checkSetterPreconditions();
+        maxPending = (int) Constraint.isGreaterThan(0, max, "Maximum pending records must be positive");
+    }
+
+    /**
+     * Get a function that returns the value of a record awaiting a background write, for use by decoders.
+     * 
+     * <p>The function only sees records issued by this instance, not those pending on other servers.</p>
+     * 
+     * @return function mapping an identifier to a pending record value, or null
+     * 
+     * @since 5.0.0
+     */
+    @Nonnull public Function<String,String> getPendingRecordLookupStrategy() {
+        return id -> {
+            final PendingRecord record = id != null ? pendingRecords.get(id) : null;
+            return record != null && record.expiration > System.currentTimeMillis() ? record.value : null;
+        };
+    }
+
     /** {@inheritDoc} */
     @Override protected void doInitialize() throws ComponentInitializationException {
         super.doInitialize();
@@ -147,6 +265,50 @@ public class StoredTransientIdGenerationStrategy extends AbstractIdentifiableIni
                 throw new ComponentInitializationException(e);
             }
         }
+
+        if (writeBehind) {
+            final MetricRegistry registry = MetricsSupport.getMetricRegistry();
+            if (registry != null) {
+                flushTimer = registry.timer(getMetricName("flush"));
+                failedCounter = registry.counter(getMetricName("failed"));
+                registry.remove(getMetricName("pending"));
+                registry.register(getMetricName("pending"), new Gauge<Integer>() {
+                    @Override public Integer getValue() {
+                        return pendingRecords.size();
+                    }
+                });
+            }
+
+            final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(
+                    new ThreadFactoryBuilder().setDaemon(true).setNameFormat(getId() + "-flush-%d").build());
+            executor.scheduleWithFixedDelay(this::flush, flushInterval.toMillis(), flushInterval.toMillis(),
+                    TimeUnit.MILLISECONDS);
+            flushExecutor = executor;
+        }
+    }
+
+    /** {@inheritDoc} */
+    @Override protected void doDestroy() {
+        if (flushExecutor != null) {
+            flushExecutor.shutdown();
+            try {
+                if (!flushExecutor.awaitTermination(SHUTDOWN_WAIT.toMillis(), TimeUnit.MILLISECONDS)) {
+                    log.warn("Background write of transient IDs did not complete within {}", SHUTDOWN_WAIT);
+                }
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            flushExecutor = null;
+            // Write anything issued since the last flush, after any write still running.
+            flush();
+        }
+
+        final MetricRegistry registry = MetricsSupport.getMetricRegistry();
+        if (registry != null && writeBehind) {
+            registry.remove(getMetricName("pending"));
+        }
+
+        super.doDestroy();
     }
     
     /** {@inheritDoc} */
@@ -164,16 +326,25 @@ public class StoredTransientIdGenerationStrategy extends AbstractIdentifiableIni
             // tree. But in practice, I'm not sure it matters much how many times this runs, that's
             // the point of a transient. So this version never reads the store, it just writes to it.
     
-            final String id = idGenerator.generateIdentifier();
-    
-            log.debug("Creating new transient ID '{}'", id);
-    
             final Instant expiration = Instant.now().plus(idLifetime);
     
             int collisions = 0;
             while (collisions < 5) {
-                if (idStore.create(TransientIdParameters.CONTEXT, id, principalTokenId, expiration.toEpochMilli())) {
-                    return id;
+                // A collision requires a new identifier, not another attempt with the same one.
+                final String id = idGenerator.generateIdentifier();
+                
+                if (writeBehind && pendingRecords.size() < maxPending) {
+                    if (pendingRecords.putIfAbsent(id,
+                            new PendingRecord(principalTokenId, expiration.toEpochMilli())) == null) {
+                        log.debug("Issuing new transient ID '{}' pending storage", id);
+                        return id;
+                    }
+                } else {
+                    log.debug("Creating new transient ID '{}'", id);
+                    if (idStore.create(TransientIdParameters.CONTEXT, id, principalTokenId,
+                            expiration.toEpochMilli())) {
+                        return id;
+                    }
                 }
                 ++collisions;
             }
@@ -184,4 +355,95 @@ public class StoredTransientIdGenerationStrategy extends AbstractIdentifiableIni
         }
     }
 
-}
\ No newline at end of file
+    /**
+     * Write the records awaiting a background write.
+     * 
+     * <p>Records that fail to be written are retried on the next flush until they expire.</p>
+     */
+    protected void flush() {
+        synchronized (flushLock) {
+            doFlush();
+        }
+    }
+
+    /**
+     * Write the records awaiting a background write, with {@link #flushLock} held.
+     */
+    private void doFlush() {
+        if (pendingRecords.isEmpty()) {
+            return;
+        }
+
+        final Timer.Context timerContext = flushTimer != null ? flushTimer.time() : null;
+        int written = 0;
+        try {
+            final Iterator<Map.Entry<String,PendingRecord>> entries = pendingRecords.entrySet().iterator();
+            while (entries.hasNext()) {
+                final Map.Entry<String,PendingRecord> entry = entries.next();
+                final PendingRecord record = entry.getValue();
+                if (record.expiration <= System.currentTimeMillis()) {
+                    entries.remove();
+                    continue;
+                }
+                try {
+                    if (!idStore.create(TransientIdParameters.CONTEXT, entry.getKey(), record.value,
+                            record.expiration)) {
+                        // The identifier was issued already, so it cannot be replaced.
+                        log.error("Transient ID '{}' collided with an existing record and was not stored",
+                                entry.getKey());
+                        if (failedCounter != null) {
+                            failedCounter.inc();
+                        }
+                    } else {
+                        ++written;
+                    }
+                    // Removed only after the write so that decoders see the record in one place or the other.
+                    entries.remove();
+                } catch (final IOException e) {
+                    log.warn("Error storing transient ID '{}', will retry", entry.getKey(), e);
+                    break;
+                }
+            }
+        } catch (final RuntimeException e) {
+            log.error("Error flushing pending transient IDs", e);
+        } finally {
+            if (timerContext != null) {
+                timerContext.stop();
+            }
+        }
+        log.debug("Stored {} pending transient IDs", written);
+    }
+
+    /**
+     * Get the full name of a metric.
+     * 
+     * @param name metric name
+     * 
+     * @return full name
+     */
+    @Nonnull @NotEmpty private String getMetricName(@Nonnull @NotEmpty final String name) {
+        return MetricRegistry.name("net.shibboleth.idp.nameid.transient", getId(), name);
+    }
+
+    /** A record awaiting a background write. */
+    private static final class PendingRecord {
+
+        /** Record value. */
+        @Nonnull private final String value;
+
+        /** Record expiration in milliseconds since the epoch. */
+        private final long expiration;
+
+        /**
+         * Constructor.
+         * 
+         * @param val record value
+         * @param exp record expiration
+         */
+        PendingRecord(@Nonnull final String val, final long exp) {
+            value = val;
+            expiration = exp;
+        }
+    }
+
+}
@@ -18,6 +18,8 @@
 package net.shibboleth.idp.saml.profile.impl;
 
 import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.function.Function;
 
 import javax.annotation.Nonnull;
@@ -46,6 +48,7 @@ import net.shibboleth.shared.annotation.constraint.Live;
 import net.shibboleth.shared.annotation.constraint.NonnullAfterInit;
 import net.shibboleth.shared.annotation.constraint.NonnullElements;
 import net.shibboleth.shared.annotation.constraint.NotEmpty;
+import net.shibboleth.shared.collection.Pair;
 import net.shibboleth.shared.component.ComponentInitializationException;
 import net.shibboleth.shared.logic.Constraint;
 import net.shibboleth.shared.security.IdentifierGenerationStrategy;
@@ -92,6 +95,9 @@ public abstract class BaseAddAttributeStatementToAssertion<T extends SAMLObject>
 
     /** Transcoder registry service object. */
     @NonnullAfterInit private ReloadableService<AttributeTranscoderRegistry> transcoderRegistry;
+
+    /** Rules obtained from the most recently used registry instance. */
+    @Nullable private volatile RuleCache ruleCache;
     
     /** AttributeContext to use. */
     @Nullable private AttributeContext attributeCtx;
@@ -307,7 +313,7 @@ public abstract class BaseAddAttributeStatementToAssertion<T extends SAMLObject>
             @Nonnull final Class<T> to, @Nonnull @NonnullElements @Live final Collection<T> results)
                     throws AttributeEncodingException {
         
-        final Collection<TranscodingRule> transcodingRules = registry.getTranscodingRules(attribute, to);
+        final Collection<TranscodingRule> transcodingRules = getTranscodingRules(registry, attribute, to);
         if (transcodingRules.isEmpty()) {
             log.debug("{} Attribute {} does not have any transcoding rules, nothing to do", getLogPrefix(),
                     attribute.getId());
@@ -335,5 +341,54 @@ public abstract class BaseAddAttributeStatementToAssertion<T extends SAMLObject>
         
         return count;
     }
+
+    /**
+     * Get the transcoding rules for an attribute and target type, consulting the registry only on
+     * the first request for a given attribute ID and type against each registry instance.
+     * 
+     * <p>The rules depend only on the attribute's ID and the target type, and the registry is
+     * immutable between reloads, so the results are safe to share across requests and relying parties
+     * until the service hands out a different instance.</p>
+     * 
+     * @param registry  registry of transcoding rules
+     * @param attribute input attribute
+     * @param to target type
+     * 
+     * @return the applicable rules
+     */
+    @Nonnull @NonnullElements private Collection<TranscodingRule> getTranscodingRules(
+            @Nonnull final AttributeTranscoderRegistry registry, @Nonnull final IdPAttribute attribute,
+            @Nonnull final Class<T> to) {
+        
+        RuleCache cache = ruleCache;
+        if (cache == null || cache.registry != registry) {
+            log.debug("{} Transcoding registry instance changed, discarding cached rules", getLogPrefix());
+            cache = new RuleCache(registry);
+            ruleCache = cache;
+        }
+        
+        return cache.rules.computeIfAbsent(new Pair<String,Class<?>>(attribute.getId(), to),
+                k -> registry.getTranscodingRules(attribute, to));
+    }
+
+    /** Transcoding rules memoized against the registry instance that produced them. */
+    private static final class RuleCache {
+        
+        /** Registry the rules came from. */
+        @Nonnull private final AttributeTranscoderRegistry registry;
+        
+        /** Rules keyed by attribute ID and target type. */
+        @Nonnull private final Map<Pair<String,Class<?>>,Collection<TranscodingRule>> rules;
+        
+        /**
+         * Constructor.
+         *
+         * @param source registry the rules come from
+         */
+        RuleCache(@Nonnull final AttributeTranscoderRegistry source) {
+            registry = source;
+            rules = new ConcurrentHashMap<>();
+        }
+    }
     
-}
\ No newline at end of file
+}
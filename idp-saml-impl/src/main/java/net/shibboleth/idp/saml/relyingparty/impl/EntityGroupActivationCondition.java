@@ -0,0 +1,133 @@
+/*
+ * Licensed to the University Corporation for Advanced Internet Development,
+ * Inc. (UCAID) under one or more contributor license agreements.  See the
+ * NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The UCAID licenses this file to You under the Apache
+ * License, Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package net.shibboleth.idp.saml.relyingparty.impl;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Function;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import org.opensaml.profile.context.ProfileRequestContext;
+import org.opensaml.saml.common.messaging.context.navigate.EntityDescriptorLookupFunction;
+import org.opensaml.saml.common.profile.logic.EntityGroupNamePredicate;
+import org.opensaml.saml.metadata.EntityGroupName;
+import org.opensaml.saml.metadata.resolver.MetadataResolver;
+import org.opensaml.saml.saml2.metadata.EntityDescriptor;
+
+import net.shibboleth.idp.relyingparty.IndexableActivationCondition;
+import net.shibboleth.idp.saml.profile.context.navigate.SAMLMetadataContextLookupFunction;
+import net.shibboleth.shared.annotation.constraint.NonnullElements;
+import net.shibboleth.shared.annotation.constraint.NotEmpty;
+import net.shibboleth.shared.annotation.constraint.Unmodifiable;
+import net.shibboleth.shared.logic.StrategyIndirectedPredicate;
+import net.shibboleth.shared.primitive.StringSupport;
+
+/**
+ * Activation condition applying an {@link EntityGroupNamePredicate} to the relying party's
+ * {@link EntityDescriptor}, which can be indexed by the {@link EntityGroupName} objects attached to it.
+ * 
+ * <p>Membership via {@link org.opensaml.saml.saml2.metadata.AffiliationDescriptor} lookup cannot be
+ * indexed, so when a {@link MetadataResolver} is supplied the condition is still evaluated if no group
+ * name matches.</p>
+ * 
+ * @since 5.0.0
+ */
+public class EntityGroupActivationCondition extends StrategyIndirectedPredicate<ProfileRequestContext,EntityDescriptor>
+        implements IndexableActivationCondition {
+
+    /** Name of index populated by this condition. */
+    @Nonnull @NotEmpty public static final String INDEX_NAME = "entityGroup";
+
+    /** Lookup strategy for the {@link EntityDescriptor}. */
+    @Nonnull private final Function<ProfileRequestContext,EntityDescriptor> entityDescriptorLookupStrategy;
+
+    /** Group names to check against. */
+    @Nonnull @NonnullElements private final Set<String> groupNames;
+
+    /** Whether affiliation lookup is disabled. */
+    private final boolean exhaustive;
+
+    /**
+     * Constructor.
+     * 
+     * @param names the group names
+     * @param resolver optional metadata source for affiliation lookup
+     */
+    public EntityGroupActivationCondition(@Nonnull @NonnullElements final Collection<String> names,
+            @Nullable final MetadataResolver resolver) {
+        this(new EntityDescriptorLookupFunction().compose(new SAMLMetadataContextLookupFunction()),
+                StringSupport.normalizeStringCollection(names), resolver);
+    }
+
+    /**
+     * Constructor.
+     * 
+     * @param strategy lookup strategy for the {@link EntityDescriptor}
+     * @param names the normalized group names
+     * @param resolver optional metadata source for affiliation lookup
+     */
+    private EntityGroupActivationCondition(@Nonnull final Function<ProfileRequestContext,EntityDescriptor> strategy,
+            @Nonnull @NonnullElements final Collection<String> names, @Nullable final MetadataResolver resolver) {
+        super(strategy, new EntityGroupNamePredicate(names, resolver));
+        entityDescriptorLookupStrategy = strategy;
+        groupNames = Set.copyOf(names);
+        exhaustive = resolver == null;
+    }
+
+    /** {@inheritDoc} */
+    @Nonnull @NotEmpty public String getIndexName() {
+        return INDEX_NAME;
+    }
+
+    /** {@inheritDoc} */
+    @Nonnull @NonnullElements @Unmodifiable public Set<String> getIndexKeys() {
+        return groupNames;
+    }
+
+    /** {@inheritDoc} */
+    public boolean isIndexExhaustive() {
+        return exhaustive;
+    }
+
+    /** {@inheritDoc} */
+    @Nonnull @NonnullElements public Collection<String> getRequestKeys(@Nullable final ProfileRequestContext input) {
+        final EntityDescriptor entity = entityDescriptorLookupStrategy.apply(input);
+        if (entity == null) {
+            return Collections.emptyList();
+        }
+
+        final List<EntityGroupName> groups = entity.getObjectMetadata().get(EntityGroupName.class);
+        if (groups.isEmpty()) {
+            return Collections.emptyList();
+        }
+        final List<String> keys = new ArrayList<>(groups.size());
+        for (final EntityGroupName group : groups) {
+            if (group.getName() != null) {
+                keys.add(group.getName());
+            }
+        }
+        return keys;
+    }
+
+}
@@ -26,7 +26,6 @@ import org.opensaml.profile.context.ProfileRequestContext;
 import org.opensaml.saml.common.messaging.context.navigate.EntityDescriptorLookupFunction;
 import org.opensaml.saml.common.profile.logic.EntityAttributesPredicate;
 import org.opensaml.saml.common.profile.logic.EntityAttributesPredicate.Candidate;
-import org.opensaml.saml.common.profile.logic.EntityGroupNamePredicate;
 import org.opensaml.saml.metadata.resolver.MetadataResolver;
 import org.opensaml.saml.saml2.metadata.EntityDescriptor;
 
@@ -91,16 +90,11 @@ public final class RelyingPartyConfigurationSupport {
             @Nullable final MetadataResolver resolver) {
         Constraint.isNotNull(groupNames, "Group name list cannot be null");
         
-        // We adapt an OpenSAML Predicate applying to an EntityDescriptor by indirecting the lookup of the
-        // EntityDescriptor to a lookup sequence of PRC -> RPC -> SAMLMetadataContext -> EntityDescriptor.
-        
-        final StrategyIndirectedPredicate<ProfileRequestContext,EntityDescriptor> indirectPredicate =
-                new StrategyIndirectedPredicate<>(
-                        new EntityDescriptorLookupFunction().compose(new SAMLMetadataContextLookupFunction()),
-                        new EntityGroupNamePredicate(groupNames, resolver));
+        // The condition adapts an OpenSAML Predicate applying to an EntityDescriptor, and exposes the
+        // group names so that the resolver can index it.
         
         final RelyingPartyConfiguration config = new RelyingPartyConfiguration();
-        config.setActivationCondition(indirectPredicate);
+        config.setActivationCondition(new EntityGroupActivationCondition(groupNames, resolver));
 
         final StringBuffer name = new StringBuffer("EntityGroups[");
         for (final String group: groupNames) {
@@ -20,7 +20,8 @@ package net.shibboleth.idp.saml.saml1.profile.impl;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Iterator;
-import java.util.Objects;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.function.Function;
 
 import javax.annotation.Nonnull;
@@ -47,6 +48,7 @@ import net.shibboleth.idp.profile.IdPEventIds;
 import net.shibboleth.idp.saml.profile.impl.BaseAddAttributeStatementToAssertion;
 import net.shibboleth.shared.annotation.constraint.NonnullElements;
 import net.shibboleth.shared.annotation.constraint.NullableElements;
+import net.shibboleth.shared.collection.Pair;
 import net.shibboleth.shared.logic.Constraint;
 import net.shibboleth.shared.service.ServiceableComponent;
 
@@ -158,8 +160,11 @@ public class AddAttributeStatementToAssertion extends BaseAddAttributeStatementT
 
         final AttributeStatement statement = statementBuilder.buildObject();
         
+        // Merge values by AttributeName and AttributeNamespace, keeping the order in which each pair first appeared.
+        final Map<Pair<String,String>,Attribute> mergedAttributes = new LinkedHashMap<>(encodedAttributes.size());
         for (final Attribute attribute : encodedAttributes) {
-            final Attribute existing = findExistingAttribute(statement, attribute);
+            final Attribute existing = mergedAttributes.putIfAbsent(
+                    new Pair<>(attribute.getAttributeName(), attribute.getAttributeNamespace()), attribute);
             if (existing != null) {
                 final Iterator<XMLObject> newValues = attribute.getAttributeValues().iterator();
                 while (newValues.hasNext()) {
@@ -167,36 +172,14 @@ public class AddAttributeStatementToAssertion extends BaseAddAttributeStatementT
                     newValues.remove();
                     existing.getAttributeValues().add(newValue);                    
                 }
-            } else {
-                statement.getAttributes().add(attribute);
             }
         }
+        statement.getAttributes().addAll(mergedAttributes.values());
 
         return statement;
     }
 // CheckStyle: CyclomaticComplexity ON
     
-    /**
-     * Find a matching {@link Attribute} in the statement, if any.
-     * 
-     * @param statement input statement
-     * @param newAttribute the attribute to match
-     * 
-     * @return a match, or null
-     */
-    @Nullable private Attribute findExistingAttribute(@Nonnull final AttributeStatement statement,
-            @Nonnull final Attribute newAttribute) {
-        
-        for (final Attribute attr : statement.getAttributes()) {
-            if (Objects.equals(attr.getAttributeName(), newAttribute.getAttributeName())
-                    && Objects.equals(attr.getAttributeNamespace(), newAttribute.getAttributeNamespace())) {
-                return attr;
-            }
-        }
-        
-        return null;
-    }
-
     /**
      * Encodes {@link IdPAttribute} into zero or more {@link Attribute} objects if a proper encoder is available.
      * 
@@ -20,7 +20,8 @@ package net.shibboleth.idp.saml.saml2.profile.impl;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Iterator;
-import java.util.Objects;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.function.Function;
 
 import javax.annotation.Nonnull;
@@ -47,6 +48,7 @@ import net.shibboleth.idp.profile.IdPEventIds;
 import net.shibboleth.idp.saml.profile.impl.BaseAddAttributeStatementToAssertion;
 import net.shibboleth.shared.annotation.constraint.NonnullElements;
 import net.shibboleth.shared.annotation.constraint.NullableElements;
+import net.shibboleth.shared.collection.Pair;
 import net.shibboleth.shared.logic.Constraint;
 import net.shibboleth.shared.service.ServiceableComponent;
 
@@ -159,8 +161,11 @@ public class AddAttributeStatementToAssertion extends BaseAddAttributeStatementT
 
         final AttributeStatement statement = statementBuilder.buildObject();
         
+        // Merge values by Name and NameFormat, keeping the order in which each pair first appeared.
+        final Map<Pair<String,String>,Attribute> mergedAttributes = new LinkedHashMap<>(encodedAttributes.size());
         for (final Attribute attribute : encodedAttributes) {
-            final Attribute existing = findExistingAttribute(statement, attribute);
+            final Attribute existing = mergedAttributes.putIfAbsent(
+                    new Pair<>(attribute.getName(), attribute.getNameFormat()), attribute);
             if (existing != null) {
                 final Iterator<XMLObject> newValues = attribute.getAttributeValues().iterator();
                 while (newValues.hasNext()) {
@@ -168,36 +173,14 @@ public class AddAttributeStatementToAssertion extends BaseAddAttributeStatementT
                     newValues.remove();
                     existing.getAttributeValues().add(newValue);                    
                 }
-            } else {
-                statement.getAttributes().add(attribute);
             }
         }
+        statement.getAttributes().addAll(mergedAttributes.values());
         
         return statement;
     }
 // CheckStyle: CyclomaticComplexity ON
     
-    /**
-     * Find a matching {@link Attribute} in the statement, if any.
-     * 
-     * @param statement input statement
-     * @param newAttribute the attribute to match
-     * 
-     * @return a match, or null
-     */
-    @Nullable private Attribute findExistingAttribute(@Nonnull final AttributeStatement statement,
-            @Nonnull final Attribute newAttribute) {
-        
-        for (final Attribute attr : statement.getAttributes()) {
-            if (Objects.equals(attr.getName(), newAttribute.getName())
-                    && Objects.equals(attr.getNameFormat(), newAttribute.getNameFormat())) {
-                return attr;
-            }
-        }
-        
-        return null;
-    }
-
     /**
      * Encodes a {@link IdPAttribute} into zero or more {@link Attribute} objects if a proper encoder is available.
      * 
@@ -17,8 +17,12 @@
 
 package net.shibboleth.idp.saml.saml2.profile.impl;
 
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.Lock;
 import java.util.function.Function;
 
 import javax.annotation.Nonnull;
@@ -38,6 +42,7 @@ import org.opensaml.saml.criterion.ProtocolCriterion;
 import org.opensaml.saml.criterion.RoleDescriptorCriterion;
 import org.opensaml.saml.saml2.core.AuthnRequest;
 import org.opensaml.saml.saml2.core.NameID;
+import org.opensaml.saml.saml2.metadata.RoleDescriptor;
 import org.opensaml.saml.saml2.profile.context.EncryptionContext;
 import org.opensaml.xmlsec.EncryptionConfiguration;
 import org.opensaml.xmlsec.EncryptionParameters;
@@ -55,6 +60,7 @@ import net.shibboleth.idp.saml.saml2.profile.config.SAML2ProfileConfiguration;
 import net.shibboleth.idp.saml.saml2.profile.config.SingleLogoutProfileConfiguration;
 import net.shibboleth.shared.annotation.constraint.NonnullAfterInit;
 import net.shibboleth.shared.annotation.constraint.NonnullElements;
+import net.shibboleth.shared.collection.LockableClassToInstanceMultiMap;
 import net.shibboleth.shared.component.ComponentInitializationException;
 import net.shibboleth.shared.logic.Constraint;
 import net.shibboleth.shared.primitive.StringSupport;
@@ -73,6 +79,12 @@ import net.shibboleth.shared.resolver.ResolverException;
  * objects are input to the resolution process, along with the relying party's SAML metadata, which in
  * most cases will be the source of the eventual encryption key.</p>
  * 
+ * <p>When the relying party's role metadata is available, the result of resolution is by default remembered
+ * in a small cache attached to that {@link RoleDescriptor}, keyed by the other inputs to the resolver,
+ * so that repeated requests for the same relying party skip credential resolution. The cache is only
+ * invalidated by a refresh of the metadata; a reload of the security configuration takes effect through
+ * the new configuration and resolver objects, which form part of the key.</p>
+ * 
  * @event {@link EventIds#PROCEED_EVENT_ID}
  * @event {@link EventIds#INVALID_PROFILE_CTX}
  * @event {@link EventIds#INVALID_SEC_CFG}
@@ -108,6 +120,9 @@ public class PopulateEncryptionParameters extends AbstractProfileAction {
     /** Active configurations to feed into resolver. */
     @Nullable @NonnullElements private List<EncryptionConfiguration> encryptionConfigurations;
     
+    /** Whether to remember resolved parameters against the relying party's role metadata. */
+    private boolean cacheParameters;
+    
     /** Is encryption optional in the case no parameters can be resolved? */
     private boolean encryptionOptional;
     
@@ -122,6 +137,8 @@ public class PopulateEncryptionParameters extends AbstractProfileAction {
 
     /** Constructor. */
     public PopulateEncryptionParameters() {
+        cacheParameters = true;
+        
         relyingPartyContextLookupStrategy = new ChildContextLookup<>(RelyingPartyContext.class);
         
         // Create context by default.
@@ -210,6 +227,23 @@ public class PopulateEncryptionParameters extends AbstractProfileAction {
         encParamsresolver = Constraint.isNotNull(newResolver, "EncryptionParametersResolver cannot be null");
     }
     
+    /**
+     * Set whether to remember resolved parameters against the relying party's role metadata.
+     * 
+     * <p>Remembered parameters are only discarded when the metadata is refreshed, or when displaced
+     * by parameters resolved from a different resolver or configuration.</p>
+     * 
+     * <p>Defaults to true.</p>
+     * 
+     * @param flag flag to set
+     * 
+     * @since 5.0.0
+     */
+    public void setCacheParameters(final boolean flag) {
+        checkSetterPreconditions();
+        cacheParameters = flag;
+    }
+    
     /** {@inheritDoc} */
     @Override
     protected void doInitialize() throws ComponentInitializationException {
@@ -310,8 +344,7 @@ public class PopulateEncryptionParameters extends AbstractProfileAction {
                 throw new ResolverException("No EncryptionConfigurations returned by lookup strategy");
             }
             
-            final EncryptionParameters params =
-                    encParamsresolver.resolveSingle(buildCriteriaSet(profileRequestContext));
+            final EncryptionParameters params = resolveParameters(buildCriteriaSet(profileRequestContext));
             log.debug("{} {} EncryptionParameters", getLogPrefix(),
                     params != null ? "Resolved" : "Failed to resolve");
             if (params != null) {
@@ -381,4 +414,137 @@ public class PopulateEncryptionParameters extends AbstractProfileAction {
         return criteria;
     }
     
-}
\ No newline at end of file
+    /**
+     * Resolve the parameters for a set of criteria, using the cache attached to the role metadata if possible.
+     * 
+     * @param criteria input to resolver
+     * 
+     * @return the resolved parameters, or null
+     * 
+     * @throws ResolverException if an error occurs during resolution
+     */
+    @Nullable private EncryptionParameters resolveParameters(@Nonnull final CriteriaSet criteria)
+            throws ResolverException {
+        
+        final RoleDescriptorCriterion roleCriterion = criteria.get(RoleDescriptorCriterion.class);
+        if (!cacheParameters || roleCriterion == null) {
+            return encParamsresolver.resolveSingle(criteria);
+        }
+        
+        final EntityIdCriterion entityIdCriterion = criteria.get(EntityIdCriterion.class);
+        
+        // The configuration list compares by element, and the configurations themselves by identity.
+        final List<Object> key = Arrays.asList(encParamsresolver,
+                entityIdCriterion != null ? entityIdCriterion.getEntityId() : null, samlProtocol, peerRole,
+                encryptionOptional, encryptionConfigurations);
+        
+        return getParametersCache(roleCriterion.getRole()).get(key, criteria, encParamsresolver);
+    }
+    
+    /**
+     * Get the {@link ParametersCache} attached to a role, attaching a new one if necessary.
+     * 
+     * @param role the metadata to examine
+     * 
+     * @return the role's parameter cache
+     */
+    @Nonnull private static ParametersCache getParametersCache(@Nonnull final RoleDescriptor role) {
+        final LockableClassToInstanceMultiMap<Object> objectMetadata = role.getObjectMetadata();
+        
+        final Lock readLock = objectMetadata.getReadWriteLock().readLock();
+        readLock.lock();
+        try {
+            final List<ParametersCache> caches = objectMetadata.get(ParametersCache.class);
+            if (!caches.isEmpty()) {
+                return caches.get(0);
+            }
+        } finally {
+            readLock.unlock();
+        }
+        
+        final Lock writeLock = objectMetadata.getReadWriteLock().writeLock();
+        writeLock.lock();
+        try {
+            final List<ParametersCache> caches = objectMetadata.get(ParametersCache.class);
+            if (!caches.isEmpty()) {
+                return caches.get(0);
+            }
+            final ParametersCache cache = new ParametersCache();
+            objectMetadata.put(cache);
+            return cache;
+        } finally {
+            writeLock.unlock();
+        }
+    }
+    
+    /**
+     * Cache of the {@link EncryptionParameters} resolved for a relying party, attached to the
+     * {@link RoleDescriptor}'s object metadata.
+     * 
+     * <p>A refresh of the metadata produces new descriptor objects, and hence new caches. Failures
+     * to resolve are not remembered, but an absence of parameters is.</p>
+     * 
+     * <p>The cache holds a few entries, least recently used first out, and drops any entries from
+     * a different resolver when a new one is seen, so configurations built per request or replaced
+     * by a reload are not accumulated.</p>
+     */
+    private static final class ParametersCache {
+        
+        /** Maximum number of entries per relying party. */
+        private static final int MAX_ENTRIES = 8;
+        
+        /** Marker for inputs that resolved no parameters. */
+        @Nonnull private static final Object NO_MATCH = new Object();
+        
+        /** Resolved parameters by resolver inputs, guarded by itself. */
+        @Nonnull private final Map<List<Object>,Object> parameters;
+        
+        /** Constructor. */
+        ParametersCache() {
+            parameters = new LinkedHashMap<>(MAX_ENTRIES, 0.75f, true) {
+                
+                /** Serial version UID. */
+                private static final long serialVersionUID = -1374598702917642387L;
+
+                /** {@inheritDoc} */
+                @Override
+                protected boolean removeEldestEntry(final Map.Entry<List<Object>,Object> eldest) {
+                    return size() > MAX_ENTRIES;
+                }
+            };
+        }
+        
+        /**
+         * Get the parameters for a set of inputs, resolving them if necessary.
+         * 
+         * @param key the resolver inputs not implied by the role metadata
+         * @param criteria the criteria to resolve with
+         * @param resolver the resolver to use
+         * 
+         * @return the resolved parameters, or null
+         * 
+         * @throws ResolverException if an error occurs during resolution
+         */
+        @Nullable EncryptionParameters get(@Nonnull final List<Object> key, @Nonnull final CriteriaSet criteria,
+                @Nonnull final EncryptionParametersResolver resolver) throws ResolverException {
+            Object params;
+            synchronized (parameters) {
+                params = parameters.get(key);
+            }
+            if (params == null) {
+                final EncryptionParameters resolved = resolver.resolveSingle(criteria);
+                params = resolved != null ? resolved : NO_MATCH;
+                synchronized (parameters) {
+                    // The resolver is the first element of every key.
+                    parameters.keySet().removeIf(k -> k.get(0) != resolver);
+                    final Object existing = parameters.putIfAbsent(key, params);
+                    if (existing != null) {
+                        params = existing;
+                    }
+                }
+            }
+            return params != NO_MATCH ? (EncryptionParameters) params : null;
+        }
+    }
+    
+}
@@ -0,0 +1,176 @@
+/*
+ * Licensed to the University Corporation for Advanced Internet Development,
+ * Inc. (UCAID) under one or more contributor license agreements.  See the
+ * NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The UCAID licenses this file to You under the Apache
+ * License, Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package net.shibboleth.idp.saml.audit.impl;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import org.opensaml.profile.context.ProfileRequestContext;
+import org.testng.Assert;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import net.shibboleth.shared.annotation.constraint.NotEmpty;
+import net.shibboleth.shared.codec.StringDigester;
+import net.shibboleth.shared.component.ComponentInitializationException;
+
+/** {@link WriteFTICKSLog} unit test. */
+public class WriteFTICKSLogTest {
+
+    private static final String SALT = "thisisasalt";
+
+    private static final Pattern RECORD =
+            Pattern.compile("F-TICKS/TestFed/1\\.0#TS=\\d+#RP=https://sp\\.example\\.org#AP=https://idp\\.example\\.org"
+                    + "#PN=([0-9a-f]+)#AM=urn:oasis:names:tc:SAML:2.0:ac:classes:Password#RESULT=OK#");
+
+    private List<String> records;
+
+    private String username;
+
+    private int digests;
+
+    @BeforeMethod public void setUp() {
+        records = new ArrayList<>();
+        username = "jdoe";
+        digests = 0;
+    }
+
+    @Test public void testCached() throws Exception {
+        final WriteFTICKSLog action = buildAction(10);
+
+        final String first = execute(action);
+        final String second = execute(action);
+        Assert.assertEquals(second, first);
+        Assert.assertEquals(first, expectedHash("jdoe"));
+        Assert.assertEquals(digests, 1);
+
+        username = "bsmith";
+        Assert.assertEquals(execute(action), expectedHash("bsmith"));
+        Assert.assertEquals(digests, 2);
+
+        username = "jdoe";
+        Assert.assertEquals(execute(action), first);
+        Assert.assertEquals(digests, 2);
+    }
+
+    @Test public void testEviction() throws Exception {
+        final WriteFTICKSLog action = buildAction(1);
+
+        final String first = execute(action);
+        username = "bsmith";
+        execute(action);
+        username = "jdoe";
+        Assert.assertEquals(execute(action), first);
+        Assert.assertEquals(digests, 3);
+    }
+
+    @Test public void testUncached() throws Exception {
+        final WriteFTICKSLog action = buildAction(0);
+
+        final String first = execute(action);
+        Assert.assertEquals(execute(action), first);
+        Assert.assertEquals(first, expectedHash("jdoe"));
+        Assert.assertEquals(digests, 2);
+    }
+
+    @Test public void testNoUsername() throws Exception {
+        final WriteFTICKSLog action = buildAction(10);
+        username = null;
+
+        action.execute(new ProfileRequestContext());
+        Assert.assertEquals(records.size(), 1);
+        Assert.assertTrue(records.get(0).matches(
+                "F-TICKS/TestFed/1\\.0#TS=\\d+#RP=https://sp\\.example\\.org#AP=https://idp\\.example\\.org"
+                        + "#AM=urn:oasis:names:tc:SAML:2.0:ac:classes:Password#RESULT=OK#"), records.get(0));
+        Assert.assertEquals(digests, 0);
+    }
+
+    /**
+     * Run the action and check the format of the resulting record.
+     * 
+     * @param action action to run
+     * 
+     * @return the PN field of the record
+     */
+    @Nonnull private String execute(@Nonnull final WriteFTICKSLog action) {
+        records.clear();
+        action.execute(new ProfileRequestContext());
+        Assert.assertEquals(records.size(), 1);
+        final Matcher matcher = RECORD.matcher(records.get(0));
+        Assert.assertTrue(matcher.matches(), records.get(0));
+        return matcher.group(1);
+    }
+
+    /**
+     * Build an action that writes to {@link #records} and counts calls to the digester.
+     * 
+     * @param cacheSize hash cache size
+     * 
+     * @return initialized action
+     * 
+     * @throws ComponentInitializationException if initialization fails
+     */
+    @Nonnull private WriteFTICKSLog buildAction(final int cacheSize) throws ComponentInitializationException {
+        final WriteFTICKSLog action = new WriteFTICKSLog() {
+            @Override
+            @Nullable String digest(@Nonnull @NotEmpty final String name) {
+                ++digests;
+                return super.digest(name);
+            }
+        };
+        action.setFederationId("TestFed");
+        action.setDigestAlgorithm("SHA-256");
+        action.setSalt(SALT);
+        action.setHashCacheSize(cacheSize);
+        action.setRelyingPartyLookupStrategy(prc -> "https://sp.example.org");
+        action.setResponderLookupStrategy(prc -> "https://idp.example.org");
+        action.setUsernameLookupStrategy(prc -> username);
+        action.setAuthenticationMethodLookupStrategy(
+                prc -> "urn:oasis:names:tc:SAML:2.0:ac:classes:Password");
+        action.setStatusCodeLookupStrategy(prc -> org.opensaml.saml.saml2.core.StatusCode.SUCCESS);
+        action.setAuditSink((category, record) -> {
+            Assert.assertEquals(category, WriteFTICKSLog.FTICKS_LOG_CATEGORY);
+            records.add(record);
+            return true;
+        });
+        action.initialize();
+        return action;
+    }
+
+    /**
+     * Compute the expected hash of a username.
+     * 
+     * @param name username
+     * 
+     * @return hashed value
+     * 
+     * @throws Exception if an error occurs
+     */
+    @Nonnull private String expectedHash(@Nonnull final String name) throws Exception {
+        final StringDigester digester = new StringDigester("SHA-256", StringDigester.OutputFormat.HEX_LOWER);
+        digester.setSalt(SALT);
+        return digester.apply(name);
+    }
+
+}
@@ -0,0 +1,176 @@
+/*
+ * Licensed to the University Corporation for Advanced Internet Development,
+ * Inc. (UCAID) under one or more contributor license agreements.  See the
+ * NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The UCAID licenses this file to You under the Apache
+ * License, Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package net.shibboleth.idp.saml.nameid.impl;
+
+import java.io.IOException;
+import java.time.Duration;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.sql.DataSource;
+
+import org.testng.Assert;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import net.shibboleth.idp.attribute.PairwiseId;
+import net.shibboleth.idp.attribute.impl.JDBCPairwiseIdStore;
+import net.shibboleth.idp.saml.impl.testing.TestSources;
+import net.shibboleth.shared.component.ComponentInitializationException;
+import net.shibboleth.shared.testing.DatabaseTestingSupport;
+
+/** Test for {@link CachingPairwiseIdStore}. */
+public class CachingPairwiseIdStoreTest {
+
+    private DataSource testSource;
+
+    private CountingStore store;
+
+    private CachingPairwiseIdStore cachingStore;
+
+    @BeforeClass public void setUpSource() {
+        testSource = DatabaseTestingSupport.GetMockDataSource(PersistentSAML2NameIDGeneratorTest.INIT_FILE,
+                "CachingPairwiseIdStore");
+    }
+
+    @AfterClass public void teardown() {
+        DatabaseTestingSupport.InitializeDataSource(PersistentSAML2NameIDGeneratorTest.DELETE_FILE, testSource);
+    }
+
+    @BeforeMethod public void setUp() throws ComponentInitializationException {
+        store = new CountingStore();
+        store.setDataSource(testSource);
+        store.initialize();
+
+        cachingStore = new CachingPairwiseIdStore();
+        cachingStore.setPersistentIdStore(store);
+    }
+
+    @Test public void testSourceValue() throws Exception {
+        cachingStore.initialize();
+
+        final PairwiseId first = cachingStore.getBySourceValue(newPid("source1"), true);
+        Assert.assertNotNull(first);
+        Assert.assertNotNull(first.getPairwiseId());
+        Assert.assertEquals(store.sourceLookups, 1);
+
+        final PairwiseId second = cachingStore.getBySourceValue(newPid("source1"), true);
+        Assert.assertEquals(second.getPairwiseId(), first.getPairwiseId());
+        Assert.assertNotSame(second, first);
+        Assert.assertEquals(store.sourceLookups, 1);
+
+        cachingStore.getBySourceValue(newPid("source2"), true);
+        Assert.assertEquals(store.sourceLookups, 2);
+    }
+
+    @Test public void testIssuedValue() throws Exception {
+        cachingStore.initialize();
+
+        final PairwiseId created = cachingStore.getBySourceValue(newPid("source3"), true);
+
+        final PairwiseId query = newPid(null);
+        query.setPairwiseId(created.getPairwiseId());
+        Assert.assertEquals(cachingStore.getByIssuedValue(query).getPrincipalName(), "foo");
+        Assert.assertEquals(cachingStore.getByIssuedValue(query).getPrincipalName(), "foo");
+        Assert.assertEquals(store.issuedLookups, 1);
+    }
+
+    @Test public void testNegative() throws Exception {
+        cachingStore.initialize();
+
+        final PairwiseId query = newPid(null);
+        query.setPairwiseId("unknown");
+        Assert.assertNull(cachingStore.getByIssuedValue(query));
+        Assert.assertNull(cachingStore.getByIssuedValue(query));
+        Assert.assertEquals(store.issuedLookups, 1);
+
+        Assert.assertNull(cachingStore.getBySourceValue(newPid("source4"), false));
+        Assert.assertNull(cachingStore.getBySourceValue(newPid("source4"), false));
+        Assert.assertEquals(store.sourceLookups, 1);
+
+        // A negative result does not prevent creation.
+        Assert.assertNotNull(cachingStore.getBySourceValue(newPid("source4"), true));
+        Assert.assertEquals(store.sourceLookups, 2);
+        Assert.assertNotNull(cachingStore.getBySourceValue(newPid("source4"), false));
+        Assert.assertEquals(store.sourceLookups, 2);
+    }
+
+    @Test public void testNoNegativeCaching() throws Exception {
+        cachingStore.setNegativeCacheLifetime(Duration.ZERO);
+        cachingStore.initialize();
+
+        final PairwiseId query = newPid(null);
+        query.setPairwiseId("unknown");
+        Assert.assertNull(cachingStore.getByIssuedValue(query));
+        Assert.assertNull(cachingStore.getByIssuedValue(query));
+        Assert.assertEquals(store.issuedLookups, 2);
+    }
+
+    @Test public void testDeactivate() throws Exception {
+        cachingStore.initialize();
+
+        final PairwiseId created = cachingStore.getBySourceValue(newPid("source5"), true);
+        cachingStore.deactivate(created);
+
+        cachingStore.getBySourceValue(newPid("source5"), true);
+        Assert.assertEquals(store.sourceLookups, 2);
+    }
+
+    /**
+     * Build a pairwise ID to look up.
+     * 
+     * @param sourceId source ID
+     * 
+     * @return pairwise ID
+     */
+    @Nonnull private PairwiseId newPid(@Nullable final String sourceId) {
+        final PairwiseId pid = new PairwiseId();
+        pid.setIssuerEntityID(TestSources.IDP_ENTITY_ID);
+        pid.setRecipientEntityID(TestSources.SP_ENTITY_ID);
+        pid.setPrincipalName("foo");
+        pid.setSourceSystemId(sourceId);
+        return pid;
+    }
+
+    /** Store that counts lookups. */
+    private static class CountingStore extends JDBCPairwiseIdStore {
+
+        private int sourceLookups;
+
+        private int issuedLookups;
+
+        /** {@inheritDoc} */
+        @Override
+        @Nullable public PairwiseId getBySourceValue(@Nonnull final PairwiseId pid, final boolean allowCreate)
+                throws IOException {
+            ++sourceLookups;
+            return super.getBySourceValue(pid, allowCreate);
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        @Nullable public PairwiseId getByIssuedValue(@Nonnull final PairwiseId pid) throws IOException {
+            ++issuedLookups;
+            return super.getByIssuedValue(pid);
+        }
+    }
+
+}
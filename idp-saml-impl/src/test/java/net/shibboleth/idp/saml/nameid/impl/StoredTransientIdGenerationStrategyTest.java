@@ -0,0 +1,152 @@
+/*
+ * Licensed to the University Corporation for Advanced Internet Development,
+ * Inc. (UCAID) under one or more contributor license agreements.  See the
+ * NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The UCAID licenses this file to You under the Apache
+ * License, Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package net.shibboleth.idp.saml.nameid.impl;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Iterator;
+
+import javax.annotation.Nonnull;
+
+import org.opensaml.core.testing.OpenSAMLInitBaseTestCase;
+import org.opensaml.saml.common.SAMLException;
+import org.opensaml.storage.impl.MemoryStorageService;
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import net.shibboleth.shared.component.ComponentInitializationException;
+import net.shibboleth.shared.security.IdentifierGenerationStrategy;
+
+/** {@link StoredTransientIdGenerationStrategy} unit test. */
+public class StoredTransientIdGenerationStrategyTest extends OpenSAMLInitBaseTestCase {
+
+    private static final String RECIPIENT = "TheRecipient";
+
+    private static final String PRINCIPAL = "ThePrincipalName";
+
+    private MemoryStorageService store;
+
+    private StoredTransientIdGenerationStrategy strategy;
+
+    @BeforeMethod public void setUp() throws ComponentInitializationException {
+        store = new MemoryStorageService();
+        store.setId("test");
+        store.initialize();
+
+        strategy = new StoredTransientIdGenerationStrategy();
+        strategy.setId("strategy");
+        strategy.setIdStore(store);
+    }
+
+    @AfterMethod public void tearDown() {
+        if (strategy.isInitialized() && !strategy.isDestroyed()) {
+            strategy.destroy();
+        }
+        store.destroy();
+    }
+
+    @Test public void testCollision() throws Exception {
+        storeExisting("ID1");
+        strategy.setIdGenerator(new SequenceGenerator("ID1", "ID2"));
+        strategy.initialize();
+
+        Assert.assertEquals(strategy.generate(RECIPIENT, PRINCIPAL), "ID2");
+        Assert.assertNotNull(store.read(TransientIdParameters.CONTEXT, "ID2"));
+    }
+
+    @Test(expectedExceptions = SAMLException.class) public void testTooManyCollisions() throws Exception {
+        storeExisting("ID1");
+        strategy.setIdGenerator(new SequenceGenerator("ID1", "ID1", "ID1", "ID1", "ID1", "ID2"));
+        strategy.initialize();
+
+        strategy.generate(RECIPIENT, PRINCIPAL);
+    }
+
+    @Test public void testPendingCollision() throws Exception {
+        strategy.setIdGenerator(new SequenceGenerator("ID1", "ID1", "ID2"));
+        strategy.setWriteBehind(true);
+        strategy.setFlushInterval(Duration.ofHours(1));
+        strategy.initialize();
+
+        Assert.assertEquals(strategy.generate(RECIPIENT, PRINCIPAL), "ID1");
+        Assert.assertEquals(strategy.generate(RECIPIENT, PRINCIPAL), "ID2");
+        Assert.assertNotNull(strategy.getPendingRecordLookupStrategy().apply("ID1"));
+        Assert.assertNotNull(strategy.getPendingRecordLookupStrategy().apply("ID2"));
+    }
+
+    @Test public void testMaxPending() throws Exception {
+        strategy.setWriteBehind(true);
+        strategy.setFlushInterval(Duration.ofHours(1));
+        strategy.setMaxPending(1);
+        strategy.initialize();
+
+        final String id = strategy.generate(RECIPIENT, PRINCIPAL);
+        Assert.assertNull(store.read(TransientIdParameters.CONTEXT, id));
+        Assert.assertNotNull(strategy.getPendingRecordLookupStrategy().apply(id));
+
+        // The limit is reached, so this one is written synchronously.
+        final String id2 = strategy.generate(RECIPIENT, PRINCIPAL);
+        Assert.assertNotNull(store.read(TransientIdParameters.CONTEXT, id2));
+        Assert.assertNull(strategy.getPendingRecordLookupStrategy().apply(id2));
+
+        strategy.flush();
+        Assert.assertNotNull(store.read(TransientIdParameters.CONTEXT, id));
+    }
+
+    /**
+     * Create a record for an identifier ahead of the strategy.
+     * 
+     * @param id identifier
+     * 
+     * @throws Exception if an error occurs
+     */
+    private void storeExisting(@Nonnull final String id) throws Exception {
+        Assert.assertTrue(store.create(TransientIdParameters.CONTEXT, id,
+                new TransientIdParameters(RECIPIENT, "SomeoneElse").encode(), System.currentTimeMillis() + 50000));
+    }
+
+    /** Generator returning a fixed sequence of identifiers. */
+    private static class SequenceGenerator implements IdentifierGenerationStrategy {
+
+        /** Identifiers to return. */
+        @Nonnull private final Iterator<String> ids;
+
+        /**
+         * Constructor.
+         *
+         * @param values identifiers to return
+         */
+        SequenceGenerator(@Nonnull final String... values) {
+            ids = Arrays.asList(values).iterator();
+        }
+
+        /** {@inheritDoc} */
+        @Override @Nonnull public String generateIdentifier() {
+            return ids.next();
+        }
+
+        /** {@inheritDoc} */
+        @Override @Nonnull public String generateIdentifier(final boolean xmlSafe) {
+            return ids.next();
+        }
+    }
+
+}
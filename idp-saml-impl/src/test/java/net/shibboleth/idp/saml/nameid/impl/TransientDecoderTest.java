@@ -17,6 +17,7 @@
 
 package net.shibboleth.idp.saml.nameid.impl;
 
+import java.time.Duration;
 import java.util.Collections;
 
 import javax.security.auth.Subject;
@@ -73,6 +74,42 @@ public class TransientDecoderTest extends OpenSAMLInitBaseTestCase {
         Assert.assertEquals(decoder.decode(id, RECIPIENT), PRINCIPAL);
     }
 
+    @Test public void testWriteBehind() throws Exception {
+
+        final StoredTransientIdGenerationStrategy strategy = new StoredTransientIdGenerationStrategy();
+        strategy.setId("strategy");
+        strategy.setIdStore(store);
+        strategy.setWriteBehind(true);
+        strategy.setFlushInterval(Duration.ofHours(1));
+        strategy.initialize();
+
+        final BaseTransientDecoder decoder = new BaseTransientDecoder(){};
+        decoder.setId("decoder");
+        decoder.setIdStore(store);
+        decoder.setPendingRecordLookupStrategy(strategy.getPendingRecordLookupStrategy());
+        decoder.initialize();
+
+        try {
+            final String id = strategy.generate(RECIPIENT, PRINCIPAL);
+            Assert.assertNull(store.read(TransientIdParameters.CONTEXT, id));
+            Assert.assertEquals(decoder.decode(id, RECIPIENT), PRINCIPAL);
+
+            strategy.flush();
+            Assert.assertNotNull(store.read(TransientIdParameters.CONTEXT, id));
+            Assert.assertNull(strategy.getPendingRecordLookupStrategy().apply(id));
+            Assert.assertEquals(decoder.decode(id, RECIPIENT), PRINCIPAL);
+            
+            final String id2 = strategy.generate(RECIPIENT, PRINCIPAL);
+            Assert.assertNotEquals(id2, id);
+            strategy.destroy();
+            Assert.assertNotNull(store.read(TransientIdParameters.CONTEXT, id2));
+        } finally {
+            if (!strategy.isDestroyed()) {
+                strategy.destroy();
+            }
+        }
+    }
+
     @Test public void testExpired() throws Exception {
 
         final String principalTokenId;
@@ -20,6 +20,7 @@ package net.shibboleth.idp.saml.saml2.profile.impl;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 import javax.annotation.Nonnull;
@@ -375,6 +376,39 @@ public class AddAttributeStatementToAssertionTest extends OpenSAMLInitBaseTestCa
         testAttributeStatement(attributeStatement);
     }
 
+    /**
+     * Test that merged attributes keep the order in which each name first appeared, across repeated
+     * executions against the same registry.
+     * 
+     * @throws Exception if something goes wrong
+     */
+    @Test public void testMergedAttributeOrder() throws Exception {
+        action.initialize();
+        
+        for (int i = 0; i < 2; ++i) {
+            final RequestContext requestCtx = new RequestContextBuilder().setOutboundMessage(
+                    SAML2ActionTestingSupport.buildResponse()).buildRequestContext();
+            final ProfileRequestContext profileCtx = new WebflowRequestContextProfileRequestContextLookup().apply(
+                    requestCtx);
+            profileCtx.getSubcontext(RelyingPartyContext.class).addSubcontext(buildAttributeContext());
+            
+            final Event result = action.execute(requestCtx);
+            ActionTestingSupport.assertProceedEvent(result);
+            
+            final Response response = (Response) profileCtx.getOutboundMessageContext().getMessage();
+            final AttributeStatement attributeStatement =
+                    response.getAssertions().get(0).getAttributeStatements().get(0);
+            testAttributeStatement(attributeStatement);
+            
+            final List<Attribute> attributes = attributeStatement.getAttributes();
+            Assert.assertEquals(attributes.get(0).getName(), MY_NAME_1);
+            Assert.assertEquals(attributes.get(1).getName(), MY_ALTNAME_1);
+            Assert.assertEquals(attributes.get(2).getName(), MY_NAME_2);
+            Assert.assertEquals(((XSStringImpl) attributes.get(1).getAttributeValues().get(0)).getValue(), MY_VALUE_1);
+            Assert.assertEquals(((XSStringImpl) attributes.get(1).getAttributeValues().get(1)).getValue(), MY_VALUE_2);
+        }
+    }
+
     /**
      * Build the attribute context containing two test attributes to be used as an input to the action.
      * 
@@ -17,7 +17,9 @@
 
 package net.shibboleth.idp.saml.saml2.profile.impl;
 
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.List;
 
 import net.shibboleth.idp.profile.IdPEventIds;
 import net.shibboleth.idp.profile.config.ProfileConfiguration;
@@ -32,12 +34,19 @@ import net.shibboleth.shared.resolver.CriteriaSet;
 import net.shibboleth.shared.resolver.ResolverException;
 
 import org.opensaml.core.testing.OpenSAMLInitBaseTestCase;
+import org.opensaml.core.xml.config.XMLObjectProviderRegistrySupport;
 import org.opensaml.profile.action.EventIds;
 import org.opensaml.profile.context.ProfileRequestContext;
+import org.opensaml.saml.common.SAMLObjectBuilder;
+import org.opensaml.saml.common.messaging.context.SAMLMetadataContext;
+import org.opensaml.saml.common.messaging.context.SAMLPeerEntityContext;
+import org.opensaml.saml.saml2.metadata.SPSSODescriptor;
 import org.opensaml.saml.saml2.profile.context.EncryptionContext;
+import org.opensaml.xmlsec.EncryptionConfiguration;
 import org.opensaml.xmlsec.EncryptionParameters;
 import org.opensaml.xmlsec.EncryptionParametersResolver;
 import org.opensaml.xmlsec.criterion.EncryptionConfigurationCriterion;
+import org.opensaml.xmlsec.impl.BasicEncryptionConfiguration;
 import org.springframework.webflow.execution.Event;
 import org.springframework.webflow.execution.RequestContext;
 import org.testng.Assert;
@@ -136,10 +145,86 @@ public class PopulateEncryptionParametersTest extends OpenSAMLInitBaseTestCase {
         Assert.assertNull(ctx.getAttributeEncryptionParameters());
     }
     
+    @Test public void testCachedParameters() throws Exception {
+        final MockResolver resolver = new MockResolver(false);
+        action.setEncryptionParametersResolver(resolver);
+        action.initialize();
+        
+        final SPSSODescriptor role = buildRole();
+        final EncryptionParameters first = executeForRole(role);
+        Assert.assertSame(executeForRole(role), first);
+        Assert.assertEquals(resolver.count, 1);
+        
+        // A refreshed role starts afresh.
+        executeForRole(buildRole());
+        Assert.assertEquals(resolver.count, 2);
+    }
+
+    @Test public void testCachedParametersByConfiguration() throws Exception {
+        final MockResolver resolver = new MockResolver(false);
+        final List<List<EncryptionConfiguration>> configs = new ArrayList<>();
+        configs.add(Collections.singletonList(new BasicEncryptionConfiguration()));
+        action.setEncryptionParametersResolver(resolver);
+        action.setConfigurationLookupStrategy(input -> configs.get(0));
+        action.initialize();
+        
+        final SPSSODescriptor role = buildRole();
+        final List<EncryptionConfiguration> original = configs.get(0);
+        executeForRole(role);
+        Assert.assertEquals(resolver.count, 1);
+        
+        // A different configuration object, e.g. after a reload, is resolved separately.
+        configs.set(0, Collections.singletonList(new BasicEncryptionConfiguration()));
+        executeForRole(role);
+        Assert.assertEquals(resolver.count, 2);
+        
+        configs.set(0, original);
+        executeForRole(role);
+        Assert.assertEquals(resolver.count, 2);
+        
+        // Configurations built per request are not remembered beyond the bound.
+        for (int i = 0; i < 20; ++i) {
+            configs.set(0, Collections.singletonList(new BasicEncryptionConfiguration()));
+            executeForRole(role);
+        }
+        Assert.assertEquals(resolver.count, 22);
+        configs.set(0, original);
+        executeForRole(role);
+        Assert.assertEquals(resolver.count, 23);
+    }
+    
+    private SPSSODescriptor buildRole() {
+        final SAMLObjectBuilder<SPSSODescriptor> roleBuilder = (SAMLObjectBuilder<SPSSODescriptor>)
+                XMLObjectProviderRegistrySupport.getBuilderFactory().<SPSSODescriptor>getBuilderOrThrow(
+                        SPSSODescriptor.DEFAULT_ELEMENT_NAME);
+        return roleBuilder.buildObject();
+    }
+    
+    private EncryptionParameters executeForRole(final SPSSODescriptor role) {
+        final RequestContext requestCtx = new RequestContextBuilder().setRelyingPartyProfileConfigurations(
+                Collections.<ProfileConfiguration>singletonList(new BrowserSSOProfileConfiguration())).buildRequestContext();
+        final ProfileRequestContext profileCtx =
+                new WebflowRequestContextProfileRequestContextLookup().apply(requestCtx);
+        final SAMLPeerEntityContext peerCtx =
+                profileCtx.getOutboundMessageContext().getSubcontext(SAMLPeerEntityContext.class, true);
+        peerCtx.setEntityId("https://sp.example.org");
+        peerCtx.getSubcontext(SAMLMetadataContext.class, true).setRoleDescriptor(role);
+        
+        final Event event = action.execute(requestCtx);
+        ActionTestingSupport.assertProceedEvent(event);
+        
+        final EncryptionParameters params = profileCtx.getSubcontext(RelyingPartyContext.class).getSubcontext(
+                EncryptionContext.class).getAssertionEncryptionParameters();
+        Assert.assertNotNull(params);
+        return params;
+    }
+    
     private class MockResolver implements EncryptionParametersResolver {
 
         private boolean throwException;
         
+        private int count;
+        
         public MockResolver(final boolean shouldThrow) {
             throwException = shouldThrow;
         }
@@ -158,6 +243,7 @@ public class PopulateEncryptionParametersTest extends OpenSAMLInitBaseTestCase {
             }
             
             Constraint.isNotNull(criteria.get(EncryptionConfigurationCriterion.class), "Criterion was null");
+            count++;
             return new EncryptionParameters();
         }
         
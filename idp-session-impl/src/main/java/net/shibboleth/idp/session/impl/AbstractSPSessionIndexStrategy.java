@@ -0,0 +1,235 @@
+/*
+ * Licensed to the University Corporation for Advanced Internet Development,
+ * Inc. (UCAID) under one or more contributor license agreements.  See the
+ * NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The UCAID licenses this file to You under the Apache
+ * License, Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package net.shibboleth.idp.session.impl;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import org.opensaml.storage.StorageRecord;
+import org.opensaml.storage.StorageService;
+import org.opensaml.storage.VersionMismatchException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import net.shibboleth.shared.annotation.constraint.NonnullElements;
+import net.shibboleth.shared.annotation.constraint.NotEmpty;
+
+/**
+ * Base class for {@link SPSessionIndexStrategy} implementations that store session IDs in one or more
+ * records, each holding a comma-terminated list of IDs.
+ * 
+ * <p>This is the record format used by {@link StorageBackedSessionManager} since its inception, so
+ * a record written by one implementation can be read by another.</p>
+ * 
+ * @since 5.0.0
+ */
+public abstract class AbstractSPSessionIndexStrategy implements SPSessionIndexStrategy {
+
+    /** Separator (and terminator) of the IDs in a record. */
+    private static final char SEPARATOR = ',';
+
+    /** Class logger. */
+    @Nonnull private final Logger log = LoggerFactory.getLogger(AbstractSPSessionIndexStrategy.class);
+
+    /**
+     * Add an IdP session ID to a single record, creating it if necessary.
+     * 
+     * @param storageService storage to operate on
+     * @param context storage context of the record
+     * @param key storage key of the record
+     * @param sessionId IdP session ID to add
+     * @param expiration the minimum expiration to apply to the record
+     * @param attempts number of times to retry in the event of a synchronization issue
+     * 
+     * @return true iff the ID was added or already present, false iff the retries were exhausted
+     * @throws IOException if a storage error occurs
+     */
+    protected boolean addToRecord(@Nonnull final StorageService storageService,
+            @Nonnull @NotEmpty final String context, @Nonnull @NotEmpty final String key,
+            @Nonnull @NotEmpty final String sessionId, final long expiration, final int attempts)
+                    throws IOException {
+        
+        for (int i = 0; i < attempts; ++i) {
+            final StorageRecord<?> sessionList = storageService.read(context, key);
+            try {
+                if (sessionList != null) {
+                    final String value = sessionList.getValue();
+                    if (containsEntry(value, sessionId)) {
+                        log.debug("IdP session {} already indexed against context {} and key {}", sessionId,
+                                context, key);
+                        return true;
+                    }
+                    final Long current = sessionList.getExpiration();
+                    if (storageService.updateWithVersion(sessionList.getVersion(), context, key,
+                            value + sessionId + SEPARATOR,
+                            current != null ? Math.max(current, expiration) : null) != null) {
+                        return true;
+                    }
+                    log.debug("Secondary index record disappeared, retrying as insert");
+                } else if (storageService.create(context, key, sessionId + SEPARATOR, expiration)) {
+                    return true;
+                } else {
+                    log.debug("Secondary index record appeared, retrying as update");
+                }
+            } catch (final VersionMismatchException e) {
+                log.debug("Secondary index record was updated between read/update, retrying");
+            }
+        }
+        
+        return false;
+    }
+    
+    /**
+     * Remove IdP session IDs from a single record, deleting it if it becomes empty.
+     * 
+     * @param storageService storage to operate on
+     * @param context storage context of the record
+     * @param key storage key of the record
+     * @param sessionIds IdP session IDs to remove
+     * @param attempts number of times to retry in the event of a synchronization issue
+     * 
+     * @return true iff the IDs were removed or not present, false iff the retries were exhausted
+     * @throws IOException if a storage error occurs
+     */
+    protected boolean removeFromRecord(@Nonnull final StorageService storageService,
+            @Nonnull @NotEmpty final String context, @Nonnull @NotEmpty final String key,
+            @Nonnull @NonnullElements final Collection<String> sessionIds, final int attempts) throws IOException {
+        
+        for (int i = 0; i < attempts; ++i) {
+            final StorageRecord<?> sessionList = storageService.read(context, key);
+            if (sessionList == null) {
+                log.debug("Secondary index record not found, nothing to do");
+                return true;
+            }
+            
+            final String updated = removeEntries(sessionList.getValue(), sessionIds);
+            if (updated == null) {
+                log.debug("IdP session(s) {} not indexed against context {} and key {}", sessionIds, context, key);
+                return true;
+            }
+            
+            try {
+                if (updated.length() > 0) {
+                    if (storageService.updateWithVersion(sessionList.getVersion(), context, key, updated,
+                            sessionList.getExpiration()) == null) {
+                        log.debug("Secondary index record disappeared, nothing to do");
+                    }
+                } else {
+                    storageService.deleteWithVersion(sessionList.getVersion(), context, key);
+                }
+                return true;
+            } catch (final VersionMismatchException e) {
+                log.debug("Secondary index record was updated between read/update/delete, retrying");
+            }
+        }
+        
+        return false;
+    }
+    
+    /**
+     * Read the IdP session IDs in a single record into a collection.
+     * 
+     * @param storageService storage to operate on
+     * @param context storage context of the record
+     * @param key storage key of the record
+     * @param sessionIds collection to add to
+     * 
+     * @throws IOException if a storage error occurs
+     */
+    protected void readRecord(@Nonnull final StorageService storageService, @Nonnull @NotEmpty final String context,
+            @Nonnull @NotEmpty final String key, @Nonnull @NonnullElements final Collection<String> sessionIds)
+                    throws IOException {
+        final StorageRecord<?> sessionList = storageService.read(context, key);
+        if (sessionList != null) {
+            parseEntries(sessionList.getValue(), sessionIds);
+        }
+    }
+    
+    /**
+     * Check whether a record value contains an ID as a complete entry.
+     * 
+     * @param value record value
+     * @param sessionId ID to look for
+     * 
+     * @return true iff the ID is present
+     */
+    protected static boolean containsEntry(@Nonnull final String value, @Nonnull @NotEmpty final String sessionId) {
+        final int len = sessionId.length();
+        int pos = value.indexOf(sessionId);
+        while (pos >= 0) {
+            if ((pos == 0 || value.charAt(pos - 1) == SEPARATOR)
+                    && pos + len < value.length() && value.charAt(pos + len) == SEPARATOR) {
+                return true;
+            }
+            pos = value.indexOf(sessionId, pos + 1);
+        }
+        return false;
+    }
+    
+    /**
+     * Produce a record value with the given IDs removed.
+     * 
+     * @param value record value
+     * @param sessionIds IDs to remove
+     * 
+     * @return the updated value, or null if none of the IDs were present
+     */
+    @Nullable protected static String removeEntries(@Nonnull final String value,
+            @Nonnull @NonnullElements final Collection<String> sessionIds) {
+        final List<String> entries = new ArrayList<>();
+        parseEntries(value, entries);
+        if (!entries.removeAll(sessionIds)) {
+            return null;
+        }
+        
+        final StringBuilder builder = new StringBuilder(value.length());
+        for (final String entry : entries) {
+            builder.append(entry).append(SEPARATOR);
+        }
+        return builder.toString();
+    }
+    
+    /**
+     * Parse the IDs out of a record value.
+     * 
+     * @param value record value
+     * @param sessionIds collection to add to
+     */
+    protected static void parseEntries(@Nonnull final String value,
+            @Nonnull @NonnullElements final Collection<String> sessionIds) {
+        int start = 0;
+        int end = value.indexOf(SEPARATOR);
+        while (end >= 0) {
+            if (end > start) {
+                sessionIds.add(value.substring(start, end));
+            }
+            start = end + 1;
+            end = value.indexOf(SEPARATOR, start);
+        }
+        if (start < value.length()) {
+            sessionIds.add(value.substring(start));
+        }
+    }
+
+}
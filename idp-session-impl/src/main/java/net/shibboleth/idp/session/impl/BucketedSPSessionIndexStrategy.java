@@ -0,0 +1,153 @@
+/*
+ * Licensed to the University Corporation for Advanced Internet Development,
+ * Inc. (UCAID) under one or more contributor license agreements.  See the
+ * NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The UCAID licenses this file to You under the Apache
+ * License, Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package net.shibboleth.idp.session.impl;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import javax.annotation.Nonnull;
+
+import org.opensaml.storage.StorageService;
+
+import net.shibboleth.shared.annotation.ParameterName;
+import net.shibboleth.shared.annotation.constraint.NonnullElements;
+import net.shibboleth.shared.annotation.constraint.NotEmpty;
+import net.shibboleth.shared.annotation.constraint.Positive;
+import net.shibboleth.shared.logic.Constraint;
+
+/**
+ * {@link SPSessionIndexStrategy} that spreads the IdP session IDs for an index entry over a fixed number
+ * of records, choosing the record for each ID from a hash of the ID.
+ * 
+ * <p>Adding an ID reads and rewrites only the bucket its hash selects, and removing IDs rewrites only the
+ * buckets that actually hold them, so the cost of an update, and the chance of two concurrent updates
+ * colliding on the same record version, shrinks in proportion to the number of buckets. Lookups and
+ * removals read every bucket.</p>
+ * 
+ * <p>The first bucket is stored under the unmodified key, which makes it the same record used by
+ * {@link SingleRecordSPSessionIndexStrategy}. Because removal searches every bucket rather than only the
+ * hashed one, switching to this strategy or increasing the bucket count preserves, and can later remove,
+ * entries written before the change. Switching back or reducing the count leaves the buckets no longer
+ * read in place until they expire.</p>
+ * 
+ * @since 5.0.0
+ */
+public class BucketedSPSessionIndexStrategy extends AbstractSPSessionIndexStrategy {
+
+    /** Separator between the key and bucket number. */
+    private static final char BUCKET_SEPARATOR = '!';
+
+    /** Number of buckets. */
+    @Positive private final int buckets;
+
+    /**
+     * Constructor.
+     * 
+     * @param count number of buckets to use, at least 1
+     */
+    public BucketedSPSessionIndexStrategy(@Positive @ParameterName(name="count") final int count) {
+        buckets = Constraint.isGreaterThan(0, count, "Bucket count must be greater than zero");
+    }
+
+    /**
+     * Get the number of buckets.
+     * 
+     * @return number of buckets
+     */
+    @Positive public int getBuckets() {
+        return buckets;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public boolean add(@Nonnull final StorageService storageService, @Nonnull @NotEmpty final String context,
+            @Nonnull @NotEmpty final String key, @Nonnull @NotEmpty final String sessionId, final long expiration,
+            final int attempts) throws IOException {
+        return addToRecord(storageService, context, getBucketKey(storageService, key, getBucket(sessionId)),
+                sessionId, expiration, attempts);
+    }
+
+    /**
+     * {@inheritDoc}
+     * 
+     * <p>Every bucket is searched, since an ID may have been added before a switch from
+     * {@link SingleRecordSPSessionIndexStrategy} or a change in the bucket count. Buckets not
+     * holding any of the IDs are only read.</p>
+     */
+    @Override
+    public boolean remove(@Nonnull final StorageService storageService, @Nonnull @NotEmpty final String context,
+            @Nonnull @NotEmpty final String key, @Nonnull @NonnullElements final Collection<String> sessionIds,
+            final int attempts) throws IOException {
+        
+        boolean success = true;
+        for (int bucket = 0; bucket < buckets; ++bucket) {
+            success &= removeFromRecord(storageService, context, getBucketKey(storageService, key, bucket),
+                    sessionIds, attempts);
+        }
+        return success;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    @Nonnull @NonnullElements public Collection<String> read(@Nonnull final StorageService storageService,
+            @Nonnull @NotEmpty final String context, @Nonnull @NotEmpty final String key) throws IOException {
+        final List<String> sessionIds = new ArrayList<>();
+        for (int bucket = 0; bucket < buckets; ++bucket) {
+            readRecord(storageService, context, getBucketKey(storageService, key, bucket), sessionIds);
+        }
+        return sessionIds;
+    }
+    
+    /**
+     * Get the bucket for an IdP session ID.
+     * 
+     * <p>{@link String#hashCode()} is used because its value is fixed by the language specification,
+     * so every node in a cluster computes the same bucket.</p>
+     * 
+     * @param sessionId IdP session ID
+     * 
+     * @return bucket number
+     */
+    private int getBucket(@Nonnull @NotEmpty final String sessionId) {
+        return (sessionId.hashCode() & 0x7fffffff) % buckets;
+    }
+    
+    /**
+     * Get the storage key for a bucket.
+     * 
+     * @param storageService storage to operate on
+     * @param key storage key for the index entry
+     * @param bucket bucket number
+     * 
+     * @return storage key for the bucket
+     */
+    @Nonnull @NotEmpty private String getBucketKey(@Nonnull final StorageService storageService,
+            @Nonnull @NotEmpty final String key, final int bucket) {
+        if (bucket == 0) {
+            return key;
+        }
+        
+        final String suffix = BUCKET_SEPARATOR + Integer.toString(bucket);
+        final int maxKeySize = storageService.getCapabilities().getKeySize() - suffix.length();
+        return (key.length() > maxKeySize ? key.substring(0, maxKeySize) : key) + suffix;
+    }
+
+}
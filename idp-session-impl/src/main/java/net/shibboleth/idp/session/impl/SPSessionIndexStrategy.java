@@ -0,0 +1,89 @@
+/*
+ * Licensed to the University Corporation for Advanced Internet Development,
+ * Inc. (UCAID) under one or more contributor license agreements.  See the
+ * NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The UCAID licenses this file to You under the Apache
+ * License, Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package net.shibboleth.idp.session.impl;
+
+import java.io.IOException;
+import java.util.Collection;
+
+import javax.annotation.Nonnull;
+
+import org.opensaml.storage.StorageService;
+
+import net.shibboleth.shared.annotation.constraint.NonnullElements;
+import net.shibboleth.shared.annotation.constraint.NotEmpty;
+
+/**
+ * Strategy for maintaining the secondary index from a service ID and SPSession key to the IdP sessions
+ * that have an SPSession with that service.
+ * 
+ * <p>The context and key supplied by the caller have already been truncated to the limits of the
+ * {@link StorageService}, and identify a single logical index entry. How that entry is laid out across
+ * storage records is up to the implementation.</p>
+ * 
+ * @since 5.0.0
+ */
+public interface SPSessionIndexStrategy {
+
+    /**
+     * Add an IdP session ID to an index entry, creating it if necessary.
+     * 
+     * @param storageService storage to operate on
+     * @param context storage context for the entry
+     * @param key storage key for the entry
+     * @param sessionId IdP session ID to add
+     * @param expiration the minimum expiration to apply to the entry
+     * @param attempts number of times to retry in the event of a synchronization issue
+     * 
+     * @return true iff the ID was added or already present, false iff the retries were exhausted
+     * @throws IOException if a storage error occurs
+     */
+    boolean add(@Nonnull final StorageService storageService, @Nonnull @NotEmpty final String context,
+            @Nonnull @NotEmpty final String key, @Nonnull @NotEmpty final String sessionId, final long expiration,
+            final int attempts) throws IOException;
+
+    /**
+     * Remove IdP session IDs from an index entry, deleting it if it becomes empty.
+     * 
+     * @param storageService storage to operate on
+     * @param context storage context for the entry
+     * @param key storage key for the entry
+     * @param sessionIds IdP session IDs to remove
+     * @param attempts number of times to retry in the event of a synchronization issue
+     * 
+     * @return true iff the IDs were removed or not present, false iff the retries were exhausted
+     * @throws IOException if a storage error occurs
+     */
+    boolean remove(@Nonnull final StorageService storageService, @Nonnull @NotEmpty final String context,
+            @Nonnull @NotEmpty final String key, @Nonnull @NonnullElements final Collection<String> sessionIds,
+            final int attempts) throws IOException;
+
+    /**
+     * Read the IdP session IDs in an index entry.
+     * 
+     * @param storageService storage to operate on
+     * @param context storage context for the entry
+     * @param key storage key for the entry
+     * 
+     * @return the IdP session IDs, possibly empty
+     * @throws IOException if a storage error occurs
+     */
+    @Nonnull @NonnullElements Collection<String> read(@Nonnull final StorageService storageService,
+            @Nonnull @NotEmpty final String context, @Nonnull @NotEmpty final String key) throws IOException;
+
+}
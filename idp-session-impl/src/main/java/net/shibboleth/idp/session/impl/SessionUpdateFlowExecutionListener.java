@@ -0,0 +1,161 @@
+/*
+ * Licensed to the University Corporation for Advanced Internet Development,
+ * Inc. (UCAID) under one or more contributor license agreements.  See the
+ * NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The UCAID licenses this file to You under the Apache
+ * License, Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.shibboleth.idp.session.impl;
+
+import java.util.Collection;
+import java.util.Set;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.webflow.definition.StateDefinition;
+import org.springframework.webflow.engine.EndState;
+import org.springframework.webflow.execution.FlowExecutionListener;
+import org.springframework.webflow.execution.RequestContext;
+import org.springframework.webflow.execution.View;
+
+import net.shibboleth.idp.session.SessionException;
+import net.shibboleth.idp.session.SessionManager;
+import net.shibboleth.shared.annotation.constraint.NonnullElements;
+import net.shibboleth.shared.primitive.StringSupport;
+
+/**
+ * Brackets each request processed by a flow execution with {@link StorageBackedSessionManager#beginUpdates()}
+ * and {@link StorageBackedSessionManager#flushUpdates()}, so that changes made to a session during the request
+ * are written to its primary record once.
+ * 
+ * <p>The changes must be written before the response is, or the client's next request could read a stale
+ * record. They are therefore written before a view is rendered, before entering any of a set of states that
+ * send a response (by default, the state that encodes outbound SAML messages) or ending a flow, and when the
+ * flow pauses. The end of the request is only a fallback. After an early write, later changes in the same request
+ * are again deferred.</p>
+ * 
+ * <p>This does nothing if the session manager is not a {@link StorageBackedSessionManager} or is not configured
+ * to coalesce updates. Errors are logged rather than passed to the flow.</p>
+ * 
+ * @since 5.0.0
+ */
+public class SessionUpdateFlowExecutionListener implements FlowExecutionListener {
+
+    /** Class logger. */
+    @Nonnull private final Logger log = LoggerFactory.getLogger(SessionUpdateFlowExecutionListener.class);
+
+    /** Session manager to operate on. */
+    @Nullable private StorageBackedSessionManager sessionManager;
+
+    /** IDs of states to write changes before entering. */
+    @Nonnull @NonnullElements private Set<String> flushStates;
+
+    /** Constructor. */
+    public SessionUpdateFlowExecutionListener() {
+        flushStates = Set.of("HandleOutboundMessage");
+    }
+    
+    /**
+     * Set the {@link SessionManager} to operate on.
+     * 
+     * @param manager session manager
+     */
+    public void setSessionManager(@Nullable final SessionManager manager) {
+        if (manager instanceof StorageBackedSessionManager
+                && ((StorageBackedSessionManager) manager).isCoalesceUpdates()) {
+            sessionManager = (StorageBackedSessionManager) manager;
+        } else {
+            sessionManager = null;
+        }
+    }
+
+    /**
+     * Set the IDs of states that send a response, before entering which changes are written.
+     * 
+     * <p>Defaults to "HandleOutboundMessage".</p>
+     * 
+     * @param states state IDs
+     */
+    public void setFlushStates(@Nullable @NonnullElements final Collection<String> states) {
+        if (states != null) {
+            flushStates = Set.copyOf(StringSupport.normalizeStringCollection(states));
+        } else {
+            flushStates = Set.of();
+        }
+    }
+    
+    /** {@inheritDoc} */
+    @Override
+    public void requestSubmitted(final RequestContext context) {
+        begin();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void stateEntering(final RequestContext context, final StateDefinition state) {
+        if (state instanceof EndState || (state != null && flushStates.contains(state.getId()))) {
+            flush(true);
+        }
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void viewRendering(final RequestContext context, final View view, final StateDefinition viewState) {
+        flush(true);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void paused(final RequestContext context) {
+        flush(true);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void requestProcessed(final RequestContext context) {
+        flush(false);
+    }
+
+    /** Begin deferring updates. */
+    private void begin() {
+        if (sessionManager != null) {
+            try {
+                sessionManager.beginUpdates();
+            } catch (final RuntimeException e) {
+                log.error("Error deferring session updates", e);
+            }
+        }
+    }
+
+    /**
+     * Write any deferred updates.
+     * 
+     * @param resume whether to continue deferring updates afterwards
+     */
+    private void flush(final boolean resume) {
+        if (sessionManager != null) {
+            try {
+                sessionManager.flushUpdates();
+            } catch (final SessionException | RuntimeException e) {
+                log.error("Error writing deferred session updates", e);
+            }
+            if (resume) {
+                begin();
+            }
+        }
+    }
+
+}
@@ -0,0 +1,68 @@
+/*
+ * Licensed to the University Corporation for Advanced Internet Development,
+ * Inc. (UCAID) under one or more contributor license agreements.  See the
+ * NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The UCAID licenses this file to You under the Apache
+ * License, Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package net.shibboleth.idp.session.impl;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import javax.annotation.Nonnull;
+
+import org.opensaml.storage.StorageService;
+
+import net.shibboleth.shared.annotation.constraint.NonnullElements;
+import net.shibboleth.shared.annotation.constraint.NotEmpty;
+
+/**
+ * {@link SPSessionIndexStrategy} that keeps every IdP session ID for an index entry in a single record.
+ * 
+ * <p>This is the original, default layout. It needs only one read per lookup, but each update rewrites
+ * the whole list, so it is best suited to services with a modest number of concurrent sessions per key.</p>
+ * 
+ * @since 5.0.0
+ */
+public class SingleRecordSPSessionIndexStrategy extends AbstractSPSessionIndexStrategy {
+
+    /** {@inheritDoc} */
+    @Override
+    public boolean add(@Nonnull final StorageService storageService, @Nonnull @NotEmpty final String context,
+            @Nonnull @NotEmpty final String key, @Nonnull @NotEmpty final String sessionId, final long expiration,
+            final int attempts) throws IOException {
+        return addToRecord(storageService, context, key, sessionId, expiration, attempts);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public boolean remove(@Nonnull final StorageService storageService, @Nonnull @NotEmpty final String context,
+            @Nonnull @NotEmpty final String key, @Nonnull @NonnullElements final Collection<String> sessionIds,
+            final int attempts) throws IOException {
+        return removeFromRecord(storageService, context, key, sessionIds, attempts);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    @Nonnull @NonnullElements public Collection<String> read(@Nonnull final StorageService storageService,
+            @Nonnull @NotEmpty final String context, @Nonnull @NotEmpty final String key) throws IOException {
+        final List<String> sessionIds = new ArrayList<>();
+        readRecord(storageService, context, key, sessionIds);
+        return sessionIds;
+    }
+
+}
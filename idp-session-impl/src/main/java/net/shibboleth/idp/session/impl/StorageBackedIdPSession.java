@@ -19,7 +19,9 @@ package net.shibboleth.idp.session.impl;
 
 import java.io.IOException;
 import java.time.Instant;
+import java.util.ArrayList;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
@@ -61,6 +63,12 @@ public class StorageBackedIdPSession extends AbstractIdPSession {
     /** Storage version used to synchronize changes. */
     private long version;
     
+    /** Deferred changes to the primary record, replayed after reloading it following a version mismatch. */
+    @Nonnull @NonnullElements private final List<Runnable> pendingUpdates;
+    
+    /** Whether any deferred change requires rewriting the primary record rather than just its expiration. */
+    private boolean recordUpdatePending;
+    
     /**
      * Constructor.
      *
@@ -77,12 +85,22 @@ public class StorageBackedIdPSession extends AbstractIdPSession {
         sessionManager = Constraint.isNotNull(manager, "SessionManager cannot be null");
         
         version = 1;
+        pendingUpdates = new ArrayList<>();
     }
     
     /** {@inheritDoc} */
     @Override public void setLastActivityInstant(@Nonnull final Instant instant) 
             throws SessionException {
         
+        if (deferUpdate(() -> {
+                    if (instant.isAfter(getLastActivityInstant())) {
+                        doSetLastActivityInstant(instant);
+                    }
+                }, false)) {
+            super.setLastActivityInstant(instant);
+            return;
+        }
+        
         final Instant exp =
                 instant.plus(sessionManager.getSessionTimeout()).plus(sessionManager.getSessionSlop());
         log.debug("Updating expiration of primary record for session {} to {}", getId(), exp);
@@ -127,12 +145,17 @@ public class StorageBackedIdPSession extends AbstractIdPSession {
     @Override
     public void bindToAddress(@Nonnull @NotEmpty final String address) throws SessionException {
         
-        // Update ourselves and then attempt to write back.
+        // Update ourselves and then attempt to write back. This is never deferred, because a conflicting
+        // binding has to be detected now for the session to be rejected. Any deferred changes go with it.
         super.bindToAddress(address);
+        
         try {
             int attempts = 10;
             boolean success = writeToStorage();
             while (!success && attempts-- > 0) {
+                // The record was reloaded, so reapply any deferred changes on top of it.
+                pendingUpdates.forEach(Runnable::run);
+                
                 // The record may have changed underneath, so we need to re-check the address.
                 final String nowBound = getAddress(getAddressFamily(address));
                 if (nowBound != null) {
@@ -147,7 +170,11 @@ public class StorageBackedIdPSession extends AbstractIdPSession {
                 super.bindToAddress(address);
                 success = writeToStorage();
             }
-            if (!success) {
+            if (success) {
+                // Deferred changes were written with the binding.
+                pendingUpdates.clear();
+                recordUpdatePending = false;
+            } else {
                 log.error("Exhausted retry attempts updating record for session {}", getId());
             }
         } catch (final IOException e) {
@@ -227,7 +254,11 @@ public class StorageBackedIdPSession extends AbstractIdPSession {
                 throw new SessionException("Unable to save AuthenticationResult to storage");
             }
             final AuthenticationResult prev = super.addAuthenticationResult(result);
-            if (prev == null) {
+            if (prev == null && !deferUpdate(() -> {
+                        if (!getAuthenticationResultMap().containsKey(result.getAuthenticationFlowId())) {
+                            doAddAuthenticationResult(result);
+                        }
+                    }, true)) {
                 // If no previous record, the add operation changed the primary record, requiring an update.
                 int attempts = 10;
                 boolean success = writeToStorage();
@@ -295,6 +326,10 @@ public class StorageBackedIdPSession extends AbstractIdPSession {
                         result.getAuthenticationFlowId(), e);
             }
             
+            if (deferUpdate(() -> doRemoveAuthenticationResult(result), true)) {
+                return true;
+            }
+            
             // Try and update the primary record with the updated flow list.
             try {
                 int attempts = 10;
@@ -407,7 +442,13 @@ public class StorageBackedIdPSession extends AbstractIdPSession {
                     throw new SessionException("Unable to save SPSession to storage");
                 }
                 final SPSession prev = super.addSPSession(spSession);
-                if (prev == null) {
+                if (prev == null && deferUpdate(() -> {
+                            if (!getSPSessionMap().containsKey(spSession.getId())) {
+                                doAddSPSession(spSession);
+                            }
+                        }, true)) {
+                    log.trace("Deferred update of primary record for session {}", getId());
+                } else if (prev == null) {
                     // If no previous record, the add operation changed the primary record, requiring an update.
                     int attempts = 10;
                     boolean success = writeToStorage();
@@ -457,6 +498,10 @@ public class StorageBackedIdPSession extends AbstractIdPSession {
                 }
             }
             
+            if (deferUpdate(() -> doRemoveSPSession(spSession), true)) {
+                return true;
+            }
+            
             // Try and update the primary record with the updated service session list.
             try {
                 int attempts = 10;
@@ -722,6 +767,119 @@ public class StorageBackedIdPSession extends AbstractIdPSession {
         return serviceId;
     }
     
+    /**
+     * Remove references to results and service sessions that have not been loaded and whose records are no
+     * longer in storage.
+     * 
+     * <p>This is the pruning that {@link #getAuthenticationResults()} and {@link #getSPSessions()} do as they
+     * load records, for use when only the identifiers are needed. The records are read but not deserialized.</p>
+     */
+    void pruneReferences() {
+        final Iterator<Map.Entry<String,Optional<AuthenticationResult>>> results =
+                getAuthenticationResultMap().entrySet().iterator();
+        while (results.hasNext()) {
+            final Map.Entry<String,Optional<AuthenticationResult>> entry = results.next();
+            if (entry.getValue().isEmpty()) {
+                try {
+                    if (sessionManager.getAuthenticationFlowDescriptor(entry.getKey()) == null
+                            || sessionManager.getStorageService().read(getId(), entry.getKey()) == null) {
+                        log.debug("Removing reference to missing AuthenticationResult for flow {} in session {}",
+                                entry.getKey(), getId());
+                        results.remove();
+                    }
+                } catch (final IOException e) {
+                    // An exception implies the record *might* still be accessible later.
+                }
+            }
+        }
+
+        if (sessionManager.isTrackSPSessions() && sessionManager.storageServiceMeetsThreshold()) {
+            final Iterator<Map.Entry<String,Optional<SPSession>>> sessions = getSPSessionMap().entrySet().iterator();
+            while (sessions.hasNext()) {
+                final Map.Entry<String,Optional<SPSession>> entry = sessions.next();
+                if (entry.getValue().isEmpty()) {
+                    try {
+                        if (sessionManager.getStorageService().read(getId(),
+                                getSPSessionStorageKey(entry.getKey())) == null) {
+                            log.debug("Removing reference to missing SPSession for service {} in session {}",
+                                    entry.getKey(), getId());
+                            sessions.remove();
+                        }
+                    } catch (final IOException e) {
+                        // An exception implies the record *might* still be accessible later.
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Write any deferred changes to the primary session record.
+     * 
+     * @throws SessionException if an error occurs writing the changes
+     */
+    void flush() throws SessionException {
+        if (pendingUpdates.isEmpty()) {
+            return;
+        }
+        
+        try {
+            if (!recordUpdatePending) {
+                // Only the activity time changed, so just push out the expiration.
+                final Instant exp = getLastActivityInstant().plus(sessionManager.getSessionTimeout()).plus(
+                        sessionManager.getSessionSlop());
+                log.debug("Updating expiration of primary record for session {} to {}", getId(), exp);
+                sessionManager.getStorageService().updateExpiration(
+                        getId(), StorageBackedSessionManager.SESSION_PRIMARY_KEY, exp.toEpochMilli());
+                return;
+            }
+            
+            log.debug("Writing {} deferred update(s) to primary record for session {}", pendingUpdates.size(),
+                    getId());
+            int attempts = 10;
+            boolean success = writeToStorage();
+            while (!success && attempts-- > 0) {
+                // The record was reloaded, so reapply every change on top of it.
+                pendingUpdates.forEach(Runnable::run);
+                success = writeToStorage();
+            }
+            if (!success) {
+                log.error("Exhausted retry attempts updating record for session {}", getId());
+            }
+        } catch (final IOException e) {
+            if (!sessionManager.isMaskStorageFailure()) {
+                throw new SessionException("Exception writing deferred updates to session record", e);
+            }
+            log.error("Exception writing deferred updates to primary record for session {}", getId(), e);
+        } finally {
+            pendingUpdates.clear();
+            recordUpdatePending = false;
+        }
+    }
+    
+    /**
+     * Defer a change to the primary session record, if the manager is coalescing updates in this request.
+     * 
+     * <p>The change must already have been applied to this object. The supplied update must reapply it,
+     * if still appropriate, to a freshly loaded copy of the record.</p>
+     * 
+     * @param update reapplies the change after the record is reloaded
+     * @param rewrite whether the change requires rewriting the record, or just extending its expiration
+     * 
+     * @return true iff the change was deferred and should not be written now
+     */
+    private boolean deferUpdate(@Nonnull final Runnable update, final boolean rewrite) {
+        final Set<StorageBackedIdPSession> unitOfWork = sessionManager.getUnitOfWork();
+        if (unitOfWork == null) {
+            return false;
+        }
+        
+        pendingUpdates.add(update);
+        recordUpdatePending |= rewrite;
+        unitOfWork.add(this);
+        return true;
+    }
+
     /**
      * Update the primary session record based on the current contents of this object.
      * 
@@ -750,7 +908,7 @@ public class StorageBackedIdPSession extends AbstractIdPSession {
                 log.error("Record for session {} has disappeared from backing store", getId());
                 throw new IOException("Unable to update session, record disappeared");
             }
-            record.getValue(new StorageBackedIdPSessionSerializer(sessionManager, this),
+            record.getValue(sessionManager.newStorageSerializer(this),
                     getId(), StorageBackedSessionManager.SESSION_PRIMARY_KEY);
             return false;
         }
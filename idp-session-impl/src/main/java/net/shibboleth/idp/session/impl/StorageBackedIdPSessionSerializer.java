@@ -56,25 +56,25 @@ public class StorageBackedIdPSessionSerializer extends AbstractInitializableComp
         StorageSerializer<StorageBackedIdPSession> {
 
     /** Field name of creation instant. */
-    @Nonnull @NotEmpty private static final String CREATION_INSTANT_FIELD = "ts";
+    @Nonnull @NotEmpty static final String CREATION_INSTANT_FIELD = "ts";
 
     /** Field name of principal name. */
-    @Nonnull @NotEmpty private static final String PRINCIPAL_NAME_FIELD = "nam";
+    @Nonnull @NotEmpty static final String PRINCIPAL_NAME_FIELD = "nam";
 
     /** Field name of IPv4 address. */
-    @Nonnull @NotEmpty private static final String IPV4_ADDRESS_FIELD = "v4";
+    @Nonnull @NotEmpty static final String IPV4_ADDRESS_FIELD = "v4";
 
     /** Field name of IPv6 address. */
-    @Nonnull @NotEmpty private static final String IPV6_ADDRESS_FIELD = "v6";
+    @Nonnull @NotEmpty static final String IPV6_ADDRESS_FIELD = "v6";
 
     /** Field name of Unknown address. */
-    @Nonnull @NotEmpty private static final String UNK_ADDRESS_FIELD = "unk";
+    @Nonnull @NotEmpty static final String UNK_ADDRESS_FIELD = "unk";
 
     /** Field name of flow ID array. */
-    @Nonnull @NotEmpty private static final String FLOW_ID_ARRAY_FIELD = "flows";
+    @Nonnull @NotEmpty static final String FLOW_ID_ARRAY_FIELD = "flows";
 
     /** Field name of service ID array. */
-    @Nonnull @NotEmpty private static final String SERVICE_ID_ARRAY_FIELD = "svcs";
+    @Nonnull @NotEmpty static final String SERVICE_ID_ARRAY_FIELD = "svcs";
 
     /** Class logger. */
     @Nonnull private final Logger log = LoggerFactory.getLogger(StorageBackedIdPSessionSerializer.class);
@@ -20,11 +20,22 @@ package net.shibboleth.idp.session.impl;
 import java.io.IOException;
 import java.time.Duration;
 import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.function.BiPredicate;
 import java.util.function.Supplier;
 
@@ -34,12 +45,12 @@ import javax.annotation.Nullable;
 import org.opensaml.storage.StorageRecord;
 import org.opensaml.storage.StorageSerializer;
 import org.opensaml.storage.StorageService;
-import org.opensaml.storage.VersionMismatchException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.google.common.base.Strings;
 import com.google.common.collect.ImmutableList;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 
 import jakarta.servlet.http.Cookie;
 import jakarta.servlet.http.HttpServletRequest;
@@ -56,6 +67,7 @@ import net.shibboleth.idp.session.criterion.SessionIdCriterion;
 import net.shibboleth.shared.annotation.constraint.NonnullAfterInit;
 import net.shibboleth.shared.annotation.constraint.NonnullElements;
 import net.shibboleth.shared.annotation.constraint.NotEmpty;
+import net.shibboleth.shared.annotation.constraint.Positive;
 import net.shibboleth.shared.component.AbstractIdentifiableInitializableComponent;
 import net.shibboleth.shared.component.ComponentInitializationException;
 import net.shibboleth.shared.logic.Constraint;
@@ -103,6 +115,12 @@ import net.shibboleth.shared.servlet.HttpServletSupport;
  * </p>
  * 
  * <p>
+ * The physical layout of the secondary index is delegated to a {@link SPSessionIndexStrategy}. The default keeps
+ * the entire list in a single record, while {@link BucketedSPSessionIndexStrategy} spreads it across a fixed number
+ * of records to reduce update contention for services with many concurrent sessions.
+ * </p>
+ * 
+ * <p>
  * The primary purpose of the secondary list is SAML logout, and is an optional feature that can be disabled. In the
  * case of a SAML 2 session, the secondary key is some form of the NameID issued to the service.
  * </p>
@@ -113,6 +131,14 @@ public class StorageBackedSessionManager extends AbstractIdentifiableInitializab
     /** Storage key of primary session records. */
     @Nonnull @NotEmpty public static final String SESSION_PRIMARY_KEY = "_session";
 
+    /** Name of the request attribute holding the sessions resolved during a request. */
+    @Nonnull @NotEmpty public static final String REQUEST_CACHE_ATTRIBUTE =
+            StorageBackedSessionManager.class.getName() + ".RequestCache";
+
+    /** Name of the request attribute holding the sessions with updates deferred until the end of a request. */
+    @Nonnull @NotEmpty public static final String UNIT_OF_WORK_ATTRIBUTE =
+            StorageBackedSessionManager.class.getName() + ".UnitOfWork";
+
     /** Default cookie name for session tracking. */
     @Nonnull @NotEmpty protected static final String DEFAULT_COOKIE_NAME = "shib_idp_session";
 
@@ -137,6 +163,21 @@ public class StorageBackedSessionManager extends AbstractIdentifiableInitializab
     /** Indicates whether to secondary-index SPSessions. */
     private boolean secondaryServiceIndex;
 
+    /** Layout of the secondary SPSession index. */
+    @Nonnull private SPSessionIndexStrategy spSessionIndexStrategy;
+
+    /** Maximum number of concurrent primary lookups made while resolving sessions by SPSession. */
+    @Positive private int lookupParallelism;
+    
+    /** Whether to cache resolved sessions for the lifetime of a request. */
+    private boolean requestScopedCaching;
+    
+    /** Whether to defer and coalesce updates to primary session records within a request. */
+    private boolean coalesceUpdates;
+    
+    /** Thread pool for concurrent primary lookups, if enabled. */
+    @Nullable private ExecutorService lookupExecutor;
+
     /** Indicates how bound session addresses and client addresses are compared. */
     @Nonnull private BiPredicate<String,String> consistentAddressCondition;
 
@@ -155,8 +196,11 @@ public class StorageBackedSessionManager extends AbstractIdentifiableInitializab
     /** Generator for XML ID attribute values. */
     @NonnullAfterInit private IdentifierGenerationStrategy idGenerator;
 
+    /** Whether to use the streaming session serializer. */
+    private boolean streamingSerialization;
+
     /** Serializer for sessions. */
-    @Nonnull private final StorageBackedIdPSessionSerializer serializer;
+    @Nonnull private StorageSerializer<StorageBackedIdPSession> serializer;
 
     /** Flows that could potentially be used to authenticate the user. */
     @Nonnull @NonnullElements private final Map<String,AuthenticationFlowDescriptor> flowDescriptorMap;
@@ -171,12 +215,14 @@ public class StorageBackedSessionManager extends AbstractIdentifiableInitializab
     public StorageBackedSessionManager() {
         sessionTimeout = Duration.ofHours(1);
         sessionSlop = Duration.ZERO;
-        serializer = new StorageBackedIdPSessionSerializer(this, null);
+        serializer = newStorageSerializer(null);
         flowDescriptorMap = new HashMap<>();
         consistentAddressCondition =
                 DefaultConsistentAddressConditionFactory.getDefaultConsistentAddressCondition(true);
         cookieName = DEFAULT_COOKIE_NAME;
         storageServiceThreshold = 1024 * 1024;
+        spSessionIndexStrategy = new SingleRecordSPSessionIndexStrategy();
+        lookupParallelism = 1;
     }
 
     /**
@@ -293,6 +339,147 @@ public class StorageBackedSessionManager extends AbstractIdentifiableInitializab
         secondaryServiceIndex = flag;
     }
 
+    /**
+     * Get whether session records are read and written with {@link StreamingIdPSessionSerializer}.
+     * 
+     * @return true iff the streaming serializer is in use
+     * 
+     * @since 5.0.0
+     */
+    public boolean isStreamingSerialization() {
+        return streamingSerialization;
+    }
+
+    /**
+     * Set whether session records are read and written with {@link StreamingIdPSessionSerializer}
+     * rather than {@link StorageBackedIdPSessionSerializer}.
+     * 
+     * <p>Both produce the same record format, so this can be changed without invalidating existing sessions.</p>
+     * 
+     * @param flag flag to set
+     * 
+     * @since 5.0.0
+     */
+    public void setStreamingSerialization(final boolean flag) {
+        checkSetterPreconditions();
+        streamingSerialization = flag;
+        serializer = newStorageSerializer(null);
+    }
+
+    /**
+     * Get the strategy controlling the layout of the secondary SPSession index.
+     * 
+     * @return index strategy
+     * 
+     * @since 5.0.0
+     */
+    @Nonnull public SPSessionIndexStrategy getSPSessionIndexStrategy() {
+        return spSessionIndexStrategy;
+    }
+
+    /**
+     * Set the strategy controlling the layout of the secondary SPSession index.
+     * 
+     * <p>Defaults to {@link SingleRecordSPSessionIndexStrategy}.</p>
+     * 
+     * @param strategy index strategy
+     * 
+     * @since 5.0.0
+     */
+    public void setSPSessionIndexStrategy(@Nonnull final SPSessionIndexStrategy strategy) {
+        checkSetterPreconditions();
+        spSessionIndexStrategy = Constraint.isNotNull(strategy, "SPSessionIndexStrategy cannot be null");
+    }
+
+    /**
+     * Get the maximum number of concurrent primary lookups made while resolving sessions by SPSession.
+     * 
+     * @return maximum number of concurrent lookups
+     * 
+     * @since 5.0.0
+     */
+    @Positive public int getLookupParallelism() {
+        return lookupParallelism;
+    }
+
+    /**
+     * Set the maximum number of concurrent primary lookups made while resolving sessions by SPSession.
+     * 
+     * <p>Defaults to 1, which performs the lookups one at a time on the calling thread. Larger values
+     * reduce the latency of logout for principals with many sessions when each read of the
+     * {@link StorageService} involves a network round-trip.</p>
+     * 
+     * @param parallelism maximum number of concurrent lookups
+     * 
+     * @since 5.0.0
+     */
+    public void setLookupParallelism(@Positive final int parallelism) {
+        checkSetterPreconditions();
+        lookupParallelism = Constraint.isGreaterThan(0, parallelism, "Lookup parallelism must be greater than zero");
+    }
+
+    /**
+     * Get whether sessions are cached for the lifetime of a request.
+     * 
+     * @return true iff sessions are cached for the lifetime of a request
+     * 
+     * @since 5.0.0
+     */
+    public boolean isRequestScopedCaching() {
+        return requestScopedCaching;
+    }
+
+    /**
+     * Set whether sessions are cached for the lifetime of a request.
+     * 
+     * <p>When enabled, each session read or created during a request is held in a request attribute
+     * and returned from there by later lookups in the same request, along with any
+     * {@link net.shibboleth.idp.authn.AuthenticationResult} and {@link SPSession} records it has
+     * already loaded. This avoids re-reading and re-parsing the same records several times in
+     * the course of one profile request. Changes are still written through to storage as they are made.</p>
+     * 
+     * <p>Requires an {@link HttpServletRequest} supplier.</p>
+     * 
+     * @param flag flag to set
+     * 
+     * @since 5.0.0
+     */
+    public void setRequestScopedCaching(final boolean flag) {
+        checkSetterPreconditions();
+        requestScopedCaching = flag;
+    }
+
+    /**
+     * Get whether updates to primary session records are coalesced within a request.
+     * 
+     * @return true iff updates are coalesced
+     * 
+     * @since 5.0.0
+     */
+    public boolean isCoalesceUpdates() {
+        return coalesceUpdates;
+    }
+
+    /**
+     * Set whether updates to primary session records are coalesced within a request.
+     * 
+     * <p>When enabled, changes made to a session between {@link #beginUpdates()} and {@link #flushUpdates()}
+     * are applied in memory and written to the primary record once, at the end, rather than by a separate
+     * versioned update for each change. Records for individual results and SPSessions, and the secondary
+     * index, are still written immediately, as are address bindings, so that a conflicting binding causes the
+     * session to be rejected.</p>
+     * 
+     * <p>Requires an {@link HttpServletRequest} supplier.</p>
+     * 
+     * @param flag flag to set
+     * 
+     * @since 5.0.0
+     */
+    public void setCoalesceUpdates(final boolean flag) {
+        checkSetterPreconditions();
+        coalesceUpdates = flag;
+    }
+
     /**
      * Get condition to evaluate bound session and client addresses for consistency.
      * 
@@ -415,6 +602,21 @@ public class StorageBackedSessionManager extends AbstractIdentifiableInitializab
         return serializer;
     }
 
+    /**
+     * Create a new serializer of the configured type that deserializes into an existing object.
+     * 
+     * @param target object to overwrite when deserializing, or null to create new objects
+     * 
+     * @return a new serializer
+     */
+    @Nonnull StorageSerializer<StorageBackedIdPSession> newStorageSerializer(
+            @Nullable final StorageBackedIdPSession target) {
+        if (streamingSerialization) {
+            return new StreamingIdPSessionSerializer(this, target);
+        }
+        return new StorageBackedIdPSessionSerializer(this, target);
+    }
+
     /**
      * Get a matching {@link AuthenticationFlowDescriptor}.
      * 
@@ -477,10 +679,29 @@ public class StorageBackedSessionManager extends AbstractIdentifiableInitializab
                     "Initialization of StorageBackedSessionManager requires non-null CookieManager");
         } else if (trackSPSessions && spSessionSerializerRegistry == null) {
             throw new ComponentInitializationException("Tracking SPSessions requires a spSessionSerializerRegistry");
+        } else if (requestScopedCaching && httpRequestSupplier == null) {
+            throw new ComponentInitializationException("Request-scoped caching requires an HttpServletRequest supplier");
+        } else if (coalesceUpdates && httpRequestSupplier == null) {
+            throw new ComponentInitializationException("Coalescing updates requires an HttpServletRequest supplier");
         }
 
         // This is our private instance, so we initialize it.
         serializer.initialize();
+        
+        if (secondaryServiceIndex && lookupParallelism > 1) {
+            lookupExecutor = Executors.newFixedThreadPool(lookupParallelism,
+                    new ThreadFactoryBuilder().setDaemon(true).setNameFormat(getId() + "-lookup-%d").build());
+        }
+    }
+
+    /** {@inheritDoc} */
+    @Override protected void doDestroy() {
+        if (lookupExecutor != null) {
+            lookupExecutor.shutdownNow();
+            lookupExecutor = null;
+        }
+        
+        super.doDestroy();
     }
 
     /** {@inheritDoc} */
@@ -521,9 +742,71 @@ public class StorageBackedSessionManager extends AbstractIdentifiableInitializab
 
         log.debug("Created new session {} for principal {}", sessionId, principalName);
         cookieManager.addCookie(cookieName, sessionId);
+        
+        final Map<String,StorageBackedIdPSession> cache = getRequestCache(true);
+        if (cache != null) {
+            cache.put(sessionId, newSession);
+        }
+        
         return newSession;
     }
 
+    /**
+     * Begin deferring updates to primary session records made during the current request.
+     * 
+     * <p>This has no effect unless {@link #isCoalesceUpdates()} is true. Every call must be paired with a
+     * call to {@link #flushUpdates()} at the end of the same request.</p>
+     * 
+     * @since 5.0.0
+     */
+    public void beginUpdates() {
+        checkComponentActive();
+        
+        if (!coalesceUpdates) {
+            return;
+        }
+        
+        final HttpServletRequest httpRequest = httpRequestSupplier == null ? null : httpRequestSupplier.get();
+        if (httpRequest != null && httpRequest.getAttribute(UNIT_OF_WORK_ATTRIBUTE) == null) {
+            httpRequest.setAttribute(UNIT_OF_WORK_ATTRIBUTE,
+                    Collections.newSetFromMap(new IdentityHashMap<StorageBackedIdPSession,Boolean>()));
+        }
+    }
+    
+    /**
+     * Write any updates to primary session records deferred since {@link #beginUpdates()} was called,
+     * and stop deferring them.
+     * 
+     * @throws SessionException if an error occurs writing an update; all sessions are attempted regardless
+     * 
+     * @since 5.0.0
+     */
+    public void flushUpdates() throws SessionException {
+        checkComponentActive();
+        
+        final Set<StorageBackedIdPSession> unitOfWork = getUnitOfWork();
+        if (unitOfWork == null) {
+            return;
+        }
+        
+        httpRequestSupplier.get().removeAttribute(UNIT_OF_WORK_ATTRIBUTE);
+        
+        SessionException firstException = null;
+        for (final StorageBackedIdPSession session : unitOfWork) {
+            try {
+                session.flush();
+            } catch (final SessionException e) {
+                if (firstException == null) {
+                    firstException = e;
+                }
+            }
+        }
+        
+        if (firstException != null) {
+            throw firstException;
+        }
+    }
+
     /** {@inheritDoc} */
     @Override public void destroySession(@Nonnull @NotEmpty final String sessionId, final boolean unbind)
             throws SessionException {
@@ -535,6 +818,11 @@ public class StorageBackedSessionManager extends AbstractIdentifiableInitializab
         if (unbind) {
             cookieManager.unsetCookie(cookieName);
         }
+        
+        final Map<String,StorageBackedIdPSession> cache = getRequestCache(false);
+        if (cache != null) {
+            cache.remove(sessionId);
+        }
 
         try {
             storageService.deleteContext(sessionId);
@@ -620,12 +908,7 @@ public class StorageBackedSessionManager extends AbstractIdentifiableInitializab
      */
     protected void indexBySPSession(@Nonnull final IdPSession idpSession, @Nonnull final SPSession spSession,
             final int attempts) throws SessionException {
-        if (attempts <= 0) {
-            log.error("Exceeded retry attempts while adding to secondary index");
-            if (!maskStorageFailure) {
-                throw new SessionException("Exceeded retry attempts while adding to secondary index");
-            }
-        } else if (secondaryServiceIndex && storageServiceMeetsThreshold()) {
+        if (secondaryServiceIndex && storageServiceMeetsThreshold()) {
             String serviceId = spSession.getId();
             String serviceKey = spSession.getSPSessionKey();
             if (serviceKey == null) {
@@ -644,46 +927,24 @@ public class StorageBackedSessionManager extends AbstractIdentifiableInitializab
                 serviceKey = serviceKey.substring(0, keySize);
             }
 
-            StorageRecord<?> sessionList = null;
-
-            try {
-                sessionList = storageService.read(serviceId, serviceKey);
-            } catch (final IOException e) {
-                log.error("Exception while querying based service ID {} and key {}", serviceId, serviceKey, e);
-                if (!maskStorageFailure) {
-                    throw new SessionException("Exception while querying based on SPSession", e);
-                }
-            }
-
+            boolean success = false;
             try {
-                if (sessionList != null) {
-                    if (!sessionList.getValue().contains(idpSession.getId() + ',')) {
-                        // Need to update record.
-                        final String updated = sessionList.getValue() + idpSession.getId() + ',';
-                        if (storageService.updateWithVersion(sessionList.getVersion(), serviceId, serviceKey, updated,
-                                Math.max(sessionList.getExpiration(), 
-                                         spSession.getExpirationInstant().plus(sessionSlop).toEpochMilli())) == null) {
-                            log.debug("Secondary index record disappeared, retrying as insert");
-                            indexBySPSession(idpSession, spSession, attempts - 1);
-                        }
-                    } else {
-                        log.debug("IdP session {} already indexed against service ID {} and key {}", idpSession.getId(),
-                                serviceId, serviceKey);
-                    }
-                } else if (!storageService.create(serviceId, serviceKey, idpSession.getId() + ',',
-                        spSession.getExpirationInstant().plus(sessionSlop).toEpochMilli())) {
-                    log.debug("Secondary index record appeared, retrying as update");
-                    indexBySPSession(idpSession, spSession, attempts - 1);
-                }
+                success = spSessionIndexStrategy.add(storageService, serviceId, serviceKey, idpSession.getId(),
+                        spSession.getExpirationInstant().plus(sessionSlop).toEpochMilli(), attempts);
             } catch (final IOException e) {
                 log.error("Exception maintaining secondary index for service ID {} and key {}",
                         serviceId, serviceKey, e);
                 if (!maskStorageFailure) {
                     throw new SessionException("Exception maintaining secondary index", e);
                 }
-            } catch (final VersionMismatchException e) {
-                log.debug("Secondary index record was updated between read/update, retrying");
-                indexBySPSession(idpSession, spSession, attempts - 1);
+                return;
+            }
+            
+            if (!success) {
+                log.error("Exceeded retry attempts while adding to secondary index");
+                if (!maskStorageFailure) {
+                    throw new SessionException("Exceeded retry attempts while adding to secondary index");
+                }
             }
         }
     }
@@ -699,12 +960,7 @@ public class StorageBackedSessionManager extends AbstractIdentifiableInitializab
      */
     protected void unindexSPSession(@Nonnull final IdPSession idpSession, @Nonnull final SPSession spSession,
             final int attempts) throws SessionException {
-        if (attempts <= 0) {
-            log.error("Exceeded retry attempts while removing from secondary index");
-            if (!maskStorageFailure) {
-                throw new SessionException("Exceeded retry attempts while removing from secondary index");
-            }
-        } else if (secondaryServiceIndex && storageServiceMeetsThreshold()) {
+        if (secondaryServiceIndex && storageServiceMeetsThreshold()) {
             String serviceId = spSession.getId();
             String serviceKey = spSession.getSPSessionKey();
             if (serviceKey == null) {
@@ -723,47 +979,24 @@ public class StorageBackedSessionManager extends AbstractIdentifiableInitializab
                 serviceKey = serviceKey.substring(0, keySize);
             }
 
-            StorageRecord<?> sessionList = null;
-
+            boolean success = false;
             try {
-                sessionList = storageService.read(serviceId, serviceKey);
+                success = spSessionIndexStrategy.remove(storageService, serviceId, serviceKey,
+                        Collections.singleton(idpSession.getId()), attempts);
             } catch (final IOException e) {
-                log.error("Exception while querying based service ID {} and key {}", serviceId, serviceKey, e);
+                log.error("Exception removing secondary index for service ID {} and key {}",
+                        serviceId, serviceKey, e);
                 if (!maskStorageFailure) {
-                    throw new SessionException("Exception while querying based on SPSession", e);
+                    throw new SessionException("Exception maintaining secondary index", e);
                 }
+                return;
             }
 
-            try {
-                if (sessionList != null) {
-                    final String recordValue = sessionList.getValue();
-                    if (recordValue.contains(idpSession.getId() + ',')) {
-                        // Need to update or delete record.
-                        final String updated = recordValue.replace(idpSession.getId() + ',', "");
-                        if (updated.length() > 0) {
-                            if (storageService.updateWithVersion(sessionList.getVersion(), serviceId, serviceKey,
-                                    updated, sessionList.getExpiration()) == null) {
-                                log.debug("Secondary index record disappeared, nothing to do");
-                            }
-                        } else {
-                            storageService.deleteWithVersion(sessionList.getVersion(), serviceId, serviceKey);
-                        }
-                    } else {
-                        log.debug("IdP session {} not indexed against service ID {} and key {}", idpSession.getId(),
-                                serviceId, serviceKey);
-                    }
-                } else {
-                    log.debug("Secondary index record not found, nothing to do");
-                }
-            } catch (final IOException e) {
-                log.error("Exception removing secondary index for service ID {} and key {}",
-                        serviceId, serviceKey, e);
+            if (!success) {
+                log.error("Exceeded retry attempts while removing from secondary index");
                 if (!maskStorageFailure) {
-                    throw new SessionException("Exception maintaining secondary index", e);
+                    throw new SessionException("Exceeded retry attempts while removing from secondary index");
                 }
-            } catch (final VersionMismatchException e) {
-                log.debug("Secondary index record was updated between read/update/delete, retrying");
-                unindexSPSession(idpSession, spSession, attempts - 1);
             }
         }
     }
@@ -782,6 +1015,33 @@ public class StorageBackedSessionManager extends AbstractIdentifiableInitializab
             return null;
         }
         
+        final Map<String,StorageBackedIdPSession> cache = getRequestCache(true);
+        if (cache != null) {
+            final StorageBackedIdPSession session = cache.get(sessionId);
+            if (session != null) {
+                log.debug("Returning cached session for ID {}", sessionId);
+                return session;
+            }
+        }
+        
+        final StorageBackedIdPSession session = readSession(sessionId);
+        if (session != null && cache != null) {
+            cache.put(sessionId, session);
+        }
+        return session;
+    }
+    
+    /**
+     * Performs a lookup and deserializes a record based on session ID, bypassing any request-scoped cache.
+     * 
+     * @param sessionId the session to lookup
+     * 
+     * @return the IdPSession object, or null
+     * @throws ResolverException if an error occurs during lookup
+     */
+    @Nullable private StorageBackedIdPSession readSession(@Nonnull @NotEmpty final String sessionId)
+            throws ResolverException {
+        
         log.debug("Performing primary lookup on session ID {}", sessionId);
 
         try {
@@ -801,6 +1061,113 @@ public class StorageBackedSessionManager extends AbstractIdentifiableInitializab
         return null;
     }
 
+    /**
+     * Get the set of sessions with deferred updates in the current request, if updates are being deferred.
+     * 
+     * @return the set of sessions, or null
+     */
+    @SuppressWarnings("unchecked")
+    @Nullable Set<StorageBackedIdPSession> getUnitOfWork() {
+        if (!coalesceUpdates || httpRequestSupplier == null) {
+            return null;
+        }
+        
+        final HttpServletRequest httpRequest = httpRequestSupplier.get();
+        if (httpRequest != null) {
+            final Object unitOfWork = httpRequest.getAttribute(UNIT_OF_WORK_ATTRIBUTE);
+            if (unitOfWork instanceof Set) {
+                return (Set<StorageBackedIdPSession>) unitOfWork;
+            }
+        }
+        
+        return null;
+    }
+    
+    /**
+     * Get the request-scoped session cache, if enabled and a request is available.
+     * 
+     * @param create whether to create the cache if it does not yet exist
+     * 
+     * @return the cache, or null
+     */
+    @SuppressWarnings("unchecked")
+    @Nullable private Map<String,StorageBackedIdPSession> getRequestCache(final boolean create) {
+        if (!requestScopedCaching || httpRequestSupplier == null) {
+            return null;
+        }
+        
+        final HttpServletRequest httpRequest = httpRequestSupplier.get();
+        if (httpRequest == null) {
+            return null;
+        }
+        
+        final Object cache = httpRequest.getAttribute(REQUEST_CACHE_ATTRIBUTE);
+        if (cache instanceof Map) {
+            return (Map<String,StorageBackedIdPSession>) cache;
+        } else if (create) {
+            final Map<String,StorageBackedIdPSession> newCache = new HashMap<>();
+            httpRequest.setAttribute(REQUEST_CACHE_ATTRIBUTE, newCache);
+            return newCache;
+        }
+        
+        return null;
+    }
+
+    /**
+     * Performs a lookup and deserializes a record for each of a set of session IDs.
+     * 
+     * <p>The lookups are made concurrently if a thread pool has been set up, and sequentially otherwise.</p>
+     * 
+     * @param sessionIds the IDs to look up
+     * 
+     * @return the sessions, in the same order as the IDs, with null entries for any that were not found
+     * @throws ResolverException if an error occurs during lookup
+     */
+    @Nonnull private List<IdPSession> lookupBySessionIds(@Nonnull @NonnullElements final List<String> sessionIds)
+            throws ResolverException {
+        
+        final List<IdPSession> sessions = new ArrayList<>(sessionIds.size());
+        final ExecutorService executor = lookupExecutor;
+        
+        if (executor == null || sessionIds.size() == 1) {
+            for (final String sessionId : sessionIds) {
+                sessions.add(lookupBySessionId(sessionId));
+            }
+            return sessions;
+        }
+        
+        log.debug("Performing concurrent primary lookup on {} session IDs", sessionIds.size());
+        
+        // The request-scoped cache is only accessed from the calling thread.
+        final Map<String,StorageBackedIdPSession> cache = getRequestCache(true);
+        
+        final List<Callable<StorageBackedIdPSession>> tasks = new ArrayList<>(sessionIds.size());
+        for (final String sessionId : sessionIds) {
+            final StorageBackedIdPSession cached = cache != null ? cache.get(sessionId) : null;
+            tasks.add(cached != null ? () -> cached : () -> readSession(sessionId));
+        }
+        
+        try {
+            for (final Future<StorageBackedIdPSession> result : executor.invokeAll(tasks)) {
+                final StorageBackedIdPSession session = result.get();
+                if (session != null && cache != null) {
+                    cache.putIfAbsent(session.getId(), session);
+                }
+                sessions.add(session);
+            }
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ResolverException("Interrupted while querying for sessions", e);
+        } catch (final ExecutionException e) {
+            if (e.getCause() instanceof ResolverException) {
+                throw (ResolverException) e.getCause();
+            }
+            throw new ResolverException("Exception while querying for sessions", e.getCause());
+        }
+        
+        return sessions;
+    }
+
     /**
      * Performs a lookup and deserializes records potentially matching a SPSession.
      * 
@@ -827,10 +1194,10 @@ public class StorageBackedSessionManager extends AbstractIdentifiableInitializab
             serviceKey = serviceKey.substring(0, keySize);
         }
 
-        StorageRecord<?> sessionList = null;
+        Collection<String> sessionIds = Collections.emptyList();
 
         try {
-            sessionList = storageService.read(serviceId, serviceKey);
+            sessionIds = spSessionIndexStrategy.read(storageService, serviceId, serviceKey);
         } catch (final IOException e) {
             log.error("Exception while querying based service ID {} and key {}", serviceId, serviceKey, e);
             if (!maskStorageFailure) {
@@ -838,37 +1205,35 @@ public class StorageBackedSessionManager extends AbstractIdentifiableInitializab
             }
         }
 
-        if (sessionList == null) {
+        if (sessionIds.isEmpty()) {
             log.debug("Secondary lookup failed on service ID {} and key {}", serviceId, serviceKey);
             return Collections.emptyList();
         }
 
-        final ImmutableList.Builder<IdPSession> builder = ImmutableList.builder();
+        final List<String> sessionIdList = List.copyOf(sessionIds);
+        final List<IdPSession> sessions = lookupBySessionIds(sessionIdList);
 
-        final StringBuilder writeBackSessionList = new StringBuilder(sessionList.getValue().length());
+        final ImmutableList.Builder<IdPSession> builder = ImmutableList.builder();
+        final Set<String> deadSessionIds = new HashSet<>();
 
-        for (final String sessionId : sessionList.getValue().split(",")) {
-            final IdPSession session = lookupBySessionId(sessionId);
+        for (int i = 0; i < sessionIdList.size(); ++i) {
+            final IdPSession session = sessions.get(i);
             if (session != null) {
-                // Session was found, so add it to the return set and to the updated index record.
                 builder.add(session);
-                writeBackSessionList.append(sessionId);
-                writeBackSessionList.append(',');
+            } else {
+                deadSessionIds.add(sessionIdList.get(i));
             }
         }
 
-        try {
-            final String writeBackValue = writeBackSessionList.toString();
-            if (writeBackValue.length() == 0) {
-                storageService.deleteWithVersion(sessionList.getVersion(), serviceId, serviceKey);
-            } else if (!writeBackValue.equals(sessionList.getValue())) {
-                storageService.updateWithVersion(sessionList.getVersion(), serviceId, serviceKey, writeBackValue,
-                        sessionList.getExpiration());
+        // Prune the index of sessions that no longer exist, making a single attempt.
+        if (!deadSessionIds.isEmpty()) {
+            try {
+                if (!spSessionIndexStrategy.remove(storageService, serviceId, serviceKey, deadSessionIds, 1)) {
+                    log.debug("Ignoring version mismatch while updating secondary index");
+                }
+            } catch (final IOException e) {
+                log.warn("Ignoring exception while updating secondary index", e);
             }
-        } catch (final IOException e) {
-            log.warn("Ignoring exception while updating secondary index", e);
-        } catch (final VersionMismatchException e) {
-            log.debug("Ignoring version mismatch while updating secondary index");
         }
 
         return builder.build();
@@ -0,0 +1,415 @@
+/*
+ * Licensed to the University Corporation for Advanced Internet Development,
+ * Inc. (UCAID) under one or more contributor license agreements.  See the
+ * NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The UCAID licenses this file to You under the Apache
+ * License, Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package net.shibboleth.idp.session.impl;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.ThreadSafe;
+import javax.json.Json;
+import javax.json.JsonException;
+import javax.json.stream.JsonParser;
+import javax.json.stream.JsonParser.Event;
+import javax.json.stream.JsonParserFactory;
+
+import net.shibboleth.idp.session.AbstractIdPSession;
+import net.shibboleth.shared.annotation.constraint.NotEmpty;
+import net.shibboleth.shared.component.AbstractInitializableComponent;
+import net.shibboleth.shared.logic.Constraint;
+
+import org.opensaml.storage.StorageSerializer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A streaming alternative to {@link StorageBackedIdPSessionSerializer}.
+ * 
+ * <p>Records are read with a {@link JsonParser} in a single pass without building an object tree, and are
+ * written directly into a per-thread buffer that is reused across calls. The format produced is identical to
+ * that of {@link StorageBackedIdPSessionSerializer}, so the two implementations can read each other's records
+ * and nodes can be switched over one at a time.</p>
+ * 
+ * <p>Unlike the tree-based implementation, serializing a session writes out the flow and service IDs it
+ * references without first loading the underlying results and SP sessions from storage. References to
+ * records that no longer exist are still dropped, but the records are only read, not deserialized.</p>
+ * 
+ * @since 5.0.0
+ */
+@ThreadSafe
+public class StreamingIdPSessionSerializer extends AbstractInitializableComponent implements
+        StorageSerializer<StorageBackedIdPSession> {
+
+    /** Largest buffer retained by a thread between calls. */
+    private static final int MAX_RETAINED_BUFFER = 8192;
+
+    /** Hex digits for escaping control characters. */
+    @Nonnull private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    /** Shared factory for parsers. */
+    @Nonnull private static final JsonParserFactory PARSER_FACTORY = Json.createParserFactory(null);
+
+    /** Per-thread output buffer. */
+    @Nonnull private static final ThreadLocal<StringBuilder> BUFFER =
+            ThreadLocal.withInitial(() -> new StringBuilder(256));
+
+    /** Class logger. */
+    @Nonnull private final Logger log = LoggerFactory.getLogger(StreamingIdPSessionSerializer.class);
+
+    /** Back-reference to parent instance. */
+    @Nonnull private final StorageBackedSessionManager sessionManager;
+
+    /** Object instance to overwrite with deserialization method. */
+    @Nullable private final StorageBackedIdPSession targetObject;
+
+    /**
+     * Constructor.
+     * 
+     * @param manager parent SessionManager instance
+     * @param target object to overwrite when deserializing instead of creating a new instance
+     */
+    public StreamingIdPSessionSerializer(@Nonnull final StorageBackedSessionManager manager,
+            @Nullable final StorageBackedIdPSession target) {
+        sessionManager = Constraint.isNotNull(manager, "SessionManager cannot be null");
+        targetObject = target;
+    }
+
+// Checkstyle: CyclomaticComplexity OFF
+    /** {@inheritDoc} */
+    @Override @Nonnull @NotEmpty public String serialize(@Nonnull final StorageBackedIdPSession instance)
+            throws IOException {
+
+        StringBuilder sink = BUFFER.get();
+        if (sink.capacity() > MAX_RETAINED_BUFFER) {
+            sink = new StringBuilder(256);
+            BUFFER.set(sink);
+        } else {
+            sink.setLength(0);
+        }
+
+        sink.append('{');
+        writeKey(sink, StorageBackedIdPSessionSerializer.CREATION_INSTANT_FIELD, true);
+        sink.append(instance.getCreationInstant().toEpochMilli());
+        writeKey(sink, StorageBackedIdPSessionSerializer.PRINCIPAL_NAME_FIELD, false);
+        writeString(sink, instance.getPrincipalName());
+
+        String address = instance.getAddress(AbstractIdPSession.AddressFamily.IPV4);
+        if (address != null) {
+            writeKey(sink, StorageBackedIdPSessionSerializer.IPV4_ADDRESS_FIELD, false);
+            writeString(sink, address);
+        }
+
+        address = instance.getAddress(AbstractIdPSession.AddressFamily.IPV6);
+        if (address != null) {
+            writeKey(sink, StorageBackedIdPSessionSerializer.IPV6_ADDRESS_FIELD, false);
+            writeString(sink, address);
+        }
+
+        address = instance.getAddress(AbstractIdPSession.AddressFamily.UNKNOWN);
+        if (address != null) {
+            writeKey(sink, StorageBackedIdPSessionSerializer.UNK_ADDRESS_FIELD, false);
+            writeString(sink, address);
+        }
+
+        // The key sets are used directly to avoid loading results and sessions that aren't needed,
+        // after dropping references to records that no longer exist.
+        instance.pruneReferences();
+        if (!instance.getAuthenticationResultMap().isEmpty()) {
+            writeKey(sink, StorageBackedIdPSessionSerializer.FLOW_ID_ARRAY_FIELD, false);
+            writeStringArray(sink, instance.getAuthenticationResultMap().keySet());
+        }
+
+        if (sessionManager.isTrackSPSessions()) {
+            if (sessionManager.storageServiceMeetsThreshold()) {
+                if (!instance.getSPSessionMap().isEmpty()) {
+                    writeKey(sink, StorageBackedIdPSessionSerializer.SERVICE_ID_ARRAY_FIELD, false);
+                    writeStringArray(sink, instance.getSPSessionMap().keySet());
+                }
+            } else {
+                log.debug("Unable to serialize SP session due to to storage service limitations");
+            }
+        }
+
+        sink.append('}');
+
+        return sink.toString();
+    }
+// Checkstyle: CyclomaticComplexity ON
+
+    /** {@inheritDoc} */
+    // Checkstyle: CyclomaticComplexity|MethodLength OFF
+    @Override @Nonnull public StorageBackedIdPSession deserialize(final long version,
+            @Nonnull @NotEmpty final String context, @Nonnull @NotEmpty final String key,
+            @Nonnull @NotEmpty final String value, @Nullable final Long expiration) throws IOException {
+
+        if (expiration == null) {
+            throw new IOException("IdPSession objects must have an expiration");
+        }
+
+        Long creation = null;
+        String principalName = null;
+        String ipv4 = null;
+        String ipv6 = null;
+        String unknown = null;
+        List<String> flowIds = Collections.emptyList();
+        List<String> svcIds = Collections.emptyList();
+
+        try (final JsonParser parser = PARSER_FACTORY.createParser(new StringReader(value))) {
+            if (!parser.hasNext() || parser.next() != Event.START_OBJECT) {
+                throw new IOException("Found invalid data structure while parsing IdPSession");
+            }
+
+            Event event = parser.next();
+            while (event == Event.KEY_NAME) {
+                final String field = parser.getString();
+                event = parser.next();
+                switch (field) {
+                    case StorageBackedIdPSessionSerializer.CREATION_INSTANT_FIELD:
+                        if (event != Event.VALUE_NUMBER || !parser.isIntegralNumber()) {
+                            throw new IOException("Creation instant was not an integer");
+                        }
+                        creation = parser.getBigDecimal().longValueExact();
+                        break;
+
+                    case StorageBackedIdPSessionSerializer.PRINCIPAL_NAME_FIELD:
+                        principalName = readString(parser, event);
+                        break;
+
+                    case StorageBackedIdPSessionSerializer.IPV4_ADDRESS_FIELD:
+                        ipv4 = readString(parser, event);
+                        break;
+
+                    case StorageBackedIdPSessionSerializer.IPV6_ADDRESS_FIELD:
+                        ipv6 = readString(parser, event);
+                        break;
+
+                    case StorageBackedIdPSessionSerializer.UNK_ADDRESS_FIELD:
+                        unknown = readString(parser, event);
+                        break;
+
+                    case StorageBackedIdPSessionSerializer.FLOW_ID_ARRAY_FIELD:
+                        flowIds = readStringArray(parser, event);
+                        break;
+
+                    case StorageBackedIdPSessionSerializer.SERVICE_ID_ARRAY_FIELD:
+                        svcIds = readStringArray(parser, event);
+                        break;
+
+                    default:
+                        skipValue(parser, event);
+                }
+                event = parser.next();
+            }
+
+            if (event != Event.END_OBJECT) {
+                throw new IOException("Found invalid data structure while parsing IdPSession");
+            }
+        } catch (final ArithmeticException | IllegalStateException | JsonException e) {
+            log.error("Exception while parsing IdPSession: {}", e.getMessage());
+            throw new IOException("Found invalid data structure while parsing IdPSession", e);
+        }
+
+        // Create new object if necessary.
+        StorageBackedIdPSession objectToPopulate = targetObject;
+        if (objectToPopulate == null) {
+            if (creation == null || principalName == null) {
+                throw new IOException("Found invalid data structure while parsing IdPSession");
+            }
+            objectToPopulate =
+                    new StorageBackedIdPSession(sessionManager, context, principalName, Instant.ofEpochMilli(creation));
+        }
+
+        // Populate fields in-place, bypassing any storage interactions.
+        objectToPopulate.setVersion(version);
+        objectToPopulate.doSetLastActivityInstant(
+                Instant.ofEpochMilli(expiration).minus(sessionManager.getSessionTimeout()).minus(
+                        sessionManager.getSessionSlop()));
+        if (ipv4 != null) {
+            objectToPopulate.doBindToAddress(ipv4);
+        }
+        if (ipv6 != null) {
+            objectToPopulate.doBindToAddress(ipv6);
+        }
+        if (unknown != null) {
+            objectToPopulate.doBindToAddress(unknown);
+        }
+
+        objectToPopulate.getAuthenticationResultMap().clear();
+        for (final String flowId : flowIds) {
+            // An absent mapping is used to signify the existence of a result not yet loaded.
+            objectToPopulate.getAuthenticationResultMap().put(flowId, Optional.empty());
+        }
+
+        objectToPopulate.getSPSessionMap().clear();
+        for (final String svcId : svcIds) {
+            // An absent mapping is used to signify the existence of a session not yet loaded.
+            objectToPopulate.getSPSessionMap().put(svcId, Optional.empty());
+        }
+
+        return objectToPopulate;
+    }
+    // Checkstyle: CyclomaticComplexity|MethodLength ON
+
+    /**
+     * Read a string value.
+     * 
+     * @param parser the parser
+     * @param event the event for the value
+     * 
+     * @return the string value
+     * @throws IOException if the value is not a string
+     */
+    @Nonnull private String readString(@Nonnull final JsonParser parser, @Nonnull final Event event)
+            throws IOException {
+        if (event != Event.VALUE_STRING) {
+            throw new IOException("Expected string value while parsing IdPSession");
+        }
+        return parser.getString();
+    }
+
+    /**
+     * Read an array of string values.
+     * 
+     * @param parser the parser
+     * @param event the event for the value
+     * 
+     * @return the string values
+     * @throws IOException if the value is not an array of strings
+     */
+    @Nonnull private List<String> readStringArray(@Nonnull final JsonParser parser, @Nonnull final Event event)
+            throws IOException {
+        if (event == Event.VALUE_NULL) {
+            return Collections.emptyList();
+        } else if (event != Event.START_ARRAY) {
+            throw new IOException("Expected array value while parsing IdPSession");
+        }
+
+        final List<String> values = new ArrayList<>(4);
+        Event next = parser.next();
+        while (next != Event.END_ARRAY) {
+            values.add(readString(parser, next));
+            next = parser.next();
+        }
+        return values;
+    }
+
+    /**
+     * Skip over a value that isn't part of the format.
+     * 
+     * @param parser the parser
+     * @param event the event starting the value
+     */
+    private void skipValue(@Nonnull final JsonParser parser, @Nonnull final Event event) {
+        if (event != Event.START_ARRAY && event != Event.START_OBJECT) {
+            return;
+        }
+        int depth = 1;
+        while (depth > 0) {
+            final Event next = parser.next();
+            if (next == Event.START_ARRAY || next == Event.START_OBJECT) {
+                depth++;
+            } else if (next == Event.END_ARRAY || next == Event.END_OBJECT) {
+                depth--;
+            }
+        }
+    }
+
+    /**
+     * Write an object key.
+     * 
+     * @param sink output buffer
+     * @param name key name, which must not require escaping
+     * @param first whether this is the first key in the object
+     */
+    private static void writeKey(@Nonnull final StringBuilder sink, @Nonnull final String name, final boolean first) {
+        if (!first) {
+            sink.append(',');
+        }
+        sink.append('"').append(name).append("\":");
+    }
+
+    /**
+     * Write an array of strings.
+     * 
+     * @param sink output buffer
+     * @param values values to write
+     */
+    private static void writeStringArray(@Nonnull final StringBuilder sink, @Nonnull final Iterable<String> values) {
+        sink.append('[');
+        boolean first = true;
+        for (final String value : values) {
+            if (!first) {
+                sink.append(',');
+            }
+            writeString(sink, value);
+            first = false;
+        }
+        sink.append(']');
+    }
+
+    /**
+     * Write a quoted and escaped string, following the same escaping rules as the JSON-P generator.
+     * 
+     * @param sink output buffer
+     * @param value value to write
+     */
+    private static void writeString(@Nonnull final StringBuilder sink, @Nonnull final String value) {
+        sink.append('"');
+        final int len = value.length();
+        for (int i = 0; i < len; ++i) {
+            final char ch = value.charAt(i);
+            switch (ch) {
+                case '"':
+                    sink.append("\\\"");
+                    break;
+                case '\\':
+                    sink.append("\\\\");
+                    break;
+                case '\b':
+                    sink.append("\\b");
+                    break;
+                case '\f':
+                    sink.append("\\f");
+                    break;
+                case '\n':
+                    sink.append("\\n");
+                    break;
+                case '\r':
+                    sink.append("\\r");
+                    break;
+                case '\t':
+                    sink.append("\\t");
+                    break;
+                default:
+                    if (ch < 0x20) {
+                        sink.append("\\u00").append(HEX[ch >> 4]).append(HEX[ch & 0xF]);
+                    } else {
+                        sink.append(ch);
+                    }
+            }
+        }
+        sink.append('"');
+    }
+}
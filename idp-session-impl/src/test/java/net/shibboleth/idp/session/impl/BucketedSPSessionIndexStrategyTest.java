@@ -0,0 +1,172 @@
+/*
+ * Licensed to the University Corporation for Advanced Internet Development,
+ * Inc. (UCAID) under one or more contributor license agreements.  See the
+ * NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The UCAID licenses this file to You under the Apache
+ * License, Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.shibboleth.idp.session.impl;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.opensaml.storage.StorageRecord;
+import org.opensaml.storage.impl.MemoryStorageService;
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import net.shibboleth.shared.component.ComponentInitializationException;
+import net.shibboleth.shared.logic.ConstraintViolationException;
+
+/** {@link BucketedSPSessionIndexStrategy} and {@link SingleRecordSPSessionIndexStrategy} unit test. */
+@SuppressWarnings("javadoc")
+public class BucketedSPSessionIndexStrategyTest {
+
+    private static final String CONTEXT = "https://sp.example.org";
+    
+    private static final String KEY = "jdoe";
+    
+    private static final List<String> IDS = Arrays.asList("one", "two", "three", "four", "five", "six", "seven");
+
+    private MemoryStorageService storageService;
+    
+    private long expiration;
+    
+    @BeforeMethod public void setUp() throws ComponentInitializationException {
+        storageService = new MemoryStorageService();
+        storageService.setId("TestStorageService");
+        storageService.initialize();
+        expiration = System.currentTimeMillis() + 60000;
+    }
+
+    @AfterMethod public void tearDown() {
+        storageService.destroy();
+    }
+    
+    @Test(expectedExceptions = ConstraintViolationException.class)
+    public void testInvalidCount() {
+        new BucketedSPSessionIndexStrategy(0);
+    }
+    
+    @Test public void testSingleRecord() throws IOException {
+        final SingleRecordSPSessionIndexStrategy strategy = new SingleRecordSPSessionIndexStrategy();
+        Assert.assertTrue(strategy.read(storageService, CONTEXT, KEY).isEmpty());
+        
+        for (final String id : IDS) {
+            Assert.assertTrue(strategy.add(storageService, CONTEXT, KEY, id, expiration, 3));
+        }
+        // Duplicates are not added twice.
+        Assert.assertTrue(strategy.add(storageService, CONTEXT, KEY, "one", expiration, 3));
+        
+        Assert.assertEquals(strategy.read(storageService, CONTEXT, KEY), IDS);
+        
+        final StorageRecord<?> record = storageService.read(CONTEXT, KEY);
+        Assert.assertNotNull(record);
+        Assert.assertEquals(record.getValue(), String.join(",", IDS) + ',');
+        
+        Assert.assertTrue(strategy.remove(storageService, CONTEXT, KEY, Arrays.asList("two", "six", "missing"), 3));
+        Assert.assertEquals(new HashSet<>(strategy.read(storageService, CONTEXT, KEY)),
+                Set.of("one", "three", "four", "five", "seven"));
+
+        Assert.assertTrue(strategy.remove(storageService, CONTEXT, KEY, IDS, 3));
+        Assert.assertNull(storageService.read(CONTEXT, KEY));
+        Assert.assertTrue(strategy.remove(storageService, CONTEXT, KEY, IDS, 3));
+    }
+
+    @Test public void testPartialMatch() throws IOException {
+        final SingleRecordSPSessionIndexStrategy strategy = new SingleRecordSPSessionIndexStrategy();
+        Assert.assertTrue(strategy.add(storageService, CONTEXT, KEY, "session", expiration, 3));
+        Assert.assertTrue(strategy.add(storageService, CONTEXT, KEY, "sess", expiration, 3));
+        Assert.assertTrue(strategy.add(storageService, CONTEXT, KEY, "ion", expiration, 3));
+        Assert.assertEquals(strategy.read(storageService, CONTEXT, KEY), Arrays.asList("session", "sess", "ion"));
+        
+        Assert.assertTrue(strategy.remove(storageService, CONTEXT, KEY, Set.of("sess"), 3));
+        Assert.assertEquals(strategy.read(storageService, CONTEXT, KEY), Arrays.asList("session", "ion"));
+    }
+
+    @Test public void testBuckets() throws IOException {
+        final BucketedSPSessionIndexStrategy strategy = new BucketedSPSessionIndexStrategy(4);
+        Assert.assertEquals(strategy.getBuckets(), 4);
+        
+        for (final String id : IDS) {
+            Assert.assertTrue(strategy.add(storageService, CONTEXT, KEY, id, expiration, 3));
+        }
+        
+        final Collection<String> ids = strategy.read(storageService, CONTEXT, KEY);
+        Assert.assertEquals(ids.size(), IDS.size());
+        Assert.assertEquals(new HashSet<>(ids), new HashSet<>(IDS));
+        
+        // At least one ID must have landed outside the legacy record.
+        final StorageRecord<?> record = storageService.read(CONTEXT, KEY);
+        Assert.assertTrue(record == null || record.getValue().split(",").length < IDS.size());
+
+        Assert.assertTrue(strategy.remove(storageService, CONTEXT, KEY, Arrays.asList("one", "four"), 3));
+        Assert.assertEquals(new HashSet<>(strategy.read(storageService, CONTEXT, KEY)),
+                Set.of("two", "three", "five", "six", "seven"));
+        
+        Assert.assertTrue(strategy.remove(storageService, CONTEXT, KEY, IDS, 3));
+        Assert.assertTrue(strategy.read(storageService, CONTEXT, KEY).isEmpty());
+    }
+
+    @Test public void testLegacyCompatibility() throws IOException {
+        final SingleRecordSPSessionIndexStrategy legacy = new SingleRecordSPSessionIndexStrategy();
+        for (final String id : IDS) {
+            Assert.assertTrue(legacy.add(storageService, CONTEXT, KEY, id, expiration, 3));
+        }
+        
+        final BucketedSPSessionIndexStrategy strategy = new BucketedSPSessionIndexStrategy(8);
+        Assert.assertEquals(new HashSet<>(strategy.read(storageService, CONTEXT, KEY)), new HashSet<>(IDS));
+        
+        final BucketedSPSessionIndexStrategy single = new BucketedSPSessionIndexStrategy(1);
+        Assert.assertEquals(single.read(storageService, CONTEXT, KEY), IDS);
+        Assert.assertTrue(single.remove(storageService, CONTEXT, KEY, IDS, 3));
+        Assert.assertNull(storageService.read(CONTEXT, KEY));
+    }
+
+    @Test public void testSwitchFromSingleRecord() throws IOException {
+        final SingleRecordSPSessionIndexStrategy legacy = new SingleRecordSPSessionIndexStrategy();
+        for (final String id : IDS) {
+            Assert.assertTrue(legacy.add(storageService, CONTEXT, KEY, id, expiration, 3));
+        }
+        
+        final BucketedSPSessionIndexStrategy strategy = new BucketedSPSessionIndexStrategy(4);
+        Assert.assertTrue(strategy.add(storageService, CONTEXT, KEY, "eight", expiration, 3));
+        Assert.assertEquals(strategy.read(storageService, CONTEXT, KEY).size(), IDS.size() + 1);
+        
+        // IDs written to the legacy record are removed even when they hash to another bucket.
+        Assert.assertTrue(strategy.remove(storageService, CONTEXT, KEY, IDS, 3));
+        Assert.assertEquals(strategy.read(storageService, CONTEXT, KEY), List.of("eight"));
+        Assert.assertTrue(storageService.read(CONTEXT, KEY) == null
+                || !storageService.read(CONTEXT, KEY).getValue().contains("one"));
+    }
+
+    @Test public void testBucketCountChange() throws IOException {
+        final BucketedSPSessionIndexStrategy before = new BucketedSPSessionIndexStrategy(3);
+        for (final String id : IDS) {
+            Assert.assertTrue(before.add(storageService, CONTEXT, KEY, id, expiration, 3));
+        }
+        
+        final BucketedSPSessionIndexStrategy after = new BucketedSPSessionIndexStrategy(5);
+        Assert.assertEquals(new HashSet<>(after.read(storageService, CONTEXT, KEY)), new HashSet<>(IDS));
+        
+        Assert.assertTrue(after.remove(storageService, CONTEXT, KEY, IDS, 3));
+        Assert.assertTrue(after.read(storageService, CONTEXT, KEY).isEmpty());
+    }
+
+}
@@ -0,0 +1,160 @@
+/*
+ * Licensed to the University Corporation for Advanced Internet Development,
+ * Inc. (UCAID) under one or more contributor license agreements.  See the
+ * NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The UCAID licenses this file to You under the Apache
+ * License, Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.shibboleth.idp.session.impl;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Map;
+
+import net.shibboleth.idp.session.AbstractIdPSession;
+import net.shibboleth.idp.session.AbstractIdPSession.AddressFamily;
+import net.shibboleth.idp.session.BasicSPSession;
+import net.shibboleth.idp.session.IdPSession;
+import net.shibboleth.idp.session.SPSession;
+import net.shibboleth.idp.session.SPSessionSerializerRegistry;
+import net.shibboleth.idp.session.SessionException;
+import net.shibboleth.idp.session.criterion.SessionIdCriterion;
+import net.shibboleth.shared.component.ComponentInitializationException;
+import net.shibboleth.shared.resolver.CriteriaSet;
+import net.shibboleth.shared.resolver.ResolverException;
+import net.shibboleth.shared.servlet.impl.HttpServletRequestResponseContext;
+
+import org.opensaml.storage.StorageRecord;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+/** {@link StorageBackedSessionManager} unit test with coalesced updates enabled. */
+public class CoalescedUpdatesSessionManagerTest extends SessionManagerBaseTestCase {
+
+    /** {@inheritDoc} */
+    @Override
+    protected void adjustProperties() throws ComponentInitializationException {
+        final SPSessionSerializerRegistry registry = new SPSessionSerializerRegistry();
+        registry.setMappings(Map.of(BasicSPSession.class, new BasicSPSessionSerializer(Duration.ofMinutes(5))));
+        registry.initialize();
+        
+        sessionManager.setCoalesceUpdates(true);
+        sessionManager.setTrackSPSessions(true);
+        sessionManager.setSPSessionSerializerRegistry(registry);
+    }
+    
+    @Test
+    public void testWriteThrough() throws SessionException, IOException {
+        final MockHttpServletRequest request = new MockHttpServletRequest();
+        request.setRemoteAddr("192.168.1.1");
+        HttpServletRequestResponseContext.loadCurrent(request, new MockHttpServletResponse());
+        
+        // No unit of work in progress, so changes are written immediately.
+        final IdPSession session = sessionManager.createSession("joe");
+        final long version = getRecord(session).getVersion();
+        Assert.assertTrue(session.checkAddress("zorkmid"));
+        Assert.assertEquals(getRecord(session).getVersion(), version + 1);
+        
+        sessionManager.flushUpdates();
+        Assert.assertEquals(getRecord(session).getVersion(), version + 1);
+        
+        sessionManager.destroySession(session.getId(), true);
+    }
+
+    @Test
+    public void testCoalesced() throws SessionException, ResolverException, IOException {
+        final MockHttpServletRequest request = new MockHttpServletRequest();
+        request.setRemoteAddr("192.168.1.1");
+        HttpServletRequestResponseContext.loadCurrent(request, new MockHttpServletResponse());
+        
+        sessionManager.beginUpdates();
+        Assert.assertNotNull(request.getAttribute(StorageBackedSessionManager.UNIT_OF_WORK_ATTRIBUTE));
+        
+        final IdPSession one = sessionManager.createSession("joe");
+        final IdPSession two = sessionManager.resolveSingle(new CriteriaSet(new SessionIdCriterion(one.getId())));
+        Assert.assertNotNull(two);
+        final long version = getRecord(one).getVersion();
+        
+        // Changes to both copies are held back.
+        Assert.assertNull(one.addSPSession(buildSPSession("https://sp1.example.org")));
+        Assert.assertNull(one.addSPSession(buildSPSession("https://sp2.example.org")));
+        Assert.assertNull(two.addSPSession(buildSPSession("https://sp3.example.org")));
+        Assert.assertEquals(getRecord(one).getVersion(), version);
+        
+        // One write per copy, with the second merged after a version mismatch.
+        sessionManager.flushUpdates();
+        Assert.assertNull(request.getAttribute(StorageBackedSessionManager.UNIT_OF_WORK_ATTRIBUTE));
+        Assert.assertEquals(getRecord(one).getVersion(), version + 2);
+        
+        HttpServletRequestResponseContext.loadCurrent(new MockHttpServletRequest(), new MockHttpServletResponse());
+        final AbstractIdPSession three = (AbstractIdPSession) sessionManager.resolveSingle(new CriteriaSet(new SessionIdCriterion(one.getId())));
+        Assert.assertNotNull(three);
+        Assert.assertNotNull(three.getSPSession("https://sp1.example.org"));
+        Assert.assertNotNull(three.getSPSession("https://sp2.example.org"));
+        Assert.assertNotNull(three.getSPSession("https://sp3.example.org"));
+        
+        sessionManager.destroySession(one.getId(), true);
+    }
+
+    @Test
+    public void testAddressNotDeferred() throws SessionException, ResolverException, IOException {
+        final MockHttpServletRequest request = new MockHttpServletRequest();
+        request.setRemoteAddr("192.168.1.1");
+        HttpServletRequestResponseContext.loadCurrent(request, new MockHttpServletResponse());
+        
+        sessionManager.beginUpdates();
+        
+        final IdPSession one = sessionManager.createSession("joe");
+        final IdPSession two = sessionManager.resolveSingle(new CriteriaSet(new SessionIdCriterion(one.getId())));
+        Assert.assertNotNull(two);
+        final long version = getRecord(one).getVersion();
+        
+        // A deferred change is written along with the binding.
+        Assert.assertNull(one.addSPSession(buildSPSession("https://sp1.example.org")));
+        Assert.assertEquals(getRecord(one).getVersion(), version);
+        Assert.assertTrue(one.checkAddress("192.168.1.1"));
+        Assert.assertEquals(getRecord(one).getVersion(), version + 1);
+        
+        // Another copy binds a conflicting address underneath, and is rejected.
+        Assert.assertNull(two.addSPSession(buildSPSession("https://sp2.example.org")));
+        Assert.assertFalse(two.checkAddress("192.168.1.2"));
+        Assert.assertTrue(two.checkAddress("192.168.1.1"));
+        
+        sessionManager.flushUpdates();
+        
+        HttpServletRequestResponseContext.loadCurrent(new MockHttpServletRequest(), new MockHttpServletResponse());
+        final AbstractIdPSession three = (AbstractIdPSession) sessionManager.resolveSingle(new CriteriaSet(new SessionIdCriterion(one.getId())));
+        Assert.assertNotNull(three);
+        Assert.assertEquals(three.getAddress(AddressFamily.IPV4), "192.168.1.1");
+        Assert.assertNotNull(three.getSPSession("https://sp1.example.org"));
+        Assert.assertNotNull(three.getSPSession("https://sp2.example.org"));
+        
+        sessionManager.destroySession(one.getId(), true);
+    }
+    
+    private SPSession buildSPSession(final String id) {
+        final Instant now = Instant.now();
+        return new BasicSPSession(id, now, now.plusSeconds(60));
+    }
+    
+    private StorageRecord<?> getRecord(final IdPSession session) throws IOException {
+        final StorageRecord<?> record =
+                storageService.read(session.getId(), StorageBackedSessionManager.SESSION_PRIMARY_KEY);
+        Assert.assertNotNull(record);
+        return record;
+    }
+
+}
@@ -0,0 +1,132 @@
+/*
+ * Licensed to the University Corporation for Advanced Internet Development,
+ * Inc. (UCAID) under one or more contributor license agreements.  See the
+ * NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The UCAID licenses this file to You under the Apache
+ * License, Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.shibboleth.idp.session.impl;
+
+import java.io.IOException;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import net.shibboleth.idp.session.IdPSession;
+import net.shibboleth.idp.session.SPSession;
+import net.shibboleth.idp.session.SessionException;
+import net.shibboleth.idp.session.criterion.SPSessionCriterion;
+import net.shibboleth.shared.resolver.CriteriaSet;
+import net.shibboleth.shared.resolver.ResolverException;
+import net.shibboleth.shared.servlet.impl.HttpServletRequestResponseContext;
+
+import org.opensaml.storage.StorageRecord;
+import org.opensaml.storage.impl.MemoryStorageService;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+/** {@link StorageBackedSessionManager} unit test with concurrent secondary lookups enabled. */
+public class ParallelLookupSessionManagerTest extends StorageBackedSessionManagerTest {
+
+    private static final String SP_ID = "https://sp3.example.org/shibboleth";
+
+    private ThreadRecordingStorageService recordingStorage;
+
+    /** {@inheritDoc} */
+    @Override
+    protected void adjustProperties() {
+        super.adjustProperties();
+        
+        // Swapped in before the base class initializes it.
+        recordingStorage = new ThreadRecordingStorageService();
+        recordingStorage.setId("TestStorageService");
+        storageService = recordingStorage;
+        sessionManager.setStorageService(storageService);
+        sessionManager.setLookupParallelism(4);
+    }
+    
+    @Test
+    public void testConcurrentSecondaryLookup() throws ResolverException, SessionException, IOException {
+        
+        HttpServletRequestResponseContext.loadCurrent(new MockHttpServletRequest(), new MockHttpServletResponse());
+
+        final Instant now = Instant.now();
+        final SPSession spSession = new ExtendedSPSession(SP_ID, now, now.plusSeconds(3600));
+        
+        final List<String> created = new ArrayList<>();
+        for (int i = 0; i < 8; ++i) {
+            final IdPSession session = sessionManager.createSession("joe" + i);
+            Assert.assertNull(session.addSPSession(spSession));
+            created.add(session.getId());
+        }
+        
+        final SPSessionIndexStrategy index = new SingleRecordSPSessionIndexStrategy();
+        final List<String> indexed = List.copyOf(index.read(storageService, SP_ID, ExtendedSPSession.SESSION_KEY));
+        Assert.assertEquals(new HashSet<>(indexed), new HashSet<>(created));
+        
+        // Kill every other session, leaving its ID behind in the index.
+        final List<String> live = new ArrayList<>();
+        for (int i = 0; i < indexed.size(); ++i) {
+            if (i % 2 == 0) {
+                sessionManager.destroySession(indexed.get(i), false);
+            } else {
+                live.add(indexed.get(i));
+            }
+        }
+        
+        // A fresh request, so nothing is served from the request cache.
+        HttpServletRequestResponseContext.clearCurrent();
+        HttpServletRequestResponseContext.loadCurrent(new MockHttpServletRequest(), new MockHttpServletResponse());
+        
+        final List<String> resolved = new ArrayList<>();
+        for (final IdPSession s : sessionManager.resolve(
+                new CriteriaSet(new SPSessionCriterion(SP_ID, ExtendedSPSession.SESSION_KEY)))) {
+            resolved.add(s.getId());
+        }
+        Assert.assertEquals(resolved, live);
+        
+        for (final String sessionId : indexed) {
+            final String reader = recordingStorage.readers.get(sessionId);
+            Assert.assertNotNull(reader);
+            Assert.assertTrue(reader.startsWith(sessionManager.getId() + "-lookup-"), reader);
+        }
+        
+        Assert.assertEquals(List.copyOf(index.read(storageService, SP_ID, ExtendedSPSession.SESSION_KEY)), live);
+        
+        for (final String sessionId : live) {
+            sessionManager.destroySession(sessionId, false);
+        }
+        HttpServletRequestResponseContext.clearCurrent();
+    }
+
+    /** Storage service that records the last thread to read each session record. */
+    private static class ThreadRecordingStorageService extends MemoryStorageService {
+        
+        private final Map<String,String> readers = new ConcurrentHashMap<>();
+        
+        /** {@inheritDoc} */
+        @Override
+        public <T> StorageRecord<T> read(final String context, final String key) throws IOException {
+            if (StorageBackedSessionManager.SESSION_PRIMARY_KEY.equals(key)) {
+                readers.put(context, Thread.currentThread().getName());
+            }
+            return super.read(context, key);
+        }
+    }
+
+}
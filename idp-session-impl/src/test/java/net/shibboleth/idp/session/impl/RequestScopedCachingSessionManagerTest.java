@@ -0,0 +1,66 @@
+/*
+ * Licensed to the University Corporation for Advanced Internet Development,
+ * Inc. (UCAID) under one or more contributor license agreements.  See the
+ * NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The UCAID licenses this file to You under the Apache
+ * License, Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.shibboleth.idp.session.impl;
+
+import net.shibboleth.idp.session.IdPSession;
+import net.shibboleth.idp.session.SessionException;
+import net.shibboleth.idp.session.criterion.SessionIdCriterion;
+import net.shibboleth.shared.resolver.CriteriaSet;
+import net.shibboleth.shared.resolver.ResolverException;
+import net.shibboleth.shared.servlet.impl.HttpServletRequestResponseContext;
+
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+/** {@link StorageBackedSessionManager} unit test with request-scoped caching enabled. */
+public class RequestScopedCachingSessionManagerTest extends SessionManagerBaseTestCase {
+
+    /** {@inheritDoc} */
+    @Override
+    protected void adjustProperties() {
+        sessionManager.setRequestScopedCaching(true);
+    }
+    
+    @Test
+    public void testCaching() throws ResolverException, SessionException {
+        
+        final MockHttpServletRequest request = new MockHttpServletRequest();
+        HttpServletRequestResponseContext.loadCurrent(request, new MockHttpServletResponse());
+        
+        final IdPSession session = sessionManager.createSession("joe");
+        final CriteriaSet criteria = new CriteriaSet(new SessionIdCriterion(session.getId()));
+        
+        // Same request, same object.
+        Assert.assertSame(sessionManager.resolveSingle(criteria), session);
+        Assert.assertNotNull(request.getAttribute(StorageBackedSessionManager.REQUEST_CACHE_ATTRIBUTE));
+
+        // New request, new object.
+        HttpServletRequestResponseContext.loadCurrent(new MockHttpServletRequest(), new MockHttpServletResponse());
+        final IdPSession session2 = sessionManager.resolveSingle(criteria);
+        Assert.assertNotNull(session2);
+        Assert.assertNotSame(session2, session);
+        Assert.assertSame(sessionManager.resolveSingle(criteria), session2);
+        
+        // Destroying the session evicts it.
+        sessionManager.destroySession(session.getId(), true);
+        Assert.assertNull(sessionManager.resolveSingle(criteria));
+    }
+
+}
@@ -377,7 +377,7 @@ public class StorageBackedSessionManagerTest extends SessionManagerBaseTestCase
         Assert.assertEquals(sessions.size(), 0);
     }
 
-    private static class ExtendedSPSession extends BasicSPSession {
+    static class ExtendedSPSession extends BasicSPSession {
 
         public static final String SESSION_KEY = "PerSessionNameWouldGoHere";
         
@@ -0,0 +1,268 @@
+/*
+ * Licensed to the University Corporation for Advanced Internet Development,
+ * Inc. (UCAID) under one or more contributor license agreements.  See the
+ * NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The UCAID licenses this file to You under the Apache
+ * License, Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package net.shibboleth.idp.session.impl;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.Set;
+import java.util.function.Supplier;
+
+import org.opensaml.storage.impl.MemoryStorageService;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.testng.Assert;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+import org.testng.reporters.Files;
+
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import net.shibboleth.idp.authn.AuthenticationFlowDescriptor;
+import net.shibboleth.idp.authn.AuthenticationResult;
+import net.shibboleth.idp.authn.impl.DefaultAuthenticationResultSerializer;
+import net.shibboleth.idp.authn.principal.UsernamePrincipal;
+import net.shibboleth.idp.session.BasicSPSession;
+import net.shibboleth.idp.session.SPSessionSerializerRegistry;
+import net.shibboleth.shared.component.ComponentInitializationException;
+import net.shibboleth.shared.net.CookieManager;
+import net.shibboleth.shared.security.IdentifierGenerationStrategy;
+import net.shibboleth.shared.security.IdentifierGenerationStrategy.ProviderType;
+import net.shibboleth.shared.servlet.impl.ThreadLocalHttpServletRequestProxy;
+
+/** {@link StreamingIdPSessionSerializer} unit test. */
+@SuppressWarnings("javadoc")
+public class StreamingIdPSessionSerializerTest {
+
+    private static final String DATAPATH = "/net/shibboleth/idp/session/impl/";
+    
+    private static final long INSTANT = 1378827849463L;
+    
+    private static final String CONTEXT = "context";
+    
+    private static final String KEY = "key";
+    
+    private MemoryStorageService storageService;
+
+    private StorageBackedSessionManager manager;
+    
+    private StreamingIdPSessionSerializer serializer;
+
+    private StorageBackedIdPSessionSerializer treeSerializer;
+    
+    @BeforeMethod public void setUp() throws ComponentInitializationException {
+        storageService = new MemoryStorageService();
+        storageService.setId("TestStorageService");
+        storageService.initialize();
+
+        CookieManager cookieManager = new CookieManager();
+        final HttpServletRequest request = new MockHttpServletRequest();
+        final HttpServletResponse response =  new MockHttpServletResponse();
+        
+        cookieManager.setHttpServletRequestSupplier(new Supplier<>() {public HttpServletRequest get() { return request;}});
+        cookieManager.setHttpServletResponseSupplier(new Supplier<>() {public HttpServletResponse get() { return response;}});
+        cookieManager.initialize();
+        
+        manager = new StorageBackedSessionManager();
+        manager.setStorageService(storageService);
+        manager.setIDGenerator(IdentifierGenerationStrategy.getInstance(ProviderType.SECURE));
+        final HttpServletRequest requestProxy = new ThreadLocalHttpServletRequestProxy();
+        manager.setHttpServletRequestSupplier(new Supplier<>() {public HttpServletRequest get() {return requestProxy;}});
+        manager.setCookieManager(cookieManager);
+        manager.setId("Test Session Manager");
+        manager.setTrackSPSessions(true);
+        manager.setSPSessionSerializerRegistry(new SPSessionSerializerRegistry());
+        manager.setStreamingSerialization(true);
+        manager.setAuthenticationFlowDescriptors(Arrays.asList(buildFlow("a"), buildFlow("b")));
+        manager.initialize();
+
+        serializer = new StreamingIdPSessionSerializer(manager, null);
+        serializer.initialize();
+        
+        treeSerializer = new StorageBackedIdPSessionSerializer(manager, null);
+        treeSerializer.initialize();
+    }
+
+    @Test public void testManager() {
+        Assert.assertTrue(manager.getStorageSerializer() instanceof StreamingIdPSessionSerializer);
+    }
+
+    @Test public void testInvalid() throws Exception {
+        try {
+            serializer.deserialize(1, CONTEXT, KEY, fileToString(DATAPATH + "invalid.json"), INSTANT);
+            Assert.fail();
+        } catch (IOException e) {
+            
+        }
+
+        try {
+            serializer.deserialize(1, CONTEXT, KEY, fileToString(DATAPATH + "noInstant.json"), INSTANT);
+            Assert.fail();
+        } catch (IOException e) {
+            
+        }
+
+        try {
+            serializer.deserialize(1, CONTEXT, KEY, fileToString(DATAPATH + "noName.json"), INSTANT);
+            Assert.fail();
+        } catch (IOException e) {
+            
+        }
+        
+        try {
+            serializer.deserialize(1, CONTEXT, KEY, "[\"ts\"]", INSTANT);
+            Assert.fail();
+        } catch (IOException e) {
+            
+        }
+
+        try {
+            serializer.deserialize(1, CONTEXT, KEY, "{\"ts\":1.5,\"nam\":\"foo\"}", INSTANT);
+            Assert.fail();
+        } catch (IOException e) {
+            
+        }
+
+        try {
+            // Tests expiration being null.
+            serializer.deserialize(1, CONTEXT, KEY, fileToString(DATAPATH + "basicIdPSession.json"), null);
+            Assert.fail();
+        } catch (IOException e) {
+            
+        }
+    }
+    
+    @Test public void testBasic() throws Exception {
+        long exp = INSTANT + (60 * 60 * 1000);
+        
+        StorageBackedIdPSession session = new StorageBackedIdPSession(manager, "test", "foo", Instant.ofEpochMilli(INSTANT));
+        session.doBindToAddress("127.0.0.1");
+        
+        String s = serializer.serialize(session);
+        String s2 = fileToString(DATAPATH + "basicIdPSession.json");
+        Assert.assertEquals(s, s2);
+        Assert.assertEquals(s, treeSerializer.serialize(session));
+        
+        StorageBackedIdPSession session2 = serializer.deserialize(1, "test", KEY, s2, exp);
+
+        Assert.assertEquals(session.getId(), session2.getId());
+        Assert.assertEquals(session.getPrincipalName(), session2.getPrincipalName());
+        Assert.assertEquals(session.getCreationInstant(), session2.getCreationInstant());
+        Assert.assertEquals(session.getLastActivityInstant(), session2.getLastActivityInstant());
+    }
+
+    @Test public void testComplex() throws Exception {
+        final Instant exp = Instant.ofEpochMilli(INSTANT).plusSeconds(3600);
+        
+        StorageBackedIdPSession session = new StorageBackedIdPSession(manager, "test", "foo", Instant.ofEpochMilli(INSTANT));
+        session.doBindToAddress("127.0.0.1");
+        session.doBindToAddress("::1");
+        session.doBindToAddress("zorkmid");
+        session.doAddAuthenticationResult(new AuthenticationResult("a", new UsernamePrincipal("jdoe")));
+        session.doAddAuthenticationResult(new AuthenticationResult("b", new UsernamePrincipal("jdoe")));
+        session.doAddAuthenticationResult(new AuthenticationResult("c", new UsernamePrincipal("jdoe")));
+        session.doAddSPSession(new BasicSPSession("bar", Instant.ofEpochMilli(INSTANT), exp));
+        session.doAddSPSession(new BasicSPSession("baz", Instant.ofEpochMilli(INSTANT), exp));
+        
+        String s2 = fileToString(DATAPATH + "complexIdPSession.jdk8");
+        
+        StorageBackedIdPSession session2 = serializer.deserialize(1, "test", KEY, s2, exp.toEpochMilli());
+
+        Assert.assertEquals(session.getId(), session2.getId());
+        Assert.assertEquals(session.getPrincipalName(), session2.getPrincipalName());
+        Assert.assertEquals(session.getCreationInstant(), session2.getCreationInstant());
+        Assert.assertEquals(session.getLastActivityInstant(), session2.getLastActivityInstant());
+        Assert.assertEquals(session2.getAddress(StorageBackedIdPSession.AddressFamily.IPV4), "127.0.0.1");
+        Assert.assertEquals(session2.getAddress(StorageBackedIdPSession.AddressFamily.IPV6), "::1");
+        Assert.assertEquals(session2.getAddress(StorageBackedIdPSession.AddressFamily.UNKNOWN), "zorkmid");
+        Assert.assertEquals(session2.getAuthenticationResultMap().keySet(), session.getAuthenticationResultMap().keySet());
+        Assert.assertEquals(session2.getSPSessionMap().keySet(), session.getSPSessionMap().keySet());
+        
+        // Round-trip through both implementations.
+        final StorageBackedIdPSession session3 =
+                treeSerializer.deserialize(1, "test", KEY, serializer.serialize(session), exp.toEpochMilli());
+        Assert.assertEquals(session3.getAuthenticationResultMap().keySet(), session.getAuthenticationResultMap().keySet());
+        Assert.assertEquals(session3.getSPSessionMap().keySet(), session.getSPSessionMap().keySet());
+    }
+
+    @Test public void testPruning() throws Exception {
+        final long exp = INSTANT + (60 * 60 * 1000);
+        
+        final StorageBackedIdPSession session = serializer.deserialize(1, "test", KEY,
+                fileToString(DATAPATH + "complexIdPSession.jdk8"), exp);
+        Assert.assertEquals(session.getAuthenticationResultMap().keySet(), Set.of("a", "b", "c"));
+        Assert.assertEquals(session.getSPSessionMap().keySet(), Set.of("bar", "baz"));
+        
+        // Only "a" and "bar" still have records; "c" also has no flow descriptor.
+        final long recordExp = System.currentTimeMillis() + 60000;
+        Assert.assertTrue(storageService.create("test", "a", "x", recordExp));
+        Assert.assertTrue(storageService.create("test", "bar", "x", recordExp));
+        
+        final StorageBackedIdPSession session2 =
+                serializer.deserialize(1, "test", KEY, serializer.serialize(session), exp);
+        Assert.assertEquals(session2.getAuthenticationResultMap().keySet(), Set.of("a"));
+        Assert.assertEquals(session2.getSPSessionMap().keySet(), Set.of("bar"));
+        Assert.assertEquals(session.getAuthenticationResultMap().keySet(), Set.of("a"));
+        Assert.assertEquals(session.getSPSessionMap().keySet(), Set.of("bar"));
+    }
+
+    @Test public void testEscaping() throws Exception {
+        final long exp = INSTANT + (60 * 60 * 1000);
+        
+        final StorageBackedIdPSession session =
+                new StorageBackedIdPSession(manager, "test", "a\"b\\c\td\u00e9", Instant.ofEpochMilli(INSTANT));
+        session.doBindToAddress("127.0.0.1");
+        
+        final String s = serializer.serialize(session);
+        Assert.assertEquals(s, treeSerializer.serialize(session));
+        Assert.assertEquals(treeSerializer.deserialize(1, "test", KEY, s, exp).getPrincipalName(),
+                session.getPrincipalName());
+    }
+
+    @Test public void testUnknownFields() throws Exception {
+        final StorageBackedIdPSession session = serializer.deserialize(1, "test", KEY,
+                "{\"x\":{\"y\":[1,{\"z\":2}]},\"ts\":1378827849463,\"nam\":\"foo\",\"q\":[]}", INSTANT);
+        Assert.assertEquals(session.getPrincipalName(), "foo");
+        Assert.assertEquals(session.getCreationInstant(), Instant.ofEpochMilli(INSTANT));
+    }
+    
+    private AuthenticationFlowDescriptor buildFlow(final String id) throws ComponentInitializationException {
+        final DefaultAuthenticationResultSerializer resultSerializer = new DefaultAuthenticationResultSerializer();
+        resultSerializer.initialize();
+        
+        final AuthenticationFlowDescriptor flow = new AuthenticationFlowDescriptor();
+        flow.setId(id);
+        flow.setLifetime(Duration.ofMinutes(1));
+        flow.setInactivityTimeout(Duration.ofMinutes(1));
+        flow.setResultSerializer(resultSerializer);
+        flow.initialize();
+        return flow;
+    }
+    
+    private String fileToString(String pathname) throws URISyntaxException, IOException {
+        try (FileInputStream stream = new FileInputStream(
+                new File(StreamingIdPSessionSerializerTest.class.getResource(pathname).toURI()))) {
+            return Files.streamToString(stream);
+        }
+    }
+}